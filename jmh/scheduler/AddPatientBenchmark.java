@@ -0,0 +1,28 @@
+package scheduler;
+
+import java.util.Arrays;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+// OPS_PER_INVOCATION admissions into a waiting list already holding queueSize patients
+public class AddPatientBenchmark extends WaitingListBenchmark {
+
+    private EmergencyRoomScheduler scheduler;
+
+
+    @Setup(Level.Invocation)
+    public void preload() {
+        scheduler = quietScheduler();
+        scheduler.admitAll(Arrays.asList(arrivals).subList(0, queueSize));
+    }
+
+
+    @Benchmark
+    public int addPatient() {
+        for (int i = queueSize; i < arrivals.length; i++) {
+            scheduler.addPatient(arrivals[i]);
+        }
+        return scheduler.waitingCount();
+    }
+}
@@ -0,0 +1,71 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The Patient cases from SchedulerBenchmarks: compareTo, hashCode, a HashSet lookup (hashCode plus equals) and
+// toString, each over PATIENTS generated patients with a uniform priority mix
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(PatientBenchmark.PATIENTS)
+public class PatientBenchmark {
+
+    static final int PATIENTS = 10_000;
+
+    private Patient[] patients;
+    private HashSet<Patient> patientSet;
+
+
+    @Setup
+    public void generatePatients() {
+        patients = new ArrivalGenerator(1, PATIENTS, ArrivalGenerator.UNIFORM_MIX, 0).generate(PATIENTS);
+        patientSet = new HashSet<>(Arrays.asList(patients));
+    }
+
+
+    @Benchmark
+    public long compareTo() {
+        long checksum = 0;
+        for (int i = 0; i < patients.length; i++) {
+            checksum += patients[i].compareTo(patients[(i * 7 + 3) % patients.length]);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long hashCodes() {
+        long checksum = 0;
+        for (Patient patient : patients) {
+            checksum += patient.hashCode();
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long hashLookup() {
+        long checksum = 0;
+        for (Patient patient : patients) {
+            checksum += patientSet.contains(patient) ? 1 : 0;
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long toStrings() {
+        long checksum = 0;
+        for (Patient patient : patients) {
+            checksum += patient.toString().length();
+        }
+        return checksum;
+    }
+}
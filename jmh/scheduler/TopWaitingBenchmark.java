@@ -0,0 +1,28 @@
+package scheduler;
+
+import java.util.Arrays;
+import org.openjdk.jmh.annotations.Benchmark;
+
+// OPS_PER_INVOCATION reads of the first 20 patients in treatment order (a display board refresh) from queueSize
+// waiting patients. Reading doesn't change the scheduler, so one is set up per trial.
+public class TopWaitingBenchmark extends WaitingListBenchmark {
+
+    private EmergencyRoomScheduler scheduler;
+
+
+    @Override
+    void prepareTrial() {
+        scheduler = quietScheduler();
+        scheduler.admitAll(Arrays.asList(arrivals).subList(0, queueSize));
+    }
+
+
+    @Benchmark
+    public long topWaiting20() {
+        long checksum = 0;
+        for (int i = 0; i < OPS_PER_INVOCATION; i++) {
+            checksum += scheduler.topWaiting(20).size();
+        }
+        return checksum;
+    }
+}
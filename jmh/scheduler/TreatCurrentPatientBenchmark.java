@@ -0,0 +1,29 @@
+package scheduler;
+
+import java.util.Arrays;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+// OPS_PER_INVOCATION treatments, starting from queueSize + OPS_PER_INVOCATION waiting patients
+public class TreatCurrentPatientBenchmark extends WaitingListBenchmark {
+
+    private EmergencyRoomScheduler scheduler;
+
+
+    @Setup(Level.Invocation)
+    public void preload() {
+        scheduler = quietScheduler();
+        scheduler.admitAll(Arrays.asList(arrivals));
+    }
+
+
+    @Benchmark
+    public long treatCurrentPatient() {
+        long checksum = 0;
+        for (int i = 0; i < OPS_PER_INVOCATION; i++) {
+            checksum += scheduler.treatCurrentPatient().getArrivalTime();
+        }
+        return checksum;
+    }
+}
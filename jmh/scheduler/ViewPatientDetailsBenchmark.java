@@ -0,0 +1,43 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+
+// OPS_PER_INVOCATION lookups against queueSize waiting patients: 80% waiting, 10% recently treated, 10% unknown SSNs.
+// Lookups don't change the scheduler, so one is set up per trial.
+public class ViewPatientDetailsBenchmark extends WaitingListBenchmark {
+
+    private EmergencyRoomScheduler scheduler;
+    private int[] lookups;
+
+
+    @Override
+    void prepareTrial() {
+        lookups = new int[OPS_PER_INVOCATION];
+        Random random = new Random(queueSize);
+        for (int i = 0; i < lookups.length; i++) {
+            int roll = random.nextInt(10);
+            lookups[i] = roll < 8 ? arrivals[random.nextInt(queueSize)].getSsn()
+                    : roll == 8 ? arrivals[queueSize + random.nextInt(100)].getSsn()
+                    : ArrivalGenerator.ssnFor(arrivals.length + random.nextInt(1_000_000));
+        }
+        scheduler = quietScheduler();
+        for (int i = queueSize; i < queueSize + 100; i++) {
+            scheduler.addPatient(arrivals[i]);
+            scheduler.discharge(arrivals[i].getSsn()); // leaves the table without going through the cache
+        }
+        for (int i = queueSize; i < queueSize + 100; i++) {
+            scheduler.rememberTreated(arrivals[i]);
+        }
+        scheduler.admitAll(Arrays.asList(arrivals).subList(0, queueSize));
+    }
+
+
+    @Benchmark
+    public void viewPatientDetails() {
+        for (int ssn : lookups) {
+            scheduler.viewPatientDetails("Patient", ssn);
+        }
+    }
+}
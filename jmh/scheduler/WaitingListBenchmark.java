@@ -0,0 +1,63 @@
+package scheduler;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Shared state for the JMH ports of SchedulerBenchmarks' scheduler cases: every waiting list size, priority mix and
+// scheduling mode, with arrivals from ArrivalGenerator (5% late entries, as there). Each invocation is a block of
+// OPS_PER_INVOCATION operations, so results are ns per operation like SchedulerBenchmarks' own.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(WaitingListBenchmark.OPS_PER_INVOCATION)
+public abstract class WaitingListBenchmark {
+
+    static final int OPS_PER_INVOCATION = 10_000;
+
+    @Param({"1000", "100000"})
+    int queueSize;
+
+    @Param({"typical", "mass-casualty", "uniform"})
+    String mix;
+
+    @Param({"PRIORITY_QUEUE", "PRIORITY_LANES", "AGING_LANES", "COMPACT_HEAP"})
+    SchedulingMode mode;
+
+    Patient[] arrivals; // queueSize patients to preload, then OPS_PER_INVOCATION more
+
+
+    // JMH doesn't order setup methods of the same level, so subclasses set up per trial in prepareTrial(), after this
+    @Setup(Level.Trial)
+    public void generateArrivals() {
+        arrivals = new ArrivalGenerator(queueSize, queueSize + OPS_PER_INVOCATION, levelMix(mix), 0.05).generate(queueSize + OPS_PER_INVOCATION);
+        prepareTrial();
+    }
+
+    void prepareTrial() {
+    }
+
+
+    EmergencyRoomScheduler quietScheduler() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(mode);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        return scheduler;
+    }
+
+
+    static double[] levelMix(String name) {
+        switch (name) {
+            case "typical": return ArrivalGenerator.TYPICAL_MIX;
+            case "mass-casualty": return ArrivalGenerator.MASS_CASUALTY_MIX;
+            case "uniform": return ArrivalGenerator.UNIFORM_MIX;
+            default: throw new IllegalArgumentException("Unknown priority mix: " + name);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package scheduler;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+// Priority lanes with aging, so lower priority patients can't starve behind a steady stream of level 1s.
+// A patient's effective level improves by one for every minutesPerLevel minutes waited (never better than 1):
+// with the default 30, a level 3 patient competes as level 2 after 30 minutes and as level 1 after an hour.
+// Equal effective levels go to whoever has waited longest.
+// No re-sorting is ever needed: within a lane everyone has the same level and the head has waited longest, so
+// the head always has the best effective level in its lane. Choosing the next patient just compares the three
+// lane heads' effective levels at the current time (lazy promotion), keeping admit and treat O(1).
+// Waits are measured from the arrival timestamp, so they are right across midnight. Patients created from military
+// time alone have a legacy timestamp (ArrivalClock.legacyTimestamp: the minute of the day, but no date); their wait
+// is counted from that minute of the day to the clock's minute of the day, wrapping at midnight.
+public class AgingLaneQueue extends PatientLaneQueue {
+
+    public static final int DEFAULT_MINUTES_PER_LEVEL = 30;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_MINUTE = 60_000;
+    private static final int[] LANE_HEADS = new int[3]; // offsets for bestLane: the head of every lane
+
+    private final LongSupplier clock; // current time in epoch millis, same scale as arrival timestamps
+    private final ZoneId zone;        // where the clock's minute of the day is read, for legacy arrivals
+    private final int minutesPerLevel;
+
+
+    //Constructor: aging by the wall clock in the local time zone, one level per DEFAULT_MINUTES_PER_LEVEL minutes
+    public AgingLaneQueue() {
+        this(System::currentTimeMillis, ZoneId.systemDefault(), DEFAULT_MINUTES_PER_LEVEL);
+    }
+
+    //Constructor: aging by any clock counting from day 0 of ArrivalClock.legacyTimestamp (e.g. a simulation's),
+    // one level per minutesPerLevel minutes waited
+    public AgingLaneQueue(LongSupplier clock, int minutesPerLevel) {
+        this(clock, ZoneOffset.UTC, minutesPerLevel);
+    }
+
+    //Constructor: aging by any epoch-millis clock whose local time of day is in zone
+    public AgingLaneQueue(LongSupplier clock, ZoneId zone, int minutesPerLevel) {
+        if (minutesPerLevel < 1) {
+            throw new IllegalArgumentException("minutesPerLevel must be at least 1: " + minutesPerLevel);
+        }
+        this.clock = clock;
+        this.zone = zone;
+        this.minutesPerLevel = minutesPerLevel;
+    }
+
+
+    // Head with the best effective level now; ties go to the longer wait, then to the higher original priority
+    @Override
+    int nextLane() {
+        long now = clock.getAsLong();
+        return bestLane(now, minuteOfDay(now, zone), LANE_HEADS);
+    }
+
+
+    // Treatment order as of now, if nobody else arrived: a three-way merge of the lanes with the same rule as nextLane.
+    // Every lane is already in that order (later arrivals in a lane have waited less, so their effective level is
+    // no better), so nothing is sorted and the first k patients cost O(k).
+    @Override
+    public Iterator<Patient> orderedIterator() {
+        long now = clock.getAsLong();
+        int nowMinute = minuteOfDay(now, zone);
+        return new Iterator<Patient>() {
+            private final int[] offsets = new int[3]; // patients already returned from each lane
+
+            @Override
+            public boolean hasNext() {
+                return offsets[0] + offsets[1] + offsets[2] < size();
+            }
+
+            @Override
+            public Patient next() {
+                int lane = bestLane(now, nowMinute, offsets);
+                if (lane < 0) {throw new NoSuchElementException();}
+                return lanePatient(lane, offsets[lane]++);
+            }
+        };
+    }
+
+
+    // Best of the patients at offsets[lane] in each lane, judged at time now, or -1 if every lane is used up
+    private int bestLane(long now, int nowMinute, int[] offsets) {
+        int bestLane = -1;
+        int bestLevel = Integer.MAX_VALUE;
+        int bestWaited = -1;
+        for (int lane = 0; lane < 3; lane++) {
+            Patient head = lanePatient(lane, offsets[lane]);
+            if (head == null) {
+                continue;
+            }
+            int waited = minutesWaited(head, now, nowMinute);
+            int level = Math.max(1, head.getPriorityLevel() - waited / minutesPerLevel);
+            if (level < bestLevel || (level == bestLevel && waited > bestWaited)) {
+                bestLane = lane;
+                bestLevel = level;
+                bestWaited = waited;
+            }
+        }
+        return bestLane;
+    }
+
+
+    // Whole minutes since the patient's arrival timestamp (0 if the clock is behind it). For a legacy timestamp,
+    // minutes from its minute of the day to nowMinute (the clock's minute of the day), across midnight if need be.
+    static int minutesWaited(Patient patient, long now, int nowMinute) {
+        long arrival = patient.getArrivalTimestamp();
+        if (!ArrivalClock.isDated(arrival)) {
+            return Math.floorMod(nowMinute - (int) (arrival / MILLIS_PER_MINUTE), MINUTES_PER_DAY);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, now - arrival) / MILLIS_PER_MINUTE);
+    }
+
+    // Same, for a clock counting from day 0 (UTC), like the simulations'
+    static int minutesWaited(Patient patient, long now) {
+        return minutesWaited(patient, now, minuteOfDay(now, ZoneOffset.UTC));
+    }
+
+    private static int minuteOfDay(long now, ZoneId zone) {
+        if (zone == ZoneOffset.UTC) {
+            return (int) Math.floorMod(now / MILLIS_PER_MINUTE, (long) MINUTES_PER_DAY);
+        }
+        return Instant.ofEpochMilli(now).atZone(zone).toLocalTime().toSecondOfDay() / 60;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testAgingOrder();
+        testStrictWithoutWaits();
+        testFreshArrivalsByLevel();
+        //simulateWorstCaseWaits();
+    }
+
+
+    public static void testAgingOrder() {
+        long[] clock = {ArrivalClock.legacyTimestamp(830)};
+        AgingLaneQueue aging = new AgingLaneQueue(() -> clock[0], 30);
+        Patient green = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 800, "Flu Like Symptoms");
+        Patient red = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 825, "Chest Pains");
+        aging.add(green);
+        aging.add(red);
+
+        // 8:30: Green waited 30 minutes, effective level 2, still behind Red
+        Patient firstAt830 = aging.peek();
+        // 9:00: Green waited an hour, effective level 1, and has waited longer than Red
+        clock[0] = ArrivalClock.legacyTimestamp(900);
+        Patient firstAt900 = aging.poll();
+        if (firstAt830 == red && firstAt900 == green && aging.poll() == red && aging.poll() == null) {
+            System.out.println("Test Passed: Long-waiting level 3 patient is promoted past a later level 1");
+        }
+        else {System.out.println("Test Failed: At 8:30 " + firstAt830.getName() + ", at 9:00 " + firstAt900.getName());}
+
+        // Waits run across midnight: arrived 23:50, now 00:40 the next day -> 50 minutes, dated or not
+        long lateArrival = ArrivalClock.legacyTimestamp(2350) + 20_000 * MINUTES_PER_DAY * MILLIS_PER_MINUTE; // 23:50 on some real day
+        boolean dated = minutesWaited(new Patient("Late", 123456789, "1/1/2000", "Addr", "555", 3, 2350, lateArrival, "Cough"),
+                lateArrival + 50 * MILLIS_PER_MINUTE) == 50;
+        if (dated && minutesWaited(new Patient("Late", 123456789, "1/1/2000", "Addr", "555", 3, 2350, "Cough"), ArrivalClock.legacyTimestamp(40)) == 50) {
+            System.out.println("Test Passed: Wait across midnight counted as 50 minutes");
+        }
+        else {System.out.println("Test Failed: Wait across midnight miscounted");}
+    }
+
+
+    // Patients created from military time alone, just arrived: level 1 goes first, on a fixed clock and on the wall
+    // clock alike (legacy arrivals must not count as having waited since 1970)
+    public static void testFreshArrivalsByLevel() {
+        AgingLaneQueue fixed = new AgingLaneQueue(() -> ArrivalClock.legacyTimestamp(810), 30);
+        fixed.add(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        fixed.add(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains"));
+
+        int nowMilitary = Math.max(1, new ArrivalClock().militaryTimeOf(System.currentTimeMillis()));
+        EmergencyRoomScheduler wallClock = new EmergencyRoomScheduler(SchedulingMode.AGING_LANES);
+        wallClock.setEventSink(NoOpEventSink.INSTANCE);
+        wallClock.addPatient(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, nowMilitary, "Flu Like Symptoms"));
+        wallClock.addPatient(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, nowMilitary, "Chest Pains"));
+        if (fixed.poll().getName().equals("Red") && wallClock.treatCurrentPatient().getName().equals("Red")) {
+            System.out.println("Test Passed: A fresh level 1 is treated before a fresh level 3 in AGING_LANES");
+        }
+        else {System.out.println("Test Failed: A fresh level 3 went before a fresh level 1 in AGING_LANES");}
+    }
+
+
+    // When nobody has waited long enough to age, the order is exactly the strict lane order
+    public static void testStrictWithoutWaits() {
+        AgingLaneQueue aging = new AgingLaneQueue(() -> 0, 10_000);
+        PatientLaneQueue strict = new PatientLaneQueue();
+        Patient[] arrivals = new ArrivalGenerator(11, 5_000).generate(5_000);
+        boolean matches = true;
+        for (int i = 0; i < arrivals.length; i++) {
+            aging.add(arrivals[i]);
+            strict.add(arrivals[i]);
+            if (i % 3 == 2) {
+                matches = matches && aging.poll() == strict.poll();
+            }
+        }
+        while (matches && !strict.isEmpty()) {
+            matches = aging.poll() == strict.poll();
+        }
+        if (matches) {System.out.println("Test Passed: Aging lanes match strict lanes when no one ages");}
+        else {System.out.println("Test Failed: Aging lanes diverged from strict lanes without aging");}
+    }
+
+
+    // One bay, one treatment per minute, one simulated day with arrivals at 100% of capacity (0-2 a minute, 1 on average)
+    // and 85% of them level 1. Reports the worst wait per level (treated, or still waiting at the end of the day)
+    // for strict lanes and for aging at several rates.
+    public static void simulateWorstCaseWaits() {
+        for (int minutesPerLevel : new int[] {0, 60, 30, 15}) {
+            long[] clock = {0};
+            WaitingList waitingList = minutesPerLevel == 0 ? new PatientLaneQueue() : new AgingLaneQueue(() -> clock[0], minutesPerLevel);
+            EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(waitingList);
+            scheduler.setEventSink(NoOpEventSink.INSTANCE);
+            Random random = new Random(42);
+            int[] worstWait = new int[4];
+            int[] treated = new int[4];
+            int nextIndex = 0;
+            for (int minute = 1; minute < MINUTES_PER_DAY; minute++) { // military time has no 0000
+                clock[0] = minute * MILLIS_PER_MINUTE;
+                for (int arrival = 0; arrival < 2; arrival++) {
+                    if (random.nextBoolean()) {
+                        double roll = random.nextDouble();
+                        int level = roll < 0.85 ? 1 : roll < 0.95 ? 2 : 3;
+                        int ssn = ArrivalGenerator.ssnFor(nextIndex++);
+                        scheduler.addPatient(new Patient("Pt", ssn, "1/1/2000", "Addr", "555", level, ArrivalGenerator.toMilitaryTime(minute), "Sim"));
+                    }
+                }
+                Patient next = scheduler.treatCurrentPatient();
+                if (next != null) {
+                    int level = next.getPriorityLevel();
+                    worstWait[level] = Math.max(worstWait[level], minutesWaited(next, clock[0]));
+                    treated[level]++;
+                }
+            }
+            for (Patient stillWaiting : scheduler.waitingPatients()) {
+                int level = stillWaiting.getPriorityLevel();
+                worstWait[level] = Math.max(worstWait[level], minutesWaited(stillWaiting, clock[0]));
+            }
+            System.out.println((minutesPerLevel == 0 ? "Strict priority lanes     " : "Aging, 1 level per " + minutesPerLevel + " min")
+                    + ": worst wait level 1 " + worstWait[1] + " min, level 2 " + worstWait[2] + " min, level 3 " + worstWait[3]
+                    + " min (treated " + treated[1] + "/" + treated[2] + "/" + treated[3] + ", " + scheduler.waitingCount() + " still waiting)");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package scheduler;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.function.LongSupplier;
+
+// Turns the military times typed at the desk (no date) into arrival timestamps (epoch millis), which is what
+// patients are ordered by. Military time alone can't order a shift that crosses midnight: 2350 would sort after
+// 0010 the next morning.
+// The first time entered is taken as the most recent occurrence at or before now. Every later entry is placed on
+// whichever day puts it within 12 hours of the previous entry, so a shift rolls over midnight into the next day and
+// a late-entered walk-in from before midnight still lands on the previous day.
+// now() is a monotonic version of the wall clock, for stamping arrivals as they happen.
+public class ArrivalClock {
+
+    private static final long MILLIS_PER_MINUTE = 60_000;
+    private static final long HALF_DAY_MILLIS = 12 * 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    private final ZoneId zone;
+    private final LongSupplier wallClock;
+    private long lastResolved = Long.MIN_VALUE; // previous resolve() result
+    private long lastNow = Long.MIN_VALUE;      // previous now() result
+
+
+    //Constructor: local time zone and the system clock
+    public ArrivalClock() {
+        this(ZoneId.systemDefault(), System::currentTimeMillis);
+    }
+
+    //Constructor: any zone and clock (epoch millis), e.g. a fixed clock for tests
+    public ArrivalClock(ZoneId zone, LongSupplier wallClock) {
+        this.zone = zone;
+        this.wallClock = wallClock;
+    }
+
+
+    // Arrival timestamp for a military time (1-2359) entered at the desk
+    public synchronized long resolve(int militaryTime) {
+        if (!Patient.isValidArrivalTime(militaryTime) || militaryTime % 100 > 59) {
+            throw new IllegalArgumentException("Invalid military time: " + militaryTime);
+        }
+        LocalTime time = LocalTime.of(militaryTime / 100, militaryTime % 100);
+        long anchor = lastResolved == Long.MIN_VALUE ? now() : lastResolved;
+        ZonedDateTime candidate = ZonedDateTime.ofInstant(Instant.ofEpochMilli(anchor), zone).with(time).withSecond(0).withNano(0);
+        long timestamp = candidate.toInstant().toEpochMilli();
+        if (lastResolved == Long.MIN_VALUE) {
+            if (timestamp > anchor) {
+                timestamp = candidate.minusDays(1).toInstant().toEpochMilli(); // hasn't happened yet today: yesterday
+            }
+        }
+        else if (timestamp < anchor - HALF_DAY_MILLIS) {
+            timestamp = candidate.plusDays(1).toInstant().toEpochMilli();
+        }
+        else if (timestamp > anchor + HALF_DAY_MILLIS) {
+            timestamp = candidate.minusDays(1).toInstant().toEpochMilli();
+        }
+        lastResolved = timestamp;
+        return timestamp;
+    }
+
+
+    // Current time in epoch millis, never earlier than a previous call's (the wall clock can be stepped back)
+    public synchronized long now() {
+        lastNow = Math.max(lastNow, wallClock.getAsLong());
+        return lastNow;
+    }
+
+
+    // Military time (0-2359) of a timestamp in this clock's zone
+    public int militaryTimeOf(long timestamp) {
+        ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), zone);
+        return time.getHour() * 100 + time.getMinute();
+    }
+
+
+    // Timestamp for a military time with no date: that minute of day 0 (1 Jan 1970 UTC). Patients created from
+    // military time alone use this, which keeps their old ordering (by military time within one day).
+    public static long legacyTimestamp(int militaryTime) {
+        return toMinuteOfDay(militaryTime) * MILLIS_PER_MINUTE;
+    }
+
+    // False for a legacy timestamp: one on day 0, which says what minute of the day a patient arrived but not which day
+    public static boolean isDated(long timestamp) {
+        return timestamp >= MILLIS_PER_DAY;
+    }
+
+    static int toMinuteOfDay(int militaryTime) {
+        return (militaryTime / 100) * 60 + militaryTime % 100;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testShiftAcrossMidnight();
+        testMonotonicNow();
+    }
+
+
+    public static void testShiftAcrossMidnight() {
+        ZoneId zone = ZoneId.of("America/New_York");
+        long tenPastMidnight = ZonedDateTime.of(2024, 3, 2, 0, 10, 30, 0, zone).toInstant().toEpochMilli();
+        ArrivalClock clock = new ArrivalClock(zone, () -> tenPastMidnight);
+
+        long lateEvening = clock.resolve(2340);  // not yet happened today: yesterday 23:40
+        long beforeMidnight = clock.resolve(2350);
+        long afterMidnight = clock.resolve(5);   // rolls over to the next day
+        long lateEntry = clock.resolve(2355);    // keyed in late: back to the previous day
+        long morning = clock.resolve(830);
+        boolean ordered = lateEvening < beforeMidnight && beforeMidnight < lateEntry && lateEntry < afterMidnight && afterMidnight < morning;
+        if (ordered && afterMidnight - beforeMidnight == 15 * MILLIS_PER_MINUTE && clock.militaryTimeOf(afterMidnight) == 5
+                && ZonedDateTime.ofInstant(Instant.ofEpochMilli(lateEvening), zone).getDayOfMonth() == 1) {
+            System.out.println("Test Passed: Military times across midnight resolve to increasing timestamps");
+        }
+        else {System.out.println("Test Failed: Resolved " + lateEvening + ", " + beforeMidnight + ", " + afterMidnight + ", " + lateEntry + ", " + morning);}
+
+        // Ordering by timestamp: the 2350 patient goes before the 0005 patient at the same level
+        Patient late = new Patient("Late", 111111111, "1/1/2000", "Addr", "555", 3, 2350, beforeMidnight, "Cough");
+        Patient early = new Patient("Early", 222222222, "1/1/2000", "Addr", "555", 3, 5, afterMidnight, "Cough");
+        Patient sameMinute = new Patient("Same Minute", 333333333, "1/1/2000", "Addr", "555", 3, 5, afterMidnight, "Cough");
+        if (late.compareTo(early) < 0 && early.compareTo(sameMinute) < 0 && sameMinute.compareTo(early) > 0
+                && new Patient("Legacy", 444444444, "1/1/2000", "Addr", "555", 3, 5, "Cough").compareTo(late) < 0) {
+            System.out.println("Test Passed: Patients order by arrival timestamp, then admission sequence");
+        }
+        else {System.out.println("Test Failed: Timestamp ordering");}
+    }
+
+
+    public static void testMonotonicNow() {
+        long[] wall = {1_000_000};
+        ArrivalClock clock = new ArrivalClock(ZoneId.of("UTC"), () -> wall[0]);
+        long first = clock.now();
+        wall[0] -= 5_000; // clock stepped back
+        long second = clock.now();
+        wall[0] += 10_000;
+        long third = clock.now();
+        if (first == 1_000_000 && second == first && third == 1_005_000) {System.out.println("Test Passed: now() never goes backwards");}
+        else {System.out.println("Test Failed: now() returned " + first + ", " + second + ", " + third);}
+    }
+}
@@ -0,0 +1,133 @@
+package scheduler;
+
+import java.util.Random;
+
+// Synthetic patient arrivals for benchmarks and simulations, reproducible from a seed.
+// Patients get unique 9 digit SSNs (scattered, not sequential), a priority level drawn from a configurable mix,
+// and arrival times spread evenly over each day in arrival order (military time for display, plus a timestamp that
+// keeps counting across days, starting from day 0 of ArrivalClock.legacyTimestamp). A small share can be marked as
+// late-entered (arrival time a little earlier than the patient before them), like walk-ins keyed in after the fact.
+public class ArrivalGenerator {
+
+    // Share of patients at priority levels 1, 2, 3
+    public static final double[] TYPICAL_MIX = {0.10, 0.30, 0.60};
+    public static final double[] MASS_CASUALTY_MIX = {0.60, 0.30, 0.10};
+    public static final double[] UNIFORM_MIX = {1 / 3.0, 1 / 3.0, 1 / 3.0};
+
+    private static final long SSN_STRIDE = 982_451_653L; // prime, coprime with the 900M nine digit SSNs, so i -> SSN never repeats
+    private static final int SSN_RANGE = 900_000_000;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final Random random;
+    private final double levelOneShare;
+    private final double levelTwoShare; // cumulative: level 1 + level 2
+    private final int patientsPerDay;
+    private final double lateEntryShare;
+    private int generated;
+
+
+    //Constructor: patientsPerDay arrivals spread over the day with a typical priority mix and no late entries
+    public ArrivalGenerator(long seed, int patientsPerDay) {
+        this(seed, patientsPerDay, TYPICAL_MIX, 0);
+    }
+
+    //Constructor: levelMix gives the share of levels 1-3 (normalized here), lateEntryShare the fraction of out-of-order arrivals
+    public ArrivalGenerator(long seed, int patientsPerDay, double[] levelMix, double lateEntryShare) {
+        if (levelMix.length != 3 || patientsPerDay < 1) {
+            throw new IllegalArgumentException("Need three level shares and at least one patient per day");
+        }
+        double total = levelMix[0] + levelMix[1] + levelMix[2];
+        this.random = new Random(seed);
+        this.levelOneShare = levelMix[0] / total;
+        this.levelTwoShare = (levelMix[0] + levelMix[1]) / total;
+        this.patientsPerDay = patientsPerDay;
+        this.lateEntryShare = lateEntryShare;
+    }
+
+
+    // Next arriving patient. After patientsPerDay patients the next day starts.
+    public Patient next() {
+        int index = generated++;
+        int ssn = ssnFor(index);
+        double roll = random.nextDouble();
+        int priorityLevel = roll < levelOneShare ? 1 : roll < levelTwoShare ? 2 : 3;
+        int minute = (int) ((long) (index % patientsPerDay) * MINUTES_PER_DAY / patientsPerDay);
+        if (minute > 0 && random.nextDouble() < lateEntryShare) {
+            minute = Math.max(0, minute - 1 - random.nextInt(30));
+        }
+        long timestamp = ((long) (index / patientsPerDay) * MINUTES_PER_DAY + minute) * 60_000;
+        return new Patient("Patient " + index, ssn, "1/1/2000", "123 Main Street", "555-555-5555", priorityLevel, toMilitaryTime(minute),
+                timestamp, "Synthetic Arrival");
+    }
+
+
+    // The next n arrivals
+    public Patient[] generate(int n) {
+        Patient[] patients = new Patient[n];
+        for (int i = 0; i < n; i++) {
+            patients[i] = next();
+        }
+        return patients;
+    }
+
+
+    // Unique SSN for the index-th generated patient (same for every generator, so runs can refer to patients by index)
+    public static int ssnFor(int index) {
+        return 100_000_000 + (int) ((index * SSN_STRIDE) % SSN_RANGE);
+    }
+
+
+    // Minute of the day (0-1439) as military time, never 0 since the scheduler only accepts 1-2359
+    static int toMilitaryTime(int minuteOfDay) {
+        return Math.max(1, (minuteOfDay / 60) * 100 + minuteOfDay % 60);
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testGeneratedPatients();
+    }
+
+
+    public static void testGeneratedPatients() {
+        Patient[] patients = new ArrivalGenerator(7, 100_000, MASS_CASUALTY_MIX, 0).generate(100_000);
+        IntPatientMap seen = new IntPatientMap(100_000);
+        int[] levels = new int[4];
+        boolean valid = true;
+        for (int i = 0; i < patients.length; i++) {
+            Patient patient = patients[i];
+            valid = valid && Patient.isValidSsn(patient.getSsn()) && seen.put(patient.getSsn(), patient) == null
+                    && Patient.isValidArrivalTime(patient.getArrivalTime()) && patient.getArrivalTime() % 100 < 60
+                    && (i == 0 || patient.getArrivalTime() >= patients[i - 1].getArrivalTime());
+            levels[patient.getPriorityLevel()]++;
+        }
+        if (valid && Math.abs(levels[1] - 60_000) < 1000 && Math.abs(levels[3] - 10_000) < 1000) {
+            System.out.println("Test Passed: 100k unique valid patients in arrival order with the requested level mix");
+        }
+        else {System.out.println("Test Failed: valid " + valid + " levels " + levels[1] + "/" + levels[2] + "/" + levels[3]);}
+
+        Patient first = new ArrivalGenerator(7, 100).next();
+        Patient again = new ArrivalGenerator(7, 100).next();
+        if (first.getSsn() == again.getSsn() && first.getPriorityLevel() == again.getPriorityLevel()) {
+            System.out.println("Test Passed: Same seed gives the same arrivals");
+        }
+        else {System.out.println("Test Failed: Generator not reproducible");}
+
+        // Three days: military times start over each day, timestamps keep increasing
+        Patient[] days = new ArrivalGenerator(7, 100).generate(300);
+        boolean increasing = true;
+        for (int i = 1; i < days.length; i++) {
+            increasing = increasing && days[i].getArrivalTimestamp() > days[i - 1].getArrivalTimestamp();
+        }
+        if (increasing && days[100].getArrivalTime() < days[99].getArrivalTime()
+                && days[299].getArrivalTimestamp() - days[199].getArrivalTimestamp() == 24 * 60 * 60_000L) { // same minute, one day apart
+            System.out.println("Test Passed: Arrival timestamps keep increasing across midnight");
+        }
+        else {System.out.println("Test Failed: Arrival timestamps out of order across days");}
+    }
+}
@@ -0,0 +1,153 @@
+package scheduler;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+// Console sink that keeps string building and console writes off the scheduling thread.
+// Each event is queued as a small task holding only the Patient reference. A background thread drains
+// whatever has queued up, formats it (same messages as ConsoleEventSink) into a buffered stream and writes
+// the whole batch at once. If the console falls far behind, the queue fills up and the scheduler waits
+// instead of dropping events or using unbounded memory.
+public class AsyncConsoleEventSink implements SchedulerEventSink, AutoCloseable {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    private static final int MAX_BATCH = 1024;
+
+    private final ArrayBlockingQueue<Runnable> pending;
+    private final PrintStream buffered;      // batch buffer in front of the real console stream
+    private final ConsoleEventSink formatter; // does the actual formatting, on the writer thread only
+    private final Thread writer;
+    private volatile boolean closed;
+
+
+    //Constructor: asynchronous printing to System.out
+    public AsyncConsoleEventSink() {
+        this(System.out, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    //Constructor: asynchronous printing to any stream, with at most queueCapacity events waiting to be written
+    public AsyncConsoleEventSink(PrintStream out, int queueCapacity) {
+        pending = new ArrayBlockingQueue<>(queueCapacity);
+        buffered = new PrintStream(new BufferedOutputStream(out, 1 << 16), false);
+        formatter = new ConsoleEventSink(buffered);
+        writer = new Thread(this::writeBatches, "scheduler-console-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    @Override public void patientAdmitted(Patient patient) {enqueue(() -> formatter.patientAdmitted(patient));}
+    @Override public void admissionRejected(Patient patient) {enqueue(() -> formatter.admissionRejected(patient));}
+    @Override public void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {enqueue(() -> formatter.batchAdmitted(admitted, skipped, waiting));}
+    @Override public void patientTreated(Patient patient) {enqueue(() -> formatter.patientTreated(patient));}
+    @Override public void noPatientsWaiting() {enqueue(formatter::noPatientsWaiting);}
+    @Override public void patientReprioritized(Patient patient) {enqueue(() -> formatter.patientReprioritized(patient));}
+    @Override public void patientDischarged(Patient patient) {enqueue(() -> formatter.patientDischarged(patient));}
+    @Override public void waitingPatientNotFound(int ssn) {enqueue(() -> formatter.waitingPatientNotFound(ssn));}
+    @Override public void invalidPriorityLevel(int priorityLevel) {enqueue(() -> formatter.invalidPriorityLevel(priorityLevel));}
+    @Override public void patientFound(Patient patient, boolean alreadyTreated) {enqueue(() -> formatter.patientFound(patient, alreadyTreated));}
+    @Override public void patientNotFound(int ssn) {enqueue(() -> formatter.patientNotFound(ssn));}
+
+
+    // Blocks until everything queued so far has been written to the console
+    @Override
+    public void flush() {
+        if (closed) {
+            return;
+        }
+        CountDownLatch written = new CountDownLatch(1);
+        enqueue(() -> {
+            buffered.flush();
+            written.countDown();
+        });
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    // Writes whatever is still queued, then stops the writer thread
+    @Override
+    public void close() {
+        flush();
+        closed = true;
+        writer.interrupt();
+    }
+
+
+    private void enqueue(Runnable event) {
+        if (closed) {
+            throw new IllegalStateException("Event sink is closed");
+        }
+        try {
+            pending.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    // Writer thread: wait for at least one event, grab everything else already queued, write it as one batch
+    private void writeBatches() {
+        ArrayList<Runnable> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+            for (Runnable event : batch) {
+                event.run();
+            }
+            buffered.flush();
+            batch.clear();
+        }
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testAsyncOutput();
+    }
+
+
+    public static void testAsyncOutput() {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        AsyncConsoleEventSink sink = new AsyncConsoleEventSink(new PrintStream(captured), 64);
+        Patient red = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+        for (int i = 0; i < 500; i++) {
+            sink.patientAdmitted(red);
+            sink.patientTreated(red);
+        }
+        sink.patientNotFound(123456789);
+        sink.flush();
+
+        String output = captured.toString();
+        int admittedCount = output.split("Patient Added:", -1).length - 1;
+        if (admittedCount == 500 && output.endsWith("No patient found with SSN: 123456789 Please Review.\n")) {
+            System.out.println("Test Passed: All events written in order once flushed");
+        }
+        else {System.out.println("Test Failed: " + admittedCount + " admissions written");}
+
+        sink.close();
+        try {
+            sink.patientAdmitted(red);
+            System.out.println("Test Failed: Closed sink accepted an event");
+        } catch (IllegalStateException e) {
+            System.out.println("Test Passed: Closed sink rejects new events");
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package scheduler;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Non-interactive front end: runs a stream of commands (stdin, a file, a pipe) against a scheduler, one per line.
+//   ADD|name|ssn|dateOfBirth|address|phoneNumber|priorityLevel|arrivalTime|treatmentDescription
+//   TREAT
+//   VIEW
+//   LOOKUP|name|ssn
+//   RETRIAGE|ssn|priorityLevel
+//   DISCHARGE|ssn
+//   METRICS          (plain-text metrics dump, when the scheduler has metrics enabled)
+// Fields are separated by '|' so names and addresses can contain spaces. Keywords are case-insensitive; blank
+// lines and lines starting with '#' are skipped. Input is checked with the same rules as the interactive menu
+// (9 digit SSN, priority 1-3, arrival time 1-2359), but a bad line is reported with its line number and skipped
+// instead of re-prompting.
+// Lines are split and numbers parsed straight out of one reusable byte buffer; Strings are only created for the
+// text fields of ADD and LOOKUP. All output (scheduler events included) goes to one buffered stream written in
+// large chunks, so a busy day's intake log (hundreds of thousands of commands) replays in about a second.
+public class BatchCommandProcessor {
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MAX_FIELDS = 9;
+    private static final byte SEPARATOR = '|';
+
+    private final EmergencyRoomScheduler scheduler;
+    private final PrintStream out;
+    private final ArrivalClock arrivalClock = new ArrivalClock(); // dates each ADD's military time (rolls over midnight)
+
+    private InputStream in;
+    private byte[] buffer = new byte[BUFFER_BYTES];
+    private int position;  // next unread byte in buffer
+    private int limit;     // end of valid bytes in buffer
+    private boolean endOfInput;
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+
+    private long lineNumber;
+    private long commands;
+    private long rejected;
+
+
+    //Constructor: runs commands against scheduler, printing to out (buffered here, so pass an unbuffered stream).
+    // Scheduler events are printed to the same buffered output: it takes the place of the scheduler's console sink,
+    // and every other sink it already has (journal, replication, metrics, ...) keeps getting every event.
+    public BatchCommandProcessor(EmergencyRoomScheduler scheduler, OutputStream out) {
+        this.scheduler = scheduler;
+        this.out = new PrintStream(new BufferedOutputStream(out, BUFFER_BYTES), false, StandardCharsets.UTF_8);
+        scheduler.setEventSink(withConsole(scheduler.getEventSink(), new ConsoleEventSink(this.out)));
+    }
+
+
+    // sink with its console output going to console instead (added in front if it had no console sink)
+    private static SchedulerEventSink withConsole(SchedulerEventSink sink, ConsoleEventSink console) {
+        if (sink instanceof ConsoleEventSink) {
+            return console;
+        }
+        CompositeEventSink swapped = sink instanceof CompositeEventSink composite ? composite.withConsole(console) : null;
+        return swapped != null ? swapped : new CompositeEventSink(console, sink);
+    }
+
+
+    public long getCommands() {return commands;}
+    public long getRejected() {return rejected;}
+
+
+    // Runs every command in the stream, then flushes the output. Does not close the stream.
+    public void run(InputStream commandStream) throws IOException {
+        in = commandStream;
+        position = 0;
+        limit = 0;
+        endOfInput = false;
+        while (nextLine()) {
+            lineNumber++;
+            if (fieldCount == 1 && fieldStarts[0] == fieldEnds[0]) {
+                continue; // blank line
+            }
+            if (buffer[fieldStarts[0]] == '#') {
+                continue;
+            }
+            commands++;
+            runCommand();
+        }
+        out.flush();
+    }
+
+
+    private void runCommand() {
+        if (keyword("ADD")) {
+            add();
+        }
+        else if (keyword("TREAT")) {
+            scheduler.treatCurrentPatient();
+        }
+        else if (keyword("VIEW")) {
+            scheduler.viewPQueue(out);
+        }
+        else if (keyword("LOOKUP")) {
+            if (checkFieldCount(3)) {
+                int ssn = ssnField(2);
+                if (ssn > 0) {
+                    scheduler.viewPatientDetails(text(1), ssn);
+                }
+            }
+        }
+        else if (keyword("RETRIAGE")) {
+            if (checkFieldCount(3)) {
+                int ssn = ssnField(1);
+                int priorityLevel = ssn > 0 ? priorityField(2) : 0;
+                if (priorityLevel > 0) {
+                    scheduler.reprioritize(ssn, priorityLevel);
+                }
+            }
+        }
+        else if (keyword("DISCHARGE")) {
+            if (checkFieldCount(2)) {
+                int ssn = ssnField(1);
+                if (ssn > 0) {
+                    scheduler.discharge(ssn);
+                }
+            }
+        }
+        else if (keyword("METRICS")) {
+            SchedulerMetrics metrics = scheduler.getMetrics();
+            out.print(metrics == null ? "Metrics are not enabled\n" : metrics.getTextDump());
+        }
+        else {
+            reject("Unknown command " + text(0) + ". Expected ADD, TREAT, VIEW, LOOKUP, RETRIAGE, DISCHARGE or METRICS.");
+        }
+    }
+
+
+    private void add() {
+        if (!checkFieldCount(9)) {
+            return;
+        }
+        int ssn = ssnField(2);
+        if (ssn < 0) {
+            return;
+        }
+        int priorityLevel = priorityField(6);
+        if (priorityLevel < 0) {
+            return;
+        }
+        int arrivalTime = parseInt(7);
+        if (!Patient.isValidArrivalTime(arrivalTime)) {
+            reject("Invalid Arrival time. Must be between 1 and 2359.");
+            return;
+        }
+        scheduler.addPatient(new Patient(text(1), ssn, text(3), text(4), text(5), priorityLevel, arrivalTime, arrivalClock.resolve(arrivalTime), text(8)));
+    }
+
+
+    // ---------------------------------------------------------------- field checks (each reports its own rejection)
+
+    private boolean checkFieldCount(int expected) {
+        if (fieldCount != expected) {
+            reject(text(0).trim().toUpperCase() + " takes " + (expected - 1) + " '|' separated fields, found " + (fieldCount - 1) + ".");
+            return false;
+        }
+        return true;
+    }
+
+
+    private int ssnField(int field) {
+        int ssn = parseInt(field);
+        if (!Patient.isValidSsn(ssn)) {
+            reject("Invalid SSN. Please enter exactly 9 digits.");
+            return -1;
+        }
+        return ssn;
+    }
+
+
+    private int priorityField(int field) {
+        int priorityLevel = parseInt(field);
+        if (!Patient.isValidPriorityLevel(priorityLevel)) {
+            reject("Invalid Priority Level: Must be Numbers 1, 2, or 3.");
+            return -1;
+        }
+        return priorityLevel;
+    }
+
+
+    private void reject(String reason) {
+        rejected++;
+        out.println("Line " + lineNumber + " skipped: " + reason);
+    }
+
+
+    // ---------------------------------------------------------------- line reading and field parsing
+
+    // Finds the next line in the buffer (refilling it as needed) and splits it into fields. False at end of input.
+    private boolean nextLine() throws IOException {
+        int scan = position;
+        while (true) {
+            while (scan < limit && buffer[scan] != '\n') {
+                scan++;
+            }
+            if (scan < limit || (endOfInput && position < limit)) {
+                int lineEnd = scan;
+                if (lineEnd > position && buffer[lineEnd - 1] == '\r') {
+                    lineEnd--;
+                }
+                splitFields(position, lineEnd);
+                position = Math.min(scan + 1, limit);
+                return true;
+            }
+            if (endOfInput) {
+                return false;
+            }
+            scan -= position;
+            fill();
+        }
+    }
+
+
+    // Moves the unread part of the current line to the front of the buffer (growing it for very long lines) and reads more
+    private void fill() throws IOException {
+        int unread = limit - position;
+        if (unread == buffer.length) {
+            byte[] bigger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, position, bigger, 0, unread);
+            buffer = bigger;
+        }
+        else {
+            System.arraycopy(buffer, position, buffer, 0, unread);
+        }
+        position = 0;
+        limit = unread;
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfInput = true;
+        }
+        else {
+            limit += read;
+        }
+    }
+
+
+    private void splitFields(int start, int end) {
+        fieldCount = 0;
+        fieldStarts[0] = start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == SEPARATOR) {
+                fieldEnds[fieldCount++] = i;
+                if (fieldCount == MAX_FIELDS) {
+                    fieldCount = MAX_FIELDS + 1; // too many: every command rejects this count
+                    return;
+                }
+                fieldStarts[fieldCount] = i + 1;
+            }
+        }
+        fieldEnds[fieldCount++] = end;
+    }
+
+
+    // True if field 0 is this keyword (ASCII, ignoring case and surrounding spaces)
+    private boolean keyword(String keyword) {
+        int start = fieldStarts[0];
+        int end = fieldEnds[0];
+        while (start < end && buffer[start] == ' ') {start++;}
+        while (end > start && buffer[end - 1] == ' ') {end--;}
+        if (end - start != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if ((buffer[start + i] & ~0x20) != keyword.charAt(i)) { // clears the lowercase bit
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // Parses a non-negative decimal field without creating a String. -1 if it is not a number.
+    private int parseInt(int field) {
+        if (field >= fieldCount) {
+            return -1;
+        }
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        while (start < end && buffer[start] == ' ') {start++;}
+        while (end > start && buffer[end - 1] == ' ') {end--;}
+        if (start == end || end - start > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+
+    private String text(int field) {
+        if (field >= fieldCount || field >= MAX_FIELDS) {
+            return "";
+        }
+        return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    // Arguments: command file (or - / nothing for stdin), then optionally the scheduling mode
+    public static void main(String[] args) throws IOException {
+        //testCommands();
+        //testValidation();
+        //testLongLinesAndCrLf();
+        //testKeepsExistingSink();
+        //benchmarkDayReplay();
+        SchedulingMode mode = args.length > 1 ? SchedulingMode.valueOf(args[1]) : SchedulingMode.PRIORITY_QUEUE;
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(mode);
+        BatchCommandProcessor processor = new BatchCommandProcessor(scheduler, System.out);
+        scheduler.enableMetrics();
+        long start = System.nanoTime();
+        if (args.length == 0 || args[0].equals("-")) {
+            processor.run(System.in);
+        }
+        else {
+            try (InputStream file = new FileInputStream(args[0])) {
+                processor.run(file);
+            }
+        }
+        System.err.println(processor.getCommands() + " commands (" + processor.getRejected() + " rejected) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+
+    private static String runScript(EmergencyRoomScheduler scheduler, String script) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BatchCommandProcessor processor = new BatchCommandProcessor(scheduler, output);
+        processor.run(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+
+    public static void testCommands() throws IOException {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        String output = runScript(scheduler,
+                "# morning intake\n"
+                + "ADD|Green|777777777|4/4/2000|2000 Water Way Lane|888-555-2020|3|805|Flu Like Symptoms\n"
+                + "add|Red|888888888|3/3/2000|9000 Bear Den Drive|444-787-5300|1|809|Chest Pains + Shortness of Breath\n"
+                + "\n"
+                + "ADD|Yellow|999999999|2/2/2000|7000 Fox Cove|444-444-4444|2|807|Crushed Right Arm\n"
+                + "RETRIAGE|777777777|1\n"
+                + "VIEW\n"
+                + "TREAT\n"
+                + "DISCHARGE|999999999\n"
+                + "LOOKUP|Green|777777777\n"
+                + "LOOKUP|Red|888888888\n");
+
+        if (scheduler.waitingCount() == 1 && scheduler.peekCurrentPatient().getName().equals("Red")
+                && output.contains("Currently Treating: \nPatient Details: \nName: Green") && output.contains("Current Waiting List:")
+                && !output.contains("skipped")) {
+            System.out.println("Test Passed: Batch commands admit, re-triage, treat, discharge and look up patients");
+        }
+        else {System.out.println("Test Failed: Unexpected batch output:\n" + output);}
+    }
+
+
+    public static void testValidation() throws IOException {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        String output = runScript(scheduler,
+                "ADD|Short SSN|12345|1/1/2000|Addr|555|2|800|Cough\n"
+                + "ADD|Bad Level|123456789|1/1/2000|Addr|555|4|800|Cough\n"
+                + "ADD|Bad Time|123456789|1/1/2000|Addr|555|2|2400|Cough\n"
+                + "ADD|Not A Number|12345678x|1/1/2000|Addr|555|2|800|Cough\n"
+                + "ADD|Missing Fields|123456789\n"
+                + "JUMP\n"
+                + "ADD|Good|123456789|1/1/2000|Addr|555|2| 800 |Cough\n");
+
+        if (scheduler.waitingCount() == 1 && output.contains("Line 1 skipped: Invalid SSN") && output.contains("Line 2 skipped: Invalid Priority Level")
+                && output.contains("Line 3 skipped: Invalid Arrival time") && output.contains("Line 4 skipped: Invalid SSN")
+                && output.contains("Line 5 skipped: ADD takes 8") && output.contains("Line 6 skipped: Unknown command JUMP")) {
+            System.out.println("Test Passed: Invalid commands reported by line number and skipped");
+        }
+        else {System.out.println("Test Failed: Unexpected validation output:\n" + output);}
+    }
+
+
+    // Lines longer than the read buffer, Windows line endings and no final newline
+    public static void testLongLinesAndCrLf() throws IOException {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        String longDescription = "x".repeat(BUFFER_BYTES * 2);
+        String output = runScript(scheduler,
+                "ADD|Long|123456789|1/1/2000|Addr|555|2|800|" + longDescription + "\r\n"
+                + "ADD|Last|987654321|1/1/2000|Addr|555|1|900|No newline");
+
+        if (scheduler.waitingCount() == 2 && scheduler.findPatient(123456789).getTreatmentDescription().equals(longDescription)
+                && scheduler.peekCurrentPatient().getTreatmentDescription().equals("No newline") && !output.contains("skipped")) {
+            System.out.println("Test Passed: Long lines, CRLF endings and a missing final newline all parsed");
+        }
+        else {System.out.println("Test Failed: waiting " + scheduler.waitingCount());}
+    }
+
+
+    // A scheduler that already reports to other sinks (here metrics, behind the default console) keeps reporting
+    // to them while the batch output replaces the console
+    public static void testKeepsExistingSink() throws IOException {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        SchedulerMetrics metrics = scheduler.enableMetrics();
+        String output = runScript(scheduler,
+                "ADD|Green|777777777|4/4/2000|2000 Water Way Lane|888-555-2020|3|805|Flu Like Symptoms\n"
+                + "ADD|Red|888888888|3/3/2000|9000 Bear Den Drive|444-787-5300|1|809|Chest Pains + Shortness of Breath\n"
+                + "TREAT\n");
+
+        if (metrics.getAdmitted() == 2 && metrics.getTreated() == 1 && output.contains("Patient Added:") && output.contains("Name: Red")
+                && output.indexOf("Name: Green") == output.lastIndexOf("Name: Green")) {
+            System.out.println("Test Passed: Batch output added without dropping the scheduler's existing event sinks");
+        }
+        else {System.out.println("Test Failed: metrics saw " + metrics.getAdmitted() + " admitted, " + metrics.getTreated() + " treated");}
+    }
+
+
+    // A busy day's intake log: 200k admissions with a treatment after most of them plus some lookups, replayed from memory
+    public static void benchmarkDayReplay() throws IOException {
+        Random random = new Random(1);
+        StringBuilder log = new StringBuilder();
+        int admissions = 200_000;
+        for (int i = 0; i < admissions; i++) {
+            log.append("ADD|Patient ").append(i).append('|').append(100000000 + i).append("|1/1/2000|123 Main Street|555-555-5555|")
+                    .append(1 + random.nextInt(3)).append('|').append(ArrivalGenerator.toMilitaryTime((int) ((long) i * 1439 / admissions))).append("|Chest Pains\n");
+            if (random.nextInt(10) < 9) {log.append("TREAT\n");}
+            if (random.nextInt(20) == 0) {log.append("LOOKUP|Patient|").append(100000000 + random.nextInt(i + 1)).append('\n');}
+        }
+        byte[] script = log.toString().getBytes(StandardCharsets.UTF_8);
+        for (int round = 0; round < 3; round++) {
+            BatchCommandProcessor processor = new BatchCommandProcessor(new EmergencyRoomScheduler(), OutputStream.nullOutputStream());
+            long start = System.nanoTime();
+            processor.run(new ByteArrayInputStream(script));
+            long nanos = System.nanoTime() - start;
+            System.out.println(processor.getCommands() + " commands (" + script.length / 1024 + " KB, " + processor.getRejected() + " rejected) in " + nanos / 1_000_000 + " ms: "
+                    + (long) (processor.getCommands() / (nanos / 1e9)) + " commands/s");
+        }
+    }
+}
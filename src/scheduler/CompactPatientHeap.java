@@ -0,0 +1,349 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+// Indexed binary heap like IndexedPatientHeap, split into hot and cold halves to save memory on long waiting lists.
+// The heap itself is three primitive arrays: the packed scheduling key (priority level + arrival timestamp, see
+// Patient.orderKey), the admission sequence for ties, and the SSN. Sifting only ever touches those.
+// Everything else about a patient lives as encoded bytes in a PatientDetailStore and is decoded only when a whole
+// Patient is asked for: peek/poll (treatment), find (lookups, viewPatientDetails) and iteration (snapshots).
+// The scheduler finds waiting patients through find(), so no Patient objects are kept for waiting patients at all.
+// Costs: every poll decodes one record (~100-200 ns), and callers get a fresh Patient object for each lookup.
+public class CompactPatientHeap implements IndexedWaitingList {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys = new long[DEFAULT_CAPACITY];      // heap order: keys[0] is the most urgent
+    private long[] sequences = new long[DEFAULT_CAPACITY]; // tie-break for equal keys
+    private int[] ssns = new int[DEFAULT_CAPACITY];
+    private int size;
+    private final IntLongMap positions = new IntLongMap(); // SSN -> heap index + 1
+    private final PatientDetailStore details = new PatientDetailStore();
+    private Patient peeked; // decoded head, kept until the heap changes so repeated peeks (and the next poll) decode once
+
+
+    @Override public int size() {return size;}
+    @Override public boolean isEmpty() {return size == 0;}
+    @Override public boolean contains(int ssn) {return positions.get(ssn) != 0;}
+
+    @Override
+    public Patient find(int ssn) {
+        if (peeked != null && peeked.getSsn() == ssn) {
+            return peeked;
+        }
+        return contains(ssn) ? details.get(ssn) : null;
+    }
+
+
+    // Bytes held by cold records (see PatientDetailStore.usedBytes)
+    public int detailBytes() {return details.usedBytes();}
+
+
+    @Override
+    public boolean add(Patient patient) {
+        if (contains(patient.getSsn())) {
+            return false;
+        }
+        details.put(patient);
+        ensureCapacity(size + 1);
+        set(size, patient.orderKey(), patient.getAdmissionSequence(), patient.getSsn());
+        size++;
+        siftUp(size - 1);
+        if (ssns[0] == patient.getSsn()) {
+            peeked = patient; // the new head: we already have it decoded
+        }
+        return true;
+    }
+
+
+    // Like IndexedPatientHeap.addAll: append and heapify bottom-up when the batch is large next to the heap
+    @Override
+    public void addAll(Collection<Patient> patients) {
+        int batch = patients.size();
+        int combined = size + batch;
+        if ((long) batch * (32 - Integer.numberOfLeadingZeros(combined)) < combined) {
+            for (Patient patient : patients) {add(patient);}
+            return;
+        }
+        ensureCapacity(combined);
+        for (Patient patient : patients) {
+            if (!contains(patient.getSsn())) {
+                details.put(patient);
+                set(size++, patient.orderKey(), patient.getAdmissionSequence(), patient.getSsn());
+            }
+        }
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        peeked = null;
+    }
+
+
+    @Override
+    public Patient peek() {
+        if (size == 0) {
+            return null;
+        }
+        if (peeked == null) {
+            peeked = details.get(ssns[0]);
+        }
+        return peeked;
+    }
+
+
+    @Override
+    public Patient poll() {
+        if (size == 0) {
+            return null;
+        }
+        Patient head = peek();
+        details.remove(head.getSsn());
+        removeAt(0);
+        peeked = null;
+        return head;
+    }
+
+
+    @Override
+    public boolean remove(Patient patient) {
+        int index = (int) positions.get(patient.getSsn()) - 1;
+        if (index < 0) {
+            return false;
+        }
+        details.remove(patient.getSsn());
+        removeAt(index);
+        peeked = null;
+        return true;
+    }
+
+
+    @Override
+    public boolean replace(Patient waiting, Patient updated) {
+        int index = (int) positions.get(updated.getSsn()) - 1;
+        if (index < 0) {
+            return false;
+        }
+        details.put(updated);
+        long oldKey = keys[index];
+        long oldSequence = sequences[index];
+        keys[index] = updated.orderKey();
+        sequences[index] = updated.getAdmissionSequence();
+        if (less(index, oldKey, oldSequence)) {siftUp(index);}
+        else {siftDown(index);}
+        peeked = null;
+        return true;
+    }
+
+
+    // Decodes each waiting patient in internal array order (head first, the rest unordered), like IndexedPatientHeap
+    @Override
+    public Iterator<Patient> iterator() {
+        return new Iterator<Patient>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {return next < size;}
+
+            @Override
+            public Patient next() {
+                if (next >= size) {throw new NoSuchElementException();}
+                return find(ssns[next++]);
+            }
+        };
+    }
+
+
+    // True triage order, walked down the key arrays (see HeapOrderIterator). Only the patients returned are decoded.
+    @Override
+    public Iterator<Patient> orderedIterator() {
+        return new HeapOrderIterator(size) {
+            @Override boolean less(int a, int b) {return CompactPatientHeap.this.less(a, keys[b], sequences[b]);}
+            @Override Patient patientAt(int slot) {return find(ssns[slot]);}
+        };
+    }
+
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int newLength = Math.max(capacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, newLength);
+            sequences = Arrays.copyOf(sequences, newLength);
+            ssns = Arrays.copyOf(ssns, newLength);
+        }
+    }
+
+    private void set(int index, long key, long sequence, int ssn) {
+        keys[index] = key;
+        sequences[index] = sequence;
+        ssns[index] = ssn;
+        positions.put(ssn, index + 1);
+    }
+
+    // Is the entry at index more urgent than (key, sequence)?
+    private boolean less(int index, long key, long sequence) {
+        return keys[index] < key || (keys[index] == key && sequences[index] < sequence);
+    }
+
+    private void removeAt(int index) {
+        positions.remove(ssns[index]);
+        size--;
+        if (index != size) {
+            set(index, keys[size], sequences[size], ssns[size]);
+            int moved = ssns[index];
+            siftDown(index);
+            if (ssns[index] == moved) {
+                siftUp(index);
+            }
+        }
+    }
+
+
+    private void siftUp(int index) {
+        long key = keys[index];
+        long sequence = sequences[index];
+        int ssn = ssns[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!(keys[parent] > key || (keys[parent] == key && sequences[parent] > sequence))) {
+                break;
+            }
+            set(index, keys[parent], sequences[parent], ssns[parent]);
+            index = parent;
+        }
+        set(index, key, sequence, ssn);
+    }
+
+
+    private void siftDown(int index) {
+        long key = keys[index];
+        long sequence = sequences[index];
+        int ssn = ssns[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && less(right, keys[child], sequences[child])) {
+                child = right;
+            }
+            if (!less(child, key, sequence)) {
+                break;
+            }
+            set(index, keys[child], sequences[child], ssns[child]);
+            index = child;
+        }
+        set(index, key, sequence, ssn);
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testMatchesIndexedHeap();
+        testSchedulerWithoutPatientTable();
+        //benchmarkMemory(200_000);
+    }
+
+
+    // Random adds, polls, removals and re-triages: same order as IndexedPatientHeap throughout
+    public static void testMatchesIndexedHeap() {
+        CompactPatientHeap compact = new CompactPatientHeap();
+        IndexedPatientHeap reference = new IndexedPatientHeap();
+        ArrivalGenerator generator = new ArrivalGenerator(21, 2_000, ArrivalGenerator.TYPICAL_MIX, 0.2);
+        Random random = new Random(21);
+        List<Patient> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {batch.add(generator.next());}
+        compact.addAll(batch);
+        reference.addAll(batch);
+        boolean matches = true;
+        for (int step = 0; step < 50_000 && matches; step++) {
+            int roll = random.nextInt(10);
+            if (roll < 4) {
+                Patient patient = generator.next();
+                matches = compact.add(patient) == reference.add(patient);
+            }
+            else if (roll < 7) {
+                Patient expected = reference.poll();
+                Patient actual = compact.poll();
+                matches = expected == null ? actual == null : actual != null && actual.getSsn() == expected.getSsn()
+                        && actual.getName().equals(expected.getName());
+            }
+            else if (roll < 9 && !reference.isEmpty()) {
+                int ssn = ArrivalGenerator.ssnFor(random.nextInt(step + 100));
+                Patient waiting = reference.get(ssn);
+                if (waiting != null) {
+                    Patient updated = waiting.withPriorityLevel(1 + random.nextInt(3));
+                    reference.replace(updated);
+                    matches = compact.replace(waiting, updated) && compact.find(ssn).getPriorityLevel() == updated.getPriorityLevel();
+                }
+            }
+            else {
+                int ssn = ArrivalGenerator.ssnFor(random.nextInt(step + 100));
+                Patient waiting = reference.remove(ssn);
+                matches = waiting == null ? !compact.contains(ssn) : compact.remove(waiting) && !compact.contains(ssn);
+            }
+            matches = matches && compact.size() == reference.size()
+                    && (reference.isEmpty() ? compact.peek() == null : compact.peek().getSsn() == reference.peek().getSsn());
+        }
+        if (matches) {System.out.println("Test Passed: Compact heap orders exactly like the indexed heap");}
+        else {System.out.println("Test Failed: Compact heap diverged from the indexed heap");}
+    }
+
+
+    // The scheduler in COMPACT_HEAP mode: admit, look up, re-triage, discharge and treat with no patient table
+    public static void testSchedulerWithoutPatientTable() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(SchedulingMode.COMPACT_HEAP);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        scheduler.addPatient(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        scheduler.addPatient(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm"));
+        scheduler.addPatient(new Patient("Blue", 111111111, "1/1/2000", "1 Main Street", "555-555-5555", 3, 700, "Sprain"));
+        boolean duplicateRejected = !scheduler.addPatient(new Patient("Green Again", 777777777, "4/4/2000", "Addr", "555", 1, 900, "Cough"));
+        scheduler.reprioritize(777777777, 1);
+        Patient found = scheduler.findPatient(999999999);
+        Patient discharged = scheduler.discharge(111111111);
+        String order = scheduler.treatCurrentPatient().getName() + "," + scheduler.treatCurrentPatient().getName();
+        if (duplicateRejected && found != null && found.getAddress().equals("7000 Fox Cove") && discharged.getName().equals("Blue")
+                && order.equals("Green,Yellow") && scheduler.waitingCount() == 0 && scheduler.findPatient(777777777) == null) {
+            System.out.println("Test Passed: Scheduler runs on the compact heap without a patient table");
+        }
+        else {System.out.println("Test Failed: Compact scheduler order " + order + ", found " + found);}
+    }
+
+
+    // Heap growth from admitting n realistic patients (each with their own strings), divided by n, per mode
+    public static void benchmarkMemory(int n) {
+        for (SchedulingMode mode : new SchedulingMode[] {SchedulingMode.PRIORITY_QUEUE, SchedulingMode.PRIORITY_LANES, SchedulingMode.COMPACT_HEAP}) {
+            long before = usedHeapAfterGc();
+            EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(mode);
+            scheduler.setEventSink(NoOpEventSink.INSTANCE);
+            ArrivalGenerator generator = new ArrivalGenerator(5, n);
+            for (int i = 0; i < n; i++) {
+                Patient p = generator.next();
+                // fresh copies of every text field, as if parsed from the desk's input
+                scheduler.addPatient(new Patient(new String(p.getName() + " Smith"), p.getSsn(), new String("11/22/1987"),
+                        new String(i + " Bear Den Drive, Springfield"), new String("555-" + (1_000_000 + i)), p.getPriorityLevel(),
+                        p.getArrivalTime(), p.getArrivalTimestamp(), new String("Laceration on left forearm, needs sutures")));
+            }
+            long after = usedHeapAfterGc();
+            System.out.printf("%-15s %,d waiting: %,d bytes per waiting patient%n", mode, scheduler.waitingCount(), (after - before) / n);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {Thread.sleep(50);} catch (InterruptedException e) {Thread.currentThread().interrupt();}
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
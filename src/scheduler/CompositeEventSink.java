@@ -0,0 +1,55 @@
+package scheduler;
+
+import java.util.List;
+
+// Sends every scheduler event to several sinks in order, e.g. the write-ahead log first and then the console.
+public class CompositeEventSink implements SchedulerEventSink {
+
+    private final SchedulerEventSink[] sinks;
+
+
+    //Constructor: sinks are called in the order given
+    public CompositeEventSink(SchedulerEventSink... sinks) {
+        for (SchedulerEventSink sink : sinks) {
+            if (sink == null) {
+                throw new IllegalArgumentException("Event sinks cannot be null");
+            }
+        }
+        this.sinks = sinks.clone();
+    }
+
+
+    @Override public void patientAdmitted(Patient patient) {for (SchedulerEventSink sink : sinks) {sink.patientAdmitted(patient);}}
+    @Override public void admissionRejected(Patient patient) {for (SchedulerEventSink sink : sinks) {sink.admissionRejected(patient);}}
+    @Override public void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {for (SchedulerEventSink sink : sinks) {sink.batchAdmitted(admitted, skipped, waiting);}}
+    @Override public void patientTreated(Patient patient) {for (SchedulerEventSink sink : sinks) {sink.patientTreated(patient);}}
+    @Override public void noPatientsWaiting() {for (SchedulerEventSink sink : sinks) {sink.noPatientsWaiting();}}
+    @Override public void patientReprioritized(Patient patient) {for (SchedulerEventSink sink : sinks) {sink.patientReprioritized(patient);}}
+    @Override public void patientDischarged(Patient patient) {for (SchedulerEventSink sink : sinks) {sink.patientDischarged(patient);}}
+    @Override public void waitingPatientNotFound(int ssn) {for (SchedulerEventSink sink : sinks) {sink.waitingPatientNotFound(ssn);}}
+    @Override public void invalidPriorityLevel(int priorityLevel) {for (SchedulerEventSink sink : sinks) {sink.invalidPriorityLevel(priorityLevel);}}
+    @Override public void patientFound(Patient patient, boolean alreadyTreated) {for (SchedulerEventSink sink : sinks) {sink.patientFound(patient, alreadyTreated);}}
+    @Override public void patientNotFound(int ssn) {for (SchedulerEventSink sink : sinks) {sink.patientNotFound(ssn);}}
+    @Override public void flush() {for (SchedulerEventSink sink : sinks) {sink.flush();}}
+
+
+    // The same sinks with every ConsoleEventSink (in nested composites too) swapped for console, or null if there is none
+    CompositeEventSink withConsole(ConsoleEventSink console) {
+        SchedulerEventSink[] swapped = sinks.clone();
+        boolean found = false;
+        for (int i = 0; i < swapped.length; i++) {
+            if (swapped[i] instanceof ConsoleEventSink) {
+                swapped[i] = console;
+                found = true;
+            }
+            else if (swapped[i] instanceof CompositeEventSink nested) {
+                CompositeEventSink nestedSwapped = nested.withConsole(console);
+                if (nestedSwapped != null) {
+                    swapped[i] = nestedSwapped;
+                    found = true;
+                }
+            }
+        }
+        return found ? new CompositeEventSink(swapped) : null;
+    }
+}
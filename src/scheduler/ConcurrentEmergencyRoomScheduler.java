@@ -0,0 +1,349 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Thread-safe Emergency Room Scheduler for several intake desks and treatment bays sharing one waiting list.
+// Same ordering as EmergencyRoomScheduler (priority level first, then arrival time), but with no global lock:
+// the waiting list is a concurrent skip list, so many threads can admit and treat at once and
+// pollFirst() hands each patient to exactly one treating thread. SSN lookups go through a ConcurrentHashMap.
+// Re-triage and discharge run inside the table's compute() for that SSN, so they are serialized per patient. Each
+// entry has a state that a treating thread, re-triage and discharge change by compare-and-set: whoever moves an entry
+// out of WAITING owns it, so a patient is never treated or discharged twice, and never missed while being re-triaged.
+public class ConcurrentEmergencyRoomScheduler {
+
+    private final ConcurrentSkipListSet<WaitingEntry> waitingList; // sorted by urgency, head is next to treat
+    private final ConcurrentHashMap<Integer, WaitingEntry> patientTable; // waiting patients by SSN
+
+
+    // One waiting patient plus their state. A re-triage adds the new entry as PENDING before retiring the old one,
+    // so the patient is always in the skip list; a treating thread that polls a PENDING entry waits for the outcome.
+    private static final class WaitingEntry implements Comparable<WaitingEntry> {
+        static final int WAITING = 0;
+        static final int PENDING = 1;
+        static final int REMOVED = 2; // treated, discharged or replaced by a re-triaged entry
+
+        final Patient patient;
+        final AtomicInteger state;
+
+        WaitingEntry(Patient patient, int state) {
+            this.patient = patient;
+            this.state = new AtomicInteger(state);
+        }
+
+        boolean remove() {
+            return state.compareAndSet(WAITING, REMOVED);
+        }
+
+        @Override
+        public int compareTo(WaitingEntry other) {
+            return patient.compareTo(other.patient);
+        }
+    }
+
+
+    //Constructor: empty waiting list
+    public ConcurrentEmergencyRoomScheduler() {
+        waitingList = new ConcurrentSkipListSet<>();
+        patientTable = new ConcurrentHashMap<>();
+    }
+
+
+    // Adds a patient. Returns false if the patient is null or that SSN is already waiting.
+    public boolean addPatient(Patient patient) {
+        if (patient == null) {
+            return false;
+        }
+        WaitingEntry entry = new WaitingEntry(patient, WaitingEntry.WAITING);
+        if (patientTable.putIfAbsent(patient.getSsn(), entry) != null) {
+            return false;
+        }
+        waitingList.add(entry);
+        return true;
+    }
+
+
+    // Removes and returns the most urgent patient, or null if nobody is waiting.
+    // Safe to call from any number of treating threads: each patient is returned to exactly one caller.
+    public Patient treatCurrentPatient() {
+        WaitingEntry entry;
+        while ((entry = waitingList.pollFirst()) != null) {
+            while (entry.state.get() == WaitingEntry.PENDING) {
+                Thread.onSpinWait(); // re-triage in progress: it finishes within a few skip list operations
+            }
+            if (entry.remove()) {
+                patientTable.remove(entry.patient.getSsn(), entry);
+                return entry.patient;
+            }
+            // already discharged or re-triaged: its replacement (if any) is still in the list
+        }
+        return null;
+    }
+
+
+    // Most urgent waiting patient without removing them (may already be stale when it returns under contention)
+    public Patient peekCurrentPatient() {
+        WaitingEntry entry = firstOrNull();
+        return entry == null ? null : entry.patient;
+    }
+
+
+    // Waiting patient with this SSN, or null
+    public Patient findPatient(int ssn) {
+        WaitingEntry entry = patientTable.get(ssn);
+        return entry == null ? null : entry.patient;
+    }
+
+
+    // Removes a waiting patient who leaves before treatment. Returns them, or null if they weren't waiting
+    // (including the case where a treating thread took them first).
+    public Patient discharge(int ssn) {
+        Patient[] discharged = new Patient[1];
+        patientTable.computeIfPresent(ssn, (key, entry) -> {
+            if (!entry.remove()) {
+                return entry; // a treating thread has them, and drops the table entry itself
+            }
+            waitingList.remove(entry);
+            discharged[0] = entry.patient;
+            return null;
+        });
+        return discharged[0];
+    }
+
+
+    // Re-triages a waiting patient to a new level (1-3), keeping their admission order.
+    // Returns the updated patient, or null if the level is invalid or the patient is no longer waiting.
+    public Patient reprioritize(int ssn, int newLevel) {
+        if (newLevel < 1 || newLevel > 3) {
+            return null;
+        }
+        Patient[] reprioritized = new Patient[1];
+        patientTable.computeIfPresent(ssn, (key, entry) -> {
+            if (entry.patient.getPriorityLevel() == newLevel) {
+                reprioritized[0] = entry.state.get() == WaitingEntry.WAITING ? entry.patient : null;
+                return entry;
+            }
+            WaitingEntry updated = new WaitingEntry(entry.patient.withPriorityLevel(newLevel), WaitingEntry.PENDING);
+            waitingList.add(updated);
+            if (!entry.remove()) {
+                updated.state.set(WaitingEntry.REMOVED); // a treating thread took them first
+                waitingList.remove(updated);
+                return entry;
+            }
+            updated.state.set(WaitingEntry.WAITING);
+            waitingList.remove(entry);
+            reprioritized[0] = updated.patient;
+            return updated;
+        });
+        return reprioritized[0];
+    }
+
+
+    public int size() {return waitingList.size();}
+    public boolean isEmpty() {return waitingList.isEmpty();}
+
+
+    // Weakly consistent view of the waiting list in triage order (head first)
+    public List<Patient> waitingPatients() {
+        List<Patient> patients = new ArrayList<>();
+        for (WaitingEntry entry : waitingList) {
+            patients.add(entry.patient);
+        }
+        return patients;
+    }
+
+
+    private WaitingEntry firstOrNull() {
+        Iterator<WaitingEntry> iterator = waitingList.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) throws InterruptedException {
+        testConcurrentOrder();
+        testStress(4, 4, 50_000);
+        testStress(8, 2, 25_000);
+        testReprioritizeUnderContention(4, 20_000);
+    }
+
+
+    public static void testConcurrentOrder() {
+        ConcurrentEmergencyRoomScheduler scheduler = new ConcurrentEmergencyRoomScheduler();
+        scheduler.addPatient(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        scheduler.addPatient(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High"));
+        scheduler.addPatient(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"));
+        scheduler.addPatient(new Patient("Red Twin", 888888880, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains"));
+
+        String order = scheduler.treatCurrentPatient().getName() + "," + scheduler.treatCurrentPatient().getName() + ","
+                + scheduler.treatCurrentPatient().getName() + "," + scheduler.treatCurrentPatient().getName();
+        if (order.equals("Red,Red Twin,Yellow,Green")) {System.out.println("Test Passed: Priority, arrival, then admission order");}
+        else {System.out.println("Test Failed: Unexpected order " + order);}
+
+        if (scheduler.treatCurrentPatient() == null) {System.out.println("Test Passed: Treating empty scheduler returns null");}
+        else {System.out.println("Test Failed: Empty scheduler returned a patient");}
+    }
+
+
+    // N intake threads admit patients while M treating threads drain the list at the same time.
+    // Afterwards every admitted patient must have been treated exactly once.
+    // A second phase preloads the list and checks each treating thread sees patients in non-decreasing urgency order.
+    public static void testStress(int intakeThreads, int treatingThreads, int patientsPerDesk) throws InterruptedException {
+        ConcurrentEmergencyRoomScheduler scheduler = new ConcurrentEmergencyRoomScheduler();
+        int total = intakeThreads * patientsPerDesk;
+        Set<Integer> treated = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger producersDone = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int desk = 0; desk < intakeThreads; desk++) {
+            final int deskNumber = desk;
+            threads.add(new Thread(() -> {
+                Random random = new Random(deskNumber);
+                awaitQuietly(start);
+                for (int i = 0; i < patientsPerDesk; i++) {
+                    int ssn = 100000000 + deskNumber * patientsPerDesk + i;
+                    scheduler.addPatient(new Patient("Pt" + ssn, ssn, "1/1/2000", "Addr", "555-555-5555", 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(random.nextInt(1440)), "Stress"));
+                }
+                producersDone.incrementAndGet();
+            }));
+        }
+        for (int bay = 0; bay < treatingThreads; bay++) {
+            threads.add(new Thread(() -> {
+                awaitQuietly(start);
+                while (true) {
+                    Patient patient = scheduler.treatCurrentPatient();
+                    if (patient != null) {
+                        if (!treated.add(patient.getSsn())) {duplicates.incrementAndGet();}
+                    }
+                    else if (producersDone.get() == intakeThreads && scheduler.isEmpty()) {
+                        return;
+                    }
+                }
+            }));
+        }
+        long startNanos = System.nanoTime();
+        for (Thread thread : threads) {thread.start();}
+        start.countDown();
+        for (Thread thread : threads) {thread.join();}
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        if (treated.size() == total && duplicates.get() == 0 && scheduler.isEmpty()) {
+            System.out.println("Test Passed: " + intakeThreads + " desks / " + treatingThreads + " bays, " + total
+                    + " patients, none lost or treated twice (" + elapsedMillis + " ms)");
+        }
+        else {System.out.println("Test Failed: treated=" + treated.size() + "/" + total + " duplicates=" + duplicates.get());}
+
+        // Phase 2: preloaded list, concurrent treating only. Each bay's own sequence must never get more urgent.
+        Random random = new Random(99);
+        for (int i = 0; i < total; i++) {
+            int ssn = 100000000 + i;
+            scheduler.addPatient(new Patient("Pt" + ssn, ssn, "1/1/2000", "Addr", "555-555-5555", 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(random.nextInt(1440)), "Stress"));
+        }
+        AtomicInteger orderViolations = new AtomicInteger();
+        AtomicInteger treatedCount = new AtomicInteger();
+        threads.clear();
+        for (int bay = 0; bay < treatingThreads; bay++) {
+            threads.add(new Thread(() -> {
+                Patient previous = null;
+                Patient patient;
+                while ((patient = scheduler.treatCurrentPatient()) != null) {
+                    if (previous != null && previous.compareTo(patient) > 0) {orderViolations.incrementAndGet();}
+                    previous = patient;
+                    treatedCount.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) {thread.start();}
+        for (Thread thread : threads) {thread.join();}
+        if (orderViolations.get() == 0 && treatedCount.get() == total) {System.out.println("Test Passed: Every bay treated in strict priority order");}
+        else {System.out.println("Test Failed: order violations=" + orderViolations.get() + " treated=" + treatedCount.get());}
+    }
+
+
+    // Treating threads drain a preloaded list while one thread keeps re-triaging and another discharges every
+    // tenth patient. Every patient must leave exactly once: treated, or discharged (a null discharge means treated),
+    // and no treating thread may find the list empty while a re-triaged patient is still waiting.
+    public static void testReprioritizeUnderContention(int treatingThreads, int patients) throws InterruptedException {
+        ConcurrentEmergencyRoomScheduler scheduler = new ConcurrentEmergencyRoomScheduler();
+        Random random = new Random(5);
+        for (int i = 0; i < patients; i++) {
+            int ssn = 100000000 + i;
+            scheduler.addPatient(new Patient("Pt" + ssn, ssn, "1/1/2000", "Addr", "555-555-5555", 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(random.nextInt(1440)), "Stress"));
+        }
+        Set<Integer> treated = ConcurrentHashMap.newKeySet();
+        Set<Integer> discharged = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger missedDischarges = new AtomicInteger();
+        AtomicBoolean treatingDone = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Thread> bays = new ArrayList<>();
+        for (int bay = 0; bay < treatingThreads; bay++) {
+            bays.add(new Thread(() -> {
+                awaitQuietly(start);
+                Patient patient;
+                while ((patient = scheduler.treatCurrentPatient()) != null) {
+                    if (!treated.add(patient.getSsn())) {duplicates.incrementAndGet();}
+                }
+            }));
+        }
+        threads.addAll(bays);
+        threads.add(new Thread(() -> {
+            Random levels = new Random(6);
+            awaitQuietly(start);
+            while (!treatingDone.get()) {
+                scheduler.reprioritize(100000000 + levels.nextInt(patients), 1 + levels.nextInt(3));
+            }
+        }));
+        List<Integer> nullDischarges = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            awaitQuietly(start);
+            for (int i = 0; i < patients; i += 10) {
+                Patient patient = scheduler.discharge(100000000 + i);
+                if (patient == null) {nullDischarges.add(100000000 + i);}
+                else if (!discharged.add(patient.getSsn())) {duplicates.incrementAndGet();}
+            }
+        }));
+        for (Thread thread : threads) {thread.start();}
+        start.countDown();
+        for (Thread bay : bays) {bay.join();}
+        treatingDone.set(true);
+        for (Thread thread : threads) {thread.join();}
+        for (int ssn : nullDischarges) {
+            if (!treated.contains(ssn)) {missedDischarges.incrementAndGet();}
+        }
+        boolean overlap = treated.stream().anyMatch(discharged::contains);
+
+        if (treated.size() + discharged.size() == patients && duplicates.get() == 0 && missedDischarges.get() == 0 && !overlap
+                && scheduler.isEmpty() && scheduler.findPatient(100000001) == null) {
+            System.out.println("Test Passed: Re-triage under contention: " + treated.size() + " treated, " + discharged.size()
+                    + " discharged, none lost or removed twice");
+        }
+        else {System.out.println("Test Failed: treated=" + treated.size() + " discharged=" + discharged.size() + "/" + patients
+                + " duplicates=" + duplicates.get() + " missed discharges=" + missedDischarges.get() + " overlap=" + overlap);}
+    }
+
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
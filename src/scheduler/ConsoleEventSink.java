@@ -0,0 +1,94 @@
+package scheduler;
+
+import java.io.PrintStream;
+import java.util.List;
+
+// Prints scheduler events to a console stream as they happen, with the same messages the scheduler used to print itself.
+// This is the default sink for interactive use. For high volume use AsyncConsoleEventSink, which runs this
+// formatting on a background thread instead of the scheduling thread.
+public class ConsoleEventSink implements SchedulerEventSink {
+
+    private final PrintStream out;
+
+
+    //Constructor: prints to System.out
+    public ConsoleEventSink() {
+        this(System.out);
+    }
+
+    //Constructor: prints to any stream
+    public ConsoleEventSink(PrintStream out) {
+        this.out = out;
+    }
+
+
+    @Override
+    public void patientAdmitted(Patient patient) {
+        out.println("Patient Added:\n" + patient);
+    }
+
+    @Override
+    public void admissionRejected(Patient patient) {
+        if (patient == null) {
+            out.println("Cannot add null patient");
+        }
+        else {
+            out.println("Patient with SSN: " + patient.getSsn() + " is already waiting. Please Review.");
+        }
+    }
+
+    @Override
+    public void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {
+        if (admitted.isEmpty() && skipped == 0) {
+            out.println("No patients to admit");
+        }
+        else {
+            out.println("Batch Admitted: " + admitted.size() + " patients (" + skipped + " skipped). Waiting List Size: " + waiting);
+        }
+    }
+
+    @Override
+    public void patientTreated(Patient patient) {
+        out.println("Currently Treating: \n" + patient.toString());
+    }
+
+    @Override
+    public void noPatientsWaiting() {
+        out.println("No patients currently requiring treatment");
+    }
+
+    @Override
+    public void patientReprioritized(Patient patient) {
+        out.println("Patient Re-Triaged:\n" + patient);
+    }
+
+    @Override
+    public void patientDischarged(Patient patient) {
+        out.println("Patient Discharged Before Treatment:\n" + patient);
+    }
+
+    @Override
+    public void waitingPatientNotFound(int ssn) {
+        out.println("No waiting patient found with SSN: " + ssn + " Please Review.");
+    }
+
+    @Override
+    public void invalidPriorityLevel(int priorityLevel) {
+        out.println("Invalid Priority Level: Must be Numbers 1, 2, or 3.");
+    }
+
+    @Override
+    public void patientFound(Patient patient, boolean alreadyTreated) {
+        out.println(alreadyTreated ? "Already Treated:\n" + patient : patient.toString());
+    }
+
+    @Override
+    public void patientNotFound(int ssn) {
+        out.println("No patient found with SSN: " + ssn + " Please Review.");
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
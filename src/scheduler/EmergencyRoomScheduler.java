@@ -1,62 +1,455 @@
 package scheduler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.InputMismatchException;
-import java.util.PriorityQueue;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
 // Emergency Room Scheduler that prioritizes patient care based on urgency and arrival time
 // Contains a priority queue for quick retrieval of the most urgent patient and a hash table for efficient lookups.
+// The priority queue is an indexed heap, so a waiting patient can also be re-triaged or discharged in O(log n).
+// Alternatively (SchedulingMode.PRIORITY_LANES) the waiting list is one FIFO lane per priority level for O(1) admit and treat.
+// A waiting list that can find patients by SSN itself (IndexedWaitingList, e.g. SchedulingMode.COMPACT_HEAP) replaces the hash table.
 public class EmergencyRoomScheduler {
 
     //instance variables // fields
-    private PriorityQueue<Patient> patientPQueue; // Handle Patient Scheduling by urgency
-    private int m = 101; // size of hash table
-    private HashMap<Integer, Patient> patientTable; // HashTable stores patient details for quick access
+    private WaitingList patientPQueue; // Handle Patient Scheduling by urgency (heap or priority lanes, see SchedulingMode)
+    private int m = 101; // starting size of hash table
+    private IntPatientMap patientTable; // HashTable stores patient details for quick access. Waiting patients only, keyed by SSN (no boxing). Null when indexedQueue is set.
+    private IndexedWaitingList indexedQueue; // patientPQueue, when it does its own SSN lookups (so no Patient objects are kept per waiting patient)
+    private RecentlyTreatedCache recentlyTreated; // Bounded lookup of treated patients so patientTable doesn't grow all shift
+    private SchedulerMetrics metrics; // Counters, wait-time and latency histograms. Null unless enableMetrics() was called.
+    private PatientArchive archive; // Every treated patient, on disk. Null unless enableArchive() was called.
+    private PatientSearchIndex searchIndex; // Waiting patients by name, DOB and phone. Null unless enableSearchIndex() was called.
+    private SchedulerEventSink events; // Where admissions, treatments and lookups are reported. Scheduling itself never prints.
+
+
+    private static final int DEFAULT_TREATED_CACHE_SIZE = 1000;
+    private static final long DEFAULT_TREATED_CACHE_TTL_MILLIS = 12 * 60 * 60 * 1000L; // one shift
 
 
     //Constructor: Initializes an empty ER scheduler with a priority queue and hash table for storing patient details.
     public EmergencyRoomScheduler(){
-        patientPQueue = new PriorityQueue<>();
-        patientTable = new HashMap<>(m);  // Initialize hash table with size `m`
+        this(SchedulingMode.PRIORITY_QUEUE);
     }
 
+    //Constructor: Same as above but with the waiting list structure chosen by the caller.
+    public EmergencyRoomScheduler(SchedulingMode mode){
+        this(mode, DEFAULT_TREATED_CACHE_SIZE, DEFAULT_TREATED_CACHE_TTL_MILLIS);
+    }
 
-    // Hash Value for location in hash table
-    private int hash(Patient patient){
-        return (patient.hashCode()& 0x7fffffff) % m;
+    //Constructor: Priority queue mode with the recently-treated cache sized by the caller (ttlMillis 0 = size limit only).
+    public EmergencyRoomScheduler(int treatedCacheSize, long treatedCacheTtlMillis){
+        this(SchedulingMode.PRIORITY_QUEUE, treatedCacheSize, treatedCacheTtlMillis);
     }
 
-    //adds patient to HashTable for quick info lookups + PQ:
-    public void addPatient(Patient patient){
-        if (patient == null){
-            System.out.println("Cannot add null patient");
-            return;
+    //Constructor: Waiting list mode and recently-treated cache both chosen by the caller.
+    public EmergencyRoomScheduler(SchedulingMode mode, int treatedCacheSize, long treatedCacheTtlMillis){
+        this(mode.newWaitingList(), treatedCacheSize, treatedCacheTtlMillis);
+    }
+
+    //Constructor: Uses a waiting list the caller already set up (e.g. an AgingLaneQueue on a simulated clock).
+    public EmergencyRoomScheduler(WaitingList waitingList){
+        this(waitingList, DEFAULT_TREATED_CACHE_SIZE, DEFAULT_TREATED_CACHE_TTL_MILLIS);
+    }
+
+    public EmergencyRoomScheduler(WaitingList waitingList, int treatedCacheSize, long treatedCacheTtlMillis){
+        patientPQueue = waitingList;
+        if (waitingList instanceof IndexedWaitingList){
+            indexedQueue = (IndexedWaitingList) waitingList;
+        }
+        else {
+            patientTable = new IntPatientMap(m);  // Initialize hash table with room for `m` patients
+        }
+        recentlyTreated = new RecentlyTreatedCache(treatedCacheSize, treatedCacheTtlMillis);
+        events = new ConsoleEventSink(); // prints as it always has; swap for AsyncConsoleEventSink / NoOpEventSink under load
+    }
+
+
+    // Hit / miss / eviction counters for sizing the recently-treated cache
+    public RecentlyTreatedCache getRecentlyTreatedCache(){
+        return recentlyTreated;
+    }
+
+    public SchedulerEventSink getEventSink(){
+        return events;
+    }
+
+    // Replaces where scheduler events are reported (console, async console, no-op, ...)
+    public void setEventSink(SchedulerEventSink events){
+        if (events == null){
+            throw new IllegalArgumentException("Event sink cannot be null. Use NoOpEventSink.INSTANCE to ignore events.");
+        }
+        this.events = events;
+    }
+
+
+    //adds patient to HashTable for quick info lookups + PQ. Returns false if the patient was null or already waiting.
+    public boolean addPatient(Patient patient){
+        if (metrics == null || !metrics.timeNextAdd()){
+            return admit(patient);
         }
-        patientPQueue.add(patient);
-        patientTable.put(patient.getSsn(), patient);
-        System.out.println("Patient Added:\n" + patient);
+        long start = System.nanoTime();
+        boolean added = admit(patient);
+        metrics.recordAddLatency(System.nanoTime() - start);
+        return added;
     }
 
+    private boolean admit(Patient patient){
+        if (patient == null || isWaiting(patient.getSsn()) || !patientPQueue.add(patient)){
+            events.admissionRejected(patient);
+            return false;
+        }
+        if (patientTable != null){
+            patientTable.put(patient.getSsn(), patient);
+        }
+        if (searchIndex != null){
+            searchIndex.add(patient);
+        }
+        events.patientAdmitted(patient);
+        return true;
+    }
+
+
+    // Admits a whole batch at once (e.g. an EMS manifest in a mass-casualty event).
+    // The hash table is grown once up front, the waiting list is built in bulk (heapify in O(n) for the priority queue),
+    // and one summary event is reported instead of one admission event per patient.
+    // Null patients and SSNs already waiting (or repeated in the batch) are skipped. Returns how many were admitted.
+    public int admitAll(Collection<Patient> patients){
+        if (patients == null || patients.isEmpty()){
+            events.batchAdmitted(Collections.emptyList(), 0, patientPQueue.size());
+            return 0;
+        }
+        // without a patient table, repeats within the batch are caught with a throwaway one
+        IntPatientMap seen = patientTable != null ? patientTable : new IntPatientMap(patients.size());
+        seen.ensureCapacity(seen.size() + patients.size());
+        ArrayList<Patient> admitted = new ArrayList<>(patients.size());
+        for (Patient patient : patients){
+            if (patient != null && !isWaiting(patient.getSsn()) && !seen.containsKey(patient.getSsn())){
+                seen.put(patient.getSsn(), patient);
+                admitted.add(patient);
+            }
+        }
+        patientPQueue.addAll(admitted);
+        if (searchIndex != null){
+            for (Patient patient : admitted){
+                searchIndex.add(patient);
+            }
+        }
+        events.batchAdmitted(admitted, patients.size() - admitted.size(), patientPQueue.size());
+        return admitted.size();
+    }
 
-    // Treats then removes highest priority patient from the Scheduler.
-    public void treatCurrentPatient(){
+
+    // Treats then removes highest priority patient from the Scheduler. Returns that patient, or null if nobody is waiting.
+    public Patient treatCurrentPatient(){
+        if (metrics == null || !metrics.timeNextTreat()){
+            return treatNext();
+        }
+        long start = System.nanoTime();
+        Patient treated = treatNext();
+        metrics.recordTreatLatency(System.nanoTime() - start);
+        return treated;
+    }
+
+    private Patient treatNext(){
         if (!patientPQueue.isEmpty()){
-            Patient patient = patientPQueue.remove(); //removes current pt from queue
-            patientTable.remove(hash(patient));
-            System.out.println("Currently Treating: \n" + patient.toString());
+            Patient patient = patientPQueue.poll(); //removes current pt from queue
+            if (patientTable != null){
+                patientTable.remove(patient.getSsn()); // table is keyed by SSN, so SSN is the only removal key
+            }
+            if (searchIndex != null){
+                searchIndex.remove(patient);
+            }
+            recentlyTreated.put(patient);
+            events.patientTreated(patient);
+            return patient;
+        }
+        events.noPatientsWaiting();
+        return null;
+    }
+
+    // Re-triages a waiting patient to a new priority level (1-3). The patient keeps their place by arrival time within the new level.
+    // Returns the updated patient, or null if the level is invalid or the SSN isn't waiting.
+    public Patient reprioritize(int ssn, int newLevel){
+        if (!Patient.isValidPriorityLevel(newLevel)){
+            events.invalidPriorityLevel(newLevel);
+            return null;
+        }
+        Patient waiting = waitingPatient(ssn);
+        if (waiting == null){
+            events.waitingPatientNotFound(ssn);
+            return null;
+        }
+        Patient updated = waiting.withPriorityLevel(newLevel);
+        patientPQueue.replace(waiting, updated);
+        if (patientTable != null){
+            patientTable.put(ssn, updated);
+        }
+        events.patientReprioritized(updated);
+        return updated;
+    }
+
+
+    // Puts an already treated patient into the recently-treated cache without touching the waiting list.
+    // Used when rebuilding state from a journal.
+    void rememberTreated(Patient patient){
+        recentlyTreated.put(patient);
+    }
+
+
+    // Removes a waiting patient who leaves before being treated. Returns them, or null if the SSN isn't waiting.
+    public Patient discharge(int ssn){
+        Patient leaving = patientTable != null ? patientTable.remove(ssn) : indexedQueue.find(ssn);
+        if (leaving == null){
+            events.waitingPatientNotFound(ssn);
+            return null;
+        }
+        patientPQueue.remove(leaving);
+        if (searchIndex != null){
+            searchIndex.remove(leaving);
+        }
+        events.patientDischarged(leaving);
+        return leaving;
+    }
+
+
+    // Waiting patient with this SSN, or null. No events reported.
+    public Patient findPatient(int ssn){
+        return waitingPatient(ssn);
+    }
+
+    // Already treated patient with this SSN from the recently-treated cache (or the archive, if enabled), or null. No events reported.
+    public Patient findTreatedPatient(int ssn){
+        Patient treated = recentlyTreated.get(ssn);
+        if (treated == null && archive != null){
+            treated = archive.find(ssn);
+        }
+        return treated;
+    }
+
+    // Waiting patients with a word of their name starting with prefix ("smi" finds John Smith), at most limit of them.
+    // Like the other searches below: case and punctuation are ignored, and without enableSearchIndex() it's a scan of the waiting list.
+    public List<Patient> searchByName(String prefix, int limit){
+        if (searchIndex != null){
+            return waitingPatients(searchIndex.searchName(prefix, limit));
+        }
+        return scanWaiting(patient -> PatientSearchIndex.nameStartsWith(patient, prefix), limit);
+    }
+
+    public List<Patient> searchByDateOfBirth(String dateOfBirth){
+        if (searchIndex != null){
+            return waitingPatients(searchIndex.searchDateOfBirth(dateOfBirth));
+        }
+        return scanWaiting(patient -> PatientSearchIndex.sameDateOfBirth(patient, dateOfBirth), Integer.MAX_VALUE);
+    }
+
+    public List<Patient> searchByPhoneNumber(String phoneNumber){
+        if (searchIndex != null){
+            return waitingPatients(searchIndex.searchPhoneNumber(phoneNumber));
+        }
+        return scanWaiting(patient -> PatientSearchIndex.samePhoneNumber(patient, phoneNumber), Integer.MAX_VALUE);
+    }
+
+    private List<Patient> waitingPatients(int[] ssns){
+        ArrayList<Patient> found = new ArrayList<>(ssns.length);
+        for (int ssn : ssns){
+            found.add(waitingPatient(ssn));
+        }
+        return found;
+    }
+
+    private List<Patient> scanWaiting(Predicate<Patient> matches, int limit){
+        ArrayList<Patient> found = new ArrayList<>();
+        for (Patient patient : patientPQueue){
+            if (found.size() == limit){
+                break;
+            }
+            if (matches.test(patient)){
+                found.add(patient);
+            }
+        }
+        return found;
+    }
+
+    private boolean isWaiting(int ssn){
+        return patientTable != null ? patientTable.containsKey(ssn) : indexedQueue.contains(ssn);
+    }
+
+    private Patient waitingPatient(int ssn){
+        return patientTable != null ? patientTable.get(ssn) : indexedQueue.find(ssn);
+    }
+
+    // Next patient to be treated without treating them, or null.
+    public Patient peekCurrentPatient(){
+        return patientPQueue.peek();
+    }
+
+    public int waitingCount(){
+        return patientPQueue.size();
+    }
+
+    // The first k waiting patients in treatment order (fewer if fewer are waiting), e.g. for a "next up" board.
+    // Only those k are visited: nothing else in the waiting list is copied or sorted.
+    public List<Patient> topWaiting(int k){
+        return waitingPage(0, k);
+    }
+
+    // One page of the waiting list in treatment order: page 0 is the first pageSize patients, page 1 the next, and so on.
+    // Costs about (page + 1) * pageSize steps however long the list is. Empty past the end (or for a negative page / size).
+    public List<Patient> waitingPage(int page, int pageSize){
+        if (page < 0 || pageSize <= 0){
+            return Collections.emptyList();
+        }
+        long skip = (long) page * pageSize;
+        if (skip >= patientPQueue.size()){
+            return Collections.emptyList();
+        }
+        Iterator<Patient> ordered = patientPQueue.orderedIterator();
+        for (long i = 0; i < skip; i++){
+            ordered.next();
+        }
+        ArrayList<Patient> onPage = new ArrayList<>((int) Math.min(pageSize, patientPQueue.size() - skip));
+        while (onPage.size() < pageSize && ordered.hasNext()){
+            onPage.add(ordered.next());
         }
-        else {System.out.println("No patients currently requiring treatment");}
+        return onPage;
+    }
+
+    // Everyone waiting in treatment order, produced lazily. Finish with it before the next admit / treat / discharge.
+    public Iterator<Patient> waitingInOrder(){
+        return patientPQueue.orderedIterator();
+    }
+
+    // Copy of everyone currently waiting (internal order, head first). Used for snapshots.
+    public List<Patient> waitingPatients(){
+        ArrayList<Patient> waiting = new ArrayList<>(patientPQueue.size());
+        for (Patient patient : patientPQueue){
+            waiting.add(patient);
+        }
+        return waiting;
+    }
+
+
+    // Makes the waiting list durable: rebuilds this (empty) scheduler from the journal in directory
+    // (latest snapshot + log replay), then logs every later change there before reporting it to the current sink.
+    // Close the returned log on shutdown.
+    public WriteAheadLog enableJournal(Path directory) throws IOException {
+        WriteAheadLog journal = WriteAheadLog.open(directory, this);
+        journal.setSnapshotSource(this::waitingPatients);
+        setEventSink(new CompositeEventSink(journal, events));
+        return journal;
     }
 
-    // Displays a summary of the current waiting list, Next Pt to be treated at the top. Rest Unordered.
+
+    // Replicates this scheduler to a ReplicationStandby listening at standby (see ReplicationPrimary): sends it the
+    // waiting list now, then every change. Close the returned primary on shutdown.
+    public ReplicationPrimary enableReplication(InetSocketAddress standby) throws IOException {
+        ReplicationPrimary primary = ReplicationPrimary.connect(standby, waitingPatients());
+        setEventSink(new CompositeEventSink(primary, events));
+        return primary;
+    }
+
+
+    // Starts collecting SchedulerMetrics (see there) for this scheduler. Patients already waiting are tracked from now on.
+    public SchedulerMetrics enableMetrics(){
+        return enableMetrics(System::nanoTime);
+    }
+
+    SchedulerMetrics enableMetrics(LongSupplier nanoClock){
+        SchedulerMetrics enabled = new SchedulerMetrics(nanoClock);
+        enabled.trackWaiting(waitingPatients());
+        metrics = enabled;
+        setEventSink(new CompositeEventSink(enabled, events));
+        return enabled;
+    }
+
+    // Null unless enableMetrics() was called
+    public SchedulerMetrics getMetrics(){
+        return metrics;
+    }
+
+
+    // Indexes waiting patients by name, date of birth and phone number (see PatientSearchIndex), so searches don't scan
+    // the waiting list and viewPatientDetails can find a patient by name when the SSN is wrong. Costs some time on every
+    // admit, treat and discharge. Patients already waiting are indexed now.
+    public PatientSearchIndex enableSearchIndex(){
+        PatientSearchIndex enabled = new PatientSearchIndex();
+        for (Patient patient : patientPQueue){
+            enabled.add(patient);
+        }
+        searchIndex = enabled;
+        return enabled;
+    }
+
+
+    // Records every change to the waiting list in a WaitingListChangeFeed (see there), so display boards can refresh
+    // from the changes since their last look instead of re-reading the list. capacity is how many changes it remembers.
+    public WaitingListChangeFeed enableChangeFeed(int capacity){
+        WaitingListChangeFeed enabled = new WaitingListChangeFeed(capacity);
+        setEventSink(new CompositeEventSink(enabled, events));
+        return enabled;
+    }
+
+
+    // Publishes an immutable snapshot of the waiting list after every change (see WaitingListSnapshots), so boards
+    // and dashboards on other threads can read it without locks while admissions and treatments carry on.
+    public WaitingListSnapshots enableSnapshots(){
+        WaitingListSnapshots enabled = new WaitingListSnapshots(waitingPatients());
+        setEventSink(new CompositeEventSink(enabled, events));
+        return enabled;
+    }
+
+
+    // Records every change from here on as a SchedulerTrace (starting with whoever is already waiting), so a real
+    // session can be saved and replayed through other scheduling modes with TraceReplay.
+    public SchedulerTrace.Recorder enableTraceRecorder(){
+        SchedulerTrace.Recorder enabled = new SchedulerTrace.Recorder(waitingPatients());
+        setEventSink(new CompositeEventSink(enabled, events));
+        return enabled;
+    }
+
+
+    // Keeps every treated patient in a memory-mapped archive in directory, so lookups still find them once they
+    // have left the recently treated cache. Close the returned archive on shutdown.
+    public PatientArchive enableArchive(Path directory) throws IOException {
+        PatientArchive opened = PatientArchive.open(directory);
+        archive = opened;
+        setEventSink(new CompositeEventSink(opened, events));
+        return opened;
+    }
+
+
+    // Displays a summary of the current waiting list in treatment order, Next Pt to be treated at the top.
     private void viewPQueue(){
+        viewPQueue(System.out);
+    }
+
+    // Same listing, printed to any stream (the batch command processor prints to its buffered output)
+    void viewPQueue(PrintStream out){
+        events.flush(); // anything still queued for the console should appear before the list
         if (patientPQueue.isEmpty()){
-            System.out.println("Wait List Is Currently Empty.");
+            out.println("Wait List Is Currently Empty.");
         }
         else {
-            System.out.println("Current Waiting List:");
-            for (Patient patient : patientPQueue){
-                System.out.println("Name: " + patient.getName() +"\n"+
+            out.println("Current Waiting List:");
+            for (Iterator<Patient> ordered = patientPQueue.orderedIterator(); ordered.hasNext(); ){
+                Patient patient = ordered.next();
+                out.println("Name: " + patient.getName() +"\n"+
                         "Priority Level:" + patient.getPriorityLevel() +"\n"+
                         "Treatment:" + patient.getTreatmentDescription() +"\n");
             }
@@ -64,36 +457,99 @@ public class EmergencyRoomScheduler {
     }
 
 
-    // Retrieves and displays all patient details based on SSN for quick lookup.
-    // Most Effective Use of HashTable
+    // Retrieves and reports all patient details based on SSN for quick lookup.
+    // Most Effective Use of HashTable. Falls back to the recently-treated cache for patients already seen.
+    // With the search index enabled, an SSN nobody has falls back once more: to waiting patients with exactly that name.
 
     public void viewPatientDetails(String name, int ssn) {
-        Patient wantedPt = patientTable.get(ssn);
-        if (wantedPt == null){
-            System.out.println("No patient found with SSN: " + ssn + "Please Review.");
+        Patient wantedPt = waitingPatient(ssn);
+        if (wantedPt != null){
+            events.patientFound(wantedPt, false);
+            return;
         }
-        else {
-            System.out.println(wantedPt.toString());
+        Patient treatedPt = findTreatedPatient(ssn);
+        if (treatedPt != null){
+            events.patientFound(treatedPt, true);
+            return;
+        }
+        boolean foundByName = false;
+        if (searchIndex != null && name != null){
+            for (Patient patient : searchByName(name, Integer.MAX_VALUE)){
+                if (PatientSearchIndex.sameName(patient, name)){
+                    events.patientFound(patient, false);
+                    foundByName = true;
+                }
+            }
+        }
+        if (!foundByName){
+            events.patientNotFound(ssn);
         }
     }
 
 
 
-    // Main interactive CLI for the ER Scheduler, allowing users to add patients, treat patients, view the waiting list, or exit.
+    // Validation: SSN. Keeps asking until exactly 9 digits are entered.
+    private static int readSsn(Scanner scanner) {
+        while (true) {
+            System.out.println("Please enter 9 digit SSN: ");
+            try {
+                int trySsn = scanner.nextInt();
+                scanner.nextLine(); //consumes leftover newline
+
+                //Makes sure its proper input of exactly 9 digits
+                if (!Patient.isValidSsn(trySsn)) {
+                    throw new InputMismatchException();
+                }
+                return trySsn;
+
+            } catch (InputMismatchException e) {
+                System.out.println("Invalid SSN. Please enter exactly 9 digits. Press enter to try again.");
+                scanner.nextLine();
+            }
+        }
+    }
+
+
+    // Validation: Priority level within range 1-3. Keeps asking until valid.
+    private static int readPriorityLevel(Scanner scanner) {
+        while (true) {
+            System.out.println("Enter Priority Level (1: HIGH, 2: MEDIUM, 3: LOW):");
+            try {
+                int tryPriorityLevel = scanner.nextInt();
+                scanner.nextLine();
+
+                if (!Patient.isValidPriorityLevel(tryPriorityLevel)) {
+                    throw new InputMismatchException();
+                }
+                return tryPriorityLevel;
+
+            } catch (InputMismatchException e) {
+                System.out.println("Invalid Priority Level: Must be Numbers 1, 2, or 3. Press enter to try again.");
+                scanner.nextLine();
+            }
+        }
+    }
+
+
+    // Main interactive CLI for the ER Scheduler, allowing users to add, treat, re-triage or discharge patients, view the waiting list, or exit.
     // Each input option corresponds to a specific scheduler action, providing input validation where necessary.
     // Note: For buffer performance issue: code requires //  scanner.nextLine() after all scanner.readInt(); to remove lagging newline chars
     public void runCommandLineInterface() {
         Scanner scanner = new Scanner(System.in); // creates scanner for input
+        ArrivalClock arrivalClock = new ArrivalClock(); // dates the military times entered, so shifts order correctly past midnight
 
         while (true) {
-            System.out.println("Welcome to our ER Scheduler: Select Option Below (1 - 5)");
+            System.out.println("Welcome to our ER Scheduler: Select Option Below (1 - 7)");
             System.out.println("1: Add New Patient");
             System.out.println("2: Treat Next Patient");
             System.out.println("3: View Current Waiting List");
             System.out.println("4: View A Patient's Details");
-            System.out.println("5: Exit Program");
+            System.out.println("5: Re-Triage A Waiting Patient");
+            System.out.println("6: Discharge A Waiting Patient");
+            System.out.println("7: Exit Program");
 
-            // each case represents a choice between 1 and 5
+            // each case represents a choice between 1 and 7
+            events.flush(); // make sure the last command's output is shown before prompting again
             int selection = scanner.nextInt();
             scanner.nextLine();
 
@@ -104,26 +560,7 @@ public class EmergencyRoomScheduler {
                     String name = scanner.nextLine();
 
                     // Validation: SSN
-                    int ssn;
-                    while (true) {
-                        System.out.println("Please enter 9 digit SSN: ");
-                        try {
-                            int trySsn = scanner.nextInt();
-                            scanner.nextLine(); //consumes leftover newline
-
-                            //Makes sure its proper input of exactly 9 digits
-                            if (trySsn < 100000000 || trySsn > 999999999) {
-                                throw new InputMismatchException();
-                            }
-
-                            ssn = trySsn;
-                            break;
-
-                        } catch (InputMismatchException e) {
-                            System.out.println("Invalid SSN. Please enter exactly 9 digits. Press enter to try again.");
-                            scanner.nextLine();
-                        }
-                    }
+                    int ssn = readSsn(scanner);
 
                     System.out.println("Enter Date of Birth");
                     String dateOfBirth = scanner.nextLine();
@@ -136,24 +573,7 @@ public class EmergencyRoomScheduler {
 
 
                     // Validation: Priority level within range 1-3
-                    int priorityLevel;
-                    while (true) {
-                        System.out.println("Enter Priority Level (1: HIGH, 2: MEDIUM, 3: LOW):");
-                        try {
-                            int tryPriorityLevel = scanner.nextInt();
-                            scanner.nextLine();
-
-                            if (tryPriorityLevel < 1 || tryPriorityLevel > 3) {
-                                throw new InputMismatchException();
-                            }
-                            priorityLevel = tryPriorityLevel;
-                            break;
-
-                        } catch (InputMismatchException e) {
-                            System.out.println("Invalid Priority Level: Must be Numbers 1, 2, or 3. Press enter to try again.");
-                            scanner.nextLine();
-                        }
-                    }
+                    int priorityLevel = readPriorityLevel(scanner);
 
                     // Validation: Arrival Time in correct military format (1-2359)
                     System.out.println("Enter Arrival Time in Military Format (Ex: 1350 for 1:50 PM)");
@@ -164,7 +584,7 @@ public class EmergencyRoomScheduler {
                             int tryArrivalTime = scanner.nextInt();
                             scanner.nextLine();
 
-                            if (tryArrivalTime < 1 || tryArrivalTime > 2359) {
+                            if (!Patient.isValidArrivalTime(tryArrivalTime)) {
                                 throw new InputMismatchException();
                             }
                             arrivalTime = tryArrivalTime;
@@ -180,7 +600,9 @@ public class EmergencyRoomScheduler {
                     System.out.println("Enter Treatment Description:");
                     String treatmentDescription = scanner.nextLine();
 
-                    Patient newPatient = new Patient(name, ssn, dateOfBirth, address, phoneNumber, priorityLevel, arrivalTime, treatmentDescription);
+                    Patient newPatient = Patient.builder().name(name).ssn(ssn).dateOfBirth(dateOfBirth).address(address)
+                            .phoneNumber(phoneNumber).priorityLevel(priorityLevel).arrivalTime(arrivalTime)
+                            .arrivalTimestamp(arrivalClock.resolve(arrivalTime)).treatmentDescription(treatmentDescription).build();
                     addPatient(newPatient);
                     break;
 
@@ -192,7 +614,7 @@ public class EmergencyRoomScheduler {
 
 
                 case 3:
-                    // Displays the current waiting list, Most Urgent at top. Other pts unordered.
+                    // Displays the current waiting list, Most Urgent at top, in treatment order.
                     viewPQueue();
                     break;
 
@@ -202,36 +624,28 @@ public class EmergencyRoomScheduler {
                     System.out.println("Enter Patient Name:");
                     String enteredName = scanner.nextLine();
 
-                    int enteredSSN;
-                    while (true) {
-                        System.out.println("Please enter 9 digit SSN: ");
-                        try {
-                            int trySsn = scanner.nextInt();
-                            scanner.nextLine(); //consumes leftover newline
-
-                            //Makes sure its proper input of exactly 9 digits
-                            if (trySsn < 100000000 || trySsn > 999999999) {
-                                throw new InputMismatchException();
-                            }
-
-                            enteredSSN = trySsn;
-                            break;
-
-                        } catch (InputMismatchException e) {
-                            System.out.println("Invalid SSN. Please enter exactly 9 digits. Press enter to try again.");
-                            scanner.nextLine();
-                        }
-                    }
+                    int enteredSSN = readSsn(scanner);
 
                     viewPatientDetails(enteredName, enteredSSN);
                     break;
 
                 case 5:
+                    // Re-triage a waiting patient to a new priority level
+                    int retriageSSN = readSsn(scanner);
+                    reprioritize(retriageSSN, readPriorityLevel(scanner));
+                    break;
+
+                case 6:
+                    // Remove a waiting patient who left before treatment
+                    discharge(readSsn(scanner));
+                    break;
+
+                case 7:
                     System.out.println("Exiting ER Scheduler. Bye!");
                     return;
 
                default:
-                    System.out.println("Invalid Option. Choose a digit between 1 and 5.");
+                    System.out.println("Invalid Option. Choose a digit between 1 and 7.");
             }
         }
     }
@@ -243,13 +657,34 @@ public class EmergencyRoomScheduler {
     //TESTING METHODS BELOW:
     // ***************************************************************************************************************************************
 
-    public static void main(String[] args){
-        EmergencyRoomScheduler testSchedule = new EmergencyRoomScheduler();
+    // Optional arguments: scheduling mode (any SchedulingMode: PRIORITY_QUEUE, PRIORITY_LANES, AGING_LANES or COMPACT_HEAP),
+    // then a journal directory to keep the waiting list across restarts, then an archive directory to keep every treated patient
+    public static void main(String[] args) throws IOException {
+        SchedulingMode mode = args.length > 0 ? SchedulingMode.valueOf(args[0]) : SchedulingMode.PRIORITY_QUEUE;
+        EmergencyRoomScheduler testSchedule = new EmergencyRoomScheduler(mode);
+        WriteAheadLog journal = args.length > 1 ? testSchedule.enableJournal(Path.of(args[1])) : null;
+        PatientArchive archive = args.length > 2 ? testSchedule.enableArchive(Path.of(args[2])) : null;
+        testSchedule.enableSearchIndex(); // so patient details can be found by name too
         testSchedule.runCommandLineInterface();
+        if (journal != null){
+            journal.close();
+        }
+        if (archive != null){
+            archive.close();
+        }
         //testAddPatient(testSchedule);
         //testTreatCurrentPatient(testSchedule);
         //testViewPQueue(testSchedule);
         //testViewPatientDetails(testSchedule);
+        //testReprioritize(testSchedule);
+        //testDischarge(testSchedule);
+        //testTreatedPatientsLeaveTable(testSchedule);
+        //testAdmitAll(testSchedule);
+        //testEventSink(testSchedule);
+        //testArchiveLookup();
+        //testShiftAcrossMidnight();
+        //testOrderedViews();
+        //benchmarkAdmitAll();
 
     }
 
@@ -270,9 +705,8 @@ public class EmergencyRoomScheduler {
         if (patientInPQ) {System.out.println("Test Passed: Pt added to PQ");}
         else{System.out.println("Test Failed: Pt Not added");}
 
-        // Pt 2: Did pt make it into hashMap?
-        int ptHashKey = testSchedule.hash(testPatient1);
-        if (testSchedule.patientTable.containsKey(ptHashKey)){
+        // Pt 2: Did pt make it into hashMap? (keyed by SSN)
+        if (testSchedule.patientTable.containsKey(testPatient1.getSsn())){
             System.out.println("Test Passed: Pt was added to HashTable ");
         }
         else {System.out.println("Test Failed: Pt was not added");}
@@ -308,8 +742,7 @@ public class EmergencyRoomScheduler {
 
         //Now We Treat & Remove Highest Priority:
         testSchedule.treatCurrentPatient();
-        int redHashKey = testSchedule.hash(testPatientRed);
-        if (testSchedule.patientTable.containsKey(redHashKey)){
+        if (testSchedule.patientTable.containsKey(testPatientRed.getSsn())){
             System.out.println("Removal Test Failed: Highest Priority Pt (Red) Not Removed");
         }
         else{System.out.println("Removal Test Passed: Highest Priority Pt (Red) Removed");}
@@ -410,4 +843,277 @@ public class EmergencyRoomScheduler {
 
 
     }
-}
\ No newline at end of file
+
+
+
+    public static void testReprioritize(EmergencyRoomScheduler testSchedule){
+        Patient testPatientGreen = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3,805, "Flu Like Symptoms");
+        Patient testPatientYellow = new Patient("Yellow",999999999,"2/2/2000","7000 Fox Cove","444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High");
+        testSchedule.addPatient(testPatientGreen);
+        testSchedule.addPatient(testPatientYellow);
+
+        //Standard Case: Green gets worse and is upgraded to level 1, so Green is next
+        testSchedule.reprioritize(777777777, 1);
+        if (testSchedule.patientPQueue.peek().getSsn() == 777777777 && testSchedule.patientTable.get(777777777).getPriorityLevel() == 1){
+            System.out.println("Test Passed: Upgraded patient is now next to be treated");
+        }
+        else{System.out.println("Test Failed: Upgraded patient is not next to be treated");}
+
+        //Edge Case: invalid level leaves the queue alone
+        testSchedule.reprioritize(777777777, 4);
+        if (testSchedule.patientPQueue.peek().getPriorityLevel() == 1){System.out.println("Test Passed: Invalid priority level was rejected");}
+        else{System.out.println("Test Failed: Invalid priority level changed the queue");}
+
+        //Edge Case: SSN that is not waiting
+        testSchedule.reprioritize(123123123, 2);
+        if (testSchedule.patientPQueue.size() == 2){System.out.println("Test Passed: Re-triaging unknown SSN did not alter queue");}
+        else{System.out.println("Test Failed: Re-triaging unknown SSN altered queue");}
+    }
+
+
+
+    public static void testDischarge(EmergencyRoomScheduler testSchedule){
+        Patient testPatientGreen = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3,805, "Flu Like Symptoms");
+        Patient testPatientRed = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive","444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+        testSchedule.addPatient(testPatientGreen);
+        testSchedule.addPatient(testPatientRed);
+
+        //Standard Case: Red leaves before treatment, Green is next
+        testSchedule.discharge(888888888);
+        if (testSchedule.patientPQueue.size() == 1 && testSchedule.patientPQueue.peek().getSsn() == 777777777
+                && !testSchedule.patientTable.containsKey(888888888)){
+            System.out.println("Test Passed: Discharged patient removed from queue and table");
+        }
+        else{System.out.println("Test Failed: Discharged patient still present");}
+
+        //Edge Case: discharging someone not waiting
+        testSchedule.discharge(888888888);
+        if (testSchedule.patientPQueue.size() == 1){System.out.println("Test Passed: Discharging unknown SSN did not alter queue");}
+        else{System.out.println("Test Failed: Discharging unknown SSN altered queue");}
+    }
+
+
+
+    public static void testTreatedPatientsLeaveTable(EmergencyRoomScheduler testSchedule){
+        //Standard Case: treat a whole shift's worth of patients, table should end empty
+        for (int i = 0; i < 50; i++){
+            testSchedule.addPatient(new Patient("Pt" + i, 100000000 + i, "1/1/2000", "1 Main Street", "555-555-5555", 1 + i % 3, 800 + i, "Cough"));
+        }
+        for (int i = 0; i < 50; i++){
+            testSchedule.treatCurrentPatient();
+        }
+        if (testSchedule.patientTable.isEmpty()){System.out.println("Test Passed: Treated patients removed from patient table");}
+        else{System.out.println("Test Failed: Patient table still holds " + testSchedule.patientTable.size() + " treated patients");}
+
+        //Treated patient still viewable through the recently-treated cache
+        long hitsBefore = testSchedule.recentlyTreated.getHits();
+        testSchedule.viewPatientDetails("Pt0", 100000000);
+        if (testSchedule.recentlyTreated.getHits() == hitsBefore + 1){System.out.println("Test Passed: Treated patient found in recently treated cache");}
+        else{System.out.println("Test Failed: Treated patient not found in recently treated cache");}
+
+        //Edge Case: cache never grows past its limit
+        EmergencyRoomScheduler smallCacheSchedule = new EmergencyRoomScheduler(10, 0);
+        for (int i = 0; i < 25; i++){
+            smallCacheSchedule.addPatient(new Patient("Pt" + i, 200000000 + i, "1/1/2000", "1 Main Street", "555-555-5555", 2, 900 + i, "Cough"));
+            smallCacheSchedule.treatCurrentPatient();
+        }
+        if (smallCacheSchedule.recentlyTreated.size() == 10 && smallCacheSchedule.recentlyTreated.getEvictions() == 15){
+            System.out.println("Test Passed: Recently treated cache bounded at 10 with 15 evictions");
+        }
+        else{System.out.println("Test Failed: " + smallCacheSchedule.recentlyTreated);}
+    }
+
+
+
+    public static void testAdmitAll(EmergencyRoomScheduler testSchedule){
+        Patient testPatientGreen = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3,805, "Flu Like Symptoms");
+        testSchedule.addPatient(testPatientGreen);
+
+        ArrayList<Patient> manifest = new ArrayList<>();
+        manifest.add(new Patient("Yellow",999999999,"2/2/2000","7000 Fox Cove","444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High"));
+        manifest.add(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive","444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"));
+        manifest.add(null);
+        manifest.add(testPatientGreen); // already waiting
+        manifest.add(new Patient("Red Again", 888888888, "3/3/2000", "9000 Bear Den Drive","444-787-5300", 1, 809, "Repeated in manifest"));
+
+        //Standard Case: 2 new patients admitted, 3 skipped, Red is next
+        int admitted = testSchedule.admitAll(manifest);
+        if (admitted == 2 && testSchedule.patientPQueue.size() == 3 && testSchedule.patientTable.size() == 3
+                && testSchedule.patientPQueue.peek().getName().equals("Red")){
+            System.out.println("Test Passed: Batch admitted new patients and skipped null / duplicates");
+        }
+        else{System.out.println("Test Failed: admitted=" + admitted + " queue size=" + testSchedule.patientPQueue.size());}
+
+        //Edge Case: empty batch
+        if (testSchedule.admitAll(new ArrayList<>()) == 0 && testSchedule.patientPQueue.size() == 3){
+            System.out.println("Test Passed: Empty batch did not alter queue");
+        }
+        else{System.out.println("Test Failed: Empty batch altered queue");}
+    }
+
+
+    // Batch admission against looping addPatient for manifests of a few hundred up to 100k patients.
+    // Console output is discarded for both so only the string building (not terminal speed) is counted.
+    public static void benchmarkAdmitAll(){
+        PrintStream console = System.out;
+        int[] batchSizes = {500, 10_000, 100_000};
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int round = 0; round < 3; round++){
+                for (int batchSize : batchSizes){
+                    Random random = new Random(batchSize);
+                    ArrayList<Patient> manifest = new ArrayList<>(batchSize);
+                    for (int i = 0; i < batchSize; i++){
+                        manifest.add(new Patient("Pt" + i, 100000000 + i, "1/1/2000", "1 Main Street", "555-555-5555", 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(random.nextInt(1440)), "Mass Casualty"));
+                    }
+                    EmergencyRoomScheduler loopSchedule = new EmergencyRoomScheduler();
+                    long start = System.nanoTime();
+                    for (Patient patient : manifest){loopSchedule.addPatient(patient);}
+                    long loopNanos = System.nanoTime() - start;
+
+                    EmergencyRoomScheduler batchSchedule = new EmergencyRoomScheduler();
+                    start = System.nanoTime();
+                    batchSchedule.admitAll(manifest);
+                    long batchNanos = System.nanoTime() - start;
+
+                    if (round == 2){
+                        console.println(batchSize + " patients: addPatient loop " + loopNanos / 1000 + " us, admitAll " + batchNanos / 1000 + " us");
+                    }
+                }
+            }
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+
+    public static void testEventSink(EmergencyRoomScheduler testSchedule){
+        // Counts events instead of printing them
+        int[] counts = new int[4]; // admitted, rejected, treated, not found
+        testSchedule.setEventSink(new SchedulerEventSink() {
+            @Override public void patientAdmitted(Patient patient) {counts[0]++;}
+            @Override public void admissionRejected(Patient patient) {counts[1]++;}
+            @Override public void patientTreated(Patient patient) {counts[2]++;}
+            @Override public void patientNotFound(int ssn) {counts[3]++;}
+        });
+        Patient testPatientRed = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive","444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+        testSchedule.addPatient(testPatientRed);
+        testSchedule.addPatient(testPatientRed);
+        testSchedule.addPatient(null);
+        Patient treated = testSchedule.treatCurrentPatient();
+        testSchedule.viewPatientDetails("Frank", 999999999);
+
+        if (counts[0] == 1 && counts[1] == 2 && counts[2] == 1 && counts[3] == 1 && treated == testPatientRed){
+            System.out.println("Test Passed: Admitted, rejected, treated and not-found events all reported to the sink");
+        }
+        else{System.out.println("Test Failed: Unexpected event counts " + Arrays.toString(counts));}
+
+        //Edge Case: no-op sink still schedules normally
+        testSchedule.setEventSink(NoOpEventSink.INSTANCE);
+        testSchedule.addPatient(testPatientRed);
+        if (testSchedule.treatCurrentPatient() == testPatientRed && testSchedule.treatCurrentPatient() == null){
+            System.out.println("Test Passed: Scheduler works with the no-op sink");
+        }
+        else{System.out.println("Test Failed: Scheduler misbehaved with the no-op sink");}
+    }
+
+
+
+    public static void testArchiveLookup() throws IOException {
+        //Standard Case: cache holds 2 treated patients, the archive keeps all 5
+        Path directory = Files.createTempDirectory("scheduler-archive-test");
+        EmergencyRoomScheduler archiveSchedule = new EmergencyRoomScheduler(2, 0);
+        archiveSchedule.setEventSink(NoOpEventSink.INSTANCE);
+        PatientArchive archive = archiveSchedule.enableArchive(directory);
+        int[] found = new int[1];
+        archiveSchedule.setEventSink(new CompositeEventSink(archive, new SchedulerEventSink() {
+            @Override public void patientFound(Patient patient, boolean alreadyTreated) {if (alreadyTreated) {found[0]++;}}
+        }));
+        for (int i = 0; i < 5; i++){
+            archiveSchedule.addPatient(new Patient("Pt" + i, 300000000 + i, "1/1/2000", "1 Main Street", "555-555-5555", 2, 900 + i, "Cough"));
+            archiveSchedule.treatCurrentPatient();
+        }
+        archiveSchedule.viewPatientDetails("Pt0", 300000000); // long gone from the cache
+        archiveSchedule.viewPatientDetails("Pt4", 300000004); // still cached
+        if (found[0] == 2 && archive.size() == 5 && archiveSchedule.recentlyTreated.size() == 2){
+            System.out.println("Test Passed: Treated patient evicted from the cache still found in the archive");
+        }
+        else{System.out.println("Test Failed: found " + found[0] + " archived " + archive.size());}
+        archive.close();
+        try (var files = Files.list(directory)){
+            for (Path file : (Iterable<Path>) files::iterator){Files.delete(file);}
+        }
+        Files.delete(directory);
+    }
+
+
+    //Night shift: arrivals typed in military time from 23:40 to 00:05 come out in arrival order in every mode,
+    // same-minute arrivals stay first come first served, and a late-entered 23:55 walk-in slots back into place.
+    public static void testShiftAcrossMidnight(){
+        long now = ZonedDateTime.of(2024, 3, 1, 23, 45, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+        for (SchedulingMode mode : new SchedulingMode[] {SchedulingMode.PRIORITY_QUEUE, SchedulingMode.PRIORITY_LANES}){
+            long[] clock = {now};
+            ArrivalClock arrivalClock = new ArrivalClock(ZoneOffset.UTC, () -> clock[0]);
+            EmergencyRoomScheduler nightShift = new EmergencyRoomScheduler(mode);
+            nightShift.setEventSink(NoOpEventSink.INSTANCE);
+            String[] names = {"A", "B", "C", "D", "E"};
+            int[] times = {2340, 2350, 5, 5, 2355};
+            for (int i = 0; i < names.length; i++){
+                nightShift.addPatient(new Patient(names[i], 500000000 + i, "1/1/2000", "1 Main Street", "555-555-5555", 3, times[i],
+                        arrivalClock.resolve(times[i]), "Cough"));
+            }
+            StringBuilder order = new StringBuilder();
+            Patient next;
+            while ((next = nightShift.treatCurrentPatient()) != null){order.append(next.getName());}
+            if (order.toString().equals("ABECD")){System.out.println("Test Passed: " + mode + " keeps arrival order across midnight");}
+            else{System.out.println("Test Failed: " + mode + " treated " + order + " across midnight, expected ABECD");}
+        }
+    }
+
+
+    //Top-K, pages and the full ordered listing come out exactly in the order treatCurrentPatient would treat, in every mode,
+    // without changing the waiting list
+    public static void testOrderedViews(){
+        Patient[] arrivals = new ArrivalGenerator(20, 3_000).generate(3_000);
+        for (SchedulingMode mode : SchedulingMode.values()){
+            long[] clock = {arrivals[arrivals.length - 1].getArrivalTimestamp()};
+            WaitingList waitingList = mode == SchedulingMode.AGING_LANES ? new AgingLaneQueue(() -> clock[0], 30) : mode.newWaitingList();
+            EmergencyRoomScheduler ordered = new EmergencyRoomScheduler(waitingList);
+            ordered.setEventSink(NoOpEventSink.INSTANCE);
+            for (int i = 0; i < arrivals.length; i++){
+                ordered.addPatient(arrivals[i]);
+                if (i % 4 == 3){
+                    ordered.treatCurrentPatient();
+                }
+                if (i % 7 == 6){
+                    ordered.reprioritize(arrivals[i - 3].getSsn(), 1 + i % 3);
+                }
+            }
+            List<Patient> top = ordered.topWaiting(25);
+            List<Patient> paged = new ArrayList<>();
+            for (int page = 0; ; page++){
+                List<Patient> onPage = ordered.waitingPage(page, 100);
+                if (onPage.isEmpty()){break;}
+                paged.addAll(onPage);
+            }
+            List<Patient> listed = new ArrayList<>();
+            ordered.waitingInOrder().forEachRemaining(listed::add);
+            int waiting = ordered.waitingCount();
+            List<Integer> treated = new ArrayList<>();
+            Patient next;
+            while ((next = ordered.treatCurrentPatient()) != null){treated.add(next.getSsn());}
+
+            boolean matches = treated.size() == waiting && paged.size() == waiting && top.size() == 25
+                    && ssnList(paged).equals(treated) && ssnList(listed).equals(treated) && ssnList(top).equals(treated.subList(0, 25))
+                    && ordered.waitingPage(0, 0).isEmpty() && ordered.waitingPage(-1, 10).isEmpty();
+            if (matches){System.out.println("Test Passed: " + mode + " top-K, pages and ordered listing match treatment order");}
+            else{System.out.println("Test Failed: " + mode + " ordered views diverge from treatment order");}
+        }
+    }
+
+    private static List<Integer> ssnList(List<Patient> patients){
+        List<Integer> ssns = new ArrayList<>(patients.size());
+        for (Patient patient : patients){ssns.add(patient.getSsn());}
+        return ssns;
+    }
+}
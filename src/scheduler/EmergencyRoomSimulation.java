@@ -0,0 +1,530 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Discrete-event simulation of the emergency room for capacity planning ("how many bays keep level 1 waits under
+// 10 minutes on a Friday night?"). Each replication drives a real EmergencyRoomScheduler (no console output) with
+// a Poisson arrival process per priority level, a treatment time distribution per level and a fixed number of bays.
+// Whenever a bay is free and someone is waiting, the scheduler picks who goes next, so the simulated waits are the
+// waits the scheduling mode would really produce.
+// The event queue only ever holds the next arrival of each level plus one departure per busy bay, so it is a tiny
+// binary heap of packed longs (time << 16 | event id): no event objects, no allocation per event.
+// Replications are independent and run in parallel on the fork-join common pool; their wait histograms are merged.
+// Simulated time is in milliseconds, and patients' arrival timestamps are simulation times, so a run can span
+// any number of midnights.
+public class EmergencyRoomSimulation {
+
+    private static final long MILLIS_PER_MINUTE = 60_000;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int ARRIVAL_EVENTS = 3;            // event ids 0-2: next arrival of level 1-3
+    private static final int MAX_BAYS = (1 << 16) - ARRIVAL_EVENTS; // event ids 3+: bay (id - 3) finishes a treatment
+
+
+    // How long a treatment takes, sampled per patient
+    public interface TreatmentTime {
+
+        long sampleMillis(SplittableRandom random);
+
+        // Every treatment takes exactly this long
+        static TreatmentTime fixed(double minutes) {
+            long millis = toMillis(minutes);
+            return random -> millis;
+        }
+
+        // Memoryless: mostly short treatments with a long tail
+        static TreatmentTime exponential(double meanMinutes) {
+            double meanMillis = toMillis(meanMinutes);
+            return random -> (long) (-Math.log(1.0 - random.nextDouble()) * meanMillis);
+        }
+
+        // Right-skewed like real treatment times; cv is the standard deviation as a fraction of the mean
+        static TreatmentTime lognormal(double meanMinutes, double cv) {
+            if (cv <= 0) {
+                throw new IllegalArgumentException("Coefficient of variation must be positive: " + cv);
+            }
+            double sigma = Math.sqrt(Math.log(1 + cv * cv));
+            double mu = Math.log(toMillis(meanMinutes)) - sigma * sigma / 2;
+            return random -> (long) Math.exp(mu + sigma * gaussian(random));
+        }
+
+        private static long toMillis(double minutes) {
+            if (!(minutes > 0)) {
+                throw new IllegalArgumentException("Treatment time must be positive: " + minutes);
+            }
+            return (long) (minutes * MILLIS_PER_MINUTE);
+        }
+
+        private static double gaussian(SplittableRandom random) { // Box-Muller, one value per call
+            return Math.sqrt(-2 * Math.log(1.0 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        }
+    }
+
+
+    // Everything a run needs. Setters return this so scenarios read as one expression.
+    public static final class Scenario {
+
+        private final double[] arrivalsPerHour = {2, 6, 12};
+        private final TreatmentTime[] treatmentTimes = {
+                TreatmentTime.exponential(60), TreatmentTime.exponential(30), TreatmentTime.exponential(15)};
+        private int bays = 10;
+        private double hours = 24;
+        private double warmupHours = 1;
+        private int startMinuteOfDay = 0;
+        private SchedulingMode mode = SchedulingMode.PRIORITY_LANES;
+        private int replications = 100;
+        private long seed = 1;
+
+        // Mean arrivals per hour for levels 1, 2 and 3 (0 turns a level off)
+        public Scenario arrivalsPerHour(double level1, double level2, double level3) {
+            double[] rates = {level1, level2, level3};
+            for (double rate : rates) {
+                if (!(rate >= 0)) {throw new IllegalArgumentException("Arrival rate cannot be negative: " + rate);}
+            }
+            System.arraycopy(rates, 0, arrivalsPerHour, 0, 3);
+            return this;
+        }
+
+        public Scenario treatmentTimes(TreatmentTime level1, TreatmentTime level2, TreatmentTime level3) {
+            if (level1 == null || level2 == null || level3 == null) {
+                throw new IllegalArgumentException("Treatment times cannot be null");
+            }
+            treatmentTimes[0] = level1;
+            treatmentTimes[1] = level2;
+            treatmentTimes[2] = level3;
+            return this;
+        }
+
+        public Scenario bays(int bays) {
+            if (bays < 1 || bays > MAX_BAYS) {throw new IllegalArgumentException("Bays must be 1-" + MAX_BAYS + ": " + bays);}
+            this.bays = bays;
+            return this;
+        }
+
+        // Simulated time per replication, including the warm-up
+        public Scenario hours(double hours) {
+            if (!(hours > 0)) {throw new IllegalArgumentException("Hours must be positive: " + hours);}
+            this.hours = hours;
+            return this;
+        }
+
+        // Patients arriving during the warm-up are treated but not counted, so the run doesn't start from an empty room
+        public Scenario warmupHours(double warmupHours) {
+            if (!(warmupHours >= 0)) {throw new IllegalArgumentException("Warm-up cannot be negative: " + warmupHours);}
+            this.warmupHours = warmupHours;
+            return this;
+        }
+
+        // Wall clock time the run starts at (military time), which sets the patients' arrival times
+        public Scenario startsAt(int militaryTime) {
+            if (!Patient.isValidArrivalTime(militaryTime) && militaryTime != 0) {
+                throw new IllegalArgumentException("Invalid start time: " + militaryTime);
+            }
+            this.startMinuteOfDay = ArrivalClock.toMinuteOfDay(militaryTime);
+            return this;
+        }
+
+        public Scenario mode(SchedulingMode mode) {
+            if (mode == null) {throw new IllegalArgumentException("Scheduling mode cannot be null");}
+            this.mode = mode;
+            return this;
+        }
+
+        public Scenario replications(int replications) {
+            if (replications < 1) {throw new IllegalArgumentException("Replications must be at least 1: " + replications);}
+            this.replications = replications;
+            return this;
+        }
+
+        public Scenario seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public int getBays() {return bays;}
+        public int getReplications() {return replications;}
+
+        private Scenario copy() {
+            Scenario copy = new Scenario()
+                    .arrivalsPerHour(arrivalsPerHour[0], arrivalsPerHour[1], arrivalsPerHour[2])
+                    .treatmentTimes(treatmentTimes[0], treatmentTimes[1], treatmentTimes[2])
+                    .bays(bays).hours(hours).warmupHours(warmupHours).mode(mode).replications(replications).seed(seed);
+            copy.startMinuteOfDay = startMinuteOfDay;
+            return copy;
+        }
+    }
+
+
+    // Merged outcome of one or more replications. Levels are 1-3; waits are in simulated minutes.
+    public static final class Result {
+
+        private final LatencyHistogram[] waitMillis = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+        private final long[] arrived = new long[3];
+        private long stillWaiting;     // counted arrivals not yet treated when their replication ended
+        private long busyBayMillis;    // bay time spent on counted patients, within the measured window
+        private long availableBayMillis;
+        private int replications;
+
+        public long getArrived(int level) {return arrived[level - 1];}
+        public long getTreated(int level) {return waitMillis[level - 1].getCount();}
+        public long getStillWaiting() {return stillWaiting;}
+        public int getReplications() {return replications;}
+
+        public long getTotalArrived() {return arrived[0] + arrived[1] + arrived[2];}
+
+        public double getWaitMinutesAtPercentile(int level, double percentile) {
+            return waitMillis[level - 1].getValueAtPercentile(percentile) / (double) MILLIS_PER_MINUTE;
+        }
+
+        public double getMeanWaitMinutes(int level) {
+            return waitMillis[level - 1].getMean() / MILLIS_PER_MINUTE;
+        }
+
+        public double getMaxWaitMinutes(int level) {
+            return waitMillis[level - 1].getMax() / (double) MILLIS_PER_MINUTE;
+        }
+
+        // Fraction of bay time spent treating
+        public double getUtilization() {
+            return availableBayMillis == 0 ? 0 : (double) busyBayMillis / availableBayMillis;
+        }
+
+        void add(Result other) {
+            for (int i = 0; i < 3; i++) {
+                waitMillis[i].add(other.waitMillis[i]);
+                arrived[i] += other.arrived[i];
+            }
+            stillWaiting += other.stillWaiting;
+            busyBayMillis += other.busyBayMillis;
+            availableBayMillis += other.availableBayMillis;
+            replications += other.replications;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("%d replications, %d arrivals, %.1f%% bay utilization, %d still waiting at the end%n",
+                    replications, getTotalArrived(), 100 * getUtilization(), stillWaiting));
+            text.append("level   treated   mean     p50      p90      p99      max   (wait, minutes)\n");
+            for (int level = 1; level <= 3; level++) {
+                text.append(String.format("%5d %9d %6.1f %8.1f %8.1f %8.1f %8.1f%n", level, getTreated(level), getMeanWaitMinutes(level),
+                        getWaitMinutesAtPercentile(level, 50), getWaitMinutesAtPercentile(level, 90),
+                        getWaitMinutesAtPercentile(level, 99), getMaxWaitMinutes(level)));
+            }
+            return text.toString();
+        }
+    }
+
+
+    // Runs all of the scenario's replications in parallel and merges them
+    public static Result run(Scenario scenario) {
+        Scenario fixed = scenario.copy(); // later changes to the caller's scenario can't leak into running replications
+        return ForkJoinPool.commonPool().invoke(new Replications(fixed, 0, fixed.replications));
+    }
+
+
+    // Smallest bay count (up to maxBays) whose level's wait at the percentile is within maxWaitMinutes, or -1
+    public static int baysNeeded(Scenario scenario, int level, double percentile, double maxWaitMinutes, int maxBays) {
+        if (!Patient.isValidPriorityLevel(level)) {
+            throw new IllegalArgumentException("Invalid priority level: " + level);
+        }
+        Scenario trial = scenario.copy();
+        for (int bays = 1; bays <= maxBays; bays++) {
+            if (run(trial.bays(bays)).getWaitMinutesAtPercentile(level, percentile) <= maxWaitMinutes) {
+                return bays;
+            }
+        }
+        return -1;
+    }
+
+
+    // A busy Friday night: 5pm to 6am, with the first hour as warm-up
+    public static Scenario fridayNight() {
+        return new Scenario()
+                .arrivalsPerHour(3, 8, 14)
+                .treatmentTimes(TreatmentTime.lognormal(60, 0.8), TreatmentTime.lognormal(35, 0.8), TreatmentTime.lognormal(20, 0.8))
+                .startsAt(1700).hours(13).warmupHours(1);
+    }
+
+
+    // Splits the replication range in halves until each task runs one replication
+    @SuppressWarnings("serial") // never serialized
+    private static final class Replications extends RecursiveTask<Result> {
+
+        private final Scenario scenario;
+        private final int from;
+        private final int to;
+
+        Replications(Scenario scenario, int from, int to) {
+            this.scenario = scenario;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from == 1) {
+                return runReplication(scenario, from);
+            }
+            int middle = (from + to) >>> 1;
+            Replications left = new Replications(scenario, from, middle);
+            left.fork();
+            Result result = new Replications(scenario, middle, to).compute();
+            result.add(left.join());
+            return result;
+        }
+    }
+
+
+    // One replication on the calling thread. Deterministic for a given scenario seed and replication number.
+    static Result runReplication(Scenario scenario, int replication) {
+        SplittableRandom random = new SplittableRandom(scenario.seed + 0x9E3779B97F4A7C15L * replication);
+        long warmupEnd = (long) (scenario.warmupHours * MILLIS_PER_HOUR);
+        long end = (long) (scenario.hours * MILLIS_PER_HOUR);
+        long startMillis = scenario.startMinuteOfDay * MILLIS_PER_MINUTE; // simulation time 0 is the start time on day 0
+        long[] clock = {startMillis};
+
+        // Aging needs the simulation's clock, not the wall clock
+        WaitingList waitingList = scenario.mode == SchedulingMode.AGING_LANES
+                ? new AgingLaneQueue(() -> clock[0], AgingLaneQueue.DEFAULT_MINUTES_PER_LEVEL)
+                : scenario.mode.newWaitingList();
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(waitingList, 1, 0);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+
+        Result result = new Result();
+        result.replications = 1;
+        result.availableBayMillis = Math.max(0, end - warmupEnd) * scenario.bays;
+        EventQueue events = new EventQueue(ARRIVAL_EVENTS + scenario.bays);
+        int[] freeBays = new int[scenario.bays];
+        int freeCount = scenario.bays;
+        for (int bay = 0; bay < freeCount; bay++) {
+            freeBays[bay] = freeCount - 1 - bay;
+        }
+        double[] meanGapMillis = new double[3];
+        for (int i = 0; i < 3; i++) {
+            if (scenario.arrivalsPerHour[i] > 0) {
+                meanGapMillis[i] = MILLIS_PER_HOUR / scenario.arrivalsPerHour[i];
+                events.add(exponential(random, meanGapMillis[i]), i);
+            }
+        }
+
+        int nextIndex = 0;
+        while (!events.isEmpty() && events.peekTime() <= end) {
+            long now = events.peekTime();
+            int event = events.poll();
+            clock[0] = startMillis + now;
+
+            if (event < ARRIVAL_EVENTS) {
+                int level = event + 1;
+                int ssn = ArrivalGenerator.ssnFor(nextIndex++);
+                int minuteOfDay = (int) (clock[0] / MILLIS_PER_MINUTE % MINUTES_PER_DAY);
+                scheduler.addPatient(new Patient("Sim", ssn, "1/1/2000", "Addr", "555", level,
+                        ArrivalGenerator.toMilitaryTime(minuteOfDay), clock[0], "Sim"));
+                if (now >= warmupEnd) {
+                    result.arrived[event]++;
+                }
+                events.add(now + exponential(random, meanGapMillis[event]), event);
+            }
+            else {
+                freeBays[freeCount++] = event - ARRIVAL_EVENTS;
+            }
+
+            // Fill every free bay with whoever the scheduler says is next
+            while (freeCount > 0 && scheduler.waitingCount() > 0) {
+                Patient next = scheduler.treatCurrentPatient();
+                long arrived = next.getArrivalTimestamp() - startMillis;
+                int index = next.getPriorityLevel() - 1;
+                long duration = Math.max(1, scenario.treatmentTimes[index].sampleMillis(random));
+                if (arrived >= warmupEnd) {
+                    result.waitMillis[index].record(now - arrived);
+                    result.busyBayMillis += Math.min(duration, end - now);
+                }
+                events.add(now + duration, ARRIVAL_EVENTS + freeBays[--freeCount]);
+            }
+        }
+
+        for (Patient waiting : scheduler.waitingPatients()) {
+            if (waiting.getArrivalTimestamp() - startMillis >= warmupEnd) {
+                result.stillWaiting++;
+            }
+        }
+        return result;
+    }
+
+
+    private static long exponential(SplittableRandom random, double meanMillis) {
+        return Math.max(1, (long) (-Math.log(1.0 - random.nextDouble()) * meanMillis));
+    }
+
+
+    // Min-heap of (time, event id) packed into one long: time in the high 48 bits, id in the low 16.
+    // Equal times come out in id order, which keeps runs deterministic.
+    static final class EventQueue {
+
+        private long[] heap;
+        private int size;
+
+        EventQueue(int capacity) {
+            heap = new long[Math.max(capacity, 4)];
+        }
+
+        boolean isEmpty() {return size == 0;}
+        int size() {return size;}
+        long peekTime() {return heap[0] >>> 16;}
+
+        void add(long time, int id) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            long key = time << 16 | id;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= key) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = key;
+        }
+
+        // Removes the earliest event and returns its id
+        int poll() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return (int) (top & 0xFFFF);
+        }
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testEventQueueOrder();
+        testSingleBayMatchesQueueingTheory();
+        testDeterministicReplications();
+        testPriorityOrder();
+        //benchmarkSimulation();
+        //planFridayNight();
+    }
+
+
+    public static void testEventQueueOrder() {
+        EventQueue events = new EventQueue(2);
+        SplittableRandom random = new SplittableRandom(5);
+        long[] expected = new long[1000];
+        for (int i = 0; i < expected.length; i++) {
+            long time = random.nextLong(1_000_000);
+            int id = random.nextInt(1 << 16);
+            events.add(time, id);
+            expected[i] = time << 16 | id;
+        }
+        Arrays.sort(expected);
+        boolean ordered = events.size() == expected.length;
+        for (int i = 0; ordered && i < expected.length; i++) {
+            long time = events.peekTime();
+            ordered = (time << 16 | events.poll()) == expected[i];
+        }
+        if (ordered && events.isEmpty()) {System.out.println("Test Passed: Event queue returns events in time order");}
+        else {System.out.println("Test Failed: Event queue out of order");}
+    }
+
+
+    // One bay, one level, Poisson arrivals at 30/hour and exponential 1 minute treatments is an M/M/1 queue at 50%
+    // load, whose mean wait before treatment is rho / (mu - lambda) = 0.5 / 30 hours = 1 minute
+    public static void testSingleBayMatchesQueueingTheory() {
+        Result result = run(new Scenario()
+                .arrivalsPerHour(30, 0, 0)
+                .treatmentTimes(TreatmentTime.exponential(1), TreatmentTime.exponential(1), TreatmentTime.exponential(1))
+                .bays(1).hours(2_000).warmupHours(10).replications(8).seed(7));
+        double meanWait = result.getMeanWaitMinutes(1);
+        if (Math.abs(meanWait - 1.0) < 0.05 && Math.abs(result.getUtilization() - 0.5) < 0.02) {
+            System.out.println("Test Passed: M/M/1 mean wait " + String.format("%.3f", meanWait) + " min matches theory (1 min)");
+        }
+        else {System.out.println("Test Failed: M/M/1 mean wait " + meanWait + " min, utilization " + result.getUtilization());}
+    }
+
+
+    public static void testDeterministicReplications() {
+        Scenario scenario = fridayNight().bays(12).replications(6).seed(99);
+        Result parallel = run(scenario);
+        Result again = run(scenario);
+        Result sequential = new Result();
+        for (int replication = 0; replication < 6; replication++) {
+            sequential.add(runReplication(scenario, replication));
+        }
+        boolean same = parallel.getReplications() == 6 && parallel.getTotalArrived() == sequential.getTotalArrived()
+                && parallel.getStillWaiting() == sequential.getStillWaiting();
+        for (int level = 1; level <= 3; level++) {
+            same = same && parallel.getTreated(level) == sequential.getTreated(level)
+                    && parallel.getMaxWaitMinutes(level) == sequential.getMaxWaitMinutes(level)
+                    && parallel.getWaitMinutesAtPercentile(level, 99) == again.getWaitMinutesAtPercentile(level, 99);
+        }
+        if (same) {System.out.println("Test Passed: Parallel replications match sequential ones and repeat exactly");}
+        else {System.out.println("Test Failed: Replications differ\n" + parallel + sequential);}
+    }
+
+
+    // Under load, strict priority keeps level 1 waits far below level 3 waits
+    public static void testPriorityOrder() {
+        Result result = run(fridayNight().bays(12).replications(20));
+        double level1 = result.getWaitMinutesAtPercentile(1, 90);
+        double level3 = result.getWaitMinutesAtPercentile(3, 90);
+        if (level1 < level3 && result.getTreated(1) > 0) {
+            System.out.println("Test Passed: Level 1 p90 wait " + String.format("%.1f", level1) + " min < level 3 " + String.format("%.1f", level3) + " min");
+        }
+        else {System.out.println("Test Failed: Level 1 p90 wait " + level1 + " min, level 3 " + level3 + " min");}
+    }
+
+
+    // Simulated patients per second across all cores, for each scheduling mode
+    public static void benchmarkSimulation() {
+        for (SchedulingMode mode : SchedulingMode.values()) {
+            Scenario scenario = new Scenario().arrivalsPerHour(20, 60, 120)
+                    .treatmentTimes(TreatmentTime.exponential(45), TreatmentTime.exponential(25), TreatmentTime.exponential(12))
+                    .bays(75).hours(24 * 30).warmupHours(0).mode(mode);
+            run(scenario.replications(2)); // warm up
+            scenario.replications(Runtime.getRuntime().availableProcessors() * 2);
+            long start = System.nanoTime();
+            Result result = run(scenario);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-16s %,d patients in %.2f s = %,.0f patients/s (%d replications)%n",
+                    mode, result.getTotalArrived(), seconds, result.getTotalArrived() / seconds, result.getReplications());
+        }
+    }
+
+
+    // How many bays keep level 1 waits under 10 minutes for 99% of patients on a Friday night?
+    public static void planFridayNight() {
+        Scenario friday = fridayNight().replications(200);
+        System.out.println("bays  level 1 p99  level 2 p99  level 3 p99  utilization");
+        for (int bays = 10; bays <= 18; bays++) {
+            Result result = run(friday.bays(bays));
+            System.out.printf("%4d %10.1f %12.1f %12.1f %10.1f%%%n", bays, result.getWaitMinutesAtPercentile(1, 99),
+                    result.getWaitMinutesAtPercentile(2, 99), result.getWaitMinutesAtPercentile(3, 99), 100 * result.getUtilization());
+        }
+        System.out.println("Bays needed for level 1 p99 under 10 minutes: " + baysNeeded(friday, 1, 99, 10, 40));
+    }
+}
@@ -0,0 +1,93 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Walks a binary heap in sorted order without changing or copying it, for the array-backed heaps'
+// orderedIterator(). A heap slot can only come out after its parent, so the next slot in order is always
+// somewhere on the frontier of slots whose parents were already returned. The frontier is itself a small binary
+// heap of slot numbers (an int[]): each step pops the best slot and adds its two children.
+// Taking the first k patients costs O(k log k) and an int[] of at most k + 1 slots, whatever the heap's size.
+// The heap must not change while this is in use (it's read live); build a page in one go, then let go of it.
+abstract class HeapOrderIterator implements Iterator<Patient> {
+
+    private final int heapSize;
+    private int[] frontier = new int[16];
+    private int count;
+
+
+    //Constructor: iterate a heap of heapSize slots, starting from its root
+    HeapOrderIterator(int heapSize) {
+        this.heapSize = heapSize;
+        if (heapSize > 0) {
+            count = 1; // frontier[0] = slot 0
+        }
+    }
+
+
+    // Is the patient in heap slot a more urgent than the one in slot b?
+    abstract boolean less(int a, int b);
+
+    // The patient in heap slot
+    abstract Patient patientAt(int slot);
+
+
+    @Override
+    public boolean hasNext() {return count > 0;}
+
+    @Override
+    public Patient next() {
+        if (count == 0) {throw new NoSuchElementException();}
+        int slot = frontier[0];
+        int child = 2 * slot + 1;
+        // The left child takes the popped slot's place (or the last frontier entry does), then the right child joins
+        if (child < heapSize) {
+            frontier[0] = child;
+        }
+        else {
+            frontier[0] = frontier[--count];
+        }
+        if (count > 0) {
+            siftDown(0);
+        }
+        if (child + 1 < heapSize) {
+            push(child + 1);
+        }
+        return patientAt(slot);
+    }
+
+
+    private void push(int slot) {
+        if (count == frontier.length) {
+            frontier = Arrays.copyOf(frontier, count * 2);
+        }
+        int index = count++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!less(slot, frontier[parent])) {
+                break;
+            }
+            frontier[index] = frontier[parent];
+            index = parent;
+        }
+        frontier[index] = slot;
+    }
+
+    private void siftDown(int index) {
+        int moving = frontier[index];
+        int half = count >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < count && less(frontier[child + 1], frontier[child])) {
+                child++;
+            }
+            if (!less(frontier[child], moving)) {
+                break;
+            }
+            frontier[index] = frontier[child];
+            index = child;
+        }
+        frontier[index] = moving;
+    }
+}
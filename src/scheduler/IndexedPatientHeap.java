@@ -0,0 +1,377 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+// Binary min-heap of Patients ordered by Patient.compareTo (priority level, then arrival time).
+// Unlike java.util.PriorityQueue it remembers each patient's slot in the heap array (keyed by SSN, in a primitive
+// IntLongMap so the sift loops don't box), so removing or re-triaging a waiting patient is O(log n) instead of a full O(n) scan.
+public class IndexedPatientHeap implements WaitingList {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Patient[] heap;                      // heap[0] is always the most urgent patient
+    private int size;                            // number of patients currently in the heap
+    private final IntLongMap positions;          // SSN -> index of that patient in heap[] + 1 (0 means not waiting)
+
+
+    // Constructor: empty heap with a small starting array that doubles as needed
+    public IndexedPatientHeap() {
+        heap = new Patient[DEFAULT_CAPACITY];
+        positions = new IntLongMap(DEFAULT_CAPACITY);
+    }
+
+
+    @Override public int size() {return size;}
+    @Override public boolean isEmpty() {return size == 0;}
+    public boolean contains(int ssn) {return positions.get(ssn) != 0;}
+
+
+    // Returns the waiting patient with this SSN, or null if they are not in the heap.
+    public Patient get(int ssn) {
+        int index = (int) positions.get(ssn) - 1;
+        return index < 0 ? null : heap[index];
+    }
+
+
+    // Most urgent patient without removing them. Null if empty.
+    @Override
+    public Patient peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+
+    // Adds a patient. Returns false (and leaves the heap untouched) if that SSN is already waiting,
+    // since two entries for one SSN would make the position index ambiguous.
+    @Override
+    public boolean add(Patient patient) {
+        if (positions.get(patient.getSsn()) != 0) {
+            return false;
+        }
+        if (size == heap.length) {
+            Patient[] bigger = new Patient[heap.length * 2];
+            System.arraycopy(heap, 0, bigger, 0, size);
+            heap = bigger;
+        }
+        heap[size] = patient;
+        positions.put(patient.getSsn(), size + 1);
+        size++;
+        siftUp(size - 1);
+        return true;
+    }
+
+
+    // Adds a batch of patients. For a batch that is large next to the current heap, all patients are appended
+    // and the heap is rebuilt bottom-up (Floyd's heapify, O(n)) instead of sifting each one up (O(m log n)).
+    // Patients whose SSN is already waiting are skipped.
+    @Override
+    public void addAll(Collection<Patient> patients) {
+        int batch = patients.size();
+        int combined = size + batch;
+        if ((long) batch * (32 - Integer.numberOfLeadingZeros(combined)) < combined) {
+            for (Patient patient : patients) {add(patient);}
+            return;
+        }
+        if (combined > heap.length) {
+            Patient[] bigger = new Patient[Math.max(combined, heap.length * 2)];
+            System.arraycopy(heap, 0, bigger, 0, size);
+            heap = bigger;
+        }
+        for (Patient patient : patients) {
+            if (positions.get(patient.getSsn()) == 0) {
+                positions.put(patient.getSsn(), size + 1);
+                heap[size++] = patient;
+            }
+        }
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+
+    // Removes and returns the most urgent patient. Null if empty.
+    @Override
+    public Patient poll() {
+        if (size == 0) {
+            return null;
+        }
+        return removeAt(0);
+    }
+
+
+    // Removes the patient with this SSN wherever they sit in the heap. Null if not waiting.
+    public Patient remove(int ssn) {
+        int index = (int) positions.get(ssn) - 1;
+        if (index < 0) {
+            return null;
+        }
+        return removeAt(index);
+    }
+
+
+    @Override
+    public boolean remove(Patient patient) {
+        return remove(patient.getSsn()) != null;
+    }
+
+
+    @Override
+    public boolean replace(Patient waiting, Patient updated) {
+        return replace(updated) != null;
+    }
+
+
+    // Swaps in a new version of an already waiting patient (same SSN, e.g. new priority level)
+    // and restores heap order from that slot. Returns the old version, or null if the SSN isn't waiting.
+    public Patient replace(Patient updated) {
+        int index = (int) positions.get(updated.getSsn()) - 1;
+        if (index < 0) {
+            return null;
+        }
+        Patient old = heap[index];
+        heap[index] = updated;
+        int comparison = updated.compareTo(old);
+        if (comparison < 0) {siftUp(index);}
+        else if (comparison > 0) {siftDown(index);}
+        return old;
+    }
+
+
+    // Iterates in internal array order, same as PriorityQueue: the head is first, the rest are unordered.
+    @Override
+    public Iterator<Patient> iterator() {
+        return new Iterator<Patient>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {return next < size;}
+
+            @Override
+            public Patient next() {
+                if (next >= size) {throw new NoSuchElementException();}
+                return heap[next++];
+            }
+        };
+    }
+
+
+    // True triage order, walked down the heap (see HeapOrderIterator): O(log k) per patient for the first k
+    @Override
+    public Iterator<Patient> orderedIterator() {
+        return new HeapOrderIterator(size) {
+            @Override boolean less(int a, int b) {return heap[a].compareTo(heap[b]) < 0;}
+            @Override Patient patientAt(int slot) {return heap[slot];}
+        };
+    }
+
+
+    // Removes heap[index] by moving the last patient into its slot and sifting whichever way is needed.
+    private Patient removeAt(int index) {
+        Patient removed = heap[index];
+        positions.remove(removed.getSsn());
+        size--;
+        if (index != size) {
+            Patient last = heap[size];
+            heap[index] = last;
+            positions.put(last.getSsn(), index + 1);
+            heap[size] = null;
+            siftDown(index);
+            if (heap[index] == last) {
+                siftUp(index);
+            }
+        }
+        else {
+            heap[size] = null;
+        }
+        return removed;
+    }
+
+
+    // Moves heap[index] toward the root while it is more urgent than its parent.
+    private void siftUp(int index) {
+        Patient moving = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (moving.compareTo(heap[parent]) >= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            positions.put(heap[index].getSsn(), index + 1);
+            index = parent;
+        }
+        heap[index] = moving;
+        positions.put(moving.getSsn(), index + 1);
+    }
+
+
+    // Moves heap[index] toward the leaves while a child is more urgent than it.
+    private void siftDown(int index) {
+        Patient moving = heap[index];
+        int half = size >>> 1; // nodes past this point are leaves
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && heap[right].compareTo(heap[child]) < 0) {
+                child = right;
+            }
+            if (moving.compareTo(heap[child]) <= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            positions.put(heap[index].getSsn(), index + 1);
+            index = child;
+        }
+        heap[index] = moving;
+        positions.put(moving.getSsn(), index + 1);
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testPollOrder();
+        testRemoveBySsn();
+        testReplace();
+        testAddAll();
+        //benchmarkAgainstPriorityQueue();
+    }
+
+
+    public static void testPollOrder() {
+        IndexedPatientHeap heap = new IndexedPatientHeap();
+        heap.add(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        heap.add(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High"));
+        heap.add(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"));
+        heap.add(new Patient("Early Red", 111111111, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 700, "Chest Pains"));
+
+        String order = heap.poll().getName() + "," + heap.poll().getName() + "," + heap.poll().getName() + "," + heap.poll().getName();
+        if (order.equals("Early Red,Red,Yellow,Green") && heap.isEmpty()) {System.out.println("Test Passed: Heap polls in priority then arrival order");}
+        else {System.out.println("Test Failed: Unexpected poll order " + order);}
+
+        //Edge Case: duplicate SSN rejected
+        heap.add(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains"));
+        if (!heap.add(new Patient("Red Again", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 2, 900, "Chest Pains")) && heap.size() == 1) {
+            System.out.println("Test Passed: Duplicate SSN was rejected");
+        }
+        else {System.out.println("Test Failed: Duplicate SSN was added");}
+    }
+
+
+    public static void testRemoveBySsn() {
+        IndexedPatientHeap heap = new IndexedPatientHeap();
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            heap.add(new Patient("Pt" + i, 100000000 + i, "1/1/2000", "Addr", "555-555-5555", 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(random.nextInt(1440)), "Test"));
+        }
+        // remove every third patient by SSN, then make sure what is left still polls in order
+        for (int i = 0; i < 500; i += 3) {
+            heap.remove(100000000 + i);
+        }
+        boolean ordered = true;
+        Patient previous = heap.poll();
+        int count = 1;
+        while (!heap.isEmpty()) {
+            Patient next = heap.poll();
+            if (previous.compareTo(next) > 0) {ordered = false;}
+            previous = next;
+            count++;
+        }
+        if (ordered && count == 500 - 167) {System.out.println("Test Passed: Heap order holds after removals by SSN");}
+        else {System.out.println("Test Failed: ordered=" + ordered + " remaining=" + count);}
+
+        //Edge Case: removing an SSN that isn't waiting
+        if (heap.remove(123123123) == null) {System.out.println("Test Passed: Removing unknown SSN returns null");}
+        else {System.out.println("Test Failed: Removing unknown SSN returned a patient");}
+    }
+
+
+    public static void testReplace() {
+        IndexedPatientHeap heap = new IndexedPatientHeap();
+        Patient green = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms");
+        heap.add(green);
+        heap.add(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High"));
+
+        //Upgrade Green to level 1: should now be first
+        heap.replace(green.withPriorityLevel(1));
+        if (heap.peek().getName().equals("Green") && heap.peek().getPriorityLevel() == 1) {System.out.println("Test Passed: Upgraded patient moved to the head");}
+        else {System.out.println("Test Failed: Upgraded patient is not at the head");}
+
+        //Downgrade Green back to level 3: Yellow first again
+        heap.replace(green);
+        if (heap.peek().getName().equals("Yellow")) {System.out.println("Test Passed: Downgraded patient moved back down");}
+        else {System.out.println("Test Failed: Downgraded patient is still at the head");}
+    }
+
+
+    public static void testAddAll() {
+        Random random = new Random(5);
+        IndexedPatientHeap heap = new IndexedPatientHeap();
+        heap.add(new Patient("Already Waiting", 100000000, "1/1/2000", "Addr", "555-555-5555", 2, 1200, "Test"));
+        ArrayList<Patient> manifest = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            manifest.add(new Patient("Pt" + i, 100000000 + i, "1/1/2000", "Addr", "555-555-5555", 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(random.nextInt(1440)), "Test"));
+        }
+        manifest.add(new Patient("Duplicate", 100000001, "1/1/2000", "Addr", "555-555-5555", 1, 1, "Test"));
+        heap.addAll(manifest);
+
+        boolean ordered = heap.size() == 1001;
+        Patient previous = heap.poll();
+        while (!heap.isEmpty()) {
+            Patient next = heap.poll();
+            if (previous.compareTo(next) > 0) {ordered = false;}
+            previous = next;
+        }
+        if (ordered) {System.out.println("Test Passed: Heapified batch polls in order and skips duplicate SSN");}
+        else {System.out.println("Test Failed: Heapified batch out of order or duplicate added");}
+    }
+
+
+    // Re-triage (remove + re-add) cost against PriorityQueue.remove(Object) at 10k, 100k and 1M waiting patients.
+    public static void benchmarkAgainstPriorityQueue() {
+        int[] sizes = {10_000, 100_000, 1_000_000};
+        int operations = 2_000;
+        for (int n : sizes) {
+            Random random = new Random(n);
+            Patient[] patients = new Patient[n];
+            for (int i = 0; i < n; i++) {
+                patients[i] = new Patient("Pt" + i, 100000000 + i, "1/1/2000", "Addr", "555-555-5555", 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(random.nextInt(1440)), "Bench");
+            }
+            PriorityQueue<Patient> pQueue = new PriorityQueue<>();
+            IndexedPatientHeap indexedHeap = new IndexedPatientHeap();
+            for (Patient patient : patients) {
+                pQueue.add(patient);
+                indexedHeap.add(patient);
+            }
+
+            int[] targets = new int[operations];
+            for (int i = 0; i < operations; i++) {targets[i] = random.nextInt(n);}
+
+            long start = System.nanoTime();
+            for (int target : targets) {
+                Patient patient = patients[target];
+                pQueue.remove(patient);
+                pQueue.add(patient);
+            }
+            long pQueueNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int target : targets) {
+                Patient patient = patients[target];
+                indexedHeap.remove(patient.getSsn());
+                indexedHeap.add(patient);
+            }
+            long indexedNanos = System.nanoTime() - start;
+
+            System.out.println("n=" + n + "  PriorityQueue: " + (pQueueNanos / operations) + " ns/op"
+                    + "  IndexedPatientHeap: " + (indexedNanos / operations) + " ns/op");
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package scheduler;
+
+// A waiting list that can find its own patients by SSN. EmergencyRoomScheduler keeps no patient table of its own
+// for these (see CompactPatientHeap), so waiting patients aren't held as Patient objects twice over.
+public interface IndexedWaitingList extends WaitingList {
+
+    // True if a patient with this SSN is waiting
+    boolean contains(int ssn);
+
+    // The waiting patient with this SSN, or null
+    Patient find(int ssn);
+}
@@ -0,0 +1,205 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.function.LongConsumer;
+
+// Open-addressing hash table from an int key (SSN) to a long, built the same way as IntPatientMap
+// (linear probing, Fibonacci hashing, backward-shift deletion). Used for per-patient numbers such as admission
+// timestamps, where a HashMap<Integer, Long> would box both sides.
+// 0 is the "absent" value: get() returns 0 for missing keys and 0 can't be stored.
+public class IntLongMap {
+
+    private static final float MAX_LOAD = 0.5f;
+
+    private int[] keys;
+    private long[] values;  // 0 means the slot is empty
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+
+    // Constructor: room for expectedSize entries before the first resize
+    public IntLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public IntLongMap() {
+        this(16);
+    }
+
+
+    public int size() {return size;}
+    public boolean isEmpty() {return size == 0;}
+
+
+    // Value stored under key, or 0
+    public long get(int key) {
+        int slot = slot(key);
+        long value;
+        while ((value = values[slot]) != 0) {
+            if (keys[slot] == key) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+
+    // Stores value (non-zero) under key. Returns the previous value, or 0.
+    public long put(int key, long value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("IntLongMap uses 0 for absent keys and cannot store it");
+        }
+        int slot = slot(key);
+        long previous;
+        while ((previous = values[slot]) != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(values.length * 2);
+        }
+        return 0;
+    }
+
+
+    // Removes key. Returns the value that was stored there, or 0.
+    public long remove(int key) {
+        int slot = slot(key);
+        long value;
+        while ((value = values[slot]) != 0) {
+            if (keys[slot] == key) {
+                shiftBack(slot);
+                size--;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+
+    // Calls action with every stored value (in no particular order)
+    public void forEachValue(LongConsumer action) {
+        for (long value : values) {
+            if (value != 0) {
+                action.accept(value);
+            }
+        }
+    }
+
+
+    // Calls action with every key and its value (in no particular order). Don't add or remove keys from inside it.
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+
+
+    public void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+
+    // Backward-shift deletion, see IntPatientMap.shiftBack
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == 0) {
+                break;
+            }
+            int home = slot(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = 0;
+    }
+
+
+    private int slot(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testAgainstHashMap();
+    }
+
+
+    // Random puts / removes over a small key range (lots of collisions and probe-run shifting), checked against HashMap
+    public static void testAgainstHashMap() {
+        IntLongMap map = new IntLongMap();
+        HashMap<Integer, Long> reference = new HashMap<>();
+        Random random = new Random(5);
+        boolean matches = true;
+        for (int step = 0; step < 200_000 && matches; step++) {
+            int key = 100000000 + random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                Long expected = reference.remove(key);
+                matches = map.remove(key) == (expected == null ? 0 : expected);
+            }
+            else {
+                long value = 1 + random.nextInt(1_000_000);
+                Long expected = reference.put(key, value);
+                matches = map.put(key, value) == (expected == null ? 0 : expected);
+            }
+            int probe = 100000000 + random.nextInt(5000);
+            matches = matches && map.size() == reference.size() && map.get(probe) == reference.getOrDefault(probe, 0L);
+        }
+        if (matches) {System.out.println("Test Passed: IntLongMap matches HashMap over 200k random operations");}
+        else {System.out.println("Test Failed: IntLongMap diverged from HashMap");}
+    }
+}
@@ -0,0 +1,255 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+// Open-addressing hash table from an int key (SSN) to a Patient, with linear probing.
+// Keys stay primitive ints in one array and patients sit in a parallel array, so there is no Integer boxing
+// and no HashMap.Node per entry: a lookup is a hash, then a short scan of adjacent array slots.
+// Removal uses backward-shift deletion instead of tombstones, so probe runs never fill up with dead slots.
+public class IntPatientMap {
+
+    private static final float MAX_LOAD = 0.5f; // linear probing stays fast while at most half the slots are used
+
+    private int[] keys;         // SSN in each slot
+    private Patient[] values;   // null means the slot is empty
+    private int size;
+    private int mask;           // capacity - 1 (capacity is a power of two)
+    private int resizeAt;       // grow once size reaches this
+
+
+    // Constructor: room for expectedSize patients before the first resize
+    public IntPatientMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public IntPatientMap() {
+        this(16);
+    }
+
+
+    public int size() {return size;}
+    public boolean isEmpty() {return size == 0;}
+    public boolean containsKey(int key) {return get(key) != null;}
+
+
+    // Returns the patient stored under key, or null
+    public Patient get(int key) {
+        int slot = slot(key);
+        Patient value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+
+    // Stores patient under key. Returns the patient previously stored there, or null.
+    public Patient put(int key, Patient patient) {
+        if (patient == null) {
+            throw new IllegalArgumentException("IntPatientMap does not store null patients");
+        }
+        int slot = slot(key);
+        Patient value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                values[slot] = patient;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = patient;
+        if (++size >= resizeAt) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+
+    // Removes key. Returns the patient that was stored there, or null.
+    public Patient remove(int key) {
+        int slot = slot(key);
+        Patient value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                shiftBack(slot);
+                size--;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+
+    // Makes room for expectedSize entries in one step (used before bulk inserts)
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize >= resizeAt) {
+            int capacity = Integer.highestOneBit((int) (expectedSize / MAX_LOAD)) << 1;
+            rehash(capacity);
+        }
+    }
+
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+
+    // Backward-shift deletion: after emptying a slot, pull later entries of the same probe run back into the gap
+    // so every remaining key is still reachable from its home slot without tombstones.
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == null) {
+                break;
+            }
+            int home = slot(keys[slot]);
+            // entry can move into the gap only if its home slot is not cyclically between the gap and its current slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = null;
+    }
+
+
+    // Fibonacci hashing spreads consecutive SSNs across the table
+    private int slot(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Patient[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        Patient[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testPutGetRemove();
+        testAgainstHashMap();
+        //benchmarkAgainstHashMap();
+    }
+
+
+    public static void testPutGetRemove() {
+        IntPatientMap map = new IntPatientMap();
+        Patient red = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+        map.put(red.getSsn(), red);
+
+        if (map.get(888888888) == red && map.size() == 1) {System.out.println("Test Passed: Stored patient found by SSN");}
+        else {System.out.println("Test Failed: Stored patient not found by SSN");}
+
+        if (map.remove(888888888) == red && map.get(888888888) == null && map.isEmpty()) {System.out.println("Test Passed: Removed patient no longer found");}
+        else {System.out.println("Test Failed: Removed patient still found");}
+
+        //Edge Case: missing keys
+        if (map.get(123456789) == null && map.remove(123456789) == null) {System.out.println("Test Passed: Missing SSN returns null");}
+        else {System.out.println("Test Failed: Missing SSN returned a patient");}
+    }
+
+
+    // Random mix of put / remove / get checked against java.util.HashMap (covers resizes and backward shifts)
+    public static void testAgainstHashMap() {
+        IntPatientMap map = new IntPatientMap(4);
+        HashMap<Integer, Patient> reference = new HashMap<>();
+        Random random = new Random(7);
+        Patient[] patients = new Patient[2000];
+        for (int i = 0; i < patients.length; i++) {
+            patients[i] = new Patient("Pt" + i, 100000000 + random.nextInt(5000), "1/1/2000", "Addr", "555-555-5555", 2, 900, "Test");
+        }
+        boolean matches = true;
+        for (int step = 0; step < 200_000 && matches; step++) {
+            Patient patient = patients[random.nextInt(patients.length)];
+            int ssn = patient.getSsn();
+            switch (random.nextInt(3)) {
+                case 0: matches = map.put(ssn, patient) == reference.put(ssn, patient); break;
+                case 1: matches = map.remove(ssn) == reference.remove(ssn); break;
+                default: matches = map.get(ssn) == reference.get(ssn);
+            }
+            matches = matches && map.size() == reference.size();
+        }
+        if (matches) {System.out.println("Test Passed: IntPatientMap agrees with HashMap over 200k random operations");}
+        else {System.out.println("Test Failed: IntPatientMap disagrees with HashMap");}
+    }
+
+
+    // put / get / remove throughput against the HashMap<Integer, Patient> this class replaced
+    public static void benchmarkAgainstHashMap() {
+        int n = 1_000_000;
+        int rounds = 5; // first rounds warm the JIT, the last one is reported
+        Patient[] patients = new Patient[n];
+        Random random = new Random(11);
+        for (int i = 0; i < n; i++) {
+            patients[i] = new Patient("Pt" + i, 100000000 + random.nextInt(899999999), "1/1/2000", "Addr", "555-555-5555", 2, 900, "Bench");
+        }
+        long sink = 0;
+        long[] hashMapNanos = new long[3];
+        long[] intMapNanos = new long[3];
+        for (int round = 0; round < rounds; round++) {
+            HashMap<Integer, Patient> hashMap = new HashMap<>(101);
+            long start = System.nanoTime();
+            for (Patient patient : patients) {hashMap.put(patient.getSsn(), patient);}
+            hashMapNanos[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Patient patient : patients) {sink += hashMap.get(patient.getSsn()).getPriorityLevel();}
+            hashMapNanos[1] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Patient patient : patients) {hashMap.remove(patient.getSsn());}
+            hashMapNanos[2] = System.nanoTime() - start;
+
+            IntPatientMap intMap = new IntPatientMap(101);
+            start = System.nanoTime();
+            for (Patient patient : patients) {intMap.put(patient.getSsn(), patient);}
+            intMapNanos[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Patient patient : patients) {sink += intMap.get(patient.getSsn()).getPriorityLevel();}
+            intMapNanos[1] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Patient patient : patients) {intMap.remove(patient.getSsn());}
+            intMapNanos[2] = System.nanoTime() - start;
+        }
+        String[] ops = {"put", "get", "remove"};
+        for (int i = 0; i < ops.length; i++) {
+            System.out.println(ops[i] + ": HashMap " + (hashMapNanos[i] / n) + " ns/op  IntPatientMap " + (intMapNanos[i] / n) + " ns/op");
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+}
@@ -0,0 +1,162 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Fixed-memory histogram of non-negative long values (nanoseconds, usually), in the style of HdrHistogram.
+// Buckets are log-linear: values below 128 get exact buckets, above that every power-of-two range is split into
+// 64 equal sub-buckets, so any recorded value is reported to within 1.6% across the whole long range.
+// Recording is one array increment (no allocation, no search); percentiles walk the ~3.7k buckets.
+// Not thread-safe: record from one thread. Reads from another thread (e.g. JMX) may be slightly out of date.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;     // 128 exact values at the bottom
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;      // sub-buckets per power of two above that
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF + SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+
+    // Records one value. Negative values (e.g. from a clock that stepped back) count as 0.
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < min) {min = value;}
+        if (value > max) {max = value;}
+    }
+
+
+    public long getCount() {return totalCount;}
+    public long getMin() {return totalCount == 0 ? 0 : min;}
+    public long getMax() {return max;}
+    public double getMean() {return totalCount == 0 ? 0 : (double) sum / totalCount;}
+
+
+    // Value at or below which percentile% of the recorded values fall (e.g. 50, 99, 99.9). 0 if empty.
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+        long seen = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            seen += counts[index];
+            if (seen >= target) {
+                return Math.min(highestValueIn(index), max);
+            }
+        }
+        return max;
+    }
+
+
+    // Adds everything recorded in other to this histogram (e.g. merging per-thread or per-replication results)
+    public void add(LatencyHistogram other) {
+        for (int index = 0; index < BUCKETS; index++) {
+            counts[index] += other.counts[index];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        if (other.totalCount > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+
+    // Bucket for value: exact below 128, otherwise (power of two above 64) * 64 + top 7 bits of the value
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+
+    // Largest value that lands in bucket index
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_HALF;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+
+
+    @Override
+    public String toString() {
+        return "count=" + totalCount + " min=" + getMin() + " p50=" + getValueAtPercentile(50) + " p99=" + getValueAtPercentile(99)
+                + " p99.9=" + getValueAtPercentile(99.9) + " max=" + max;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testBucketBoundaries();
+        testPercentiles();
+    }
+
+
+    public static void testBucketBoundaries() {
+        boolean ordered = true;
+        int previous = -1;
+        long[] samples = {0, 1, 127, 128, 129, 255, 256, 1000, 1_000_000, 123_456_789_012L, Long.MAX_VALUE};
+        for (long value : samples) {
+            int index = indexOf(value);
+            long highest = highestValueIn(index);
+            boolean within = highest >= value && (value < SUB_BUCKET_COUNT ? highest == value : (highest - value) <= value / 63);
+            ordered = ordered && index >= previous && index < BUCKETS && within;
+            previous = index;
+        }
+        if (ordered) {System.out.println("Test Passed: Bucket indexes increase with value and stay within 1.6%");}
+        else {System.out.println("Test Failed: Bucket boundaries out of order or too coarse");}
+    }
+
+
+    public static void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000L); // 1 us .. 10 ms
+        }
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        if (Math.abs(p50 - 5_000_000) <= 5_000_000 / 60 && Math.abs(p99 - 9_900_000) <= 9_900_000 / 60
+                && histogram.getMax() == 10_000_000 && histogram.getMin() == 1000 && histogram.getCount() == 10_000) {
+            System.out.println("Test Passed: Percentiles within bucket precision (p50 " + p50 + ", p99 " + p99 + ")");
+        }
+        else {System.out.println("Test Failed: " + histogram);}
+
+        LatencyHistogram other = new LatencyHistogram();
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {other.record(random.nextInt(100));}
+        histogram.add(other);
+        if (histogram.getCount() == 20_000 && histogram.getMin() < 100 && histogram.getValueAtPercentile(25) < 100) {
+            System.out.println("Test Passed: Merged histograms combine counts");
+        }
+        else {System.out.println("Test Failed: Merge gave " + histogram);}
+    }
+}
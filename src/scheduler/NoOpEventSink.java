@@ -0,0 +1,10 @@
+package scheduler;
+
+// Event sink that ignores everything. For benchmarks, simulations and embedding the scheduler
+// where nobody reads the console.
+public final class NoOpEventSink implements SchedulerEventSink {
+
+    public static final NoOpEventSink INSTANCE = new NoOpEventSink();
+
+    private NoOpEventSink() {}
+}
@@ -1,25 +1,64 @@
 package scheduler;
 
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
 // Represents a patient in an Emergency Room Scheduler Scenerio.
 // Stores patient information including priority level, arrival time, treatment info, and personal details
 // Allows comparison, hashing, and formatting within my scheduler
+// Immutable: every field is final and checked once, when the patient is created (through Patient.builder() or the
+// constructors), so a patient in a waiting list can never hold a key that breaks its ordering. Re-triage makes
+// a copy (withPriorityLevel). The hash and the ordering key are worked out at construction too.
 
 
-public class Patient implements Comparable<Patient> {
+public final class Patient implements Comparable<Patient> {
 
     //Patient Detail Fields
-    private String name; // full name
-    private int ssn; //ssn
-    private String dateOfBirth; // MM/DD/YYYY Format
-    private String address;
-    private String phoneNumber;
-    private int priorityLevel; // 1- high:red   , 2- medium:yellow  3- low:blue
-    private int arrivalTime; // Military Time
-    private String treatmentDescription; // Situation Presented onsite, Plan of Action
+    private final String name; // full name
+    private final int ssn; //ssn
+    private final String dateOfBirth; // MM/DD/YYYY Format
+    private final String address;
+    private final String phoneNumber;
+    private final int priorityLevel; // 1- high:red   , 2- medium:yellow  3- low:blue
+    private final int arrivalTime; // Military Time, as entered at the desk (display only, it has no date)
+    private final long arrivalTimestamp; // Arrival as epoch millis: this, not arrivalTime, orders patients within a level
+    private final long admissionSequence; // Order the record was created in: breaks ties between equal arrival timestamps (FIFO)
+    private final String treatmentDescription; // Situation Presented onsite, Plan of Action
+    private final long orderKey; // priority level in the top 8 bits, arrival timestamp below: compareTo's first (and usually only) comparison
+    private final int hash; // hashCode(), from ssn and name
+
+    private static final AtomicLong nextSequence = new AtomicLong(); // shared by every patient record, so it works across schedulers
+    private static final long TIMESTAMP_MASK = (1L << 56) - 1;
+
+
+    // Constructor: military arrival time only. Without a date the arrival is taken to be on day 0
+    // (ArrivalClock.legacyTimestamp), so these patients still order by military time, wrapping at midnight.
+    // Real arrivals should come through ArrivalClock and the constructor below.
+    // Throws IllegalArgumentException for an SSN, priority level or arrival time the scheduler can't accept.
+    public Patient(String name, int ssn, String dateOfBirth, String address, String phoneNumber, int priorityLevel, int arrivalTime, String treatmentDescription) {
+        this(name, ssn, dateOfBirth, address, phoneNumber, priorityLevel, arrivalTime, legacyTimestamp(arrivalTime), treatmentDescription);
+    }
 
+    // Constructor: military time for display plus the full arrival timestamp (epoch millis, 0 to 2^56) used for ordering
+    public Patient(String name, int ssn, String dateOfBirth, String address, String phoneNumber, int priorityLevel, int arrivalTime,
+                   long arrivalTimestamp, String treatmentDescription) {
+        this(name, ssn, dateOfBirth, address, phoneNumber, priorityLevel, arrivalTime, arrivalTimestamp, nextSequence.getAndIncrement(), treatmentDescription);
+    }
 
-    // Constructor
-    public Patient(String name, int ssn, String dateOfBirth, String address, String phoneNumber, int priorityLevel, int arrivalTime, String treatmentDescription) {
+    private Patient(String name, int ssn, String dateOfBirth, String address, String phoneNumber, int priorityLevel, int arrivalTime,
+                    long arrivalTimestamp, long admissionSequence, String treatmentDescription) {
+        if (!isValidSsn(ssn)) {
+            throw new IllegalArgumentException("SSN must be exactly 9 digits: " + ssn);
+        }
+        if (!isValidPriorityLevel(priorityLevel)) {
+            throw new IllegalArgumentException("Priority level must be 1, 2 or 3: " + priorityLevel);
+        }
+        if (!isValidArrivalTime(arrivalTime)) {
+            throw new IllegalArgumentException("Arrival time must be military time between 1 and 2359: " + arrivalTime);
+        }
+        if (arrivalTimestamp < 0 || arrivalTimestamp > TIMESTAMP_MASK) {
+            throw new IllegalArgumentException("Arrival timestamp out of range: " + arrivalTimestamp);
+        }
         this.name = name;
         this.ssn = ssn;
         this.dateOfBirth = dateOfBirth;
@@ -27,7 +66,68 @@ public class Patient implements Comparable<Patient> {
         this.phoneNumber = phoneNumber;
         this.priorityLevel = priorityLevel;
         this.arrivalTime = arrivalTime;
+        this.arrivalTimestamp = arrivalTimestamp;
+        this.admissionSequence = admissionSequence;
         this.treatmentDescription = treatmentDescription;
+        this.orderKey = (long) priorityLevel << 56 | arrivalTimestamp;
+        this.hash = hash(ssn, name);
+    }
+
+
+    // A patient read back from storage, keeping their original sequence number. Patients created after this
+    // get later numbers, so a restarted scheduler still breaks ties in the original admission order.
+    static Patient restore(String name, int ssn, String dateOfBirth, String address, String phoneNumber, int priorityLevel, int arrivalTime,
+                           long arrivalTimestamp, long admissionSequence, String treatmentDescription) {
+        nextSequence.accumulateAndGet(admissionSequence + 1, Math::max);
+        return new Patient(name, ssn, dateOfBirth, address, phoneNumber, priorityLevel, arrivalTime, arrivalTimestamp, admissionSequence, treatmentDescription);
+    }
+
+
+    // Input rules every patient has to meet. The CLI, batch files and the HTTP server check fields with these
+    // first so they can say which one is wrong; anything that gets past them is still rejected on construction.
+    public static boolean isValidSsn(int ssn) {return ssn >= 100000000 && ssn <= 999999999;} // exactly 9 digits, no leading zero
+    public static boolean isValidPriorityLevel(int priorityLevel) {return priorityLevel >= 1 && priorityLevel <= 3;}
+    public static boolean isValidArrivalTime(int arrivalTime) {return arrivalTime >= 1 && arrivalTime <= 2359 && arrivalTime % 100 < 60;} // military time
+
+
+    public static Builder builder() {return new Builder();}
+
+    // Builds a patient field by field; build() checks everything at once. Without an arrival timestamp the
+    // military arrival time is used alone, as with the 8 argument constructor.
+    public static final class Builder {
+        private String name;
+        private int ssn;
+        private String dateOfBirth;
+        private String address;
+        private String phoneNumber;
+        private int priorityLevel;
+        private int arrivalTime;
+        private long arrivalTimestamp = -1; // not set
+        private String treatmentDescription;
+
+        private Builder() {}
+
+        public Builder name(String name) {this.name = name; return this;}
+        public Builder ssn(int ssn) {this.ssn = ssn; return this;}
+        public Builder dateOfBirth(String dateOfBirth) {this.dateOfBirth = dateOfBirth; return this;}
+        public Builder address(String address) {this.address = address; return this;}
+        public Builder phoneNumber(String phoneNumber) {this.phoneNumber = phoneNumber; return this;}
+        public Builder priorityLevel(int priorityLevel) {this.priorityLevel = priorityLevel; return this;}
+        public Builder arrivalTime(int arrivalTime) {this.arrivalTime = arrivalTime; return this;}
+        public Builder arrivalTimestamp(long arrivalTimestamp) {this.arrivalTimestamp = arrivalTimestamp; return this;}
+        public Builder treatmentDescription(String treatmentDescription) {this.treatmentDescription = treatmentDescription; return this;}
+
+        // Throws IllegalArgumentException naming the first field that isn't valid
+        public Patient build() {
+            long timestamp = arrivalTimestamp >= 0 ? arrivalTimestamp : legacyTimestamp(arrivalTime);
+            return new Patient(name, ssn, dateOfBirth, address, phoneNumber, priorityLevel, arrivalTime, timestamp, treatmentDescription);
+        }
+    }
+
+
+    // Day-0 timestamp for a bare military time. An invalid time maps to 0 here and is rejected by the constructor.
+    private static long legacyTimestamp(int arrivalTime) {
+        return isValidArrivalTime(arrivalTime) ? ArrivalClock.legacyTimestamp(arrivalTime) : 0;
     }
 
 
@@ -39,15 +139,30 @@ public class Patient implements Comparable<Patient> {
     public String getPhoneNumber() {return phoneNumber;}
     public int getPriorityLevel() {return priorityLevel;}
     public int getArrivalTime() {return arrivalTime;}
+    public long getArrivalTimestamp() {return arrivalTimestamp;}
+    public long getAdmissionSequence() {return admissionSequence;}
     public String getTreatmentDescription() {return treatmentDescription;}
 
+    // Priority level and arrival timestamp packed the way compareTo compares them, for structures that sort on primitives
+    long orderKey() {return orderKey;}
+
+
+    // Copy of this patient re-triaged to a new priority level. Everything else (including SSN, arrival and sequence) stays the same.
+    public Patient withPriorityLevel(int newPriorityLevel) {
+        return new Patient(name, ssn, dateOfBirth, address, phoneNumber, newPriorityLevel, arrivalTime, arrivalTimestamp, admissionSequence, treatmentDescription);
+    }
+
 
-    //Overrides HashCode() for enhanced hashing based on pt's unique identifiers ssn and name.
+    //Overrides HashCode() for enhanced hashing based on pt's unique identifiers ssn and name. Worked out once, in the constructor.
     @Override
     public int hashCode() {
+        return hash;
+    }
+
+    private static int hash(int ssn, String name) {
         int hash = 17; // small non zero constant helps initial hash be more unique // prevent clustering
         hash = 31 * hash + Integer.hashCode(ssn); // adds ssn contribution to hashcode
-        hash = 31 * hash + name.hashCode();       // adds pt name's contribution to hashcode
+        hash = 31 * hash + Objects.hashCode(name); // adds pt name's contribution to hashcode
         return hash;                              // final hashcode value. this will go into the hash function.
     }
 
@@ -56,22 +171,20 @@ public class Patient implements Comparable<Patient> {
     // Overrides to compare patients equality based on name and ssn.
     @Override
     public boolean equals(Object obj) {
-        if (obj == null || getClass() != obj.getClass())
-            return false; //checks if obj is null, or obj is a Patient Class type
         if (this == obj) return true;  // this checks to see if they are literally identical objs in memory.
-        Patient patient = (Patient) obj; // getclass() tells us they are both Patients, so we cast obj to get pt fields
-        return this.ssn == patient.ssn && this.name.equals(patient.name); //checks to see if ssn & name between the 2 are the same values. returns t/f
+        if (!(obj instanceof Patient patient))
+            return false; //checks if obj is null, or not a Patient (the class is final, so no subclasses to worry about)
+        // the cached hashes settle most mismatches before any string is compared
+        return this.ssn == patient.ssn && this.hash == patient.hash && Objects.equals(this.name, patient.name);
     }
 
     // Overriding compareTo to prioritize based on priority level and then arrival time.
     //Critical Method in Ordering of our PriorityQueue / Wait List.
     @Override
     public int compareTo(Patient other) {
-        int priorityComparison = Integer.compare(this.priorityLevel, other.priorityLevel);
-        if (priorityComparison == 0) {
-            return Integer.compare(this.arrivalTime, other.arrivalTime); // If priority levels match, use arrival time
-        }
-        return priorityComparison;
+        // Priority level then arrival timestamp in one long comparison; only exact ties look at the sequence number
+        int comparison = Long.compare(this.orderKey, other.orderKey);
+        return comparison != 0 ? comparison : Long.compare(this.admissionSequence, other.admissionSequence);
     }
 
     @Override
@@ -101,6 +214,7 @@ public class Patient implements Comparable<Patient> {
         //testHashCode();   //Done
         //testCompareTo();  //Done
         //testToString();   //Done
+        //testBuilder();    //Done
     }
 
 
@@ -164,7 +278,7 @@ public class Patient implements Comparable<Patient> {
     public static void testCompareTo() {
         //Test Case: Different Priority Levels
         Patient lowerPriorityPt = new Patient("testpt20", 982187888, "3/3/2001", "8700 Bear Den Drive", "444-780-5300", 3, 809, "Chest Pains + Shortness of Breath");
-        Patient higherPrioritypt = new Patient("testpt21", 48588877, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+        Patient higherPrioritypt = new Patient("testpt21", 485888770, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
         if (higherPrioritypt.compareTo(lowerPriorityPt) < 0) {
             System.out.println("Test Passed: Higher Priority Pt is considered less than lower priority pt in our MinPQ");
         } else {System.out.println("Test Failed: Higher priority Pt is not considered less than lower priority pt in our MinPQ");}
@@ -182,8 +296,7 @@ public class Patient implements Comparable<Patient> {
         if(clone2TimeAndPriority.compareTo(clone2TimeAndPriority) == 0){System.out.println("Test Passed: Clones of time and priority are considered equal in our method");}
         else{System.out.println("Test Failed: Clones of time and priority are NOT considered equal in our compare to Method.");}
 
-        //Test Cases for invalid inputs (negatives or 0's or incorrect lengths) are all handled in the runCommandLineInterface() method
-        // As it does not allow the user to enter invalid input.
+        //Test Cases for invalid inputs (negatives or 0's or incorrect lengths) are in testBuilder(): they can't be constructed at all.
 
     }
 
@@ -226,4 +339,38 @@ public class Patient implements Comparable<Patient> {
 
 
 
-}
\ No newline at end of file
+    //Builder makes the same patient as the constructor, and nothing with a bad key gets built by any route
+    public static void testBuilder() {
+        Patient built = Patient.builder().name("Red").ssn(888888888).dateOfBirth("3/3/2000").address("9000 Bear Den Drive")
+                .phoneNumber("444-787-5300").priorityLevel(1).arrivalTime(809).treatmentDescription("Chest Pains + Shortness of Breath").build();
+        Patient constructed = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+        if (built.equals(constructed) && built.hashCode() == constructed.hashCode() && built.orderKey() == constructed.orderKey()
+                && built.getAdmissionSequence() < constructed.getAdmissionSequence() && built.compareTo(constructed) < 0) {
+            System.out.println("Test Passed: Builder and constructor make the same patient");
+        }
+        else {System.out.println("Test Failed: Builder made " + built);}
+
+        Builder valid = Patient.builder().name("Blue").ssn(555555555).priorityLevel(3).arrivalTime(1130).arrivalTimestamp(1_700_000_000_000L);
+        Runnable[] invalid = {
+                () -> Patient.builder().name("Blue").ssn(55555555).priorityLevel(3).arrivalTime(1130).build(),   // 8 digit SSN
+                () -> Patient.builder().name("Blue").ssn(555555555).priorityLevel(0).arrivalTime(1130).build(),  // level 0
+                () -> Patient.builder().name("Blue").ssn(555555555).priorityLevel(3).arrivalTime(1160).build(),  // minute 60
+                () -> Patient.builder().name("Blue").ssn(555555555).priorityLevel(3).build(),                    // no arrival time
+                () -> Patient.builder().name("Blue").ssn(555555555).priorityLevel(3).arrivalTime(1130).arrivalTimestamp(1L << 56).build(),
+                () -> new Patient("Blue", 555555555, "5/5/2000", "1 Lake Road", "444-111-2222", 4, 811, "Sprained Ankle"),
+                () -> valid.build().withPriorityLevel(-1),
+        };
+        int rejected = 0;
+        for (Runnable attempt : invalid) {
+            try {
+                attempt.run();
+            } catch (IllegalArgumentException e) {
+                rejected++;
+            }
+        }
+        if (rejected == invalid.length && valid.build().getArrivalTimestamp() == 1_700_000_000_000L) {
+            System.out.println("Test Passed: Invalid SSN, level, arrival time and timestamp all rejected on construction");
+        }
+        else {System.out.println("Test Failed: only " + rejected + " of " + invalid.length + " invalid patients rejected");}
+    }
+}
@@ -0,0 +1,519 @@
+package scheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Permanent record of treated patients, so they can still be looked up after falling out of the recently treated cache.
+// Two memory-mapped files in one directory:
+//   patients.dat  header + append-only records: [int payload length][long offset of this SSN's previous visit, or -1][PatientCodec payload]
+//   patients.idx  header + on-disk open-addressing hash table of [int ssn][long offset of latest visit] slots
+// Appends and lookups are plain memory reads/writes on the mapped pages, no system calls. The index only points
+// at each SSN's latest visit; earlier visits are reached by following the previous-visit links.
+// The index is derived data: its header records how much of patients.dat it covers, so after a crash (or if the
+// file is deleted) open() indexes any records it missed. A single archive holds up to 2 GB of records.
+// Archives written before PatientCodec format 2 still open and read; the first append to one rewrites it in the
+// current format (records are never mixed within one file).
+// Plugged in as an event sink, it archives every treated patient. Not thread-safe, like the scheduler it belongs to.
+public class PatientArchive implements SchedulerEventSink, AutoCloseable {
+
+    private static final int DATA_MAGIC = 0x45525041;  // "ERPA"
+    private static final int INDEX_MAGIC = 0x45525049; // "ERPI"
+    private static final String DATA_FILE = "patients.dat";
+    private static final String INDEX_FILE = "patients.idx";
+    private static final String UPGRADE_DIRECTORY = "upgrade.tmp";
+    private static final int RECORD_HEADER = 12;        // int payload length + long previous visit offset
+    private static final int SLOT_BYTES = 12;           // int ssn + long record offset (0 = empty slot)
+    private static final int INITIAL_DATA_BYTES = 1 << 20;
+    private static final int INITIAL_INDEX_SLOTS = 1 << 12; // power of two so slots can use a mask
+    private static final long MAX_DATA_BYTES = Integer.MAX_VALUE; // one mapping per file
+
+    private final Path directory;
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private MappedByteBuffer data;
+    private MappedByteBuffer index;
+    private int dataVersion;    // PatientCodec format of the records in patients.dat
+    private int dataEnd;        // first free byte in patients.dat
+    private int indexSlots;
+    private int indexMask;
+    private int indexedPatients; // distinct SSNs
+    private int records;
+
+
+    private PatientArchive(Path directory) {
+        this.directory = directory;
+    }
+
+
+    // Opens (or creates) the archive in directory and brings its index up to date with the data file
+    public static PatientArchive open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        PatientArchive archive = new PatientArchive(directory);
+        archive.openData();
+        archive.openIndex();
+        return archive;
+    }
+
+
+    public int size() {return records;}
+    public int patientCount() {return indexedPatients;}
+    public long dataBytes() {return dataEnd;}
+
+
+    // ---------------------------------------------------------------- event sink
+
+    @Override
+    public void patientTreated(Patient patient) {
+        append(patient);
+    }
+
+
+    // Makes everything appended so far durable
+    @Override
+    public void flush() {
+        force();
+    }
+
+
+    // ---------------------------------------------------------------- appending and lookup
+
+    // Adds a visit to the archive. Returns the record's offset, usable with read().
+    public long append(Patient patient) {
+        if (dataVersion < PatientCodec.FORMAT_VERSION) {
+            upgradeData();
+        }
+        int needed = RECORD_HEADER + PatientCodec.maxEncodedSize(patient);
+        if (dataEnd + (long) needed > data.capacity()) {
+            growData(needed);
+        }
+        int slot = findSlot(patient.getSsn());
+        long previousVisit = slotOffset(slot);
+
+        int start = dataEnd;
+        ByteBuffer out = data.duplicate();
+        out.position(start + RECORD_HEADER);
+        PatientCodec.write(out, patient);
+        data.putInt(start, out.position() - start - RECORD_HEADER);
+        data.putLong(start + 4, previousVisit == 0 ? -1 : previousVisit);
+        dataEnd = out.position();
+        data.putLong(8, dataEnd); // publish the record only once it is complete
+        records++;
+
+        index.putInt(slotPosition(slot), patient.getSsn());
+        index.putLong(slotPosition(slot) + 4, start);
+        index.putLong(8, dataEnd); // data the index now covers
+        if (previousVisit == 0 && ++indexedPatients * 2 > indexSlots) {
+            growIndex();
+        }
+        return start;
+    }
+
+
+    // Latest archived visit of this SSN, or null if they were never archived
+    public Patient find(int ssn) {
+        long offset = slotOffset(findSlot(ssn));
+        return offset == 0 ? null : read(offset);
+    }
+
+
+    // Every archived visit of this SSN, most recent first
+    public List<Patient> visits(int ssn) {
+        ArrayList<Patient> visits = new ArrayList<>();
+        long offset = slotOffset(findSlot(ssn));
+        if (offset == 0) {
+            return visits;
+        }
+        while (offset >= 0) {
+            visits.add(read(offset));
+            offset = data.getLong((int) offset + 4);
+        }
+        return visits;
+    }
+
+
+    // Decodes the record at offset (as returned by append)
+    public Patient read(long offset) {
+        if (offset < PatientCodec.HEADER_BYTES || offset >= dataEnd) {
+            throw new IllegalArgumentException("No archive record at offset " + offset);
+        }
+        ByteBuffer in = data.duplicate();
+        in.position((int) offset + RECORD_HEADER);
+        return PatientCodec.read(in, dataVersion);
+    }
+
+
+    public void force() {
+        data.force();
+        index.force();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        force();
+        dataChannel.close();
+        indexChannel.close();
+    }
+
+
+    // ---------------------------------------------------------------- data file
+
+    private void openData() throws IOException {
+        dataChannel = FileChannel.open(directory.resolve(DATA_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = dataChannel.size() == 0;
+        data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(dataChannel.size(), INITIAL_DATA_BYTES));
+        if (created) {
+            PatientCodec.writeHeader(data, DATA_MAGIC, PatientCodec.HEADER_BYTES);
+        }
+        long end = PatientCodec.readHeader(data.duplicate().position(0), DATA_MAGIC, "patient archive: " + directory.resolve(DATA_FILE), 1);
+        dataVersion = PatientCodec.peekVersion(data.duplicate().position(0));
+        if (end < PatientCodec.HEADER_BYTES || end > data.capacity()) {
+            throw new IOException("Corrupt patient archive end offset " + end + " in " + directory.resolve(DATA_FILE));
+        }
+        dataEnd = (int) end;
+    }
+
+
+    // Doubles the data mapping until needed more bytes fit (the file grows with it)
+    private void growData(int needed) {
+        long capacity = data.capacity();
+        while (capacity < dataEnd + (long) needed) {
+            capacity *= 2;
+        }
+        if (dataEnd + (long) needed > MAX_DATA_BYTES) {
+            throw new IllegalStateException("Patient archive is full (" + dataEnd + " bytes); start a new archive directory");
+        }
+        try {
+            data.force();
+            data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, MAX_DATA_BYTES));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow patient archive", e);
+        }
+    }
+
+
+    // Rewrites an archive from an older format in the current one: every record, in order, into a fresh archive
+    // beside this one (which rebuilds the previous-visit links and the index), then moved over it
+    private void upgradeData() {
+        Path temp = directory.resolve(UPGRADE_DIRECTORY);
+        try {
+            if (Files.exists(temp)) {
+                deleteDirectory(temp); // left over from an upgrade that crashed
+            }
+            try (PatientArchive upgraded = PatientArchive.open(temp)) {
+                int offset = PatientCodec.HEADER_BYTES;
+                while (offset < dataEnd) {
+                    upgraded.append(read(offset));
+                    offset += RECORD_HEADER + data.getInt(offset);
+                }
+            }
+            dataChannel.close();
+            indexChannel.close();
+            Files.move(temp.resolve(DATA_FILE), directory.resolve(DATA_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(temp.resolve(INDEX_FILE), directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            deleteDirectory(temp);
+            openData();
+            openIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not upgrade patient archive " + directory, e);
+        }
+    }
+
+
+    // ---------------------------------------------------------------- index file
+
+    // Maps the index, rebuilding it if missing or unreadable, then indexes any records written after it was last updated
+    private void openIndex() throws IOException {
+        Path indexPath = directory.resolve(INDEX_FILE);
+        long covered = -1;
+        if (Files.exists(indexPath)) {
+            indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long slots = (indexChannel.size() - PatientCodec.HEADER_BYTES) / SLOT_BYTES;
+            if (slots >= INITIAL_INDEX_SLOTS && Long.bitCount(slots) == 1) {
+                index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+                try {
+                    covered = PatientCodec.readHeader(index.duplicate().position(0), INDEX_MAGIC, "patient archive index");
+                    setIndexSlots((int) slots);
+                } catch (IOException unreadable) {
+                    covered = -1;
+                }
+            }
+            if (covered < 0 || covered > dataEnd) {
+                indexChannel.close();
+                covered = -1;
+            }
+        }
+        if (covered < 0) {
+            createIndex(indexPath, INITIAL_INDEX_SLOTS);
+            covered = PatientCodec.HEADER_BYTES;
+        }
+        indexedPatients = 0;
+        records = 0;
+        countAndIndex(covered);
+    }
+
+
+    // Walks every record: counts them, and indexes the ones at or after from
+    private void countAndIndex(long from) {
+        for (int slot = 0; slot < indexSlots; slot++) {
+            if (slotOffset(slot) != 0) {
+                indexedPatients++;
+            }
+        }
+        int offset = PatientCodec.HEADER_BYTES;
+        while (offset < dataEnd) {
+            int length = data.getInt(offset);
+            if (offset >= from) {
+                int ssn = data.getInt(offset + RECORD_HEADER);
+                int slot = findSlot(ssn);
+                boolean newPatient = slotOffset(slot) == 0;
+                index.putInt(slotPosition(slot), ssn);
+                index.putLong(slotPosition(slot) + 4, offset);
+                if (newPatient && ++indexedPatients * 2 > indexSlots) {
+                    growIndex();
+                }
+            }
+            records++;
+            offset += RECORD_HEADER + length;
+        }
+        index.putLong(8, dataEnd);
+    }
+
+
+    private void createIndex(Path indexPath, int slots) throws IOException {
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, PatientCodec.HEADER_BYTES + (long) slots * SLOT_BYTES);
+        PatientCodec.writeHeader(index, INDEX_MAGIC, PatientCodec.HEADER_BYTES);
+        setIndexSlots(slots);
+    }
+
+
+    // Rehashes into an index twice the size, written beside the old one and moved over it
+    private void growIndex() {
+        MappedByteBuffer old = index;
+        int oldSlots = indexSlots;
+        FileChannel oldChannel = indexChannel;
+        Path indexPath = directory.resolve(INDEX_FILE);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try {
+            createIndex(temp, oldSlots * 2);
+            for (int slot = 0; slot < oldSlots; slot++) {
+                int position = PatientCodec.HEADER_BYTES + slot * SLOT_BYTES;
+                long offset = old.getLong(position + 4);
+                if (offset != 0) {
+                    int ssn = old.getInt(position);
+                    int newSlot = findSlot(ssn);
+                    index.putInt(slotPosition(newSlot), ssn);
+                    index.putLong(slotPosition(newSlot) + 4, offset);
+                }
+            }
+            index.putLong(8, old.getLong(8));
+            index.force();
+            oldChannel.close();
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow patient archive index", e);
+        }
+    }
+
+
+    private void setIndexSlots(int slots) {
+        indexSlots = slots;
+        indexMask = slots - 1;
+    }
+
+
+    // Slot holding ssn, or the empty slot where it would go (linear probing, same hash as IntPatientMap)
+    private int findSlot(int ssn) {
+        int h = ssn * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & indexMask;
+        while (true) {
+            int position = slotPosition(slot);
+            if (index.getLong(position + 4) == 0 || index.getInt(position) == ssn) {
+                return slot;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+    }
+
+
+    private static int slotPosition(int slot) {
+        return PatientCodec.HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+
+    private long slotOffset(int slot) {
+        return index.getLong(slotPosition(slot) + 4);
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) throws IOException {
+        testAppendAndFind();
+        testReopen();
+        testOpenVersion1();
+        //benchmarkArchive();
+    }
+
+
+    public static void testAppendAndFind() throws IOException {
+        Path directory = Files.createTempDirectory("archive-test");
+        try (PatientArchive archive = PatientArchive.open(directory)) {
+            Patient green = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms");
+            Patient red = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+            Patient greenAgain = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 2, 1400, "Sprained Ankle");
+            archive.append(green);
+            archive.append(red);
+            archive.append(greenAgain);
+
+            Patient found = archive.find(777777777);
+            List<Patient> visits = archive.visits(777777777);
+            if (found != null && found.getTreatmentDescription().equals("Sprained Ankle") && visits.size() == 2
+                    && visits.get(1).getTreatmentDescription().equals("Flu Like Symptoms")) {
+                System.out.println("Test Passed: Archive finds latest visit and full visit history by SSN");
+            }
+            else {System.out.println("Test Failed: found " + found + " visits " + visits.size());}
+
+            if (archive.find(123456789) == null && archive.visits(123456789).isEmpty() && archive.size() == 3 && archive.patientCount() == 2) {
+                System.out.println("Test Passed: Unknown SSN not found; 3 records for 2 patients");
+            }
+            else {System.out.println("Test Failed: size " + archive.size() + " patients " + archive.patientCount());}
+        }
+        deleteDirectory(directory);
+    }
+
+
+    // Enough patients to grow both files, then reopen; then delete the index and reopen again so it is rebuilt
+    public static void testReopen() throws IOException {
+        Path directory = Files.createTempDirectory("archive-test");
+        int n = 20_000;
+        try (PatientArchive archive = PatientArchive.open(directory)) {
+            for (int i = 0; i < n; i++) {
+                archive.append(new Patient("Patient " + i, 100000000 + i, "1/1/2000", "Addr", "555-555-5555", 1 + i % 3, ArrivalGenerator.toMilitaryTime(i % 1440), "Visit " + i));
+            }
+        }
+        boolean reopened;
+        try (PatientArchive archive = PatientArchive.open(directory)) {
+            reopened = archive.size() == n && archive.patientCount() == n && archive.find(100000000 + 12345).getName().equals("Patient 12345");
+        }
+        Files.delete(directory.resolve(INDEX_FILE));
+        boolean rebuilt;
+        try (PatientArchive archive = PatientArchive.open(directory)) {
+            rebuilt = archive.size() == n && archive.patientCount() == n && archive.find(100000000 + n - 1).getName().equals("Patient " + (n - 1));
+        }
+        if (reopened && rebuilt) {System.out.println("Test Passed: Archive survives reopening and rebuilds a missing index");}
+        else {System.out.println("Test Failed: reopened " + reopened + " rebuilt " + rebuilt);}
+        deleteDirectory(directory);
+    }
+
+
+    // An archive written in PatientCodec format 1 (no timestamp or sequence) opens and reads, and the first append
+    // upgrades it to the current format with its visit history intact
+    public static void testOpenVersion1() throws IOException {
+        Path directory = Files.createTempDirectory("archive-test");
+        Patient[] visits = {
+                new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"),
+                new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"),
+                new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 2, 1400, "Sprained Ankle")};
+        writeVersion1Data(directory.resolve(DATA_FILE), visits);
+
+        boolean readable;
+        try (PatientArchive archive = PatientArchive.open(directory)) {
+            List<Patient> green = archive.visits(777777777);
+            readable = archive.size() == 3 && archive.patientCount() == 2 && green.size() == 2
+                    && green.get(0).getTreatmentDescription().equals("Sprained Ankle") && green.get(1).getArrivalTime() == 805
+                    && archive.find(888888888).getName().equals("Red");
+            archive.append(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 1, 1830, "Broken Wrist"));
+        }
+        boolean upgraded;
+        try (PatientArchive archive = PatientArchive.open(directory)) {
+            List<Patient> green = archive.visits(777777777);
+            upgraded = archive.dataVersion == PatientCodec.FORMAT_VERSION && archive.size() == 4 && green.size() == 3
+                    && green.get(0).getTreatmentDescription().equals("Broken Wrist") && green.get(2).getTreatmentDescription().equals("Flu Like Symptoms")
+                    && archive.find(888888888).getPriorityLevel() == 1 && !Files.exists(directory.resolve(UPGRADE_DIRECTORY));
+        }
+        if (readable && upgraded) {System.out.println("Test Passed: Format 1 archive opens, reads, and is upgraded by the next append");}
+        else {System.out.println("Test Failed: readable " + readable + " upgraded " + upgraded);}
+        deleteDirectory(directory);
+    }
+
+    // patients.dat as format 1 wrote it: version 1 header, and records without the arrival timestamp and sequence
+    private static void writeVersion1Data(Path file, Patient[] visits) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(1 << 12);
+        out.putInt(DATA_MAGIC).putInt(1).putLong(0);
+        ByteBuffer encoded = ByteBuffer.allocate(1 << 10);
+        ArrayList<Integer> ssns = new ArrayList<>();
+        ArrayList<Integer> offsets = new ArrayList<>();
+        for (Patient visit : visits) {
+            encoded.clear();
+            PatientCodec.write(encoded, visit);
+            encoded.flip();
+            int previous = ssns.lastIndexOf(visit.getSsn());
+            int start = out.position();
+            out.putInt(encoded.remaining() - 16).putLong(previous < 0 ? -1 : offsets.get(previous));
+            out.put(encoded.array(), 0, 12).put(encoded.array(), 28, encoded.remaining() - 28); // ssn, level, military time, then the text
+            ssns.add(visit.getSsn());
+            offsets.add(start);
+        }
+        out.putLong(8, out.position());
+        Files.write(file, Arrays.copyOf(out.array(), out.position()));
+    }
+
+
+    // Appends one million patients, then looks up one million random SSNs
+    public static void benchmarkArchive() throws IOException {
+        int n = 1_000_000;
+        Patient[] patients = new Patient[n];
+        for (int i = 0; i < n; i++) {
+            patients[i] = new Patient("Patient " + i, 100000000 + i, "1/1/2000", "123 Main Street", "555-555-5555", 1 + i % 3, ArrivalGenerator.toMilitaryTime(i % 1440), "Chest Pains");
+        }
+        Random random = new Random(1);
+        for (int round = 0; round < 3; round++) {
+            Path directory = Files.createTempDirectory("archive-bench");
+            try (PatientArchive archive = PatientArchive.open(directory)) {
+                long start = System.nanoTime();
+                for (Patient patient : patients) {
+                    archive.append(patient);
+                }
+                archive.force();
+                long writeNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long checksum = 0;
+                for (int i = 0; i < n; i++) {
+                    checksum += archive.find(100000000 + random.nextInt(n)).getArrivalTime();
+                }
+                long readNanos = System.nanoTime() - start;
+                System.out.println("1M patients, " + archive.dataBytes() / n + " bytes each: write " + (long) (n / (writeNanos / 1e9)) + " records/s, random read by SSN "
+                        + (long) (n / (readNanos / 1e9)) + " records/s (checksum " + checksum + ")");
+            }
+            deleteDirectory(directory);
+        }
+    }
+
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,179 @@
+package scheduler;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Cold half of CompactPatientHeap: full patient records (name, date of birth, address, phone, treatment) kept as
+// PatientCodec bytes in one growable byte array and found by SSN. Scheduling never reads these; a record is only
+// decoded back into a Patient when someone needs the whole patient (treatment, lookups, viewPatientDetails).
+// A waiting patient costs one record (28 fixed bytes plus the UTF-8 text) and an index slot here, against a Patient
+// object, its five Strings and their arrays (see CompactPatientHeap.benchmarkMemory).
+// Removing or replacing a record leaves its old bytes behind as garbage; once garbage is more than half the
+// array the live records are copied down into a fresh one.
+public class PatientDetailStore {
+
+    private static final int INITIAL_BYTES = 4096;
+    private static final int MIN_COMPACT_BYTES = 64 * 1024; // don't bother compacting small arrays
+
+    private byte[] slab = new byte[INITIAL_BYTES];
+    private int end;      // bytes in use (live records + garbage)
+    private int garbage;  // bytes of removed or replaced records
+    private IntLongMap index = new IntLongMap(); // SSN -> offset << 32 | length (never 0: records are at least 28 bytes)
+
+
+    public int size() {return index.size();}
+    public boolean contains(int ssn) {return index.get(ssn) != 0;}
+
+    // Bytes held by records, live and garbage (the array itself may be up to twice this)
+    public int usedBytes() {return end;}
+
+
+    // Stores (or replaces) the record for this patient's SSN
+    public void put(Patient patient) {
+        int maxBytes = PatientCodec.maxEncodedSize(patient);
+        if (slab.length - end < maxBytes) {
+            grow(maxBytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(slab, end, slab.length - end);
+        PatientCodec.write(buffer, patient);
+        int length = buffer.position() - end;
+        long previous = index.put(patient.getSsn(), (long) end << 32 | length);
+        end += length;
+        if (previous != 0) {
+            release(previous);
+        }
+    }
+
+
+    // Decodes the patient with this SSN, or returns null
+    public Patient get(int ssn) {
+        long location = index.get(ssn);
+        if (location == 0) {
+            return null;
+        }
+        return PatientCodec.read(ByteBuffer.wrap(slab, (int) (location >>> 32), (int) location));
+    }
+
+
+    // Drops the record for this SSN. Returns false if there was none.
+    public boolean remove(int ssn) {
+        long location = index.remove(ssn);
+        if (location == 0) {
+            return false;
+        }
+        release(location);
+        return true;
+    }
+
+
+    public void clear() {
+        index.clear();
+        end = 0;
+        garbage = 0;
+    }
+
+
+    private void release(long location) {
+        garbage += (int) location;
+        if (garbage > end / 2 && end > MIN_COMPACT_BYTES) {
+            compact(slab.length);
+        }
+    }
+
+
+    // Room for at least `needed` more bytes: compact if that frees enough, otherwise double
+    private void grow(int needed) {
+        int live = end - garbage;
+        long capacity = slab.length;
+        while (capacity - live < needed || capacity < 2L * live) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Patient detail store is full (2 GB)");
+        }
+        compact((int) capacity);
+    }
+
+
+    // Copies the live records into a new array of the given size, in index order, and repoints the index
+    private void compact(int capacity) {
+        byte[] old = slab;
+        byte[] fresh = new byte[capacity];
+        IntLongMap moved = new IntLongMap(index.size());
+        int[] position = {0};
+        index.forEach((ssn, location) -> {
+            int length = (int) location;
+            System.arraycopy(old, (int) (location >>> 32), fresh, position[0], length);
+            moved.put(ssn, (long) position[0] << 32 | length);
+            position[0] += length;
+        });
+        slab = fresh;
+        index = moved;
+        end = position[0];
+        garbage = 0;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testPutGetRemove();
+        testChurnCompacts();
+    }
+
+
+    public static void testPutGetRemove() {
+        PatientDetailStore store = new PatientDetailStore();
+        Patient red = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+        Patient green = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms");
+        store.put(red);
+        store.put(green);
+        Patient redCopy = store.get(888888888);
+        store.put(red.withPriorityLevel(2));
+        boolean removed = store.remove(777777777);
+        if (redCopy.toString().equals(red.toString()) && redCopy.getAdmissionSequence() == red.getAdmissionSequence()
+                && store.get(888888888).getPriorityLevel() == 2 && removed && store.get(777777777) == null
+                && !store.remove(777777777) && store.size() == 1) {
+            System.out.println("Test Passed: Detail store round trips, replaces and removes records by SSN");
+        }
+        else {System.out.println("Test Failed: Detail store returned " + redCopy);}
+    }
+
+
+    // Many patients coming and going: the array stays bounded by compaction and every live record stays readable
+    public static void testChurnCompacts() {
+        PatientDetailStore store = new PatientDetailStore();
+        ArrivalGenerator generator = new ArrivalGenerator(9, 50_000);
+        Random random = new Random(9);
+        IntPatientMap live = new IntPatientMap(4096);
+        for (int i = 0; i < 200_000; i++) {
+            if (live.size() < 2_000 || random.nextBoolean()) {
+                Patient patient = generator.next();
+                store.put(patient);
+                live.put(patient.getSsn(), patient);
+            }
+            else {
+                int ssn = ArrivalGenerator.ssnFor(random.nextInt(i));
+                if (store.remove(ssn) != (live.remove(ssn) != null)) {
+                    System.out.println("Test Failed: Store and reference disagree about SSN " + ssn);
+                    return;
+                }
+            }
+        }
+        boolean matches = true;
+        for (int i = 0; i < 200_000 && matches; i++) {
+            int ssn = ArrivalGenerator.ssnFor(i);
+            Patient expected = live.get(ssn);
+            Patient stored = store.get(ssn);
+            matches = expected == null ? stored == null : stored != null && stored.getName().equals(expected.getName());
+        }
+        if (matches && store.size() == live.size() && store.slab.length <= 4 * Math.max(store.usedBytes(), INITIAL_BYTES)) {
+            System.out.println("Test Passed: " + store.size() + " live records readable after churn, " + store.slab.length / 1024 + " KB array");
+        }
+        else {System.out.println("Test Failed: " + store.size() + " vs " + live.size() + " live, array " + store.slab.length + " for " + store.usedBytes());}
+    }
+}
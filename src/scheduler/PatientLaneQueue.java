@@ -0,0 +1,310 @@
+package scheduler;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+// Waiting list with one FIFO lane per priority level (1, 2, 3) instead of a general heap.
+// Priority only takes three values and within a level the order is just arrival time, so each lane is a
+// ring buffer in arrival order: treating takes the head of the first non-empty lane and admitting appends to a tail.
+// Both are O(1) and allocate nothing (apart from a lane doubling its array when full).
+// A patient admitted out of arrival order (e.g. a late-entered walk-in) is slotted back into place by shifting
+// the few later arrivals at the tail, so ordering matches the heap exactly.
+public class PatientLaneQueue implements WaitingList {
+
+    private static final int LEVELS = 3;
+    private static final int DEFAULT_LANE_CAPACITY = 16; // power of two so ring indices can use a mask
+
+    private final Patient[][] lanes = new Patient[LEVELS][]; // lanes[level - 1] is a ring buffer
+    private final int[] heads = new int[LEVELS];             // index of the first (longest waiting) patient per lane
+    private final int[] counts = new int[LEVELS];            // patients waiting per lane
+    private int size;
+
+
+    //Constructor: three empty lanes
+    public PatientLaneQueue() {
+        for (int lane = 0; lane < LEVELS; lane++) {
+            lanes[lane] = new Patient[DEFAULT_LANE_CAPACITY];
+        }
+    }
+
+
+    @Override public int size() {return size;}
+    @Override public boolean isEmpty() {return size == 0;}
+
+    // Number of patients waiting at one priority level (1-3)
+    public int laneSize(int priorityLevel) {return counts[laneOf(priorityLevel)];}
+
+
+    @Override
+    public boolean add(Patient patient) {
+        int lane = laneOf(patient.getPriorityLevel());
+        Patient[] ring = lanes[lane];
+        if (counts[lane] == ring.length) {
+            ring = grow(lane);
+        }
+        int mask = ring.length - 1;
+        int slot = (heads[lane] + counts[lane]) & mask;
+        // Normal case: patient arrived last, loop body never runs. Otherwise shift later arrivals back one slot.
+        while (slot != heads[lane]) {
+            int previous = (slot - 1) & mask;
+            if (ring[previous].compareTo(patient) <= 0) { // same lane, so this compares arrival timestamp + sequence
+                break;
+            }
+            ring[slot] = ring[previous];
+            slot = previous;
+        }
+        ring[slot] = patient;
+        counts[lane]++;
+        size++;
+        return true;
+    }
+
+
+    // Lanes already admit in O(1), so a batch is just a loop
+    @Override
+    public void addAll(Collection<Patient> patients) {
+        for (Patient patient : patients) {
+            add(patient);
+        }
+    }
+
+
+    @Override
+    public Patient peek() {
+        int lane = nextLane();
+        return lane < 0 ? null : lanes[lane][heads[lane]];
+    }
+
+
+    @Override
+    public Patient poll() {
+        int lane = nextLane();
+        if (lane < 0) {
+            return null;
+        }
+        Patient[] ring = lanes[lane];
+        Patient patient = ring[heads[lane]];
+        ring[heads[lane]] = null;
+        heads[lane] = (heads[lane] + 1) & (ring.length - 1);
+        counts[lane]--;
+        size--;
+        return patient;
+    }
+
+
+    // Lane (0 = level 1) whose head is treated next, or -1 if every lane is empty.
+    // Strict priority: the first non-empty lane. AgingLaneQueue overrides this to let long waits jump ahead.
+    int nextLane() {
+        for (int lane = 0; lane < LEVELS; lane++) {
+            if (counts[lane] > 0) {
+                return lane;
+            }
+        }
+        return -1;
+    }
+
+
+    // Patient offset places behind the head of a lane (0 = level 1; offset 0 is the longest waiting), or null if the lane is shorter than that
+    Patient lanePatient(int lane, int offset) {
+        Patient[] ring = lanes[lane];
+        return offset >= counts[lane] ? null : ring[(heads[lane] + offset) & (ring.length - 1)];
+    }
+
+
+    // O(lane size): finds the patient by SSN in their lane and closes the gap
+    @Override
+    public boolean remove(Patient patient) {
+        int lane = laneOf(patient.getPriorityLevel());
+        Patient[] ring = lanes[lane];
+        int mask = ring.length - 1;
+        for (int i = 0; i < counts[lane]; i++) {
+            int slot = (heads[lane] + i) & mask;
+            if (ring[slot].getSsn() == patient.getSsn()) {
+                for (int j = i; j < counts[lane] - 1; j++) {
+                    ring[(heads[lane] + j) & mask] = ring[(heads[lane] + j + 1) & mask];
+                }
+                ring[(heads[lane] + counts[lane] - 1) & mask] = null;
+                counts[lane]--;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    // Re-triage moves the patient to their new lane, slotted in by arrival time
+    @Override
+    public boolean replace(Patient waiting, Patient updated) {
+        if (!remove(waiting)) {
+            return false;
+        }
+        return add(updated);
+    }
+
+
+    // Iterates in true triage order: level 1 lane first, then 2, then 3, each in arrival order
+    @Override
+    public Iterator<Patient> iterator() {
+        return new Iterator<Patient>() {
+            private int lane = 0;
+            private int offset = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (lane < LEVELS && offset >= counts[lane]) {
+                    lane++;
+                    offset = 0;
+                }
+                return lane < LEVELS;
+            }
+
+            @Override
+            public Patient next() {
+                if (!hasNext()) {throw new NoSuchElementException();}
+                Patient[] ring = lanes[lane];
+                return ring[(heads[lane] + offset++) & (ring.length - 1)];
+            }
+        };
+    }
+
+
+    // Strict lanes already iterate in treatment order
+    @Override
+    public Iterator<Patient> orderedIterator() {
+        return iterator();
+    }
+
+
+    private static int laneOf(int priorityLevel) {
+        if (priorityLevel < 1 || priorityLevel > LEVELS) {
+            throw new IllegalArgumentException("Priority level must be 1, 2 or 3: " + priorityLevel);
+        }
+        return priorityLevel - 1;
+    }
+
+
+    // Doubles a full lane, unwrapping the ring so the head lands at index 0
+    private Patient[] grow(int lane) {
+        Patient[] old = lanes[lane];
+        Patient[] bigger = new Patient[old.length * 2];
+        int head = heads[lane];
+        int firstPart = old.length - head;
+        System.arraycopy(old, head, bigger, 0, firstPart);
+        System.arraycopy(old, 0, bigger, firstPart, head);
+        lanes[lane] = bigger;
+        heads[lane] = 0;
+        return bigger;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testLaneOrder();
+        testMatchesHeap();
+        //benchmarkAgainstHeap();
+    }
+
+
+    public static void testLaneOrder() {
+        PatientLaneQueue lanes = new PatientLaneQueue();
+        lanes.add(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        lanes.add(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High"));
+        lanes.add(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"));
+        lanes.add(new Patient("Late Entered Red", 111111111, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 700, "Chest Pains"));
+
+        StringBuilder iterated = new StringBuilder();
+        for (Patient patient : lanes) {iterated.append(patient.getName()).append(",");}
+        String polled = lanes.poll().getName() + "," + lanes.poll().getName() + "," + lanes.poll().getName() + "," + lanes.poll().getName() + ",";
+        if (polled.equals("Late Entered Red,Red,Yellow,Green,") && iterated.toString().equals(polled)) {
+            System.out.println("Test Passed: Lanes poll and iterate in priority then arrival order");
+        }
+        else {System.out.println("Test Failed: polled " + polled + " iterated " + iterated);}
+
+        if (lanes.poll() == null && lanes.isEmpty()) {System.out.println("Test Passed: Empty lanes poll null");}
+        else {System.out.println("Test Failed: Empty lanes returned a patient");}
+    }
+
+
+    // Random adds / polls / removes / re-triages, checked step by step against IndexedPatientHeap
+    public static void testMatchesHeap() {
+        PatientLaneQueue lanes = new PatientLaneQueue();
+        IndexedPatientHeap heap = new IndexedPatientHeap();
+        Random random = new Random(3);
+        int nextSsn = 100000000;
+        HashSet<Integer> usedArrivals = new HashSet<>();
+        boolean matches = true;
+        for (int step = 0; step < 100_000 && matches; step++) {
+            int action = random.nextInt(10);
+            if (action < 5) {
+                // mostly increasing arrival times with some late entries, unique per patient so the order is total
+                int arrival = random.nextInt(5) == 0 ? step * 2 - 1 - 2 * random.nextInt(50) : step * 2;
+                while (!usedArrivals.add(arrival)) {arrival -= 2;}
+                Patient patient = new Patient("Pt", nextSsn++, "1/1/2000", "Addr", "555-555-5555", 1 + random.nextInt(3), 1200, 1_000_000L + arrival, "Test");
+                lanes.add(patient);
+                heap.add(patient);
+            }
+            else if (action < 8) {
+                matches = lanes.poll() == heap.poll();
+            }
+            else if (!heap.isEmpty()) {
+                Patient target = heap.get(100000000 + random.nextInt(nextSsn - 100000000));
+                if (target != null) {
+                    if (action == 8) {
+                        matches = lanes.remove(target) && heap.remove(target);
+                    }
+                    else {
+                        Patient updated = target.withPriorityLevel(1 + random.nextInt(3));
+                        matches = lanes.replace(target, updated) && heap.replace(target, updated);
+                    }
+                }
+            }
+            matches = matches && lanes.size() == heap.size() && lanes.peek() == heap.peek();
+        }
+        if (matches) {System.out.println("Test Passed: Lane queue matches the indexed heap over 100k random operations");}
+        else {System.out.println("Test Failed: Lane queue diverged from the indexed heap");}
+    }
+
+
+    // One million patient arrival trace through both waiting lists: admit everyone in arrival order with a
+    // treatment after every other admission (so the list keeps growing), then treat whoever is left.
+    public static void benchmarkAgainstHeap() {
+        int n = 1_000_000;
+        Random random = new Random(1);
+        Patient[] trace = new Patient[n];
+        for (int i = 0; i < n; i++) {
+            int roll = random.nextInt(10);
+            int level = roll < 1 ? 1 : roll < 4 ? 2 : 3; // 10% level 1, 30% level 2, 60% level 3
+            trace[i] = new Patient("Pt" + i, 100000000 + i, "1/1/2000", "Addr", "555-555-5555", level, ArrivalGenerator.toMilitaryTime((int) ((long) i * 1439 / n)), "Bench");
+        }
+        for (int round = 0; round < 3; round++) {
+            long heapNanos = replay(new IndexedPatientHeap(), trace);
+            long laneNanos = replay(new PatientLaneQueue(), trace);
+            System.out.println("1M patient trace: IndexedPatientHeap " + heapNanos / 1_000_000 + " ms ("
+                    + heapNanos / (2L * n) + " ns/op)  PatientLaneQueue " + laneNanos / 1_000_000 + " ms (" + laneNanos / (2L * n) + " ns/op)");
+        }
+    }
+
+
+    private static long replay(WaitingList waitingList, Patient[] trace) {
+        long start = System.nanoTime();
+        for (int i = 0; i < trace.length; i++) {
+            waitingList.add(trace[i]);
+            if ((i & 1) == 1) {
+                waitingList.poll();
+            }
+        }
+        while (waitingList.poll() != null) {
+            // drain
+        }
+        return System.nanoTime() - start;
+    }
+}
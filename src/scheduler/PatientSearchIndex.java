@@ -0,0 +1,471 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// Secondary indexes over the waiting list, for when the desk doesn't have the SSN: name prefix, date of birth and
+// phone number, each mapping to the SSNs of waiting patients (the scheduler turns those back into patients).
+// Names are indexed from the start of every word, so "smi" finds "John Smith" as well as "Smithers, Ann".
+// The name index is a sorted map, so a prefix search is one O(log n) seek plus a walk over the matching keys.
+// Everything is matched case-insensitively with punctuation ignored: dates as month/day/year numbers
+// ("04/04/2000" is "4/4/2000") and phone numbers as their digits. A field left null (Patient allows that) isn't
+// indexed and matches no search.
+// Kept up to date by EmergencyRoomScheduler on admit, treat and discharge (re-triage doesn't change indexed fields).
+public class PatientSearchIndex {
+
+    private final TreeMap<String, SsnList> names = new TreeMap<>();
+    private final HashMap<String, SsnList> datesOfBirth = new HashMap<>();
+    private final HashMap<String, SsnList> phoneNumbers = new HashMap<>();
+    private int size;
+
+
+    public int size() {return size;}
+
+
+    public void add(Patient patient) {
+        int ssn = patient.getSsn();
+        String name = normalizeName(patient.getName());
+        for (int start = name == null ? -1 : 0; start >= 0; start = nextWord(name, start)) {
+            addTo(names, name.substring(start), ssn);
+        }
+        addTo(datesOfBirth, normalizeDate(patient.getDateOfBirth()), ssn);
+        addTo(phoneNumbers, normalizePhone(patient.getPhoneNumber()), ssn);
+        size++;
+    }
+
+
+    // Takes the patient out of every index. The patient must have been added with the same name, DOB and phone.
+    public void remove(Patient patient) {
+        int ssn = patient.getSsn();
+        String name = normalizeName(patient.getName());
+        for (int start = name == null ? -1 : 0; start >= 0; start = nextWord(name, start)) {
+            removeFrom(names, name.substring(start), ssn);
+        }
+        removeFrom(datesOfBirth, normalizeDate(patient.getDateOfBirth()), ssn);
+        removeFrom(phoneNumbers, normalizePhone(patient.getPhoneNumber()), ssn);
+        size--;
+    }
+
+
+    // SSNs of up to limit patients with a word of their name starting with prefix, in alphabetical order of the match
+    public int[] searchName(String prefix, int limit) {
+        String key = normalizeName(prefix);
+        if (key == null || key.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        IntLongMap seen = new IntLongMap(); // a name can match at more than one word
+        int[] found = new int[Math.min(limit, 16)];
+        int count = 0;
+        for (Map.Entry<String, SsnList> entry : names.tailMap(key).entrySet()) {
+            if (!entry.getKey().startsWith(key)) {
+                break;
+            }
+            SsnList ssns = entry.getValue();
+            for (int i = 0; i < ssns.size; i++) {
+                if (seen.put(ssns.ssns[i], 1) == 0) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, Math.min(limit, count * 2));
+                    }
+                    found[count++] = ssns.ssns[i];
+                    if (count == limit) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    public int[] searchDateOfBirth(String dateOfBirth) {
+        return copyOf(datesOfBirth.get(normalizeDate(dateOfBirth)));
+    }
+
+    public int[] searchPhoneNumber(String phoneNumber) {
+        return copyOf(phoneNumbers.get(normalizePhone(phoneNumber)));
+    }
+
+
+    // Same matching rules as the searches above, for checking one patient (scans, tests)
+    public static boolean nameStartsWith(Patient patient, String prefix) {
+        String name = normalizeName(patient.getName());
+        String key = normalizeName(prefix);
+        if (name == null || key == null || key.isEmpty()) {
+            return false;
+        }
+        for (int start = 0; start >= 0; start = nextWord(name, start)) {
+            if (name.startsWith(key, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static boolean sameName(Patient patient, String name) {
+        String normalized = normalizeName(patient.getName());
+        return normalized != null && normalized.equals(normalizeName(name));
+    }
+
+    public static boolean sameDateOfBirth(Patient patient, String dateOfBirth) {
+        String normalized = normalizeDate(patient.getDateOfBirth());
+        return normalized != null && normalized.equals(normalizeDate(dateOfBirth));
+    }
+
+    public static boolean samePhoneNumber(Patient patient, String phoneNumber) {
+        String normalized = normalizePhone(patient.getPhoneNumber());
+        return normalized != null && normalized.equals(normalizePhone(phoneNumber));
+    }
+
+
+    // Lower case words separated by single spaces: "  SMITH,  John " -> "smith john". Null stays null (as do the others).
+    static String normalizeName(String name) {
+        if (name == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+            else if (normalized.length() > 0 && normalized.charAt(normalized.length() - 1) != ' ') {
+                normalized.append(' ');
+            }
+        }
+        int length = normalized.length();
+        if (length > 0 && normalized.charAt(length - 1) == ' ') {
+            normalized.setLength(length - 1);
+        }
+        return normalized.toString();
+    }
+
+    // Numbers without leading zeros joined by '/': "04-04-2000" -> "4/4/2000". Anything else is just lower-cased.
+    static String normalizeDate(String dateOfBirth) {
+        if (dateOfBirth == null) {
+            return null;
+        }
+        String date = dateOfBirth.trim();
+        StringBuilder normalized = new StringBuilder(10);
+        int i = 0;
+        while (i < date.length()) {
+            int start = i;
+            int value = 0;
+            while (i < date.length() && isDigit(date.charAt(i))) {
+                if (i - start == 9) {
+                    return date.toLowerCase(Locale.ROOT); // not a date part
+                }
+                value = value * 10 + date.charAt(i++) - '0';
+            }
+            if (i == start) {
+                return date.toLowerCase(Locale.ROOT); // starts with a separator
+            }
+            if (normalized.length() > 0) {
+                normalized.append('/');
+            }
+            normalized.append(value);
+            while (i < date.length() && !isDigit(date.charAt(i))) {
+                i++;
+            }
+        }
+        return normalized.toString();
+    }
+
+    // Digits only: "(888) 555-2020" -> "8885552020"
+    static String normalizePhone(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (isDigit(c)) {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Index of the word after the one starting at start, or -1 (names are normalized: single spaces)
+    private static int nextWord(String name, int start) {
+        int space = name.indexOf(' ', start);
+        return space < 0 ? -1 : space + 1;
+    }
+
+    private static void addTo(Map<String, SsnList> index, String key, int ssn) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> new SsnList()).add(ssn);
+        }
+    }
+
+    private static void removeFrom(Map<String, SsnList> index, String key, int ssn) {
+        SsnList ssns = index.get(key);
+        if (ssns != null && ssns.remove(ssn) && ssns.size == 0) {
+            index.remove(key);
+        }
+    }
+
+    private static int[] copyOf(SsnList ssns) {
+        return ssns == null ? new int[0] : Arrays.copyOf(ssns.ssns, ssns.size);
+    }
+
+
+    // SSNs sharing one key, in a plain array with swap-remove. Usually one or a few, found by a short scan; a list
+    // that grows past INDEXED_SIZE (a common date of birth, a busy family phone) also keeps each SSN's slot in
+    // positions, so removing from it stays O(1).
+    private static final class SsnList {
+        private static final int INDEXED_SIZE = 8;
+
+        int[] ssns = new int[2];
+        int size;
+        IntLongMap positions; // SSN -> slot + 1 (IntLongMap can't store 0), once size passes INDEXED_SIZE
+
+        void add(int ssn) {
+            if (size == ssns.length) {
+                ssns = Arrays.copyOf(ssns, size * 2);
+            }
+            ssns[size++] = ssn;
+            if (positions != null) {
+                positions.put(ssn, size);
+            }
+            else if (size > INDEXED_SIZE) {
+                positions = new IntLongMap(size * 2);
+                for (int i = 0; i < size; i++) {
+                    positions.put(ssns[i], i + 1);
+                }
+            }
+        }
+
+        boolean remove(int ssn) {
+            int slot = positions != null ? (int) positions.remove(ssn) - 1 : indexOf(ssn);
+            if (slot < 0) {
+                return false;
+            }
+            int last = ssns[--size];
+            ssns[slot] = last;
+            if (positions != null && slot != size) {
+                positions.put(last, slot + 1);
+            }
+            return true;
+        }
+
+        private int indexOf(int ssn) {
+            for (int i = 0; i < size; i++) {
+                if (ssns[i] == ssn) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+            "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Carlos", "Karen", "Nguyen", "Aisha"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin", "Lee", "Perez",
+            "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson", "O'Brien", "Smithers"};
+
+    public static void main(String[] args) {
+        testSearches();
+        testIndexMatchesScan();
+        testNullFields();
+        testSharedKeyRemoval();
+        //benchmarkAdmitCost(100_000);
+    }
+
+
+    // A realistic-looking patient: names, dates of birth and phone numbers repeat the way they do in a real waiting room
+    static Patient syntheticPatient(Random random, int index, long timestamp) {
+        String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)]
+                + (random.nextInt(4) == 0 ? "-" + LAST_NAMES[random.nextInt(LAST_NAMES.length)] : "");
+        String dateOfBirth = (1 + random.nextInt(12)) + "/" + (1 + random.nextInt(28)) + "/" + (1930 + random.nextInt(95));
+        String phone = String.format("%03d-555-%04d", 200 + random.nextInt(800), random.nextInt(10_000));
+        return new Patient(name, ArrivalGenerator.ssnFor(index), dateOfBirth, "123 Main Street", phone, 1 + random.nextInt(3),
+                ArrivalGenerator.toMilitaryTime((int) (timestamp / 60_000 % 1440)), timestamp, "Synthetic Arrival");
+    }
+
+
+    public static void testSearches() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(SchedulingMode.PRIORITY_QUEUE);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        scheduler.addPatient(new Patient("John Smith", 111111111, "4/4/2000", "1 Main Street", "(888) 555-2020", 3, 805, "Flu Like Symptoms"));
+        scheduler.enableSearchIndex(); // indexes John, then keeps up with the rest
+        scheduler.addPatient(new Patient("Smithers, Ann", 222222222, "04/04/2000", "2 Main Street", "888-555-2021", 2, 810, "Sprain"));
+        scheduler.addPatient(new Patient("Bob Jones", 333333333, "1/2/1990", "3 Main Street", "888.555.2020", 1, 815, "Chest Pains"));
+
+        boolean byName = ssnsOf(scheduler.searchByName("SMI", 10)).equals("[111111111, 222222222]")
+                && ssnsOf(scheduler.searchByName("ann smith", 10)).equals("[]") // "smithers ann" doesn't start a word with that
+                && scheduler.searchByName("jo", 1).size() == 1 && scheduler.searchByName("", 10).isEmpty();
+        boolean byDate = ssnsOf(scheduler.searchByDateOfBirth("4-4-2000")).equals("[111111111, 222222222]");
+        boolean byPhone = ssnsOf(scheduler.searchByPhoneNumber("8885552020")).equals("[111111111, 333333333]");
+
+        scheduler.treatCurrentPatient(); // Bob
+        scheduler.discharge(111111111);
+        boolean updated = ssnsOf(scheduler.searchByPhoneNumber("888-555-2020")).equals("[]")
+                && ssnsOf(scheduler.searchByName("s", 10)).equals("[222222222]");
+
+        int[] found = {0};
+        scheduler.setEventSink(new SchedulerEventSink() {
+            @Override public void patientFound(Patient patient, boolean alreadyTreated) {found[0] = patient.getSsn();}
+        });
+        scheduler.viewPatientDetails("smithers ann", 999999999); // wrong SSN, right name
+        if (byName && byDate && byPhone && updated && found[0] == 222222222) {
+            System.out.println("Test Passed: Waiting patients found by name prefix, date of birth and phone number");
+        }
+        else {System.out.println("Test Failed: name " + byName + ", date " + byDate + ", phone " + byPhone + ", updated " + updated + ", found " + found[0]);}
+    }
+
+    // Patients with no name, date of birth or phone number are admitted, treated and discharged like anyone else
+    // with the index on; they just aren't found by the fields they lack
+    public static void testNullFields() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(SchedulingMode.PRIORITY_QUEUE);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        SchedulerMetrics metrics = scheduler.enableMetrics();
+        PatientSearchIndex index = scheduler.enableSearchIndex();
+        scheduler.addPatient(new Patient(null, 111111111, null, null, null, 2, 805, null));
+        scheduler.addPatient(new Patient("John Smith", 222222222, null, "1 Main Street", "888-555-2020", 3, 810, "Flu Like Symptoms"));
+        scheduler.addPatient(new Patient(null, 333333333, "4/4/2000", null, "888-555-2021", 1, 815, null));
+
+        boolean admitted = scheduler.waitingCount() == 3 && metrics.getAdmitted() == 3;
+        boolean searches = ssnsOf(scheduler.searchByName("smith", 10)).equals("[222222222]") && ssnsOf(scheduler.searchByDateOfBirth("4/4/2000")).equals("[333333333]")
+                && ssnsOf(scheduler.searchByPhoneNumber("8885552020")).equals("[222222222]") && scheduler.searchByName(null, 10).isEmpty()
+                && scheduler.searchByDateOfBirth(null).isEmpty();
+        scheduler.treatCurrentPatient();
+        scheduler.discharge(111111111);
+        boolean removed = scheduler.waitingCount() == 1 && index.size() == 1 && scheduler.searchByDateOfBirth("4/4/2000").isEmpty();
+        if (admitted && searches && removed) {
+            System.out.println("Test Passed: Patients with null name, date of birth or phone are indexed without failing");
+        }
+        else {System.out.println("Test Failed: admitted " + admitted + ", searches " + searches + ", removed " + removed);}
+    }
+
+    // 20,000 patients sharing one date of birth and discharged in random order: the one big list stays exact
+    public static void testSharedKeyRemoval() {
+        PatientSearchIndex index = new PatientSearchIndex();
+        Patient[] patients = new Patient[20_000];
+        for (int i = 0; i < patients.length; i++) {
+            patients[i] = new Patient("Pt " + i, ArrivalGenerator.ssnFor(i), "1/1/2000", "123 Main Street", "555-555-5555", 3, 900, "Cough");
+            index.add(patients[i]);
+        }
+        List<Patient> leaving = new ArrayList<>(Arrays.asList(patients));
+        Collections.shuffle(leaving, new Random(19));
+        for (Patient patient : leaving.subList(0, 15_000)) {
+            index.remove(patient);
+        }
+        int[] expected = new int[5_000];
+        for (int i = 0; i < expected.length; i++) {expected[i] = leaving.get(15_000 + i).getSsn();}
+        int[] found = index.searchDateOfBirth("01/01/2000");
+        Arrays.sort(expected);
+        Arrays.sort(found);
+        for (Patient patient : leaving.subList(15_000, leaving.size())) {
+            index.remove(patient);
+        }
+        if (Arrays.equals(expected, found) && index.searchDateOfBirth("1/1/2000").length == 0 && index.size() == 0) {
+            System.out.println("Test Passed: 15,000 removals from one shared key left exactly the other 5,000");
+        }
+        else {System.out.println("Test Failed: shared key holds " + found.length + " SSNs, expected " + expected.length);}
+    }
+
+    private static String ssnsOf(List<Patient> patients) {
+        List<Integer> ssns = new ArrayList<>();
+        for (Patient patient : patients) {ssns.add(patient.getSsn());}
+        ssns.sort(null);
+        return ssns.toString();
+    }
+
+
+    // Random admits, treatments and discharges: indexed searches give the same patients as scanning the waiting list
+    public static void testIndexMatchesScan() {
+        for (SchedulingMode mode : new SchedulingMode[] {SchedulingMode.PRIORITY_QUEUE, SchedulingMode.COMPACT_HEAP}) {
+            EmergencyRoomScheduler indexed = new EmergencyRoomScheduler(mode);
+            EmergencyRoomScheduler scanned = new EmergencyRoomScheduler(mode);
+            indexed.setEventSink(NoOpEventSink.INSTANCE);
+            scanned.setEventSink(NoOpEventSink.INSTANCE);
+            indexed.enableSearchIndex();
+            Random random = new Random(19);
+            Random patients = new Random(19);
+            boolean matches = true;
+            for (int i = 0; i < 20_000 && matches; i++) {
+                int roll = random.nextInt(10);
+                if (roll < 6) {
+                    Patient patient = syntheticPatient(patients, i, i * 60_000L);
+                    indexed.addPatient(patient);
+                    scanned.addPatient(patient);
+                }
+                else if (roll < 8) {
+                    indexed.treatCurrentPatient();
+                    scanned.treatCurrentPatient();
+                }
+                else {
+                    int ssn = ArrivalGenerator.ssnFor(random.nextInt(i + 1));
+                    indexed.discharge(ssn);
+                    scanned.discharge(ssn);
+                }
+                if (i % 500 == 0) {
+                    String prefix = LAST_NAMES[random.nextInt(LAST_NAMES.length)].substring(0, 3);
+                    Patient probe = syntheticPatient(new Random(i), i, 0);
+                    matches = ssnsOf(indexed.searchByName(prefix, Integer.MAX_VALUE)).equals(ssnsOf(scanned.searchByName(prefix, Integer.MAX_VALUE)))
+                            && ssnsOf(indexed.searchByDateOfBirth(probe.getDateOfBirth())).equals(ssnsOf(scanned.searchByDateOfBirth(probe.getDateOfBirth())))
+                            && ssnsOf(indexed.searchByPhoneNumber(probe.getPhoneNumber())).equals(ssnsOf(scanned.searchByPhoneNumber(probe.getPhoneNumber())));
+                }
+            }
+            if (matches) {System.out.println("Test Passed: Indexed searches match a scan of the waiting list (" + mode + ")");}
+            else {System.out.println("Test Failed: Indexed search diverged from the scan (" + mode + ")");}
+        }
+    }
+
+
+    // What the index costs on the admit path, and what searches cost with and without it, at n waiting patients
+    public static void benchmarkAdmitCost(int n) {
+        Random random = new Random(7);
+        Patient[] arrivals = new Patient[n];
+        for (int i = 0; i < n; i++) {arrivals[i] = syntheticPatient(random, i, i * 1_000L);}
+        for (int round = 0; round < 5; round++) {
+            long[] admitNanos = new long[2];
+            EmergencyRoomScheduler[] schedulers = new EmergencyRoomScheduler[2];
+            for (int indexed = 0; indexed < 2; indexed++) {
+                EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(SchedulingMode.PRIORITY_QUEUE);
+                scheduler.setEventSink(NoOpEventSink.INSTANCE);
+                if (indexed == 1) {scheduler.enableSearchIndex();}
+                long start = System.nanoTime();
+                for (Patient patient : arrivals) {scheduler.addPatient(patient);}
+                admitNanos[indexed] = System.nanoTime() - start;
+                schedulers[indexed] = scheduler;
+            }
+            long[] searchNanos = new long[2];
+            long checksum = 0;
+            int[] searches = {10, 10_000}; // scans are slow
+            for (int indexed = 0; indexed < 2; indexed++) {
+                Random probes = new Random(round);
+                long start = System.nanoTime();
+                for (int i = 0; i < searches[indexed]; i++) {
+                    Patient probe = arrivals[probes.nextInt(n)];
+                    checksum += schedulers[indexed].searchByName(probe.getName().substring(0, 4), 20).size();
+                    checksum += schedulers[indexed].searchByDateOfBirth(probe.getDateOfBirth()).size();
+                    checksum += schedulers[indexed].searchByPhoneNumber(probe.getPhoneNumber()).size();
+                }
+                searchNanos[indexed] = (System.nanoTime() - start) / searches[indexed];
+            }
+            System.out.printf("%,d waiting: admit %,d ns without index, %,d ns with (+%,d ns); one search of each kind %,.1f us scanning, %,.1f us indexed (%d)%n",
+                    n, admitNanos[0] / n, admitNanos[1] / n, (admitNanos[1] - admitNanos[0]) / n,
+                    searchNanos[0] / 1_000.0, searchNanos[1] / 1_000.0, checksum);
+        }
+    }
+}
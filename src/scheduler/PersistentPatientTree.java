@@ -0,0 +1,183 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Immutable (persistent) treap of patients, for WaitingListSnapshots. Adding or removing a patient never touches
+// an existing node: it copies the O(log n) nodes on the path to the change and shares every other subtree with
+// the old tree, so the old tree stays valid and unchanged for whoever still holds it.
+// Kept either in treatment order (Patient.compareTo) or by SSN. Nodes carry subtree sizes, so the k-th patient
+// (and a page starting there) is found in O(log n). Heap priorities come from the admission sequence number,
+// which keeps the shape random whatever order patients arrive in, and the same for every run.
+final class PersistentPatientTree {
+
+    static final PersistentPatientTree BY_ORDER = new PersistentPatientTree(false, null);
+    static final PersistentPatientTree BY_SSN = new PersistentPatientTree(true, null);
+
+    private final boolean bySsn;
+    private final Node root;
+
+
+    private static final class Node {
+        final Patient patient;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(Patient patient, int priority, Node left, Node right) {
+            this.patient = patient;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+    }
+
+
+    private PersistentPatientTree(boolean bySsn, Node root) {
+        this.bySsn = bySsn;
+        this.root = root;
+    }
+
+
+    int size() {return sizeOf(root);}
+
+
+    // This tree plus patient (who must not already be in it)
+    PersistentPatientTree with(Patient patient) {
+        return new PersistentPatientTree(bySsn, insert(root, patient, priorityOf(patient)));
+    }
+
+    // This tree without patient (the same tree if they aren't in it)
+    PersistentPatientTree without(Patient patient) {
+        Node removed = remove(root, patient);
+        return removed == root ? this : new PersistentPatientTree(bySsn, removed);
+    }
+
+
+    // The patient with this SSN, or null. Only for trees kept by SSN.
+    Patient find(int ssn) {
+        Node node = root;
+        while (node != null) {
+            int nodeSsn = node.patient.getSsn();
+            if (ssn == nodeSsn) {
+                return node.patient;
+            }
+            node = ssn < nodeSsn ? node.left : node.right;
+        }
+        return null;
+    }
+
+
+    // The patients from position index onwards, in the tree's order. Finding the start costs O(log n), each step O(1) on average.
+    Iterator<Patient> iterator(int index) {
+        return new InOrder(root, index);
+    }
+
+
+    // ---------------------------------------------------------------- path-copying updates
+
+    private int compare(Patient a, Patient b) {
+        return bySsn ? Integer.compare(a.getSsn(), b.getSsn()) : a.compareTo(b);
+    }
+
+    private Node insert(Node node, Patient patient, int priority) {
+        if (node == null) {
+            return new Node(patient, priority, null, null);
+        }
+        if (compare(patient, node.patient) < 0) {
+            Node left = insert(node.left, patient, priority);
+            if (left.priority > node.priority) { // rotate right: the new node rises above this one
+                return new Node(left.patient, left.priority, left.left, new Node(node.patient, node.priority, left.right, node.right));
+            }
+            return new Node(node.patient, node.priority, left, node.right);
+        }
+        Node right = insert(node.right, patient, priority);
+        if (right.priority > node.priority) { // rotate left
+            return new Node(right.patient, right.priority, new Node(node.patient, node.priority, node.left, right.left), right.right);
+        }
+        return new Node(node.patient, node.priority, node.left, right);
+    }
+
+    private Node remove(Node node, Patient patient) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = compare(patient, node.patient);
+        if (comparison == 0) {
+            return merge(node.left, node.right);
+        }
+        if (comparison < 0) {
+            Node left = remove(node.left, patient);
+            return left == node.left ? node : new Node(node.patient, node.priority, left, node.right);
+        }
+        Node right = remove(node.right, patient);
+        return right == node.right ? node : new Node(node.patient, node.priority, node.left, right);
+    }
+
+    // Joins two treaps where everything in low comes before everything in high
+    private static Node merge(Node low, Node high) {
+        if (low == null) {return high;}
+        if (high == null) {return low;}
+        if (low.priority > high.priority) {
+            return new Node(low.patient, low.priority, low.left, merge(low.right, high));
+        }
+        return new Node(high.patient, high.priority, merge(low, high.left), high.right);
+    }
+
+
+    private static int sizeOf(Node node) {return node == null ? 0 : node.size;}
+
+    // Scrambled admission sequence: unique per patient record, and the same in both trees
+    private static int priorityOf(Patient patient) {
+        return (int) ((patient.getAdmissionSequence() * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+
+    // In-order walk with an explicit stack of the nodes still to visit (at most the tree's height)
+    private static final class InOrder implements Iterator<Patient> {
+        private Node[] stack = new Node[32];
+        private int count;
+
+        InOrder(Node root, int index) {
+            Node node = root;
+            while (node != null) {
+                int leftSize = sizeOf(node.left);
+                if (index < leftSize) {
+                    push(node);
+                    node = node.left;
+                }
+                else if (index == leftSize) {
+                    push(node);
+                    break;
+                }
+                else { // the whole left subtree and this node come before index
+                    index -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {return count > 0;}
+
+        @Override
+        public Patient next() {
+            if (count == 0) {throw new NoSuchElementException();}
+            Node node = stack[--count];
+            for (Node next = node.right; next != null; next = next.left) {
+                push(next);
+            }
+            return node.patient;
+        }
+
+        private void push(Node node) {
+            if (count == stack.length) {
+                stack = Arrays.copyOf(stack, count * 2);
+            }
+            stack[count++] = node;
+        }
+    }
+}
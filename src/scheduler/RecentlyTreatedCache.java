@@ -0,0 +1,168 @@
+package scheduler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.LongSupplier;
+
+// Bounded lookup of recently treated patients, keyed by SSN.
+// Staff still look up a patient shortly after treatment, but keeping every treated record forever leaks memory over a shift.
+// Records are evicted oldest-first once the cache is over maxSize, or once they are older than the time-to-live.
+// Hit, miss and eviction counters are kept so the size and TTL can be tuned.
+public class RecentlyTreatedCache {
+
+    private final int maxSize;          // most records kept at once
+    private final long ttlMillis;       // how long a record stays lookup-able. 0 = no time limit
+    private final LongSupplier clock;   // current time in millis (swappable for tests)
+    private final LinkedHashMap<Integer, TreatedRecord> records; // insertion order == treated order, so oldest is first
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+
+    // One treated patient plus the time they were treated
+    private static final class TreatedRecord {
+        final Patient patient;
+        final long treatedAtMillis;
+
+        TreatedRecord(Patient patient, long treatedAtMillis) {
+            this.patient = patient;
+            this.treatedAtMillis = treatedAtMillis;
+        }
+    }
+
+
+    // Constructor: size limit only, no time limit
+    public RecentlyTreatedCache(int maxSize) {
+        this(maxSize, 0, System::currentTimeMillis);
+    }
+
+    // Constructor: size limit and time-to-live
+    public RecentlyTreatedCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    // Constructor: size limit, time-to-live and clock
+    public RecentlyTreatedCache(int maxSize, long ttlMillis, LongSupplier clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.records = new LinkedHashMap<>();
+    }
+
+
+    // Records a patient as just treated. A repeat visit replaces the older record and moves it to the back.
+    public void put(Patient patient) {
+        long now = clock.getAsLong();
+        records.remove(patient.getSsn());
+        records.put(patient.getSsn(), new TreatedRecord(patient, now));
+        evictExpired(now);
+        Iterator<TreatedRecord> oldestFirst = records.values().iterator();
+        while (records.size() > maxSize) {
+            oldestFirst.next();
+            oldestFirst.remove();
+            evictions++;
+        }
+    }
+
+
+    // Returns the treated patient with this SSN, or null if never treated or already evicted.
+    public Patient get(int ssn) {
+        evictExpired(clock.getAsLong());
+        TreatedRecord record = records.get(ssn);
+        if (record == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return record.patient;
+    }
+
+
+    // Drops records older than the TTL. Since records are in treated order, we stop at the first fresh one.
+    private void evictExpired(long now) {
+        if (ttlMillis == 0) {
+            return;
+        }
+        Iterator<TreatedRecord> oldestFirst = records.values().iterator();
+        while (oldestFirst.hasNext()) {
+            if (now - oldestFirst.next().treatedAtMillis < ttlMillis) {
+                break;
+            }
+            oldestFirst.remove();
+            evictions++;
+        }
+    }
+
+
+    public int size() {return records.size();}
+    public int getMaxSize() {return maxSize;}
+    public long getTtlMillis() {return ttlMillis;}
+    public long getHits() {return hits;}
+    public long getMisses() {return misses;}
+    public long getEvictions() {return evictions;}
+
+
+    @Override
+    public String toString() {
+        return "Recently Treated Cache: size=" + records.size() + "/" + maxSize
+                + " hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testSizeEviction();
+        testTtlEviction();
+    }
+
+
+    public static void testSizeEviction() {
+        RecentlyTreatedCache cache = new RecentlyTreatedCache(2);
+        cache.put(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        cache.put(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High"));
+        cache.put(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"));
+
+        //Standard Case: oldest (Green) evicted, newest two still there
+        if (cache.get(777777777) == null && cache.get(888888888) != null && cache.get(999999999) != null) {
+            System.out.println("Test Passed: Oldest treated patient evicted when over size");
+        }
+        else {System.out.println("Test Failed: Size eviction removed the wrong patient");}
+
+        //Counters: 2 hits, 1 miss, 1 eviction
+        if (cache.getHits() == 2 && cache.getMisses() == 1 && cache.getEvictions() == 1) {System.out.println("Test Passed: Counters are correct");}
+        else {System.out.println("Test Failed: Unexpected counters " + cache);}
+    }
+
+
+    public static void testTtlEviction() {
+        long[] now = {0};
+        RecentlyTreatedCache cache = new RecentlyTreatedCache(100, 1000, () -> now[0]);
+        cache.put(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        now[0] = 500;
+        cache.put(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"));
+
+        //Standard Case: at t=1200 Green (treated t=0) has expired, Red (t=500) has not
+        now[0] = 1200;
+        if (cache.get(777777777) == null && cache.get(888888888) != null && cache.getEvictions() == 1) {
+            System.out.println("Test Passed: Expired patient evicted, fresh patient kept");
+        }
+        else {System.out.println("Test Failed: TTL eviction incorrect " + cache);}
+
+        //Edge Case: everything expired
+        now[0] = 5000;
+        if (cache.get(888888888) == null && cache.size() == 0) {System.out.println("Test Passed: Cache empties once all records expire");}
+        else {System.out.println("Test Failed: Expired records still in cache");}
+    }
+}
@@ -0,0 +1,354 @@
+package scheduler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Primary side of hot-standby replication: streams every change to this scheduler's waiting list over a TCP socket
+// to a ReplicationStandby, which keeps a live copy and can take over if this process dies.
+// Plugged in as an event sink, like WriteAheadLog, and uses the same record types (ADMIT with the patient in
+// PatientCodec form, TREAT / DISCHARGE with an SSN, REPRIORITIZE with an SSN and level). On connect the whole
+// waiting list is sent first (RESET + one ADMIT per patient), so the standby starts from an exact copy.
+// Records are batched: a batch goes out once enough records are pending, or once the oldest is too old (a timer
+// thread sends it then, so a lull in events never leaves one sitting), and commit() sends what's pending and
+// waits until the standby has applied it. Anything committed survives the loss of this process; at most the
+// uncommitted batch is lost, as with the write-ahead log's group commit. The console flushes the sink after
+// every command, and the HTTP server before answering a change, which commits.
+// Frames: int records length, int record count, long last sequence number, long append time (System.nanoTime of
+// the batch's oldest record, comparable across processes on one Linux machine), then the records. The standby
+// answers each frame with its sequence number and append time, read here on a separate thread, which gives
+// the ack round trip and lets commit() wait.
+// If the standby goes away the primary carries on alone (isConnected() turns false): triage never waits on it.
+public class ReplicationPrimary implements SchedulerEventSink, AutoCloseable {
+
+    static final byte RESET = 10;                // standby: forget everything, a full copy follows
+    static final int STREAM_MAGIC = 0x45525250;  // "ERRP"
+    static final int FRAME_HEADER = 24;
+    static final int ACK_BYTES = 16;
+    static final int BUFFER_BYTES = 1 << 20;
+
+    public static final int DEFAULT_BATCH_RECORDS = 256;
+    public static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 2;
+    public static final long DEFAULT_COMMIT_TIMEOUT_MILLIS = 2_000;
+
+    private final SocketChannel channel;
+    private final int batchRecords;
+    private final long maxBatchDelayNanos;
+    private final long commitTimeoutNanos;
+    private final ByteBuffer pending = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final Thread ackReader;
+    private final Thread batchTimer;           // sends a batch once its oldest record is maxBatchDelay old
+    private final Object batchLock = new Object(); // guards pending and the counters below it, between the scheduler's thread and the timer
+    private final LatencyHistogram ackLatency = new LatencyHistogram(); // oldest record in a batch appended -> ack back (guarded by itself)
+
+    private int pendingRecords;
+    private long oldestPendingNanos;
+    private long sequence;                    // records appended so far
+    private long sentSequence;                // records sent so far
+    private volatile long ackedSequence;      // records the standby has applied
+    private volatile boolean connected = true;
+    private long batchesSent;
+    private long bytesSent;
+
+
+    private ReplicationPrimary(SocketChannel channel, int batchRecords, long maxBatchDelayMillis, long commitTimeoutMillis) {
+        this.channel = channel;
+        this.batchRecords = batchRecords;
+        this.maxBatchDelayNanos = maxBatchDelayMillis * 1_000_000;
+        this.commitTimeoutNanos = commitTimeoutMillis * 1_000_000;
+        pending.position(FRAME_HEADER);
+        ackReader = Thread.ofPlatform().daemon().name("replication-acks").unstarted(this::readAcks);
+        batchTimer = Thread.ofPlatform().daemon().name("replication-batch-timer").unstarted(this::sendLateBatches);
+    }
+
+
+    // Connects to the standby at address with default batching and sends it the scheduler's waiting list.
+    // Attach with EmergencyRoomScheduler.enableReplication rather than calling this directly.
+    static ReplicationPrimary connect(InetSocketAddress address, List<Patient> waiting) throws IOException {
+        return connect(address, waiting, DEFAULT_BATCH_RECORDS, DEFAULT_MAX_BATCH_DELAY_MILLIS, DEFAULT_COMMIT_TIMEOUT_MILLIS);
+    }
+
+    static ReplicationPrimary connect(InetSocketAddress address, List<Patient> waiting, int batchRecords, long maxBatchDelayMillis,
+                                      long commitTimeoutMillis) throws IOException {
+        if (batchRecords < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchRecords);
+        }
+        SocketChannel channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true); // batching is done here; don't let Nagle hold a commit back
+        ReplicationPrimary primary = new ReplicationPrimary(channel, batchRecords, maxBatchDelayMillis, commitTimeoutMillis);
+        ByteBuffer header = ByteBuffer.allocate(PatientCodec.HEADER_BYTES);
+        PatientCodec.writeHeader(header, STREAM_MAGIC, 0);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        primary.ackReader.start();
+        primary.appendType(RESET, 1);
+        for (Patient patient : waiting) {
+            primary.appendAdmit(patient);
+        }
+        primary.commit();
+        if (!primary.connected) {
+            throw new IOException("Standby at " + address + " did not take the initial copy of the waiting list");
+        }
+        primary.batchTimer.start();
+        return primary;
+    }
+
+
+    public boolean isConnected() {return connected;}
+    public long getRecordsSent() {return sentSequence;}
+    public long getRecordsAcknowledged() {return ackedSequence;}
+    public long getBatchesSent() {return batchesSent;}
+    public long getBytesSent() {return bytesSent;}
+
+    // Copy of the time from a batch's oldest record being appended to the standby's ack for it (batching delay,
+    // send, apply and ack together), in nanoseconds
+    public LatencyHistogram getAckLatency() {
+        LatencyHistogram copy = new LatencyHistogram();
+        synchronized (ackLatency) {
+            copy.add(ackLatency);
+        }
+        return copy;
+    }
+
+
+    // ---------------------------------------------------------------- event sink: one record per state change
+
+    @Override
+    public void patientAdmitted(Patient patient) {
+        synchronized (batchLock) {
+            appendAdmit(patient);
+            afterAppend();
+        }
+    }
+
+    @Override
+    public void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {
+        synchronized (batchLock) {
+            for (Patient patient : admitted) {
+                appendAdmit(patient);
+            }
+        }
+        if (!admitted.isEmpty()) {
+            commit(); // a manifest is replicated as a unit, like the journal makes it durable as one
+        }
+    }
+
+    @Override
+    public void patientTreated(Patient patient) {
+        synchronized (batchLock) {
+            appendSsn(WriteAheadLog.TREAT, patient.getSsn(), 0);
+            afterAppend();
+        }
+    }
+
+    @Override
+    public void patientReprioritized(Patient patient) {
+        synchronized (batchLock) {
+            appendSsn(WriteAheadLog.REPRIORITIZE, patient.getSsn(), patient.getPriorityLevel());
+            afterAppend();
+        }
+    }
+
+    @Override
+    public void patientDischarged(Patient patient) {
+        synchronized (batchLock) {
+            appendSsn(WriteAheadLog.DISCHARGE, patient.getSsn(), 0);
+            afterAppend();
+        }
+    }
+
+    @Override
+    public void flush() {
+        commit();
+    }
+
+
+    // Sends every pending record and waits (up to the commit timeout) until the standby has applied them.
+    // A standby that doesn't answer in time is dropped, and the primary carries on without it.
+    public void commit() {
+        synchronized (batchLock) {
+            sendPending();
+        }
+        if (!connected || ackedSequence >= sentSequence) {
+            return;
+        }
+        long deadline = System.nanoTime() + commitTimeoutNanos;
+        synchronized (this) {
+            while (connected && ackedSequence < sentSequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    disconnect();
+                    return;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+
+    // Commits, then closes the connection. The standby sees the primary leave and waits to be promoted.
+    @Override
+    public void close() {
+        commit();
+        disconnect();
+    }
+
+
+    // Drops the connection without sending what's pending, as a crash would (tests and failover drills)
+    void crash() {
+        synchronized (batchLock) {
+            disconnect(); // under batchLock, so the timer can't send the pending batch after the "crash"
+        }
+    }
+
+
+    // ---------------------------------------------------------------- appending and sending
+
+    private void appendAdmit(Patient patient) {
+        if (!connected) {
+            return;
+        }
+        reserve(1 + PatientCodec.maxEncodedSize(patient));
+        pending.put(WriteAheadLog.ADMIT);
+        PatientCodec.write(pending, patient);
+    }
+
+    private void appendSsn(byte type, int ssn, int level) {
+        if (!connected) {
+            return;
+        }
+        reserve(9);
+        pending.put(type).putInt(ssn);
+        if (type == WriteAheadLog.REPRIORITIZE) {
+            pending.putInt(level);
+        }
+    }
+
+    private void appendType(byte type, int bytes) {
+        reserve(bytes);
+        pending.put(type);
+    }
+
+    // Room for one more record, sending the current batch first if it's full
+    private void reserve(int bytes) {
+        if (pending.remaining() < bytes) {
+            sendPending();
+        }
+        if (pendingRecords == 0) {
+            oldestPendingNanos = System.nanoTime();
+            LockSupport.unpark(batchTimer); // a new batch: start its clock
+        }
+        pendingRecords++;
+        sequence++;
+    }
+
+    private void afterAppend() {
+        if (pendingRecords >= batchRecords || System.nanoTime() - oldestPendingNanos >= maxBatchDelayNanos) {
+            sendPending();
+        }
+    }
+
+    private void sendPending() {
+        if (pendingRecords == 0) {
+            return;
+        }
+        if (!connected) {
+            discardPending();
+            return;
+        }
+        int length = pending.position() - FRAME_HEADER;
+        pending.putInt(0, length).putInt(4, pendingRecords).putLong(8, sequence).putLong(16, oldestPendingNanos);
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+        } catch (IOException e) {
+            disconnect();
+        }
+        bytesSent += FRAME_HEADER + length;
+        batchesSent++;
+        sentSequence = sequence;
+        discardPending();
+    }
+
+    private void discardPending() {
+        pending.clear();
+        pending.position(FRAME_HEADER);
+        pendingRecords = 0;
+    }
+
+
+    // Batch timer thread: sleeps until the pending batch is due (or indefinitely while nothing is pending) and sends it
+    private void sendLateBatches() {
+        while (connected) {
+            long waitNanos;
+            synchronized (batchLock) {
+                waitNanos = pendingRecords == 0 ? -1 : oldestPendingNanos + maxBatchDelayNanos - System.nanoTime();
+                if (pendingRecords > 0 && waitNanos <= 0) {
+                    sendPending();
+                    continue;
+                }
+            }
+            if (waitNanos < 0) {
+                LockSupport.park(this);
+            }
+            else {
+                LockSupport.parkNanos(this, waitNanos);
+            }
+        }
+    }
+
+
+    // Ack reader thread: each ack is the standby's applied sequence number and the append time it answered for
+    private void readAcks() {
+        ByteBuffer ack = ByteBuffer.allocate(ACK_BYTES);
+        try {
+            while (connected) {
+                ack.clear();
+                while (ack.hasRemaining()) {
+                    if (channel.read(ack) < 0) {
+                        throw new IOException("Standby closed the connection");
+                    }
+                }
+                long applied = ack.getLong(0);
+                long appendedNanos = ack.getLong(8);
+                long now = System.nanoTime();
+                synchronized (ackLatency) {
+                    ackLatency.record(now - appendedNanos);
+                }
+                synchronized (this) {
+                    ackedSequence = applied;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    private synchronized void disconnect() {
+        if (!connected) {
+            return;
+        }
+        connected = false;
+        notifyAll();
+        LockSupport.unpark(batchTimer);
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // already gone
+        }
+    }
+}
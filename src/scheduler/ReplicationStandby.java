@@ -0,0 +1,401 @@
+package scheduler;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Standby side of hot-standby replication (see ReplicationPrimary): listens on a loopback port, applies the
+// primary's stream of changes to its own EmergencyRoomScheduler as they arrive, and acks each batch once applied.
+// Its scheduler is a live copy of the primary's waiting list, in the same order (patients keep their admission
+// sequence numbers), with treated patients in its recently-treated cache. When the primary dies, promote() stops
+// replication and hands the scheduler over to be served; everything the primary committed is in it.
+// A primary that reconnects (e.g. after a restart) starts over with a full copy. Only one primary at a time.
+// Applying happens on one receiver thread; until promote() returns, nothing else should touch the scheduler
+// (use waitingCount / awaitSequence to watch progress).
+public class ReplicationStandby implements AutoCloseable {
+
+    private final EmergencyRoomScheduler scheduler;
+    private final ServerSocketChannel server;
+    private final Thread receiver;
+    private final LatencyHistogram lag = new LatencyHistogram(); // primary appended -> applied here, per batch (guarded by itself)
+
+    private volatile SocketChannel primary;
+    private volatile long appliedSequence;
+    private volatile int waiting;
+    private volatile boolean promoted;
+    private long recordsApplied;
+    private long connections;
+
+
+    private ReplicationStandby(EmergencyRoomScheduler scheduler, ServerSocketChannel server) {
+        this.scheduler = scheduler;
+        this.server = server;
+        this.receiver = Thread.ofPlatform().name("replication-standby").unstarted(this::receive);
+    }
+
+
+    // Listens for a primary on a loopback port (0 = any free port, see getPort), keeping scheduler as the copy.
+    // scheduler should be empty; its own event sink sees the replicated changes (a journal there makes the copy durable too).
+    public static ReplicationStandby listen(int port, EmergencyRoomScheduler scheduler) throws IOException {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Scheduler cannot be null");
+        }
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        ReplicationStandby standby = new ReplicationStandby(scheduler, server);
+        standby.receiver.start();
+        return standby;
+    }
+
+
+    public int getPort() {return server.socket().getLocalPort();}
+    public boolean isPrimaryConnected() {return primary != null;}
+    public long getAppliedSequence() {return appliedSequence;}
+    public int waitingCount() {return waiting;}
+    public synchronized long getRecordsApplied() {return recordsApplied;}
+    public synchronized long getConnections() {return connections;}
+
+    // Copy of the replication lag per batch: its oldest record appended on the primary -> applied here, in nanoseconds
+    public LatencyHistogram getReplicationLag() {
+        LatencyHistogram copy = new LatencyHistogram();
+        synchronized (lag) {
+            copy.add(lag);
+        }
+        return copy;
+    }
+
+
+    // Waits until the primary's record number sequence has been applied. False if that took longer than timeoutMillis.
+    public synchronized boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (appliedSequence < sequence) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+
+    // Takes over: stops listening and replicating (whatever the primary sent in full is kept) and returns the
+    // scheduler, which is now the caller's to serve.
+    public EmergencyRoomScheduler promote() throws InterruptedException {
+        promoted = true;
+        closeQuietly();
+        receiver.join();
+        return scheduler;
+    }
+
+
+    // Stops replicating, like promote(). If interrupted while waiting for the receiver to stop, keeps the interrupt for the caller.
+    @Override
+    public void close() {
+        try {
+            promote();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    // ---------------------------------------------------------------- receiving
+
+    private void receive() {
+        ByteBuffer frame = ByteBuffer.allocate(ReplicationPrimary.BUFFER_BYTES);
+        ByteBuffer ack = ByteBuffer.allocate(ReplicationPrimary.ACK_BYTES);
+        while (!promoted) {
+            try (SocketChannel channel = server.accept()) {
+                channel.socket().setTcpNoDelay(true);
+                primary = channel;
+                synchronized (this) {
+                    connections++;
+                    appliedSequence = 0; // a new primary numbers its records from 1 again
+                }
+                frame.clear().limit(PatientCodec.HEADER_BYTES);
+                readFully(channel, frame);
+                frame.flip();
+                PatientCodec.readHeader(frame, ReplicationPrimary.STREAM_MAGIC, "scheduler replication stream");
+                while (!promoted) {
+                    frame.clear().limit(ReplicationPrimary.FRAME_HEADER);
+                    readFully(channel, frame);
+                    int length = frame.getInt(0);
+                    int records = frame.getInt(4);
+                    long lastSequence = frame.getLong(8);
+                    long appendedNanos = frame.getLong(16);
+                    if (length < 0 || length > ReplicationPrimary.BUFFER_BYTES - ReplicationPrimary.FRAME_HEADER) {
+                        throw new IOException("Bad replication frame length " + length);
+                    }
+                    frame.clear().limit(length);
+                    readFully(channel, frame);
+                    frame.flip();
+                    for (int i = 0; i < records; i++) {
+                        apply(frame);
+                    }
+                    long now = System.nanoTime();
+                    synchronized (lag) {
+                        lag.record(now - appendedNanos);
+                    }
+                    synchronized (this) {
+                        recordsApplied += records;
+                        appliedSequence = lastSequence;
+                        waiting = scheduler.waitingCount();
+                        notifyAll();
+                    }
+                    ack.clear();
+                    ack.putLong(lastSequence).putLong(appendedNanos).flip();
+                    while (ack.hasRemaining()) {
+                        channel.write(ack);
+                    }
+                }
+            }
+            catch (IOException e) {
+                // primary gone (or promoted / closed): keep what was applied and wait for the next primary
+            }
+            finally {
+                primary = null;
+            }
+        }
+    }
+
+
+    private void apply(ByteBuffer frame) throws IOException {
+        byte type = frame.get();
+        if (type == ReplicationPrimary.RESET) {
+            for (Patient patient : scheduler.waitingPatients()) {
+                scheduler.discharge(patient.getSsn());
+            }
+            return;
+        }
+        if (type == WriteAheadLog.ADMIT) {
+            scheduler.addPatient(PatientCodec.read(frame));
+            return;
+        }
+        int ssn = frame.getInt();
+        switch (type) {
+            case WriteAheadLog.TREAT:
+                Patient next = scheduler.peekCurrentPatient();
+                if (next != null && next.getSsn() == ssn) {
+                    scheduler.treatCurrentPatient();
+                }
+                else { // orders can only differ in aging mode, where each side reads its own clock
+                    Patient treated = scheduler.findPatient(ssn);
+                    if (treated != null) {
+                        scheduler.discharge(ssn);
+                        scheduler.rememberTreated(treated);
+                    }
+                }
+                break;
+            case WriteAheadLog.REPRIORITIZE:
+                scheduler.reprioritize(ssn, frame.getInt());
+                break;
+            case WriteAheadLog.DISCHARGE:
+                scheduler.discharge(ssn);
+                break;
+            default:
+                throw new IOException("Unknown replication record type " + type);
+        }
+    }
+
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Primary closed the connection");
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            server.close();
+            SocketChannel current = primary;
+            if (current != null) {
+                current.close();
+            }
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    // Two processes on one machine:  "standby <port>" in one, "primary <port> <events>" in the other.
+    // The standby prints applied records and lag once a second; the primary prints throughput and ack latency.
+    // Without arguments: the in-process tests.
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 2 && args[0].equals("standby")) {
+            runStandby(Integer.parseInt(args[1]));
+        }
+        else if (args.length >= 3 && args[0].equals("primary")) {
+            runPrimary(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        }
+        else {
+            testFailover();
+            testPrimaryRestart();
+            testQuietBatchSent();
+            //benchmarkReplication(1_000_000);
+        }
+    }
+
+
+    // Random admits, treatments, re-triages and discharges with commits along the way, then the primary crashes:
+    // the promoted standby treats exactly the patients the primary would have, in the same order
+    public static void testFailover() throws IOException, InterruptedException {
+        EmergencyRoomScheduler primary = quietScheduler();
+        primary.admitAll(List.of(new ArrivalGenerator(1, 1_000).generate(50))); // already waiting before replication starts
+        ReplicationStandby standby = listen(0, quietScheduler());
+        ReplicationPrimary replication = primary.enableReplication(new InetSocketAddress(InetAddress.getLoopbackAddress(), standby.getPort()));
+        Patient[] arrivals = new ArrivalGenerator(2, 20_000).generate(20_000);
+        Random random = new Random(22);
+        for (int i = 0; i < arrivals.length; i++) {
+            primary.addPatient(arrivals[i]);
+            int roll = random.nextInt(10);
+            if (roll < 4) {primary.treatCurrentPatient();}
+            else if (roll == 4) {primary.reprioritize(arrivals[random.nextInt(i + 1)].getSsn(), 1 + random.nextInt(3));}
+            else if (roll == 5) {primary.discharge(arrivals[random.nextInt(i + 1)].getSsn());}
+            if (i % 1_000 == 999) {replication.commit();}
+        }
+        replication.commit();
+        long committed = replication.getRecordsAcknowledged();
+        primary.treatCurrentPatient(); // after the last commit: may or may not reach the standby
+        replication.crash();
+
+        EmergencyRoomScheduler takeover = standby.promote();
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> actual = new ArrayList<>();
+        for (Iterator<Patient> ordered = primary.waitingInOrder(); ordered.hasNext(); ) {expected.add(ordered.next().getSsn());}
+        for (Iterator<Patient> ordered = takeover.waitingInOrder(); ordered.hasNext(); ) {actual.add(ordered.next().getSsn());}
+        boolean sameOrder = actual.equals(expected) || actual.subList(1, actual.size()).equals(expected); // the uncommitted treat may be missing
+        if (sameOrder && standby.getAppliedSequence() >= committed) {
+            System.out.println("Test Passed: Promoted standby holds every committed change, in the primary's order (" + actual.size() + " waiting)");
+        }
+        else {System.out.println("Test Failed: standby has " + actual.size() + " waiting, primary " + expected.size() + ", applied " + standby.getAppliedSequence() + " of " + committed);}
+    }
+
+
+    // A primary that drops its connection and reconnects sends a full copy, replacing what the standby had
+    public static void testPrimaryRestart() throws IOException, InterruptedException {
+        ReplicationStandby standby = listen(0, quietScheduler());
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), standby.getPort());
+        Patient[] arrivals = new ArrivalGenerator(3, 1_000).generate(300);
+
+        EmergencyRoomScheduler first = quietScheduler();
+        ReplicationPrimary firstReplication = first.enableReplication(address);
+        first.admitAll(List.of(arrivals).subList(0, 200));
+        firstReplication.close();
+
+        EmergencyRoomScheduler restarted = quietScheduler(); // e.g. rebuilt from its journal, holding a different list
+        restarted.admitAll(List.of(arrivals).subList(100, 300));
+        waitForPrimaryToLeave(standby);
+        ReplicationPrimary secondReplication = restarted.enableReplication(address);
+        boolean resent = standby.getConnections() == 2 && standby.waitingCount() == 200;
+        secondReplication.close();
+        EmergencyRoomScheduler takeover = standby.promote();
+        if (resent && takeover.peekCurrentPatient().getSsn() == restarted.peekCurrentPatient().getSsn() && takeover.findPatient(arrivals[0].getSsn()) == null) {
+            System.out.println("Test Passed: Reconnecting primary replaced the standby's copy with its own");
+        }
+        else {System.out.println("Test Failed: standby holds " + takeover.waitingCount() + " after the primary restarted");}
+    }
+
+    // One admission and then nothing: the batch timer sends it within the batch delay, with no commit and no next event
+    public static void testQuietBatchSent() throws IOException, InterruptedException {
+        ReplicationStandby standby = listen(0, quietScheduler());
+        EmergencyRoomScheduler primary = quietScheduler();
+        ReplicationPrimary replication = primary.enableReplication(new InetSocketAddress(InetAddress.getLoopbackAddress(), standby.getPort()));
+        primary.addPatient(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        boolean sent = standby.awaitSequence(2, 1_000); // RESET, then the admission
+        replication.crash();
+        EmergencyRoomScheduler takeover = standby.promote();
+        if (sent && takeover.findPatient(777777777) != null) {
+            System.out.println("Test Passed: A lone admission reached the standby without a commit or another event");
+        }
+        else {System.out.println("Test Failed: standby applied " + standby.getAppliedSequence() + " records after a lull");}
+    }
+
+    private static void waitForPrimaryToLeave(ReplicationStandby standby) throws InterruptedException {
+        for (int i = 0; i < 1_000 && standby.isPrimaryConnected(); i++) {Thread.sleep(1);}
+    }
+
+
+    // Primary and standby in one process over loopback: n events (60% admits, 30% treatments, 10% re-triages)
+    // as fast as the primary can go, committing every 1,000. Reports events per second and lag percentiles.
+    public static void benchmarkReplication(int n) throws IOException, InterruptedException {
+        Patient[] arrivals = new ArrivalGenerator(4, n).generate(n);
+        for (int round = 0; round < 3; round++) {
+            ReplicationStandby standby = listen(0, quietScheduler());
+            EmergencyRoomScheduler primary = quietScheduler();
+            ReplicationPrimary replication = primary.enableReplication(new InetSocketAddress(InetAddress.getLoopbackAddress(), standby.getPort()));
+            long start = System.nanoTime();
+            driveLoad(primary, replication, arrivals);
+            long nanos = System.nanoTime() - start;
+            replication.close();
+            standby.promote();
+            System.out.printf("%,d records in %,d ms: %,.0f records/s, %,.1f MB sent in %,d batches; lag append->applied p50 %,d us p99 %,d us max %,d us%n",
+                    replication.getRecordsSent(), nanos / 1_000_000, replication.getRecordsSent() * 1e9 / nanos, replication.getBytesSent() / 1e6,
+                    replication.getBatchesSent(), standby.getReplicationLag().getValueAtPercentile(50) / 1_000,
+                    standby.getReplicationLag().getValueAtPercentile(99) / 1_000, standby.getReplicationLag().getMax() / 1_000);
+        }
+    }
+
+    private static void driveLoad(EmergencyRoomScheduler primary, ReplicationPrimary replication, Patient[] arrivals) {
+        Random random = new Random(11);
+        for (int i = 0; i < arrivals.length; i++) {
+            primary.addPatient(arrivals[i]);
+            int roll = random.nextInt(10);
+            if (roll < 5) {primary.treatCurrentPatient();}
+            else if (roll == 5) {primary.reprioritize(arrivals[random.nextInt(i + 1)].getSsn(), 1 + random.nextInt(3));}
+            if (i % 1_000 == 999) {replication.commit();}
+        }
+    }
+
+
+    private static void runStandby(int port) throws IOException, InterruptedException {
+        ReplicationStandby standby = listen(port, quietScheduler());
+        System.out.println("Standby listening on port " + standby.getPort());
+        long lastApplied = 0;
+        while (true) {
+            Thread.sleep(1_000);
+            long applied = standby.getRecordsApplied();
+            LatencyHistogram lag = standby.getReplicationLag();
+            System.out.printf("%,d records/s applied, %,d waiting, lag p50 %,d us p99 %,d us max %,d us%n", applied - lastApplied,
+                    standby.waitingCount(), lag.getValueAtPercentile(50) / 1_000, lag.getValueAtPercentile(99) / 1_000, lag.getMax() / 1_000);
+            lastApplied = applied;
+        }
+    }
+
+    private static void runPrimary(int port, int events) throws IOException {
+        EmergencyRoomScheduler primary = quietScheduler();
+        ReplicationPrimary replication = primary.enableReplication(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Patient[] arrivals = new ArrivalGenerator(4, events).generate(events);
+        long start = System.nanoTime();
+        driveLoad(primary, replication, arrivals);
+        replication.commit();
+        long nanos = System.nanoTime() - start;
+        LatencyHistogram acks = replication.getAckLatency();
+        System.out.printf("%,d records in %,d ms: %,.0f records/s; ack latency p50 %,d us p99 %,d us max %,d us%n", replication.getRecordsSent(),
+                nanos / 1_000_000, replication.getRecordsSent() * 1e9 / nanos, acks.getValueAtPercentile(50) / 1_000,
+                acks.getValueAtPercentile(99) / 1_000, acks.getMax() / 1_000);
+        replication.close();
+    }
+
+    private static EmergencyRoomScheduler quietScheduler() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        return scheduler;
+    }
+}
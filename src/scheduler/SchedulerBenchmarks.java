@@ -0,0 +1,260 @@
+package scheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Baseline timings for the hot scheduler and Patient operations, across waiting list sizes, priority mixes and
+// scheduling modes. Each benchmark round does its own untimed setup, then times a block of operations; after
+// warm-up rounds (so the JIT has compiled everything) the median of the measured rounds is reported in ns/op.
+// Results are consumed into a volatile field so the JIT can't drop the work as dead code. Events go to the
+// no-op sink, so console formatting isn't counted (toString is measured on its own).
+// Arguments: optional baseline CSV from an earlier run to compare against, then optional CSV file to write this run to.
+// e.g. run once on master with "" baseline.csv, then on a branch with baseline.csv branch.csv
+// The same cases run under JMH from the jmh source set (gradle jmh), for forked, statistically checked numbers.
+public class SchedulerBenchmarks {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int OPS_PER_ROUND = 10_000;
+    private static final int[] QUEUE_SIZES = {1_000, 100_000};
+    private static final String[] MIX_NAMES = {"typical", "mass-casualty", "uniform"};
+    private static final double[][] MIXES = {ArrivalGenerator.TYPICAL_MIX, ArrivalGenerator.MASS_CASUALTY_MIX, ArrivalGenerator.UNIFORM_MIX};
+
+    static volatile long consumed; // benchmark results end up here so they count as used
+
+    // One round of a benchmark: untimed setup, then returns the nanoseconds its timed section took for OPS_PER_ROUND operations
+    interface Round {
+        long run();
+    }
+
+    private final List<String> results = new ArrayList<>(); // "name,ns/op" rows
+
+
+    public static void main(String[] args) throws IOException {
+        SchedulerBenchmarks benchmarks = new SchedulerBenchmarks();
+        benchmarks.runAll();
+        if (args.length > 0 && !args[0].isEmpty()) {
+            benchmarks.compareWith(Path.of(args[0]));
+        }
+        if (args.length > 1) {
+            Files.write(Path.of(args[1]), benchmarks.results);
+        }
+    }
+
+
+    public void runAll() {
+        for (int size : QUEUE_SIZES) {
+            for (int mix = 0; mix < MIXES.length; mix++) {
+                Patient[] arrivals = new ArrivalGenerator(size, size + OPS_PER_ROUND, MIXES[mix], 0.05).generate(size + OPS_PER_ROUND);
+                for (SchedulingMode mode : SchedulingMode.values()) {
+                    String suffix = mode + "/" + size + "/" + MIX_NAMES[mix];
+                    measure("addPatient/" + suffix, addPatient(mode, arrivals, size));
+                    measure("treatCurrentPatient/" + suffix, treatCurrentPatient(mode, arrivals));
+                    measure("viewPatientDetails/" + suffix, viewPatientDetails(mode, arrivals, size));
+                    measure("topWaiting20/" + suffix, topWaiting(mode, arrivals, size, 20));
+                }
+            }
+        }
+        Patient[] patients = new ArrivalGenerator(1, OPS_PER_ROUND, ArrivalGenerator.UNIFORM_MIX, 0).generate(OPS_PER_ROUND);
+        measure("Patient.compareTo", compareTo(patients));
+        measure("Patient.hashCode", hashCode(patients));
+        measure("Patient.hashLookup", hashLookup(patients));
+        measure("Patient.toString", toString(patients));
+    }
+
+
+    // ---------------------------------------------------------------- benchmarks
+
+    // OPS_PER_ROUND admissions into a waiting list already holding size patients
+    private static Round addPatient(SchedulingMode mode, Patient[] arrivals, int size) {
+        List<Patient> waiting = Arrays.asList(arrivals).subList(0, size);
+        return () -> {
+            EmergencyRoomScheduler scheduler = quietScheduler(mode);
+            scheduler.admitAll(waiting);
+            long start = System.nanoTime();
+            for (int i = size; i < arrivals.length; i++) {
+                scheduler.addPatient(arrivals[i]);
+            }
+            long nanos = System.nanoTime() - start;
+            consumed += scheduler.waitingCount();
+            return nanos;
+        };
+    }
+
+
+    // OPS_PER_ROUND treatments, starting from size + OPS_PER_ROUND waiting patients
+    private static Round treatCurrentPatient(SchedulingMode mode, Patient[] arrivals) {
+        List<Patient> waiting = Arrays.asList(arrivals);
+        return () -> {
+            EmergencyRoomScheduler scheduler = quietScheduler(mode);
+            scheduler.admitAll(waiting);
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (int i = 0; i < OPS_PER_ROUND; i++) {
+                checksum += scheduler.treatCurrentPatient().getArrivalTime();
+            }
+            long nanos = System.nanoTime() - start;
+            consumed += checksum;
+            return nanos;
+        };
+    }
+
+
+    // OPS_PER_ROUND lookups against size waiting patients: 80% waiting, 10% recently treated, 10% unknown SSNs
+    private static Round viewPatientDetails(SchedulingMode mode, Patient[] arrivals, int size) {
+        int[] lookups = new int[OPS_PER_ROUND];
+        Random random = new Random(size);
+        for (int i = 0; i < lookups.length; i++) {
+            int roll = random.nextInt(10);
+            lookups[i] = roll < 8 ? arrivals[random.nextInt(size)].getSsn()
+                    : roll == 8 ? arrivals[size + random.nextInt(100)].getSsn()
+                    : ArrivalGenerator.ssnFor(arrivals.length + random.nextInt(1_000_000));
+        }
+        List<Patient> waiting = Arrays.asList(arrivals).subList(0, size);
+        return () -> {
+            EmergencyRoomScheduler scheduler = quietScheduler(mode);
+            for (int i = size; i < size + 100; i++) {
+                scheduler.addPatient(arrivals[i]);
+                scheduler.discharge(arrivals[i].getSsn()); // leaves the table without going through the cache
+            }
+            for (int i = size; i < size + 100; i++) {
+                scheduler.rememberTreated(arrivals[i]);
+            }
+            scheduler.admitAll(waiting);
+            long start = System.nanoTime();
+            for (int ssn : lookups) {
+                scheduler.viewPatientDetails("Patient", ssn);
+            }
+            return System.nanoTime() - start;
+        };
+    }
+
+
+    // OPS_PER_ROUND reads of the first k patients in treatment order (a display board refresh) from size waiting patients
+    private static Round topWaiting(SchedulingMode mode, Patient[] arrivals, int size, int k) {
+        List<Patient> waiting = Arrays.asList(arrivals).subList(0, size);
+        return () -> {
+            EmergencyRoomScheduler scheduler = quietScheduler(mode);
+            scheduler.admitAll(waiting);
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (int i = 0; i < OPS_PER_ROUND; i++) {
+                checksum += scheduler.topWaiting(k).size();
+            }
+            long nanos = System.nanoTime() - start;
+            consumed += checksum;
+            return nanos;
+        };
+    }
+
+
+    private static Round compareTo(Patient[] patients) {
+        return () -> {
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (int i = 0; i < patients.length; i++) {
+                checksum += patients[i].compareTo(patients[(i * 7 + 3) % patients.length]);
+            }
+            long nanos = System.nanoTime() - start;
+            consumed += checksum;
+            return nanos;
+        };
+    }
+
+
+    private static Round hashCode(Patient[] patients) {
+        return () -> {
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (Patient patient : patients) {
+                checksum += patient.hashCode();
+            }
+            long nanos = System.nanoTime() - start;
+            consumed += checksum;
+            return nanos;
+        };
+    }
+
+
+    // HashSet.contains on patients that are all present: hashCode plus equals, as a HashMap keyed by Patient would do
+    private static Round hashLookup(Patient[] patients) {
+        HashSet<Patient> set = new HashSet<>(Arrays.asList(patients));
+        return () -> {
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (Patient patient : patients) {
+                checksum += set.contains(patient) ? 1 : 0;
+            }
+            long nanos = System.nanoTime() - start;
+            consumed += checksum;
+            return nanos;
+        };
+    }
+
+
+    private static Round toString(Patient[] patients) {
+        return () -> {
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (Patient patient : patients) {
+                checksum += patient.toString().length();
+            }
+            long nanos = System.nanoTime() - start;
+            consumed += checksum;
+            return nanos;
+        };
+    }
+
+
+    private static EmergencyRoomScheduler quietScheduler(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(mode);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        return scheduler;
+    }
+
+
+    // ---------------------------------------------------------------- harness
+
+    // Warm-up rounds, then the median of the measured rounds
+    private void measure(String name, Round round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+        double[] nanosPerOp = new double[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            nanosPerOp[i] = round.run() / (double) OPS_PER_ROUND;
+        }
+        Arrays.sort(nanosPerOp);
+        double median = nanosPerOp[MEASURED_ROUNDS / 2];
+        results.add(name + "," + String.format(Locale.ROOT, "%.1f", median));
+        System.out.println(String.format(Locale.ROOT, "%-60s %10.1f ns/op   (min %.1f, max %.1f)", name, median, nanosPerOp[0], nanosPerOp[MEASURED_ROUNDS - 1]));
+    }
+
+
+    // Prints each benchmark's change against a CSV written by an earlier run
+    void compareWith(Path baselineCsv) throws IOException {
+        HashMap<String, Double> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(baselineCsv)) {
+            int comma = line.lastIndexOf(',');
+            baseline.put(line.substring(0, comma), Double.parseDouble(line.substring(comma + 1)));
+        }
+        System.out.println("\nAgainst baseline " + baselineCsv + ":");
+        for (String row : results) {
+            int comma = row.lastIndexOf(',');
+            String name = row.substring(0, comma);
+            Double before = baseline.get(name);
+            if (before != null) {
+                double now = Double.parseDouble(row.substring(comma + 1));
+                System.out.println(String.format(Locale.ROOT, "%-60s %10.1f -> %10.1f ns/op  (%+.0f%%)", name, before, now, (now - before) * 100 / before));
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package scheduler;
+
+import java.util.List;
+
+// Receives everything EmergencyRoomScheduler has to report (admissions, treatments, lookups, mistakes).
+// The scheduler itself never builds strings or touches the console: a sink decides whether to
+// print, log, batch or ignore each event. Every method defaults to doing nothing, so a sink only
+// overrides the events it cares about.
+public interface SchedulerEventSink {
+
+    // A patient joined the waiting list
+    default void patientAdmitted(Patient patient) {}
+
+    // addPatient refused a patient: null, or that SSN is already waiting
+    default void admissionRejected(Patient patient) {}
+
+    // admitAll finished: who was admitted, how many were skipped, and the waiting list size afterwards
+    default void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {}
+
+    // A patient was taken off the waiting list for treatment
+    default void patientTreated(Patient patient) {}
+
+    // treatCurrentPatient was called with nobody waiting
+    default void noPatientsWaiting() {}
+
+    // A waiting patient was moved to a new priority level
+    default void patientReprioritized(Patient patient) {}
+
+    // A waiting patient left before treatment
+    default void patientDischarged(Patient patient) {}
+
+    // Re-triage or discharge named an SSN that isn't waiting
+    default void waitingPatientNotFound(int ssn) {}
+
+    // Re-triage asked for a level outside 1-3
+    default void invalidPriorityLevel(int priorityLevel) {}
+
+    // A details lookup found this patient (alreadyTreated: found in the recently-treated cache)
+    default void patientFound(Patient patient, boolean alreadyTreated) {}
+
+    // A details lookup found nobody with this SSN
+    default void patientNotFound(int ssn) {}
+
+    // Called when output must be visible now (e.g. before the CLI prompts again). Synchronous sinks need not override.
+    default void flush() {}
+}
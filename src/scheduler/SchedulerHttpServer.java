@@ -0,0 +1,741 @@
+package scheduler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Local HTTP/JSON front end for one EmergencyRoomScheduler, so registration kiosks and other programs can use it
+// alongside (or instead of) the console. Runs on the JDK's built-in server with one virtual thread per request.
+//   POST /patients          admit: a JSON object with name, ssn, dateOfBirth, address, phoneNumber, priorityLevel,
+//                           treatmentDescription and optionally arrivalTime (military time; now if left out)
+//                           -> 201 and the patient, 400 if invalid, 409 if that SSN is already waiting
+//   POST /treat             treat the next patient -> 200 and the patient, 204 if nobody is waiting
+//   GET  /patients/{ssn}    lookup -> 200 and {"status":"waiting"|"treated","patient":{...}}, 404 if unknown
+//   GET  /waiting?page=0&size=20   one page of the waiting list in treatment order, with the total waiting
+// Input is checked with the same rules as the interactive menu. The scheduler isn't thread-safe, so calls into it
+// are serialized on one lock (a ReentrantLock, which a waiting virtual thread can unmount from); parsing and JSON
+// encoding happen outside it. Reads of the waiting list don't take the lock at all: they use the latest
+// WaitingListSnapshots snapshot, so a busy board polling /waiting never holds up an admission.
+// A change is committed before it is answered: the scheduler's event sink is flushed under the lock (forcing a
+// journal, waiting for a standby's ack), so a kiosk that got its 201 has an admission that survives a crash or
+// failover. Request bodies are read into one byte array and parsed in place (Strings are only created for field
+// values), and responses are encoded straight to bytes and sent with a known length.
+// Binds to the loopback address only: anything reaching it from the network should go through a proper gateway.
+public class SchedulerHttpServer implements AutoCloseable {
+
+    private static final int MAX_BODY_BYTES = 8 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int BACKLOG = 1024;
+
+    static {
+        // The JDK server writes response headers and body separately; with Nagle's algorithm on, the body then waits
+        // for the client's delayed ACK (~40 ms on Linux) on every keep-alive request. Read once, when the server classes load.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final EmergencyRoomScheduler scheduler;
+    private final WaitingListSnapshots snapshots;
+    private final ReentrantLock lock = new ReentrantLock(); // guards scheduler and arrivalClock
+    private final ArrivalClock arrivalClock = new ArrivalClock();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+
+    private SchedulerHttpServer(EmergencyRoomScheduler scheduler, HttpServer server) {
+        this.scheduler = scheduler;
+        this.snapshots = scheduler.enableSnapshots();
+        this.server = server;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+
+    // Serves scheduler on a loopback port (0 = any free port, see getPort). Close the returned server on shutdown.
+    // Nothing else should call into the scheduler while it is being served.
+    public static SchedulerHttpServer start(EmergencyRoomScheduler scheduler, int port) throws IOException {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Scheduler cannot be null");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        SchedulerHttpServer started = new SchedulerHttpServer(scheduler, server);
+        server.start();
+        return started;
+    }
+
+
+    public int getPort() {return server.getAddress().getPort();}
+
+
+    // Stops accepting requests, lets the ones in flight finish (up to a second), then stops the request threads
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+    }
+
+
+    // ---------------------------------------------------------------- routing
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getRawPath();
+            JsonOut json = new JsonOut();
+            int status;
+            try {
+                if (path.equals("/patients") && method.equals("POST")) {
+                    status = admit(readBody(exchange), json);
+                }
+                else if (path.startsWith("/patients/") && method.equals("GET")) {
+                    status = lookup(path.substring("/patients/".length()), json);
+                }
+                else if (path.equals("/treat") && method.equals("POST")) {
+                    status = treat(json);
+                }
+                else if (path.equals("/waiting") && method.equals("GET")) {
+                    status = waiting(exchange.getRequestURI().getRawQuery(), json);
+                }
+                else if (path.equals("/patients") || path.startsWith("/patients/") || path.equals("/treat") || path.equals("/waiting")) {
+                    status = error(405, "Method " + method + " not allowed on " + path, json);
+                }
+                else {
+                    status = error(404, "No such endpoint: " + path, json);
+                }
+            }
+            catch (IllegalArgumentException e) {
+                json.reset();
+                status = error(400, e.getMessage(), json);
+            }
+            send(exchange, status, json);
+        }
+    }
+
+
+    private int admit(JsonReader body, JsonOut json) {
+        PatientFields fields = body.readPatientFields();
+        lock.lock();
+        Patient patient;
+        boolean added;
+        try {
+            long timestamp;
+            int arrivalTime = fields.arrivalTime;
+            if (arrivalTime == 0) {
+                timestamp = arrivalClock.now();
+                arrivalTime = Math.max(1, arrivalClock.militaryTimeOf(timestamp)); // military time has no 0000
+            }
+            else {
+                timestamp = arrivalClock.resolve(arrivalTime);
+            }
+            patient = new Patient(fields.name, fields.ssn, fields.dateOfBirth, fields.address, fields.phoneNumber,
+                    fields.priorityLevel, arrivalTime, timestamp, fields.treatmentDescription);
+            added = scheduler.addPatient(patient);
+            if (added) {
+                scheduler.getEventSink().flush();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        if (!added) {
+            return error(409, "SSN " + fields.ssn + " is already waiting", json);
+        }
+        json.patient(patient);
+        return 201;
+    }
+
+
+    private int treat(JsonOut json) {
+        Patient treated;
+        lock.lock();
+        try {
+            treated = scheduler.treatCurrentPatient();
+            if (treated != null) {
+                scheduler.getEventSink().flush();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        if (treated == null) {
+            return 204;
+        }
+        json.patient(treated);
+        return 200;
+    }
+
+
+    private int lookup(String ssnText, JsonOut json) {
+        int ssn = parseInt(ssnText, "SSN");
+        if (!Patient.isValidSsn(ssn)) {
+            throw new IllegalArgumentException("SSN must be exactly 9 digits: " + ssnText);
+        }
+        Patient found = snapshots.current().find(ssn);
+        boolean waiting = found != null;
+        if (found == null) {
+            lock.lock();
+            try {
+                found = scheduler.findTreatedPatient(ssn);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        if (found == null) {
+            return error(404, "No patient with SSN " + ssn, json);
+        }
+        json.raw("{\"status\":\"").raw(waiting ? "waiting" : "treated").raw("\",\"patient\":").patient(found).raw('}');
+        return 200;
+    }
+
+
+    private int waiting(String query, JsonOut json) {
+        int page = 0;
+        int size = DEFAULT_PAGE_SIZE;
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                String value = equals < 0 ? "" : parameter.substring(equals + 1);
+                if (name.equals("page")) {page = parseInt(value, "page");}
+                else if (name.equals("size")) {size = parseInt(value, "size");}
+            }
+        }
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("page must be 0 or more and size 1 to " + MAX_PAGE_SIZE);
+        }
+        WaitingListSnapshots.Snapshot snapshot = snapshots.current();
+        List<Patient> onPage = snapshot.page(page, size);
+        int total = snapshot.size();
+        json.raw("{\"waiting\":").number(total).raw(",\"page\":").number(page).raw(",\"size\":").number(size).raw(",\"patients\":[");
+        for (int i = 0; i < onPage.size(); i++) {
+            if (i > 0) {json.raw(',');}
+            json.patient(onPage.get(i));
+        }
+        json.raw("]}");
+        return 200;
+    }
+
+
+    private static int error(int status, String message, JsonOut json) {
+        json.raw("{\"error\":").string(message).raw('}');
+        return status;
+    }
+
+    private static int parseInt(String text, String what) {
+        try {
+            return Integer.parseInt(text);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(what + " must be a whole number: " + text);
+        }
+    }
+
+
+    // The whole request body in one array (bodies are small: one patient)
+    private static JsonReader readBody(HttpExchange exchange) throws IOException {
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        int expected = declared == null ? 512 : Math.min(parseInt(declared, "Content-Length"), MAX_BODY_BYTES + 1);
+        byte[] body = new byte[Math.max(expected, 16)];
+        int length = 0;
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(body, length, body.length - length)) > 0) {
+                length += read;
+                if (length > MAX_BODY_BYTES) {
+                    throw new IllegalArgumentException("Request body is over " + MAX_BODY_BYTES + " bytes");
+                }
+                if (length == body.length) {
+                    body = Arrays.copyOf(body, Math.min(body.length * 2, MAX_BODY_BYTES + 1));
+                }
+            }
+        }
+        return new JsonReader(body, length);
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonOut json) throws IOException {
+        if (status == 204) {
+            exchange.sendResponseHeaders(204, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json.bytes, 0, json.length);
+        }
+    }
+
+
+    // ---------------------------------------------------------------- JSON
+
+    // The fields of an admit request, checked with the CLI's rules. arrivalTime 0 means "not given".
+    static final class PatientFields {
+        String name;
+        int ssn;
+        String dateOfBirth;
+        String address;
+        String phoneNumber;
+        int priorityLevel;
+        int arrivalTime;
+        String treatmentDescription;
+    }
+
+
+    // Parses one flat JSON object straight out of the request bytes. Keys are matched as bytes against the known
+    // field names (no key Strings); values are strings or whole numbers. Unknown keys are skipped.
+    static final class JsonReader {
+        private static final byte[][] FIELDS = {bytes("name"), bytes("ssn"), bytes("dateOfBirth"), bytes("address"),
+                bytes("phoneNumber"), bytes("priorityLevel"), bytes("arrivalTime"), bytes("treatmentDescription")};
+
+        private final byte[] in;
+        private final int end;
+        private int position;
+
+        JsonReader(byte[] in, int length) {
+            this.in = in;
+            this.end = length;
+        }
+
+        PatientFields readPatientFields() {
+            PatientFields fields = new PatientFields();
+            expect('{');
+            if (peek() == '}') {
+                throw new IllegalArgumentException("Patient object is empty");
+            }
+            while (true) {
+                expect('"');
+                int keyStart = position;
+                while (position < end && in[position] != '"') {
+                    position += in[position] == '\\' ? 2 : 1;
+                }
+                int field = fieldIndex(keyStart, position);
+                position++;
+                expect(':');
+                switch (field) {
+                    case 0: fields.name = string(); break;
+                    case 1: fields.ssn = number(); break;
+                    case 2: fields.dateOfBirth = string(); break;
+                    case 3: fields.address = string(); break;
+                    case 4: fields.phoneNumber = string(); break;
+                    case 5: fields.priorityLevel = number(); break;
+                    case 6: fields.arrivalTime = number(); break;
+                    case 7: fields.treatmentDescription = string(); break;
+                    default: skipValue();
+                }
+                if (peek() == ',') {
+                    position++;
+                    continue;
+                }
+                expect('}');
+                break;
+            }
+            if (peek() != -1) {
+                throw new IllegalArgumentException("Unexpected text after the patient object at byte " + position);
+            }
+            if (fields.name == null || fields.dateOfBirth == null || fields.address == null || fields.phoneNumber == null
+                    || fields.treatmentDescription == null) {
+                throw new IllegalArgumentException("name, dateOfBirth, address, phoneNumber and treatmentDescription are required");
+            }
+            if (!Patient.isValidSsn(fields.ssn)) {
+                throw new IllegalArgumentException("ssn must be exactly 9 digits");
+            }
+            if (!Patient.isValidPriorityLevel(fields.priorityLevel)) {
+                throw new IllegalArgumentException("priorityLevel must be 1, 2 or 3");
+            }
+            if (fields.arrivalTime != 0 && !Patient.isValidArrivalTime(fields.arrivalTime)) {
+                throw new IllegalArgumentException("arrivalTime must be military time between 1 and 2359");
+            }
+            return fields;
+        }
+
+        private int fieldIndex(int start, int stop) {
+            for (int field = 0; field < FIELDS.length; field++) {
+                if (Arrays.equals(in, start, stop, FIELDS[field], 0, FIELDS[field].length)) {
+                    return field;
+                }
+            }
+            return -1;
+        }
+
+        // Next non-whitespace byte without consuming it, or -1 at the end
+        private int peek() {
+            while (position < end && (in[position] == ' ' || in[position] == '\t' || in[position] == '\n' || in[position] == '\r')) {
+                position++;
+            }
+            return position < end ? in[position] : -1;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at byte " + position);
+            }
+            position++;
+        }
+
+        private int number() {
+            peek();
+            boolean negative = position < end && in[position] == '-';
+            if (negative) {position++;}
+            int start = position;
+            long value = 0;
+            while (position < end && in[position] >= '0' && in[position] <= '9' && position - start < 10) {
+                value = value * 10 + in[position++] - '0';
+            }
+            if (position == start || value > Integer.MAX_VALUE || (position < end && in[position] >= '0' && in[position] <= '9')) {
+                throw new IllegalArgumentException("Expected a whole number at byte " + start);
+            }
+            return (int) (negative ? -value : value);
+        }
+
+        // A string value: one new String straight from the bytes unless it has escapes
+        private String string() {
+            expect('"');
+            int start = position;
+            while (position < end && in[position] != '"' && in[position] != '\\') {
+                position++;
+            }
+            if (position < end && in[position] == '"') {
+                return new String(in, start, position++ - start, StandardCharsets.UTF_8);
+            }
+            position = start;
+            StringBuilder escaped = new StringBuilder();
+            while (true) {
+                int plainStart = position;
+                while (position < end && in[position] != '"' && in[position] != '\\') {
+                    position++;
+                }
+                escaped.append(new String(in, plainStart, position - plainStart, StandardCharsets.UTF_8));
+                if (position >= end) {
+                    throw new IllegalArgumentException("Unterminated string starting at byte " + start);
+                }
+                if (in[position++] == '"') {
+                    return escaped.toString();
+                }
+                if (position >= end) {
+                    throw new IllegalArgumentException("Unterminated escape at byte " + position);
+                }
+                byte c = in[position++];
+                switch (c) {
+                    case '"': case '\\': case '/': escaped.append((char) c); break;
+                    case 'b': escaped.append('\b'); break;
+                    case 'f': escaped.append('\f'); break;
+                    case 'n': escaped.append('\n'); break;
+                    case 'r': escaped.append('\r'); break;
+                    case 't': escaped.append('\t'); break;
+                    case 'u':
+                        if (position + 4 > end) {throw new IllegalArgumentException("Short \\u escape at byte " + position);}
+                        escaped.append((char) Integer.parseInt(new String(in, position, 4, StandardCharsets.ISO_8859_1), 16));
+                        position += 4;
+                        break;
+                    default: throw new IllegalArgumentException("Bad escape \\" + (char) c + " at byte " + (position - 1));
+                }
+            }
+        }
+
+        // Skips a value of an unknown key: a string, number, true/false/null (no nested objects in a patient)
+        private void skipValue() {
+            int c = peek();
+            if (c == '"') {
+                string();
+                return;
+            }
+            if (c == '{' || c == '[') {
+                throw new IllegalArgumentException("Nested values are not accepted (byte " + position + ")");
+            }
+            while (position < end && in[position] != ',' && in[position] != '}') {
+                position++;
+            }
+        }
+
+        private static byte[] bytes(String ascii) {
+            return ascii.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+
+    // Growable byte buffer that JSON is written into directly as UTF-8, then sent in one write with its length
+    static final class JsonOut {
+        byte[] bytes = new byte[512];
+        int length;
+
+        void reset() {length = 0;}
+
+        JsonOut raw(char c) {
+            ensure(1);
+            bytes[length++] = (byte) c;
+            return this;
+        }
+
+        // ASCII text that needs no escaping (keys, punctuation)
+        JsonOut raw(String ascii) {
+            ensure(ascii.length());
+            for (int i = 0; i < ascii.length(); i++) {
+                bytes[length++] = (byte) ascii.charAt(i);
+            }
+            return this;
+        }
+
+        JsonOut number(long value) {
+            ensure(20);
+            if (value < 0) {
+                bytes[length++] = '-';
+                value = -value;
+            }
+            int start = length;
+            do {
+                bytes[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte swap = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = swap;
+            }
+            return this;
+        }
+
+        JsonOut string(String value) {
+            ensure(value.length() * 3 + 2);
+            bytes[length++] = '"';
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    bytes[length++] = '\\';
+                    bytes[length++] = (byte) c;
+                }
+                else if (c < 0x20) {
+                    ensure(6);
+                    bytes[length++] = '\\';
+                    bytes[length++] = 'u';
+                    bytes[length++] = '0';
+                    bytes[length++] = '0';
+                    bytes[length++] = (byte) Character.forDigit(c >> 4, 16);
+                    bytes[length++] = (byte) Character.forDigit(c & 15, 16);
+                }
+                else if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                }
+                else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xC0 | c >> 6);
+                    bytes[length++] = (byte) (0x80 | c & 0x3F);
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+                }
+                else {
+                    bytes[length++] = (byte) (0xE0 | c >> 12);
+                    bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            bytes[length++] = '"';
+            return this;
+        }
+
+        JsonOut patient(Patient patient) {
+            raw("{\"name\":").string(patient.getName());
+            raw(",\"ssn\":").number(patient.getSsn());
+            raw(",\"dateOfBirth\":").string(patient.getDateOfBirth());
+            raw(",\"address\":").string(patient.getAddress());
+            raw(",\"phoneNumber\":").string(patient.getPhoneNumber());
+            raw(",\"priorityLevel\":").number(patient.getPriorityLevel());
+            raw(",\"arrivalTime\":").number(patient.getArrivalTime());
+            raw(",\"arrivalTimestamp\":").number(patient.getArrivalTimestamp());
+            raw(",\"treatmentDescription\":").string(patient.getTreatmentDescription());
+            return raw('}');
+        }
+
+        private void ensure(int more) {
+            if (length + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+            }
+        }
+
+        @Override
+        public String toString() {return new String(bytes, 0, length, StandardCharsets.UTF_8);}
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    // With a port argument: serve a console-reporting scheduler on it until killed. Without: run the tests.
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0) {
+            SchedulerHttpServer served = start(new EmergencyRoomScheduler(), Integer.parseInt(args[0]));
+            System.out.println("ER Scheduler serving on http://localhost:" + served.getPort() + "/");
+            return; // the server's own thread keeps the JVM running
+        }
+        testEndpoints();
+        testJsonStrings();
+        //loadTest(2_000, 10, 64);
+    }
+
+
+    public static void testEndpoints() throws IOException, InterruptedException {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        try (SchedulerHttpServer server = start(scheduler, 0)) {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String base = "http://localhost:" + server.getPort();
+            int green = call(client, "POST", base + "/patients", patientJson("Green", 777777777, 3, 805)).statusCode();
+            int red = call(client, "POST", base + "/patients", patientJson("Red", 888888888, 1, 809)).statusCode();
+            int yellow = call(client, "POST", base + "/patients", patientJson("Yellow", 999999999, 2, 0)).statusCode(); // stamped now
+            int duplicate = call(client, "POST", base + "/patients", patientJson("Red Again", 888888888, 1, 810)).statusCode();
+            int badLevel = call(client, "POST", base + "/patients", patientJson("Blue", 123456789, 4, 810)).statusCode();
+            int badJson = call(client, "POST", base + "/patients", "{\"name\": \"Oops\"").statusCode();
+            String page = call(client, "GET", base + "/waiting?page=0&size=2", null).body();
+            HttpResponse<String> treated = call(client, "POST", base + "/treat", null);
+            String lookup = call(client, "GET", base + "/patients/888888888", null).body();
+            int unknown = call(client, "GET", base + "/patients/111111111", null).statusCode();
+            int wrongMethod = call(client, "DELETE", base + "/treat", null).statusCode();
+
+            boolean admitted = green == 201 && red == 201 && yellow == 201 && duplicate == 409 && badLevel == 400 && badJson == 400;
+            boolean paged = page.startsWith("{\"waiting\":3,\"page\":0,\"size\":2,\"patients\":[{\"name\":\"Red\"") && page.contains("\"name\":\"Yellow\"")
+                    && !page.contains("Green");
+            boolean treatedRed = treated.statusCode() == 200 && treated.body().contains("\"ssn\":888888888")
+                    && lookup.startsWith("{\"status\":\"treated\"") && unknown == 404 && wrongMethod == 405;
+            if (admitted && paged && treatedRed && scheduler.waitingCount() == 2) {
+                System.out.println("Test Passed: HTTP admit, page, treat and lookup (with 400 / 404 / 405 / 409 errors)");
+            }
+            else {System.out.println("Test Failed: admitted " + admitted + ", paged " + paged + " (" + page + "), treated " + treatedRed + " (" + lookup + ")");}
+
+            call(client, "POST", base + "/treat", null);
+            call(client, "POST", base + "/treat", null);
+            if (call(client, "POST", base + "/treat", null).statusCode() == 204) {System.out.println("Test Passed: Treating with nobody waiting answers 204");}
+            else {System.out.println("Test Failed: Treating an empty waiting list did not answer 204");}
+        }
+    }
+
+
+    // Escapes, unicode and unknown keys survive a round trip through the reader and writer
+    public static void testJsonStrings() {
+        String name = "Zoë \"Doc\" O'Brien \\ 🚑";
+        JsonOut json = new JsonOut();
+        json.raw("{\"extra\":true,\"name\":").string(name).raw(",\"ssn\":222333444,\"dateOfBirth\":\"1/1/2000\",\"address\":\"Line 1\\nLine 2\",")
+                .raw("\"phoneNumber\":\"555\",\"priorityLevel\":2,\"treatmentDescription\":\"Tab\\there\",\"note\":null}");
+        PatientFields fields = new JsonReader(Arrays.copyOf(json.bytes, json.length), json.length).readPatientFields();
+        if (fields.name.equals(name) && fields.address.equals("Line 1\nLine 2") && fields.treatmentDescription.equals("Tab\there")
+                && fields.ssn == 222333444 && fields.priorityLevel == 2 && fields.arrivalTime == 0) {
+            System.out.println("Test Passed: JSON strings with escapes and non-ASCII text round trip");
+        }
+        else {System.out.println("Test Failed: parsed name " + fields.name + ", address " + fields.address);}
+    }
+
+
+    private static String patientJson(String name, int ssn, int priorityLevel, int arrivalTime) {
+        return "{\"name\":\"" + name + "\",\"ssn\":" + ssn + ",\"dateOfBirth\":\"1/1/2000\",\"address\":\"1 Main Street\","
+                + "\"phoneNumber\":\"555-555-5555\",\"priorityLevel\":" + priorityLevel
+                + (arrivalTime > 0 ? ",\"arrivalTime\":" + arrivalTime : "") + ",\"treatmentDescription\":\"Kiosk\"}";
+    }
+
+    private static HttpResponse<String> call(HttpClient client, String method, String url, String body) throws IOException, InterruptedException {
+        HttpRequest.BodyPublisher publisher = body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).method(method, publisher).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+
+    // Open-loop load against a loopback server: `clients` virtual threads together send requestsPerSecond requests
+    // for the given number of seconds (45% admit, 35% lookup, 10% treat, 10% first waiting page). Each request is
+    // due at a fixed time and its latency counts from then, not from when it was actually sent, so a stalled
+    // server shows up in the percentiles instead of quietly lowering the request rate.
+    public static void loadTest(int requestsPerSecond, int seconds, int clients) throws IOException, InterruptedException {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        try (SchedulerHttpServer server = start(scheduler, 0)) {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .connectTimeout(Duration.ofSeconds(5)).build();
+            String base = "http://localhost:" + server.getPort();
+            for (int round = 0; round < 2; round++) { // the first round warms up client and server
+                int total = requestsPerSecond * seconds;
+                long intervalNanos = 1_000_000_000L * clients / requestsPerSecond;
+                AtomicInteger nextIndex = new AtomicInteger(round * total);
+                LongAdder errors = new LongAdder();
+                List<LatencyHistogram> histograms = new ArrayList<>();
+                List<Thread> threads = new ArrayList<>();
+                long startNanos = System.nanoTime() + 10_000_000;
+                for (int c = 0; c < clients; c++) {
+                    LatencyHistogram histogram = new LatencyHistogram();
+                    histograms.add(histogram);
+                    long firstDue = startNanos + intervalNanos * c / clients;
+                    SplittableRandom random = new SplittableRandom(round * 1_000L + c);
+                    threads.add(Thread.ofVirtual().start(() -> {
+                        for (long due = firstDue; due < startNanos + seconds * 1_000_000_000L; due += intervalNanos) {
+                            long wait = due - System.nanoTime();
+                            if (wait > 0) {
+                                try {Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));}
+                                catch (InterruptedException e) {return;}
+                            }
+                            int roll = random.nextInt(100);
+                            int index = nextIndex.getAndIncrement();
+                            try {
+                                HttpResponse<String> response;
+                                if (roll < 45) {
+                                    response = call(client, "POST", base + "/patients", patientJson("Load " + index,
+                                            ArrivalGenerator.ssnFor(index), 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(index % 1440)));
+                                }
+                                else if (roll < 80) {
+                                    response = call(client, "GET", base + "/patients/" + ArrivalGenerator.ssnFor(random.nextInt(index + 1)), null);
+                                }
+                                else if (roll < 90) {
+                                    response = call(client, "POST", base + "/treat", null);
+                                }
+                                else {
+                                    response = call(client, "GET", base + "/waiting?page=0&size=20", null);
+                                }
+                                if (response.statusCode() >= 500) {errors.increment();}
+                            }
+                            catch (IOException e) {
+                                errors.increment();
+                            }
+                            catch (InterruptedException e) {
+                                return;
+                            }
+                            histogram.record(System.nanoTime() - due);
+                        }
+                    }));
+                }
+                for (Thread thread : threads) {thread.join();}
+                long elapsedNanos = System.nanoTime() - startNanos;
+                LatencyHistogram all = new LatencyHistogram();
+                for (LatencyHistogram histogram : histograms) {all.add(histogram);}
+                if (round == 1) {
+                    System.out.printf("%,d req/s target, %,.0f req/s achieved over %d s: p50 %,d us, p99 %,d us, p99.9 %,d us, max %,d us, %d errors (%,d waiting)%n",
+                            requestsPerSecond, all.getCount() * 1e9 / elapsedNanos, seconds, all.getValueAtPercentile(50) / 1_000,
+                            all.getValueAtPercentile(99) / 1_000, all.getValueAtPercentile(99.9) / 1_000, all.getMax() / 1_000,
+                            errors.sum(), scheduler.waitingCount());
+                }
+            }
+        }
+    }
+}
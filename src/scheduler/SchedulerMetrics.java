@@ -0,0 +1,371 @@
+package scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Live operational numbers for one scheduler: event counters, waiting patients per priority level, treatments
+// in the last hour, wait-time histograms per level (admission to treatment), and addPatient / treatCurrentPatient
+// latency histograms. Turned on with EmergencyRoomScheduler.enableMetrics().
+// Fed as an event sink. Everything is primitive counters, one IntLongMap entry per waiting patient (admission time
+// + level packed in a long) and fixed-size LatencyHistograms, so recording allocates nothing.
+// Reading the clock is the expensive part (System.nanoTime is 20-50 ns, more on some VMs), so admissions and
+// treatments read it once each for wait times, and operation latency is only timed for every 8th addPatient and
+// every 8th treatCurrentPatient. That still gives thousands of latency samples an hour at any real ER's pace.
+// Readable over JMX (registerMBean) or as a plain-text dump. Written by the scheduler's thread only; readers on
+// other threads (JMX) may see values a moment out of date.
+public class SchedulerMetrics implements SchedulerEventSink, SchedulerMetricsMXBean {
+
+    private static final int LEVELS = 3;
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final int LATENCY_SAMPLE_MASK = 7; // time 1 in 8 operations
+
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+
+    private long admitted;
+    private long rejected;
+    private long treated;
+    private long discharged;
+    private long reprioritized;
+    private long lookups;
+    private final long[] waiting = new long[LEVELS + 1]; // indexed by level, [0] unused
+
+    // SSN -> (nanos since start of admission << 2) | current level
+    private final IntLongMap admissions = new IntLongMap(1024);
+
+    private final LatencyHistogram[] waitTimes = new LatencyHistogram[LEVELS + 1];
+    private final LatencyHistogram addLatency = new LatencyHistogram();
+    private final LatencyHistogram treatLatency = new LatencyHistogram();
+    private int addCalls;
+    private int treatCalls;
+
+    // Treatments per minute for the last hour, as a ring indexed by minute % 60
+    private final long[] treatedInMinute = new long[60];
+    private final long[] minuteOfSlot = new long[60];
+
+
+    //Constructor: wall-clock timing
+    public SchedulerMetrics() {
+        this(System::nanoTime);
+    }
+
+    //Constructor: timing from any nanosecond clock (tests use a fake one)
+    public SchedulerMetrics(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        for (int level = 1; level <= LEVELS; level++) {
+            waitTimes[level] = new LatencyHistogram();
+        }
+    }
+
+
+    // Starts tracking patients who were already waiting when metrics were turned on (their wait counts from now)
+    void trackWaiting(List<Patient> alreadyWaiting) {
+        for (Patient patient : alreadyWaiting) {
+            admit(patient, nanoClock.getAsLong());
+        }
+    }
+
+    // Whether the scheduler should time this addPatient / treatCurrentPatient call (sampling, see above)
+    boolean timeNextAdd() {return (++addCalls & LATENCY_SAMPLE_MASK) == 0;}
+    boolean timeNextTreat() {return (++treatCalls & LATENCY_SAMPLE_MASK) == 0;}
+
+    void recordAddLatency(long nanos) {addLatency.record(nanos);}
+    void recordTreatLatency(long nanos) {treatLatency.record(nanos);}
+
+
+    // ---------------------------------------------------------------- events
+
+    @Override
+    public void patientAdmitted(Patient patient) {
+        admitted++;
+        admit(patient, nanoClock.getAsLong());
+    }
+
+    @Override
+    public void admissionRejected(Patient patient) {
+        rejected++;
+    }
+
+    @Override
+    public void batchAdmitted(List<Patient> admittedPatients, int skipped, int waitingCount) {
+        long now = nanoClock.getAsLong();
+        for (Patient patient : admittedPatients) {
+            admit(patient, now);
+        }
+        admitted += admittedPatients.size();
+        rejected += skipped;
+    }
+
+    @Override
+    public void patientTreated(Patient patient) {
+        long now = nanoClock.getAsLong();
+        treated++;
+        long admission = admissions.remove(patient.getSsn());
+        if (admission != 0) {
+            int level = (int) (admission & 3);
+            waiting[level]--;
+            waitTimes[level].record(now - startNanos - (admission >>> 2));
+        }
+        long minute = (now - startNanos) / NANOS_PER_MINUTE;
+        int slot = (int) (minute % 60);
+        if (minuteOfSlot[slot] != minute) {
+            minuteOfSlot[slot] = minute;
+            treatedInMinute[slot] = 0;
+        }
+        treatedInMinute[slot]++;
+    }
+
+    @Override
+    public void patientReprioritized(Patient patient) {
+        reprioritized++;
+        long admission = admissions.get(patient.getSsn());
+        if (admission != 0) {
+            waiting[(int) (admission & 3)]--;
+            waiting[patient.getPriorityLevel()]++;
+            admissions.put(patient.getSsn(), (admission & ~3L) | patient.getPriorityLevel());
+        }
+    }
+
+    @Override
+    public void patientDischarged(Patient patient) {
+        discharged++;
+        long admission = admissions.remove(patient.getSsn());
+        if (admission != 0) {
+            waiting[(int) (admission & 3)]--;
+        }
+    }
+
+    @Override
+    public void patientFound(Patient patient, boolean alreadyTreated) {
+        lookups++;
+    }
+
+    @Override
+    public void patientNotFound(int ssn) {
+        lookups++;
+    }
+
+
+    private void admit(Patient patient, long now) {
+        int level = patient.getPriorityLevel();
+        waiting[level]++;
+        admissions.put(patient.getSsn(), ((now - startNanos) << 2) | level);
+    }
+
+
+    // ---------------------------------------------------------------- readings
+
+    @Override public long getAdmitted() {return admitted;}
+    @Override public long getRejected() {return rejected;}
+    @Override public long getTreated() {return treated;}
+    @Override public long getDischarged() {return discharged;}
+    @Override public long getReprioritized() {return reprioritized;}
+    @Override public long getLookups() {return lookups;}
+
+    @Override
+    public long[] getWaitingByLevel() {
+        return new long[] {waiting[1], waiting[2], waiting[3]};
+    }
+
+    @Override
+    public long getTreatmentsLastHour() {
+        long currentMinute = (nanoClock.getAsLong() - startNanos) / NANOS_PER_MINUTE;
+        long total = 0;
+        for (int slot = 0; slot < 60; slot++) {
+            if (currentMinute - minuteOfSlot[slot] < 60) {
+                total += treatedInMinute[slot];
+            }
+        }
+        return total;
+    }
+
+    public LatencyHistogram getWaitTimeHistogram(int priorityLevel) {return waitTimes[priorityLevel];}
+    public LatencyHistogram getAddPatientLatency() {return addLatency;}
+    public LatencyHistogram getTreatCurrentPatientLatency() {return treatLatency;}
+
+    @Override public double[] getMedianWaitSecondsByLevel() {return waitPercentileSeconds(50);}
+    @Override public double[] getP99WaitSecondsByLevel() {return waitPercentileSeconds(99);}
+    @Override public long getAddPatientP99Nanos() {return addLatency.getValueAtPercentile(99);}
+    @Override public long getTreatCurrentPatientP99Nanos() {return treatLatency.getValueAtPercentile(99);}
+
+
+    // How long the longest-waiting patient at each level has been waiting so far. Scans every waiting patient.
+    @Override
+    public double[] getLongestCurrentWaitSecondsByLevel() {
+        long now = nanoClock.getAsLong() - startNanos;
+        long[] longest = new long[LEVELS + 1];
+        admissions.forEachValue(admission -> {
+            int level = (int) (admission & 3);
+            longest[level] = Math.max(longest[level], now - (admission >>> 2));
+        });
+        return new double[] {longest[1] / 1e9, longest[2] / 1e9, longest[3] / 1e9};
+    }
+
+
+    private double[] waitPercentileSeconds(double percentile) {
+        double[] seconds = new double[LEVELS];
+        for (int level = 1; level <= LEVELS; level++) {
+            seconds[level - 1] = waitTimes[level].getValueAtPercentile(percentile) / 1e9;
+        }
+        return seconds;
+    }
+
+
+    // One "name{labels} value" line per metric (the Prometheus text format, so it can also be scraped)
+    @Override
+    public String getTextDump() {
+        StringBuilder out = new StringBuilder();
+        line(out, "scheduler_admitted_total", "", admitted);
+        line(out, "scheduler_rejected_total", "", rejected);
+        line(out, "scheduler_treated_total", "", treated);
+        line(out, "scheduler_discharged_total", "", discharged);
+        line(out, "scheduler_reprioritized_total", "", reprioritized);
+        line(out, "scheduler_lookups_total", "", lookups);
+        line(out, "scheduler_treatments_last_hour", "", getTreatmentsLastHour());
+        double[] longest = getLongestCurrentWaitSecondsByLevel();
+        for (int level = 1; level <= LEVELS; level++) {
+            String label = "level=\"" + level + "\"";
+            line(out, "scheduler_waiting", label, waiting[level]);
+            line(out, "scheduler_longest_current_wait_seconds", label, longest[level - 1]);
+            LatencyHistogram histogram = waitTimes[level];
+            line(out, "scheduler_wait_seconds_count", label, histogram.getCount());
+            for (double quantile : new double[] {0.5, 0.9, 0.99}) {
+                line(out, "scheduler_wait_seconds", label + ",quantile=\"" + quantile + "\"", histogram.getValueAtPercentile(quantile * 100) / 1e9);
+            }
+            line(out, "scheduler_wait_seconds_max", label, histogram.getMax() / 1e9);
+        }
+        latencyLines(out, "scheduler_add_patient_nanos", addLatency);
+        latencyLines(out, "scheduler_treat_current_patient_nanos", treatLatency);
+        return out.toString();
+    }
+
+
+    private static void latencyLines(StringBuilder out, String name, LatencyHistogram histogram) {
+        line(out, name + "_count", "", histogram.getCount());
+        for (double quantile : new double[] {0.5, 0.99, 0.999}) {
+            line(out, name, "quantile=\"" + quantile + "\"", histogram.getValueAtPercentile(quantile * 100));
+        }
+        line(out, name + "_max", "", histogram.getMax());
+    }
+
+
+    private static void line(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        }
+        else {
+            out.append(String.format(Locale.ROOT, "%.3f", value));
+        }
+        out.append('\n');
+    }
+
+
+    // Registers with the platform MBean server (visible in JConsole / VisualVM) under scheduler:type=SchedulerMetrics,name=<name>
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("scheduler:type=SchedulerMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) throws JMException {
+        testCountsAndWaits();
+        testMBean();
+        //benchmarkOverhead();
+    }
+
+
+    public static void testCountsAndWaits() {
+        long[] clock = {0};
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        scheduler.addPatient(new Patient("Already Waiting", 111111111, "1/1/2000", "Addr", "555", 3, 700, "Cough"));
+        SchedulerMetrics metrics = scheduler.enableMetrics(() -> clock[0]);
+
+        scheduler.addPatient(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        scheduler.addPatient(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm"));
+        scheduler.addPatient(new Patient("Yellow Again", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 808, "Duplicate"));
+        clock[0] = 30 * 60 * 1_000_000_000L; // 30 minutes later
+        scheduler.reprioritize(777777777, 1);
+        scheduler.treatCurrentPatient(); // Green, now level 1, waited 30 minutes
+        scheduler.discharge(111111111);
+        scheduler.viewPatientDetails("Green", 777777777);
+
+        long[] waitingByLevel = metrics.getWaitingByLevel();
+        double greenWait = metrics.getWaitTimeHistogram(1).getValueAtPercentile(50) / 1e9;
+        if (metrics.getAdmitted() == 2 && metrics.getRejected() == 1 && metrics.getTreated() == 1 && metrics.getDischarged() == 1
+                && metrics.getReprioritized() == 1 && metrics.getLookups() == 1 && waitingByLevel[0] == 0 && waitingByLevel[1] == 1
+                && waitingByLevel[2] == 0 && Math.abs(greenWait - 1800) < 1800 * 0.02 && metrics.getTreatmentsLastHour() == 1
+                && metrics.getLongestCurrentWaitSecondsByLevel()[1] == 1800 && metrics.getAddPatientLatency().getCount() == 0) {
+            System.out.println("Test Passed: Counters, per-level depth and wait times follow the events");
+        }
+        else {System.out.println("Test Failed:\n" + metrics.getTextDump());}
+
+        clock[0] += 61 * 60 * 1_000_000_000L;
+        if (metrics.getTreatmentsLastHour() == 0 && metrics.getTextDump().contains("scheduler_waiting{level=\"2\"} 1\n")) {
+            System.out.println("Test Passed: Hourly throughput rolls off and the text dump shows lane depth");
+        }
+        else {System.out.println("Test Failed:\n" + metrics.getTextDump());}
+    }
+
+
+    public static void testMBean() throws JMException {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        SchedulerMetrics metrics = scheduler.enableMetrics();
+        ObjectName name = metrics.registerMBean("test");
+        scheduler.addPatient(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains"));
+        Object admittedOverJmx = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Admitted");
+        long[] waitingOverJmx = (long[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "WaitingByLevel");
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        if (Long.valueOf(1).equals(admittedOverJmx) && waitingOverJmx[0] == 1) {
+            System.out.println("Test Passed: Metrics readable over JMX");
+        }
+        else {System.out.println("Test Failed: JMX returned " + admittedOverJmx);}
+    }
+
+
+    // Steady-state add + treat pairs at a waiting list depth of 1000, with and without metrics turned on
+    public static void benchmarkOverhead() {
+        Patient[] arrivals = new ArrivalGenerator(3, 1_000_000).generate(1_000_000);
+        for (int round = 0; round < 5; round++) {
+            long plain = addTreatPairs(false, arrivals);
+            long measured = addTreatPairs(true, arrivals);
+            System.out.println("add + treat pair: " + plain + " ns without metrics, " + measured + " ns with metrics (+" + (measured - plain) + " ns)");
+        }
+    }
+
+
+    private static long addTreatPairs(boolean withMetrics, Patient[] arrivals) {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(SchedulingMode.PRIORITY_LANES);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        if (withMetrics) {
+            scheduler.enableMetrics();
+        }
+        for (int i = 0; i < 1000; i++) {
+            scheduler.addPatient(arrivals[i]);
+        }
+        long start = System.nanoTime();
+        for (int i = 1000; i < arrivals.length; i++) {
+            scheduler.addPatient(arrivals[i]);
+            scheduler.treatCurrentPatient();
+        }
+        return (System.nanoTime() - start) / (arrivals.length - 1000);
+    }
+}
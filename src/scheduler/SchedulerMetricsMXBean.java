@@ -0,0 +1,26 @@
+package scheduler;
+
+// JMX view of SchedulerMetrics (registered as scheduler:type=SchedulerMetrics,name=...).
+// Arrays indexed by priority level are in level order: [0] = level 1, [1] = level 2, [2] = level 3.
+public interface SchedulerMetricsMXBean {
+
+    long getAdmitted();
+    long getRejected();
+    long getTreated();
+    long getDischarged();
+    long getReprioritized();
+    long getLookups();
+
+    long[] getWaitingByLevel();
+    long getTreatmentsLastHour();
+
+    double[] getMedianWaitSecondsByLevel();
+    double[] getP99WaitSecondsByLevel();
+    double[] getLongestCurrentWaitSecondsByLevel();
+
+    long getAddPatientP99Nanos();
+    long getTreatCurrentPatientP99Nanos();
+
+    // Everything above as plain text, one metric per line
+    String getTextDump();
+}
@@ -0,0 +1,210 @@
+package scheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// A sequence of scheduler operations (admit, treat, re-triage, discharge) to replay through a scheduler with
+// TraceReplay. Traces are generated (generate: millions of events with a realistic level mix and a waiting list
+// that starts at a chosen size) or recorded from a live scheduler (EmergencyRoomScheduler.enableTraceRecorder,
+// e.g. during a console or HTTP session), and can be saved to and loaded from a file.
+// Held as parallel arrays, one slot per event: kind, the admitted patient (admits only), SSN and new level
+// (re-triage / discharge only). The file format uses the write-ahead log's record types and PatientCodec.
+public final class SchedulerTrace {
+
+    public static final byte ADMIT = WriteAheadLog.ADMIT;
+    public static final byte TREAT = WriteAheadLog.TREAT;
+    public static final byte REPRIORITIZE = WriteAheadLog.REPRIORITIZE;
+    public static final byte DISCHARGE = WriteAheadLog.DISCHARGE;
+
+    static final int TRACE_MAGIC = 0x45525452; // "ERTR"
+    private static final int IO_BUFFER_BYTES = 1 << 20;
+
+    private final byte[] kinds;
+    private final Patient[] patients;
+    private final int[] ssns;
+    private final byte[] levels;
+    private final int size;
+
+
+    private SchedulerTrace(byte[] kinds, Patient[] patients, int[] ssns, byte[] levels, int size) {
+        this.kinds = kinds;
+        this.patients = patients;
+        this.ssns = ssns;
+        this.levels = levels;
+        this.size = size;
+    }
+
+
+    public int size() {return size;}
+    public byte kind(int event) {return kinds[event];}
+    public Patient patient(int event) {return patients[event];}      // ADMIT
+    public int ssn(int event) {return ssns[event];}                  // REPRIORITIZE, DISCHARGE
+    public int level(int event) {return levels[event];}             // REPRIORITIZE
+
+
+    // Generates events operations: first backlog admissions, then a mix of 46% admissions, 44% treatments, 6%
+    // re-triages and 4% discharges (so the list slowly grows from backlog). Re-triages and discharges pick a
+    // recent arrival, who may already have been treated, which exercises the not-found paths too.
+    // The same seed always gives the same trace.
+    public static SchedulerTrace generate(long seed, int events, int backlog) {
+        ArrivalGenerator arrivals = new ArrivalGenerator(seed, Math.max(1_000, events / 2));
+        SplittableRandom random = new SplittableRandom(seed);
+        Recorder trace = new Recorder(events);
+        int[] recent = new int[Math.max(1, 2 * backlog + 1_000)]; // SSNs of the latest arrivals, as a ring
+        int admitted = 0;
+        for (int event = 0; event < events; event++) {
+            int roll = event < backlog ? 0 : random.nextInt(100);
+            if (roll < 46) {
+                Patient patient = arrivals.next();
+                recent[admitted++ % recent.length] = patient.getSsn();
+                trace.patientAdmitted(patient);
+            }
+            else if (roll < 90) {
+                trace.append(TREAT, null, 0, 0);
+            }
+            else if (admitted > 0) {
+                int ssn = recent[random.nextInt(Math.min(admitted, recent.length))];
+                if (roll < 96) {trace.append(REPRIORITIZE, null, ssn, 1 + random.nextInt(3));}
+                else {trace.append(DISCHARGE, null, ssn, 0);}
+            }
+            else {
+                trace.append(TREAT, null, 0, 0);
+            }
+        }
+        return trace.toTrace();
+    }
+
+
+    // Records a live scheduler's changes as a trace, starting with an admission for everyone already waiting.
+    // Attach with EmergencyRoomScheduler.enableTraceRecorder(). Called on the scheduler's thread only.
+    public static final class Recorder implements SchedulerEventSink {
+        private byte[] kinds;
+        private Patient[] patients;
+        private int[] ssns;
+        private byte[] levels;
+        private int size;
+
+        Recorder(int expectedEvents) {
+            int capacity = Math.max(16, expectedEvents);
+            kinds = new byte[capacity];
+            patients = new Patient[capacity];
+            ssns = new int[capacity];
+            levels = new byte[capacity];
+        }
+
+        Recorder(List<Patient> waiting) {
+            this(waiting.size() + 1_024);
+            for (Patient patient : waiting) {
+                patientAdmitted(patient);
+            }
+        }
+
+        // The events so far (a copy: recording can go on)
+        public SchedulerTrace toTrace() {
+            return new SchedulerTrace(Arrays.copyOf(kinds, size), Arrays.copyOf(patients, size), Arrays.copyOf(ssns, size),
+                    Arrays.copyOf(levels, size), size);
+        }
+
+        @Override public void patientAdmitted(Patient patient) {append(ADMIT, patient, patient.getSsn(), 0);}
+        @Override public void patientTreated(Patient patient) {append(TREAT, null, 0, 0);}
+        @Override public void patientReprioritized(Patient patient) {append(REPRIORITIZE, null, patient.getSsn(), patient.getPriorityLevel());}
+        @Override public void patientDischarged(Patient patient) {append(DISCHARGE, null, patient.getSsn(), 0);}
+
+        @Override
+        public void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {
+            for (Patient patient : admitted) {
+                patientAdmitted(patient);
+            }
+        }
+
+        void append(byte kind, Patient patient, int ssn, int level) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                patients = Arrays.copyOf(patients, capacity);
+                ssns = Arrays.copyOf(ssns, capacity);
+                levels = Arrays.copyOf(levels, capacity);
+            }
+            kinds[size] = kind;
+            patients[size] = patient;
+            ssns[size] = ssn;
+            levels[size] = (byte) level;
+            size++;
+        }
+    }
+
+
+    // ---------------------------------------------------------------- file format: header, then one record per event
+
+    // Header (owner field: number of events), then per event its type byte and payload: the patient for ADMIT,
+    // the SSN for DISCHARGE, the SSN and level for REPRIORITIZE, nothing for TREAT
+    public void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES);
+            PatientCodec.writeHeader(buffer, TRACE_MAGIC, size);
+            for (int event = 0; event < size; event++) {
+                int needed = 9 + (kinds[event] == ADMIT ? PatientCodec.maxEncodedSize(patients[event]) : 0);
+                if (buffer.remaining() < needed) {
+                    drain(channel, buffer);
+                }
+                buffer.put(kinds[event]);
+                switch (kinds[event]) {
+                    case ADMIT: PatientCodec.write(buffer, patients[event]); break;
+                    case REPRIORITIZE: buffer.putInt(ssns[event]).putInt(levels[event]); break;
+                    case DISCHARGE: buffer.putInt(ssns[event]); break;
+                    default: break;
+                }
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    public static SchedulerTrace read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES).limit(0); // empty until the first fill
+            fill(channel, buffer);
+            long events = PatientCodec.readHeader(buffer, TRACE_MAGIC, "scheduler trace");
+            if (events < 0 || events > Integer.MAX_VALUE - 8) {
+                throw new IOException("Bad event count in trace " + file + ": " + events);
+            }
+            Recorder trace = new Recorder((int) events);
+            for (long event = 0; event < events; event++) {
+                if (buffer.remaining() < IO_BUFFER_BYTES / 2) { // room for the largest record
+                    fill(channel, buffer);
+                }
+                byte kind = buffer.get();
+                switch (kind) {
+                    case ADMIT: trace.patientAdmitted(PatientCodec.read(buffer)); break;
+                    case TREAT: trace.append(TREAT, null, 0, 0); break;
+                    case REPRIORITIZE: trace.append(REPRIORITIZE, null, buffer.getInt(), buffer.getInt()); break;
+                    case DISCHARGE: trace.append(DISCHARGE, null, buffer.getInt(), 0); break;
+                    default: throw new IOException("Unknown record type " + kind + " at event " + event + " of trace " + file);
+                }
+            }
+            return trace.toTrace();
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Moves what's left to the front and reads until the buffer is full or the file ends
+    private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // keep reading
+        }
+        buffer.flip();
+    }
+}
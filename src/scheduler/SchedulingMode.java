@@ -0,0 +1,23 @@
+package scheduler;
+
+// How EmergencyRoomScheduler keeps its waiting list. PRIORITY_QUEUE, PRIORITY_LANES and COMPACT_HEAP treat patients
+// in the same order (priority level, then arrival time) and differ only in cost. AGING_LANES changes the order on purpose.
+public enum SchedulingMode {
+
+    PRIORITY_QUEUE, // indexed binary heap: O(log n) admit and treat, O(log n) discharge / re-triage
+    PRIORITY_LANES, // one FIFO ring buffer per priority level: O(1) admit and treat, O(lane) discharge / re-triage
+    AGING_LANES,    // priority lanes where long waits raise a patient's effective level (wall clock), so no level starves
+    COMPACT_HEAP;   // indexed heap of packed keys with patient details stored as bytes: same costs as PRIORITY_QUEUE plus a decode per treat/lookup, far less memory
+
+
+    // Creates an empty waiting list for this mode
+    public WaitingList newWaitingList() {
+        switch (this) {
+            case PRIORITY_LANES: return new PatientLaneQueue();
+            case AGING_LANES: return new AgingLaneQueue();
+            case COMPACT_HEAP: return new CompactPatientHeap();
+            case PRIORITY_QUEUE:
+            default: return new IndexedPatientHeap();
+        }
+    }
+}
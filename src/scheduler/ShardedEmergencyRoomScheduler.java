@@ -0,0 +1,398 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Several departments (adult, pediatric, trauma, ...) each with its own EmergencyRoomScheduler, plus a global
+// "treat the most urgent patient in any department" for overflow.
+// Each shard is guarded by its own monitor, so departments never contend with each other. After every change a
+// shard publishes its head (most urgent waiting patient) and refreshes its path in a tournament (winner) tree over
+// all shard heads. The tree's root names the shard holding the most urgent patient anywhere, so the global
+// operations are O(log shards) instead of a scan of every queue, and the tree itself takes no locks: each node
+// holds (version, winning shard) and is refreshed with a compare-and-set, twice per node, which is enough for
+// concurrent refreshes never to leave a stale winner behind (if both of our attempts fail, someone else's
+// refresh that started after our change already succeeded).
+// Under concurrent changes the global winner is the most urgent at some instant during the call.
+// SSNs are only checked for duplicates within a department. With AGING_LANES a shard's head can age without any
+// change, and the tree only sees it at that shard's next operation.
+public class ShardedEmergencyRoomScheduler {
+
+    private final String[] departments;
+    private final Shard[] shards;
+    private final int leaves;            // shard count rounded up to a power of two
+    private final AtomicLongArray tree;  // internal nodes 1..leaves-1: version << 32 | winning shard
+
+
+    // One department. The scheduler is only touched while holding the shard's monitor.
+    private static final class Shard {
+        final EmergencyRoomScheduler scheduler;
+        volatile Patient head; // most urgent waiting patient after the last change, or null
+
+        Shard(SchedulingMode mode) {
+            scheduler = new EmergencyRoomScheduler(mode);
+            scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        }
+    }
+
+
+    //Constructor: one priority-queue shard per department name
+    public ShardedEmergencyRoomScheduler(String... departments) {
+        this(SchedulingMode.PRIORITY_QUEUE, departments);
+    }
+
+    //Constructor: one shard per department name, each with its own waiting list of the given mode
+    public ShardedEmergencyRoomScheduler(SchedulingMode mode, String... departments) {
+        if (departments.length == 0) {
+            throw new IllegalArgumentException("At least one department is needed");
+        }
+        this.departments = departments.clone();
+        shards = new Shard[departments.length];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(mode);
+        }
+        leaves = Math.max(2, Integer.highestOneBit(shards.length - 1) << 1);
+        tree = new AtomicLongArray(leaves);
+        for (int node = leaves - 1; node >= 1; node--) {
+            tree.set(node, winnerOf(2 * node)); // everything empty: any valid leaf will do
+        }
+    }
+
+
+    public int departmentCount() {return shards.length;}
+    public String departmentName(int department) {return departments[department];}
+
+    // Index of the department with this name, or -1
+    public int departmentIndex(String name) {
+        for (int i = 0; i < departments.length; i++) {
+            if (departments[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    // Admits a patient to a department. Returns false if rejected (null, or SSN already waiting in that department).
+    public boolean addPatient(int department, Patient patient) {
+        Shard shard = shards[department];
+        boolean added;
+        synchronized (shard) {
+            added = shard.scheduler.addPatient(patient);
+            if (added) {
+                shard.head = shard.scheduler.peekCurrentPatient();
+            }
+        }
+        if (added) {
+            propagate(department);
+        }
+        return added;
+    }
+
+
+    // Treats the most urgent patient of one department, or returns null if nobody is waiting there
+    public Patient treatCurrentPatient(int department) {
+        Shard shard = shards[department];
+        Patient treated;
+        synchronized (shard) {
+            treated = shard.scheduler.treatCurrentPatient();
+            shard.head = shard.scheduler.peekCurrentPatient();
+        }
+        if (treated != null) {
+            propagate(department);
+        }
+        return treated;
+    }
+
+
+    // Overflow: treats the most urgent waiting patient in any department, or returns null if every department is empty
+    public Patient treatMostUrgent() {
+        while (true) {
+            int department = winner();
+            if (shards[department].head == null) {
+                return null;
+            }
+            Patient treated = treatCurrentPatient(department);
+            if (treated != null) {
+                return treated;
+            }
+            // that department was emptied by someone else in the meantime; the tree has been refreshed, ask again
+        }
+    }
+
+
+    // Most urgent waiting patient in any department, without removing them (null if none)
+    public Patient peekMostUrgent() {
+        return shards[winner()].head;
+    }
+
+
+    // Department holding the most urgent waiting patient (meaningless if nobody is waiting)
+    public int mostUrgentDepartment() {
+        return winner();
+    }
+
+
+    // Removes a waiting patient from a department. Returns them, or null if they weren't waiting there.
+    public Patient discharge(int department, int ssn) {
+        Shard shard = shards[department];
+        Patient leaving;
+        synchronized (shard) {
+            leaving = shard.scheduler.discharge(ssn);
+            shard.head = shard.scheduler.peekCurrentPatient();
+        }
+        if (leaving != null) {
+            propagate(department);
+        }
+        return leaving;
+    }
+
+
+    // Re-triages a waiting patient in a department. Returns the updated patient, or null.
+    public Patient reprioritize(int department, int ssn, int newLevel) {
+        Shard shard = shards[department];
+        Patient updated;
+        synchronized (shard) {
+            updated = shard.scheduler.reprioritize(ssn, newLevel);
+            shard.head = shard.scheduler.peekCurrentPatient();
+        }
+        if (updated != null) {
+            propagate(department);
+        }
+        return updated;
+    }
+
+
+    // Waiting patient with this SSN in the department, or null
+    public Patient findPatient(int department, int ssn) {
+        Shard shard = shards[department];
+        synchronized (shard) {
+            return shard.scheduler.findPatient(ssn);
+        }
+    }
+
+
+    public int waitingCount(int department) {
+        Shard shard = shards[department];
+        synchronized (shard) {
+            return shard.scheduler.waitingCount();
+        }
+    }
+
+    // Total waiting across departments (each department counted at a slightly different instant)
+    public int waitingCount() {
+        int total = 0;
+        for (int department = 0; department < shards.length; department++) {
+            total += waitingCount(department);
+        }
+        return total;
+    }
+
+
+    // Tournament tree: leaf for shard i is node leaves + i, node n's children are 2n and 2n + 1, root is node 1
+
+    private int winner() {
+        return (int) tree.get(1);
+    }
+
+    private int winnerOf(int node) {
+        return node >= leaves ? node - leaves : (int) tree.get(node);
+    }
+
+    // Re-plays the matches on the path from a shard's leaf to the root
+    private void propagate(int department) {
+        for (int node = (leaves + department) >>> 1; node >= 1; node >>>= 1) {
+            if (!refresh(node)) {
+                refresh(node);
+            }
+        }
+    }
+
+    private boolean refresh(int node) {
+        long old = tree.get(node);
+        int left = winnerOf(2 * node);
+        int right = winnerOf(2 * node + 1);
+        int winner = moreUrgent(left, right);
+        return tree.compareAndSet(node, old, ((old >>> 32) + 1) << 32 | winner);
+    }
+
+    // The shard whose head is more urgent; empty and padding shards always lose, ties go to the left.
+    // Padding leaves are all on the right, so a left winner is always a real shard and so is the root.
+    private int moreUrgent(int left, int right) {
+        Patient leftHead = left < shards.length ? shards[left].head : null;
+        Patient rightHead = right < shards.length ? shards[right].head : null;
+        if (rightHead == null) {
+            return left;
+        }
+        if (leftHead == null) {
+            return right;
+        }
+        return rightHead.compareTo(leftHead) < 0 ? right : left;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) throws InterruptedException {
+        testDepartmentsAndOverflow();
+        testTreeMatchesScan();
+        testConcurrentOverflow();
+        //benchmarkShards(new int[] {1, 2, 4, 8, 16}, 200_000);
+    }
+
+
+    public static void testDepartmentsAndOverflow() {
+        ShardedEmergencyRoomScheduler er = new ShardedEmergencyRoomScheduler("Adult", "Pediatric", "Trauma");
+        int adult = er.departmentIndex("Adult");
+        int pediatric = er.departmentIndex("Pediatric");
+        int trauma = er.departmentIndex("Trauma");
+        er.addPatient(adult, new Patient("Green", 777777777, "4/4/2000", "Addr", "555", 3, 800, "Flu Like Symptoms"));
+        er.addPatient(pediatric, new Patient("Yellow", 999999999, "2/2/2015", "Addr", "555", 2, 815, "Broken Arm"));
+        er.addPatient(trauma, new Patient("Red", 888888888, "3/3/2000", "Addr", "555", 1, 825, "Chest Pains"));
+        er.addPatient(adult, new Patient("Blue", 111111111, "1/1/2000", "Addr", "555", 2, 700, "Sprain"));
+
+        Patient localAdult = er.treatCurrentPatient(adult); // Blue: most urgent in Adult even though Trauma has a level 1
+        StringBuilder overflow = new StringBuilder();
+        Patient next;
+        while ((next = er.treatMostUrgent()) != null) {
+            overflow.append(next.getName()).append(',');
+        }
+        if (localAdult.getName().equals("Blue") && overflow.toString().equals("Red,Yellow,Green,") && er.waitingCount() == 0) {
+            System.out.println("Test Passed: Departments treat locally, overflow takes the most urgent anywhere");
+        }
+        else {System.out.println("Test Failed: Local " + localAdult.getName() + ", overflow order " + overflow);}
+    }
+
+
+    // Random single-threaded operations: the tree's winner always matches a scan of every department
+    public static void testTreeMatchesScan() {
+        int departments = 7; // not a power of two, so padding leaves are exercised
+        ShardedEmergencyRoomScheduler er = new ShardedEmergencyRoomScheduler(SchedulingMode.PRIORITY_LANES, "A", "B", "C", "D", "E", "F", "G");
+        ArrivalGenerator generator = new ArrivalGenerator(3, 20_000);
+        Random random = new Random(3);
+        boolean matches = true;
+        for (int step = 0; step < 20_000 && matches; step++) {
+            int department = random.nextInt(departments);
+            int roll = random.nextInt(10);
+            if (roll < 5) {
+                er.addPatient(department, generator.next());
+            }
+            else if (roll < 7) {
+                er.treatCurrentPatient(department);
+            }
+            else {
+                er.treatMostUrgent();
+            }
+            Patient best = null;
+            for (int d = 0; d < departments; d++) {
+                Patient head = er.shards[d].head;
+                if (head != null && (best == null || head.compareTo(best) < 0)) {
+                    best = head;
+                }
+            }
+            Patient winner = er.peekMostUrgent();
+            matches = best == null ? winner == null : winner != null && winner.compareTo(best) == 0;
+        }
+        if (matches) {System.out.println("Test Passed: Tournament tree winner matches a full scan after every operation");}
+        else {System.out.println("Test Failed: Tournament tree winner differs from a full scan");}
+    }
+
+
+    // Desks admit into their own departments while overflow threads treat globally: everyone treated exactly once,
+    // and once quiet the tree agrees with the departments again
+    public static void testConcurrentOverflow() throws InterruptedException {
+        int departments = 4;
+        int perDepartment = 20_000;
+        ShardedEmergencyRoomScheduler er = new ShardedEmergencyRoomScheduler("Adult", "Pediatric", "Trauma", "Burns");
+        LongAdder treated = new LongAdder();
+        boolean[] done = {false};
+        List<Thread> threads = new ArrayList<>();
+        for (int d = 0; d < departments; d++) {
+            int department = d;
+            threads.add(new Thread(() -> {
+                ArrivalGenerator generator = new ArrivalGenerator(department, perDepartment);
+                for (int i = 0; i < perDepartment; i++) {
+                    Patient patient = generator.next();
+                    er.addPatient(department, new Patient(patient.getName(), ArrivalGenerator.ssnFor(department * perDepartment + i),
+                            patient.getDateOfBirth(), patient.getAddress(), patient.getPhoneNumber(), patient.getPriorityLevel(),
+                            patient.getArrivalTime(), patient.getTreatmentDescription()));
+                    if (i % 4 == 0 && er.treatCurrentPatient(department) != null) {
+                        treated.increment();
+                    }
+                }
+            }));
+        }
+        for (int t = 0; t < 2; t++) {
+            threads.add(new Thread(() -> {
+                while (true) {
+                    boolean finished;
+                    synchronized (done) {finished = done[0];}
+                    if (er.treatMostUrgent() != null) {
+                        treated.increment();
+                    }
+                    else if (finished) {
+                        return;
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (int d = 0; d < departments; d++) {
+            threads.get(d).join();
+        }
+        synchronized (done) {done[0] = true;}
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (treated.sum() == (long) departments * perDepartment && er.waitingCount() == 0 && er.peekMostUrgent() == null) {
+            System.out.println("Test Passed: " + treated.sum() + " patients treated exactly once across departments and overflow");
+        }
+        else {System.out.println("Test Failed: Treated " + treated.sum() + ", still waiting " + er.waitingCount());}
+    }
+
+
+    // One thread per department doing admit + treat pairs in its own department, plus 1 in 16 treatments taken by
+    // overflow instead. Reports total operations per second as the number of departments (and threads) grows.
+    public static void benchmarkShards(int[] shardCounts, int pairsPerThread) throws InterruptedException {
+        Patient[] arrivals = new ArrivalGenerator(5, pairsPerThread).generate(pairsPerThread);
+        for (int shardCount : shardCounts) {
+            String[] names = new String[shardCount];
+            Arrays.setAll(names, i -> "Dept" + i);
+            ShardedEmergencyRoomScheduler er = new ShardedEmergencyRoomScheduler(names);
+            for (int d = 0; d < shardCount; d++) {
+                for (int i = 0; i < 1_000; i++) { // some standing queue in every department
+                    er.addPatient(d, new Patient("Standing", ArrivalGenerator.ssnFor(pairsPerThread + i), "1/1/2000", "Addr", "555",
+                            arrivals[i].getPriorityLevel(), arrivals[i].getArrivalTime(), "Sim"));
+                }
+            }
+            Thread[] threads = new Thread[shardCount];
+            long start = System.nanoTime();
+            for (int d = 0; d < shardCount; d++) {
+                int department = d;
+                threads[d] = new Thread(() -> {
+                    for (int i = 0; i < pairsPerThread; i++) {
+                        er.addPatient(department, arrivals[i]);
+                        if ((i & 15) == 15) {er.treatMostUrgent();}
+                        else {er.treatCurrentPatient(department);}
+                    }
+                });
+                threads[d].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long operations = 2L * pairsPerThread * shardCount;
+            System.out.printf("%2d shards: %,d operations in %.2f s = %,.0f ops/s%n", shardCount, operations, seconds, operations / seconds);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package scheduler;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+// Replays a SchedulerTrace through a scheduler and checks every result against a reference model, so a faster
+// engine can be shown to treat exactly the same patients in exactly the same order, over millions of operations.
+// Each replay reports its throughput (operations per second) and allocation rate (bytes per operation and MB/s,
+// from the JVM's per-thread allocation counter).
+// The reference is deliberately plain: a TreeSet in Patient.compareTo order plus a HashMap by SSN. Its results
+// (who each treat returned, whether each admit / re-triage / discharge took effect) are worked out once per
+// trace; an engine's results go into a preallocated array during the timed replay and are compared afterwards,
+// so checking costs the engine nothing.
+// AGING_LANES runs on the trace's own clock (the latest arrival admitted) and ages one level per day, longer than
+// any wait in a generated trace, so nobody ages and it must match the reference like every other mode.
+// Arguments: none (generate 2,000,000 operations), "record <file> [operations]" to generate and save a trace,
+// or "replay <file>" to replay a saved (or recorded) one. Exits with status 1 if any engine that should match didn't.
+public final class TraceReplay {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    // What a trace is replayed through. Results as in EmergencyRoomScheduler: null / false when nothing happened.
+    public interface Engine {
+        boolean admit(Patient patient);
+        Patient treat();
+        Patient reprioritize(int ssn, int newLevel);
+        Patient discharge(int ssn);
+    }
+
+
+    // One replay: how long it took, what it allocated, and where (if anywhere) it first parted from the reference
+    public static final class Run {
+        private final String name;
+        private final int events;
+        private final long nanos;
+        private final long allocatedBytes; // -1 if the JVM can't tell
+        private final int firstMismatch;   // event number, or -1
+        private final String mismatch;
+
+        Run(String name, int events, long nanos, long allocatedBytes, int firstMismatch, String mismatch) {
+            this.name = name;
+            this.events = events;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.firstMismatch = firstMismatch;
+            this.mismatch = mismatch;
+        }
+
+        public String getName() {return name;}
+        public boolean matchesReference() {return firstMismatch < 0;}
+        public int getFirstMismatch() {return firstMismatch;}
+        public String getMismatch() {return mismatch;}
+        public long getNanos() {return nanos;}
+        public double getEventsPerSecond() {return events * 1e9 / nanos;}
+        public double getBytesPerEvent() {return allocatedBytes < 0 ? Double.NaN : (double) allocatedBytes / events;}
+        public double getAllocationMegabytesPerSecond() {return allocatedBytes < 0 ? Double.NaN : allocatedBytes * 1e3 / nanos;}
+
+        @Override
+        public String toString() {
+            return String.format("%-34s %,12.0f ops/s %,9.1f B/op %,9.1f MB/s  %s", name, getEventsPerSecond(), getBytesPerEvent(),
+                    getAllocationMegabytesPerSecond(), matchesReference() ? "matches reference" : "DIFFERS at event " + firstMismatch + ": " + mismatch);
+        }
+    }
+
+
+    private final SchedulerTrace trace;
+    private final int[] expected; // the reference's result per event (see result())
+    private final int[] actual;
+
+
+    //Constructor: runs the reference model over trace once, for every replay to be checked against
+    public TraceReplay(SchedulerTrace trace) {
+        this.trace = trace;
+        this.expected = new int[trace.size()];
+        this.actual = new int[trace.size()];
+        play(new ReferenceModel(), expected);
+    }
+
+
+    // Replays the trace through engine, timing it and checking each result against the reference
+    public Run replay(String name, Engine engine) {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        play(engine, actual);
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+        for (int event = 0; event < actual.length; event++) {
+            if (actual[event] != expected[event]) {
+                return new Run(name, actual.length, nanos, allocated, event, describe(event));
+            }
+        }
+        return new Run(name, actual.length, nanos, allocated, -1, null);
+    }
+
+
+    // A fresh EmergencyRoomScheduler in mode, with the no-op sink so console output isn't timed.
+    // AGING_LANES gets the trace clock described above instead of the wall clock.
+    public static Engine scheduler(SchedulingMode mode) {
+        if (mode == SchedulingMode.AGING_LANES) {
+            return agingScheduler();
+        }
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(mode);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        return engineFor(scheduler);
+    }
+
+    private static Engine agingScheduler() {
+        long[] clock = {0};
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(new AgingLaneQueue(() -> clock[0], MINUTES_PER_DAY));
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        Engine engine = engineFor(scheduler);
+        return new Engine() {
+            @Override
+            public boolean admit(Patient patient) {
+                if (patient != null) {clock[0] = Math.max(clock[0], patient.getArrivalTimestamp());}
+                return engine.admit(patient);
+            }
+            @Override public Patient treat() {return engine.treat();}
+            @Override public Patient reprioritize(int ssn, int newLevel) {return engine.reprioritize(ssn, newLevel);}
+            @Override public Patient discharge(int ssn) {return engine.discharge(ssn);}
+        };
+    }
+
+    public static Engine engineFor(EmergencyRoomScheduler scheduler) {
+        return new Engine() {
+            @Override public boolean admit(Patient patient) {return scheduler.addPatient(patient);}
+            @Override public Patient treat() {return scheduler.treatCurrentPatient();}
+            @Override public Patient reprioritize(int ssn, int newLevel) {return scheduler.reprioritize(ssn, newLevel);}
+            @Override public Patient discharge(int ssn) {return scheduler.discharge(ssn);}
+        };
+    }
+
+    public static Engine engineFor(ConcurrentEmergencyRoomScheduler scheduler) {
+        return new Engine() {
+            @Override public boolean admit(Patient patient) {return scheduler.addPatient(patient);}
+            @Override public Patient treat() {return scheduler.treatCurrentPatient();}
+            @Override public Patient reprioritize(int ssn, int newLevel) {return scheduler.reprioritize(ssn, newLevel);}
+            @Override public Patient discharge(int ssn) {return scheduler.discharge(ssn);}
+        };
+    }
+
+
+    // ---------------------------------------------------------------- replaying
+
+    // Each event's result as one int: admit 1 / 0, treat the treated SSN / 0, re-triage the new level / 0, discharge the SSN / 0
+    private void play(Engine engine, int[] results) {
+        for (int event = 0; event < results.length; event++) {
+            int result;
+            switch (trace.kind(event)) {
+                case SchedulerTrace.ADMIT:
+                    result = engine.admit(trace.patient(event)) ? 1 : 0;
+                    break;
+                case SchedulerTrace.TREAT:
+                    Patient treated = engine.treat();
+                    result = treated == null ? 0 : treated.getSsn();
+                    break;
+                case SchedulerTrace.REPRIORITIZE:
+                    Patient updated = engine.reprioritize(trace.ssn(event), trace.level(event));
+                    result = updated == null ? 0 : updated.getPriorityLevel();
+                    break;
+                default:
+                    Patient discharged = engine.discharge(trace.ssn(event));
+                    result = discharged == null ? 0 : discharged.getSsn();
+            }
+            results[event] = result;
+        }
+    }
+
+    private String describe(int event) {
+        String[] names = {"?", "?", "treat", "re-triage", "discharge", "admit"};
+        byte kind = trace.kind(event);
+        return (kind < names.length ? names[kind] : "event " + kind) + " gave " + actual[event] + ", expected " + expected[event];
+    }
+
+    // Bytes allocated by this thread so far (a HotSpot extension of ThreadMXBean), or -1 if unavailable
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+
+    // The obviously-correct scheduler everything is checked against
+    static final class ReferenceModel implements Engine {
+        private final TreeSet<Patient> waiting = new TreeSet<>();
+        private final HashMap<Integer, Patient> bySsn = new HashMap<>();
+
+        @Override
+        public boolean admit(Patient patient) {
+            if (patient == null || bySsn.containsKey(patient.getSsn())) {
+                return false;
+            }
+            waiting.add(patient);
+            bySsn.put(patient.getSsn(), patient);
+            return true;
+        }
+
+        @Override
+        public Patient treat() {
+            Patient next = waiting.pollFirst();
+            if (next != null) {
+                bySsn.remove(next.getSsn());
+            }
+            return next;
+        }
+
+        @Override
+        public Patient reprioritize(int ssn, int newLevel) {
+            Patient current = bySsn.get(ssn);
+            if (current == null || !Patient.isValidPriorityLevel(newLevel)) {
+                return null;
+            }
+            Patient updated = current.withPriorityLevel(newLevel);
+            waiting.remove(current);
+            waiting.add(updated);
+            bySsn.put(ssn, updated);
+            return updated;
+        }
+
+        @Override
+        public Patient discharge(int ssn) {
+            Patient leaving = bySsn.remove(ssn);
+            if (leaving != null) {
+                waiting.remove(leaving);
+            }
+            return leaving;
+        }
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) throws IOException {
+        SchedulerTrace trace;
+        if (args.length >= 2 && args[0].equals("replay")) {
+            trace = SchedulerTrace.read(Path.of(args[1]));
+        }
+        else {
+            int operations = args.length >= 3 ? Integer.parseInt(args[2]) : 2_000_000;
+            trace = SchedulerTrace.generate(25, operations, 10_000);
+            if (args.length >= 2 && args[0].equals("record")) {
+                trace.write(Path.of(args[1]));
+            }
+        }
+        System.out.printf("Replaying %,d operations%n", trace.size());
+        List<Run> runs = replayAll(trace, 3);
+        boolean allMatch = true;
+        for (Run run : runs) {
+            System.out.println(run);
+            allMatch &= run.matchesReference();
+        }
+        if (!allMatch) {
+            System.exit(1);
+        }
+    }
+
+
+    // The reference model, every scheduling mode and the concurrent scheduler, each on a fresh engine, rounds
+    // times over (the first rounds warm the JIT up; all are reported)
+    public static List<Run> replayAll(SchedulerTrace trace, int rounds) {
+        TraceReplay replay = new TraceReplay(trace);
+        List<Run> runs = new ArrayList<>();
+        for (int round = 1; round <= rounds; round++) {
+            runs.add(replay.replay("reference #" + round, new ReferenceModel()));
+            for (SchedulingMode mode : SchedulingMode.values()) {
+                runs.add(replay.replay(mode + " #" + round, scheduler(mode)));
+            }
+            runs.add(replay.replay("ConcurrentEmergencyRoomScheduler #" + round, engineFor(new ConcurrentEmergencyRoomScheduler())));
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,329 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Treatment bays for one department. treatCurrentPatient() hands a patient over instantly; this models the bays:
+// each bay has its own virtual thread that takes the next patient from a ConcurrentEmergencyRoomScheduler, holds
+// them for a treatment duration (sleeping, so the carrier thread is free for other bays) and then frees the bay.
+// Hundreds of bays cost hundreds of virtual threads, not platform threads, and several departments are just
+// several dispatchers, each with its own scheduler.
+// Idle bays park on a lock-free queue. admit() hands each new patient's wake-up to one idle bay (so an arrival never
+// wakes every bay), and a bay that frees up while patients are waiting takes the next one without parking.
+// Dispatch latency is measured from "a bay is free and a patient is waiting" to "the bay has the patient".
+// Patients must be admitted through admit() for idle bays to notice them.
+public class TreatmentDispatcher implements AutoCloseable {
+
+    private final String department;
+    private final ConcurrentEmergencyRoomScheduler scheduler;
+    private final TreatmentDuration duration;
+    private final Consumer<Patient> onTreatmentStart;
+    private final List<Bay> bays = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Bay> idleBays = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger busyBays = new AtomicInteger();
+    private final LongAdder treated = new LongAdder();
+    private volatile boolean running = true;
+
+
+    // How long a bay is held for a patient, in real nanoseconds
+    public interface TreatmentDuration {
+
+        long nanosFor(Patient patient, SplittableRandom random);
+
+        static TreatmentDuration fixedMillis(long millis) {
+            long nanos = millis * 1_000_000;
+            return (patient, random) -> nanos;
+        }
+
+        // Per-level simulated treatment times, played back at realMillisPerMinute real milliseconds per simulated minute
+        static TreatmentDuration scaled(double realMillisPerMinute, EmergencyRoomSimulation.TreatmentTime level1,
+                                        EmergencyRoomSimulation.TreatmentTime level2, EmergencyRoomSimulation.TreatmentTime level3) {
+            EmergencyRoomSimulation.TreatmentTime[] byLevel = {level1, level2, level3};
+            double nanosPerSimulatedMilli = realMillisPerMinute * 1_000_000 / 60_000;
+            return (patient, random) -> (long) (byLevel[patient.getPriorityLevel() - 1].sampleMillis(random) * nanosPerSimulatedMilli);
+        }
+    }
+
+
+    // One treatment bay and its worker. Only the bay's own thread records into its histogram (under its lock, so reads are consistent).
+    private final class Bay implements Runnable {
+
+        private final SplittableRandom random;
+        private final LatencyHistogram dispatchNanos = new LatencyHistogram();
+        private final AtomicBoolean listed = new AtomicBoolean(); // true while this bay sits on idleBays
+        private volatile long wokenAt;                            // when admit() handed this bay a wake-up
+        private final Thread thread;
+
+        Bay(SplittableRandom random, Thread.Builder builder) {
+            this.random = random;
+            this.thread = builder.unstarted(this);
+        }
+
+        @Override
+        public void run() {
+            long readySince = System.nanoTime(); // bay free (and, if it parks, updated to when a patient shows up)
+            while (running) {
+                Patient patient = scheduler.treatCurrentPatient();
+                if (patient == null) {
+                    if (!listed.get()) {
+                        listed.set(true);
+                        idleBays.add(this);
+                        continue; // look again before parking, in case a patient arrived before we were listed
+                    }
+                    LockSupport.park(this);
+                    readySince = listed.get() ? System.nanoTime() : wokenAt;
+                    continue;
+                }
+                if (listed.compareAndSet(true, false)) {
+                    idleBays.remove(this); // found work without being woken
+                }
+                long assigned = System.nanoTime();
+                synchronized (dispatchNanos) {
+                    dispatchNanos.record(assigned - readySince);
+                }
+                busyBays.incrementAndGet();
+                onTreatmentStart.accept(patient);
+                try {
+                    long nanos = duration.nanosFor(patient, random);
+                    if (nanos > 0) {
+                        Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // shutting down: this treatment is cut short
+                }
+                finally {
+                    busyBays.decrementAndGet();
+                    treated.increment();
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                readySince = System.nanoTime();
+            }
+        }
+    }
+
+
+    //Constructor: `bays` bays treating patients from the scheduler for the given durations
+    public TreatmentDispatcher(String department, ConcurrentEmergencyRoomScheduler scheduler, int bays, TreatmentDuration duration) {
+        this(department, scheduler, bays, duration, patient -> {});
+    }
+
+    //Constructor: as above, calling onTreatmentStart (on the bay's thread) as each patient enters a bay
+    public TreatmentDispatcher(String department, ConcurrentEmergencyRoomScheduler scheduler, int bays, TreatmentDuration duration,
+                               Consumer<Patient> onTreatmentStart) {
+        if (department == null || scheduler == null || duration == null || onTreatmentStart == null) {
+            throw new IllegalArgumentException("Department, scheduler, duration and listener cannot be null");
+        }
+        if (bays < 1) {
+            throw new IllegalArgumentException("A department needs at least one bay: " + bays);
+        }
+        this.department = department;
+        this.scheduler = scheduler;
+        this.duration = duration;
+        this.onTreatmentStart = onTreatmentStart;
+        SplittableRandom random = new SplittableRandom(department.hashCode());
+        Thread.Builder builder = Thread.ofVirtual().name(department + "-bay-", 1);
+        for (int i = 0; i < bays; i++) {
+            this.bays.add(new Bay(random.split(), builder));
+        }
+        for (Bay bay : this.bays) {
+            bay.thread.start();
+        }
+    }
+
+
+    // Admits a patient and wakes one idle bay if there is one. Returns false if the scheduler rejected the patient.
+    public boolean admit(Patient patient) {
+        if (!scheduler.addPatient(patient)) {
+            return false;
+        }
+        Bay bay;
+        while ((bay = idleBays.poll()) != null) {
+            bay.wokenAt = System.nanoTime(); // written before the handover so the bay never reads an older one
+            if (bay.listed.compareAndSet(true, false)) { // otherwise the bay already found work on its own
+                LockSupport.unpark(bay.thread);
+                break;
+            }
+        }
+        return true;
+    }
+
+
+    public String getDepartment() {return department;}
+    public ConcurrentEmergencyRoomScheduler getScheduler() {return scheduler;}
+    public int getBayCount() {return bays.size();}
+    public int getBusyBays() {return busyBays.get();}
+    public long getTreated() {return treated.sum();}
+
+
+    // Dispatch latencies of every bay so far, merged into a new histogram (nanoseconds)
+    public LatencyHistogram getDispatchLatency() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (Bay bay : bays) {
+            synchronized (bay.dispatchNanos) {
+                merged.add(bay.dispatchNanos);
+            }
+        }
+        return merged;
+    }
+
+
+    // Waits until nobody is waiting and every bay is free. Returns false on timeout.
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (scheduler.size() > 0 || busyBays.get() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+
+    // Stops every bay, cutting short any treatment in progress, and waits for the workers to exit.
+    // Patients still waiting stay in the scheduler. If the caller is interrupted it stops waiting (interrupt kept).
+    @Override
+    public void close() {
+        running = false;
+        for (Bay bay : bays) {
+            bay.thread.interrupt();
+        }
+        try {
+            for (Bay bay : bays) {
+                bay.thread.join();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        LatencyHistogram latency = getDispatchLatency();
+        return String.format("%s: %d bays, %d busy, %d waiting, %d treated, dispatch p50 %.1f us, p99 %.1f us, max %.1f us",
+                department, bays.size(), getBusyBays(), scheduler.size(), getTreated(),
+                latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3, latency.getMax() / 1e3);
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) throws InterruptedException {
+        testSingleBayOrder();
+        testAllPatientsTreated();
+        //benchmarkDepartments(4, 100, 20_000);
+    }
+
+
+    // One bay, busy with a first patient while the rest queue up, then treats them strictly by priority
+    public static void testSingleBayOrder() throws InterruptedException {
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        try (TreatmentDispatcher dispatcher = new TreatmentDispatcher("Test", new ConcurrentEmergencyRoomScheduler(), 1,
+                TreatmentDuration.fixedMillis(20), patient -> {order.add(patient.getName()); firstStarted.countDown();})) {
+            dispatcher.admit(new Patient("Blue", 111111111, "1/1/2000", "Addr", "555", 2, 700, "Sprain"));
+            firstStarted.await();
+            dispatcher.admit(new Patient("Green", 777777777, "4/4/2000", "Addr", "555", 3, 800, "Flu Like Symptoms"));
+            dispatcher.admit(new Patient("Yellow", 999999999, "2/2/2000", "Addr", "555", 2, 815, "Broken Arm"));
+            dispatcher.admit(new Patient("Red", 888888888, "3/3/2000", "Addr", "555", 1, 825, "Chest Pains"));
+            boolean idle = dispatcher.awaitIdle(5_000);
+            if (idle && order.equals(List.of("Blue", "Red", "Yellow", "Green")) && dispatcher.getTreated() == 4) {
+                System.out.println("Test Passed: Busy bay takes waiting patients in priority order once free");
+            }
+            else {System.out.println("Test Failed: Treatment order " + order + ", idle " + idle);}
+        }
+    }
+
+
+    // Several desks admitting into many bays: everyone is treated exactly once and every dispatch is measured
+    public static void testAllPatientsTreated() throws InterruptedException {
+        int desks = 4;
+        int perDesk = 2_000;
+        ConcurrentEmergencyRoomScheduler scheduler = new ConcurrentEmergencyRoomScheduler();
+        LongAdder started = new LongAdder();
+        try (TreatmentDispatcher dispatcher = new TreatmentDispatcher("ER", scheduler, 50,
+                (patient, random) -> random.nextLong(200_000), patient -> started.increment())) {
+            Thread[] deskThreads = new Thread[desks];
+            for (int desk = 0; desk < desks; desk++) {
+                int first = desk * perDesk;
+                deskThreads[desk] = Thread.ofVirtual().start(() -> {
+                    ArrivalGenerator generator = new ArrivalGenerator(first, perDesk);
+                    for (int i = 0; i < perDesk; i++) {
+                        Patient patient = generator.next();
+                        dispatcher.admit(new Patient(patient.getName(), ArrivalGenerator.ssnFor(first + i), patient.getDateOfBirth(), patient.getAddress(),
+                                patient.getPhoneNumber(), patient.getPriorityLevel(), patient.getArrivalTime(), patient.getTreatmentDescription()));
+                    }
+                });
+            }
+            for (Thread desk : deskThreads) {
+                desk.join();
+            }
+            boolean idle = dispatcher.awaitIdle(10_000);
+            if (idle && started.sum() == desks * perDesk && dispatcher.getTreated() == desks * perDesk
+                    && dispatcher.getDispatchLatency().getCount() == desks * perDesk) {
+                System.out.println("Test Passed: " + dispatcher);
+            }
+            else {System.out.println("Test Failed: idle " + idle + ", started " + started.sum() + ", " + dispatcher);}
+        }
+    }
+
+
+    // Several departments with many bays each, fed at a steady rate: reports dispatch latency per department
+    public static void benchmarkDepartments(int departments, int baysPerDepartment, int patientsPerDepartment) throws InterruptedException {
+        List<TreatmentDispatcher> dispatchers = new ArrayList<>();
+        for (int d = 0; d < departments; d++) {
+            dispatchers.add(new TreatmentDispatcher("Dept" + (d + 1), new ConcurrentEmergencyRoomScheduler(), baysPerDepartment,
+                    (patient, random) -> 500_000 + random.nextLong(1_500_000))); // 0.5-2 ms treatments
+        }
+        long start = System.nanoTime();
+        List<Thread> desks = new ArrayList<>();
+        for (int d = 0; d < departments; d++) {
+            TreatmentDispatcher dispatcher = dispatchers.get(d);
+            int first = d * patientsPerDepartment;
+            desks.add(Thread.ofVirtual().start(() -> {
+                ArrivalGenerator generator = new ArrivalGenerator(first, patientsPerDepartment);
+                for (int i = 0; i < patientsPerDepartment; i++) {
+                    Patient patient = generator.next();
+                    dispatcher.admit(new Patient(patient.getName(), ArrivalGenerator.ssnFor(first + i), patient.getDateOfBirth(), patient.getAddress(),
+                            patient.getPhoneNumber(), patient.getPriorityLevel(), patient.getArrivalTime(), patient.getTreatmentDescription()));
+                    if (i % 50 == 49) {
+                        LockSupport.parkNanos(1_000_000); // arrivals in bursts, so bays go idle and get woken too
+                    }
+                }
+            }));
+        }
+        for (Thread desk : desks) {
+            desk.join();
+        }
+        long treated = 0;
+        for (TreatmentDispatcher dispatcher : dispatchers) {
+            dispatcher.awaitIdle(60_000);
+            treated += dispatcher.getTreated();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (TreatmentDispatcher dispatcher : dispatchers) {
+            System.out.println(dispatcher);
+            dispatcher.close();
+        }
+        System.out.printf("%d departments x %d bays: %,d treatments in %.2f s (%,.0f/s)%n",
+                departments, baysPerDepartment, treated, seconds, treated / seconds);
+    }
+}
@@ -0,0 +1,38 @@
+package scheduler;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+// The structure EmergencyRoomScheduler keeps its waiting patients in.
+// peek()/poll() always give the most urgent patient (priority level first, then arrival time).
+// Duplicate SSNs are screened by the scheduler's patient table before add() is called.
+public interface WaitingList extends Iterable<Patient> {
+
+    // Adds a waiting patient. Returns false if the patient could not be added (e.g. SSN already present).
+    boolean add(Patient patient);
+
+    // Adds a batch of patients at once (e.g. a mass-casualty manifest). Implementations may rebuild in O(n)
+    // instead of adding one at a time. SSNs must already be screened for duplicates.
+    void addAll(Collection<Patient> patients);
+
+    // Most urgent patient without removing them. Null if empty.
+    Patient peek();
+
+    // Removes and returns the most urgent patient. Null if empty.
+    Patient poll();
+
+    // Removes this waiting patient (matched by SSN) wherever they are. Returns false if not waiting.
+    boolean remove(Patient patient);
+
+    // Swaps a waiting patient for an updated version of them (same SSN, e.g. new priority level). Returns false if not waiting.
+    boolean replace(Patient waiting, Patient updated);
+
+    // Waiting patients in the order poll() would treat them, without removing anyone or copying the list.
+    // Lazy, so taking the first k costs about k steps. The list must not change while iterating.
+    // (iterator() is cheaper, but only guarantees the head comes first.)
+    Iterator<Patient> orderedIterator();
+
+    int size();
+
+    boolean isEmpty();
+}
@@ -0,0 +1,195 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+// Incremental feed of waiting-list changes for display boards that refresh every few seconds. Instead of pulling
+// the whole ordered list each time, a board loads a page once (EmergencyRoomScheduler.waitingPage), remembers the
+// feed version, then each refresh asks for changesSince(thatVersion): only the admissions, treatments, re-triages
+// and discharges in between. Turned on with EmergencyRoomScheduler.enableChangeFeed().
+// Fed as an event sink. The last capacity changes are kept in a ring of two arrays (kind, patient), so recording
+// allocates nothing; Change objects are only built for a board that asks. A board that falls further behind
+// than the ring remembers is told to resync (reload its page) rather than being handed a partial history.
+// Written by the scheduler's thread, read by any number of board threads: both sides take this object's lock,
+// which is held for an array store or a short copy, never while the waiting list itself is touched.
+public class WaitingListChangeFeed implements SchedulerEventSink {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public enum Kind {ADMITTED, TREATED, REPRIORITIZED, DISCHARGED}
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final byte[] kinds;
+    private final Patient[] patients;
+    private long version; // number of changes ever recorded; change number v sits in slot (v - 1) % capacity
+
+
+    // One change to the waiting list and the feed version it brought the board to
+    public static final class Change {
+        private final long version;
+        private final Kind kind;
+        private final Patient patient;
+
+        Change(long version, Kind kind, Patient patient) {
+            this.version = version;
+            this.kind = kind;
+            this.patient = patient;
+        }
+
+        public long getVersion() {return version;}
+        public Kind getKind() {return kind;}
+        public Patient getPatient() {return patient;} // for REPRIORITIZED, the patient with their new level
+
+        @Override
+        public String toString() {return version + " " + kind + " " + patient.getSsn();}
+    }
+
+
+    // What a board gets back from changesSince: the changes in order, and the version to ask from next time.
+    // When resyncNeeded is true the changes are empty and the board should reload its page, then continue from version.
+    public static final class Update {
+        private final List<Change> changes;
+        private final long version;
+        private final boolean resyncNeeded;
+
+        Update(List<Change> changes, long version, boolean resyncNeeded) {
+            this.changes = changes;
+            this.version = version;
+            this.resyncNeeded = resyncNeeded;
+        }
+
+        public List<Change> getChanges() {return changes;}
+        public long getVersion() {return version;}
+        public boolean isResyncNeeded() {return resyncNeeded;}
+    }
+
+
+    //Constructor: remembers the last DEFAULT_CAPACITY changes
+    public WaitingListChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    //Constructor: remembers the last capacity changes (size it to a few refresh intervals of the busiest hour)
+    public WaitingListChangeFeed(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Change feed capacity must be at least 1: " + capacity);
+        }
+        kinds = new byte[capacity];
+        patients = new Patient[capacity];
+    }
+
+
+    // Version a board should start from after loading its first page (taken before loading it, so nothing is missed)
+    public synchronized long currentVersion() {return version;}
+
+
+    // Every change after sinceVersion, oldest first, up to the current version
+    public synchronized Update changesSince(long sinceVersion) {
+        if (sinceVersion == version) {
+            return new Update(Collections.emptyList(), version, false);
+        }
+        if (sinceVersion < 0 || sinceVersion > version || version - sinceVersion > kinds.length) {
+            return new Update(Collections.emptyList(), version, true); // too far behind, or a version from another feed
+        }
+        ArrayList<Change> changes = new ArrayList<>((int) (version - sinceVersion));
+        for (long next = sinceVersion + 1; next <= version; next++) {
+            int slot = (int) ((next - 1) % kinds.length);
+            changes.add(new Change(next, KINDS[kinds[slot]], patients[slot]));
+        }
+        return new Update(changes, version, false);
+    }
+
+
+    @Override public void patientAdmitted(Patient patient) {record(Kind.ADMITTED, patient);}
+    @Override public void patientTreated(Patient patient) {record(Kind.TREATED, patient);}
+    @Override public void patientReprioritized(Patient patient) {record(Kind.REPRIORITIZED, patient);}
+    @Override public void patientDischarged(Patient patient) {record(Kind.DISCHARGED, patient);}
+
+    @Override
+    public synchronized void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {
+        for (Patient patient : admitted) {
+            record(Kind.ADMITTED, patient);
+        }
+    }
+
+
+    private synchronized void record(Kind kind, Patient patient) {
+        int slot = (int) (version % kinds.length);
+        kinds[slot] = (byte) kind.ordinal();
+        patients[slot] = patient;
+        version++;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) {
+        testBoardFollowsFeed();
+        testResync();
+    }
+
+
+    // A board that loads the list once and then only applies changes ends up showing exactly who is waiting
+    public static void testBoardFollowsFeed() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(SchedulingMode.PRIORITY_QUEUE);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        Patient[] arrivals = new ArrivalGenerator(5, 2_000).generate(2_000);
+        scheduler.admitAll(Arrays.asList(arrivals).subList(0, 100));
+        WaitingListChangeFeed feed = scheduler.enableChangeFeed(1_000);
+
+        long version = feed.currentVersion();
+        HashMap<Integer, Integer> board = new HashMap<>(); // SSN -> level shown
+        for (Patient patient : scheduler.topWaiting(Integer.MAX_VALUE)) {board.put(patient.getSsn(), patient.getPriorityLevel());}
+        Random random = new Random(5);
+        boolean consistent = true;
+        for (int i = 100; i < arrivals.length && consistent; i++) {
+            scheduler.addPatient(arrivals[i]);
+            int roll = random.nextInt(6);
+            if (roll < 2) {scheduler.treatCurrentPatient();}
+            else if (roll == 2) {scheduler.discharge(arrivals[random.nextInt(i)].getSsn());}
+            else if (roll == 3) {scheduler.reprioritize(arrivals[random.nextInt(i)].getSsn(), 1 + random.nextInt(3));}
+            if (i % 50 == 0) { // a refresh
+                Update update = feed.changesSince(version);
+                for (Change change : update.getChanges()) {
+                    if (change.getKind() == Kind.ADMITTED || change.getKind() == Kind.REPRIORITIZED) {
+                        board.put(change.getPatient().getSsn(), change.getPatient().getPriorityLevel());
+                    }
+                    else {board.remove(change.getPatient().getSsn());}
+                }
+                version = update.getVersion();
+                HashMap<Integer, Integer> actual = new HashMap<>();
+                for (Patient patient : scheduler.waitingPatients()) {actual.put(patient.getSsn(), patient.getPriorityLevel());}
+                consistent = !update.isResyncNeeded() && board.equals(actual);
+            }
+        }
+        if (consistent && feed.changesSince(feed.currentVersion()).getChanges().isEmpty()) {
+            System.out.println("Test Passed: Board kept in step by applying the change feed");
+        }
+        else {System.out.println("Test Failed: Board drifted from the waiting list");}
+    }
+
+
+    // A board further behind than the feed remembers is told to resync instead of getting a partial history
+    public static void testResync() {
+        WaitingListChangeFeed feed = new WaitingListChangeFeed(4);
+        Patient[] arrivals = new ArrivalGenerator(6, 10).generate(10);
+        for (int i = 0; i < 6; i++) {feed.patientAdmitted(arrivals[i]);}
+        Update recent = feed.changesSince(2);
+        Update tooOld = feed.changesSince(1);
+        Update fromTheFuture = feed.changesSince(99);
+        if (!recent.isResyncNeeded() && recent.getChanges().size() == 4 && recent.getChanges().get(0).getPatient() == arrivals[2]
+                && tooOld.isResyncNeeded() && tooOld.getChanges().isEmpty() && tooOld.getVersion() == 6 && fromTheFuture.isResyncNeeded()) {
+            System.out.println("Test Passed: Feed resyncs boards that fell behind its capacity");
+        }
+        else {System.out.println("Test Failed: recent " + recent.getChanges() + " tooOld resync " + tooOld.isResyncNeeded());}
+    }
+}
@@ -0,0 +1,258 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lock-free, always-consistent views of the waiting list for boards and dashboards on other threads. Turned on
+// with EmergencyRoomScheduler.enableSnapshots(); readers call current() and get an immutable Snapshot: the waiting
+// list in treatment order plus an SSN lookup, exactly as it was after some change. Nothing a reader does can
+// block admissions or treatments, and a Snapshot can be held (paged through, searched) as long as it's needed.
+// Fed as an event sink on the scheduler's thread. Each change builds a new Snapshot from two persistent trees
+// (PersistentPatientTree: one in treatment order, one by SSN) and publishes it with one volatile write. The new
+// trees share everything but the changed path with the old ones, so publishing costs O(log n) small objects per
+// change, not a copy of the list; old snapshots are left to the garbage collector once no reader holds them.
+// Order is triage order (Patient.compareTo). In AGING_LANES mode, where the scheduler also weighs time waited, the
+// snapshot still lists by level and arrival.
+public class WaitingListSnapshots implements SchedulerEventSink {
+
+    private volatile Snapshot current;
+
+
+    // One published state of the waiting list. Immutable, so safe to share between any number of threads.
+    public static final class Snapshot implements Iterable<Patient> {
+        private final long version;
+        private final PersistentPatientTree byOrder;
+        private final PersistentPatientTree bySsn;
+
+        Snapshot(long version, PersistentPatientTree byOrder, PersistentPatientTree bySsn) {
+            this.version = version;
+            this.byOrder = byOrder;
+            this.bySsn = bySsn;
+        }
+
+        // Number of changes published before this one (admissions, treatments, re-triages, discharges)
+        public long getVersion() {return version;}
+        public int size() {return byOrder.size();}
+        public boolean isEmpty() {return byOrder.size() == 0;}
+
+        // The waiting patient with this SSN in this snapshot, or null
+        public Patient find(int ssn) {return bySsn.find(ssn);}
+
+        // Who would be treated next, or null if nobody was waiting
+        public Patient peek() {
+            Iterator<Patient> first = byOrder.iterator(0);
+            return first.hasNext() ? first.next() : null;
+        }
+
+        // The first k patients in treatment order
+        public List<Patient> top(int k) {return page(0, k);}
+
+        // One page in treatment order, like EmergencyRoomScheduler.waitingPage, but O(log n + pageSize) whatever the page number
+        public List<Patient> page(int page, int pageSize) {
+            if (page < 0 || pageSize <= 0 || (long) page * pageSize >= size()) {
+                return Collections.emptyList();
+            }
+            int from = page * pageSize;
+            ArrayList<Patient> onPage = new ArrayList<>(Math.min(pageSize, size() - from));
+            for (Iterator<Patient> ordered = byOrder.iterator(from); onPage.size() < pageSize && ordered.hasNext(); ) {
+                onPage.add(ordered.next());
+            }
+            return onPage;
+        }
+
+        // Everyone in this snapshot in treatment order
+        @Override
+        public Iterator<Patient> iterator() {return byOrder.iterator(0);}
+
+        Snapshot with(Patient patient) {
+            return new Snapshot(version + 1, byOrder.with(patient), bySsn.with(patient));
+        }
+
+        Snapshot without(Patient patient) {
+            Patient stored = bySsn.find(patient.getSsn());
+            if (stored == null) {
+                return this;
+            }
+            return new Snapshot(version + 1, byOrder.without(stored), bySsn.without(stored));
+        }
+
+        Snapshot replacing(Patient patient) {
+            Patient stored = bySsn.find(patient.getSsn());
+            if (stored == null) {
+                return with(patient);
+            }
+            return new Snapshot(version + 1, byOrder.without(stored).with(patient), bySsn.without(stored).with(patient));
+        }
+    }
+
+
+    //Constructor: starts from the patients already waiting (any order)
+    public WaitingListSnapshots(List<Patient> waiting) {
+        Snapshot initial = new Snapshot(0, PersistentPatientTree.BY_ORDER, PersistentPatientTree.BY_SSN);
+        for (Patient patient : waiting) {
+            initial = initial.with(patient);
+        }
+        current = new Snapshot(0, initial.byOrder, initial.bySsn);
+    }
+
+
+    // The latest published state. A volatile read: never blocks, and never waits for the scheduler.
+    public Snapshot current() {return current;}
+
+
+    @Override public void patientAdmitted(Patient patient) {current = current.with(patient);}
+    @Override public void patientTreated(Patient patient) {current = current.without(patient);}
+    @Override public void patientReprioritized(Patient patient) {current = current.replacing(patient);}
+    @Override public void patientDischarged(Patient patient) {current = current.without(patient);}
+
+    // A manifest is published as one change, so no reader sees it half admitted
+    @Override
+    public void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {
+        if (admitted.isEmpty()) {
+            return;
+        }
+        Snapshot next = current;
+        for (Patient patient : admitted) {
+            next = next.with(patient);
+        }
+        current = new Snapshot(current.version + 1, next.byOrder, next.bySsn);
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) throws InterruptedException {
+        testMatchesScheduler();
+        testReadersDuringAdmissions();
+        //benchmarkPublication();
+    }
+
+
+    // After every random admit / treat / re-triage / discharge the latest snapshot lists exactly the scheduler's
+    // waiting list in order, and a snapshot taken earlier still shows the list as it was then
+    public static void testMatchesScheduler() {
+        boolean matches = true;
+        for (SchedulingMode mode : new SchedulingMode[] {SchedulingMode.PRIORITY_QUEUE, SchedulingMode.COMPACT_HEAP, SchedulingMode.PRIORITY_LANES}) {
+            EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(mode);
+            scheduler.setEventSink(NoOpEventSink.INSTANCE);
+            Patient[] arrivals = new ArrivalGenerator(24, 3_000).generate(3_000);
+            scheduler.admitAll(List.of(arrivals).subList(0, 200));
+            WaitingListSnapshots snapshots = scheduler.enableSnapshots();
+            Snapshot early = snapshots.current();
+            List<Patient> earlyOrder = toList(scheduler.waitingInOrder());
+            Random random = new Random(24);
+            for (int i = 200; i < arrivals.length && matches; i++) {
+                scheduler.addPatient(arrivals[i]);
+                int roll = random.nextInt(8);
+                if (roll < 3) {scheduler.treatCurrentPatient();}
+                else if (roll == 3) {scheduler.discharge(arrivals[random.nextInt(i)].getSsn());}
+                else if (roll == 4) {scheduler.reprioritize(arrivals[random.nextInt(i)].getSsn(), 1 + random.nextInt(3));}
+                if (i % 10 == 0) {
+                    Snapshot now = snapshots.current();
+                    int probe = arrivals[random.nextInt(i)].getSsn();
+                    matches = toList(now.iterator()).equals(toList(scheduler.waitingInOrder())) && now.size() == scheduler.waitingCount()
+                            && Objects.equals(now.find(probe), scheduler.findPatient(probe)) && Objects.equals(now.peek(), scheduler.peekCurrentPatient())
+                            && now.page(3, 7).equals(scheduler.waitingPage(3, 7));
+                }
+            }
+            matches = matches && toList(early.iterator()).equals(earlyOrder) && early.getVersion() == 0 && snapshots.current().getVersion() > 3_000;
+        }
+        if (matches) {
+            System.out.println("Test Passed: Snapshots match the waiting list after every change, and old snapshots don't change");
+        }
+        else {System.out.println("Test Failed: A snapshot differed from the scheduler's waiting list");}
+    }
+
+
+    // Reader threads take snapshots non-stop while one writer admits and treats: every snapshot they see is
+    // internally consistent (sorted, size matches, lookups agree), and the writer finishes as if nobody was reading
+    public static void testReadersDuringAdmissions() throws InterruptedException {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        WaitingListSnapshots snapshots = scheduler.enableSnapshots();
+        Patient[] arrivals = new ArrivalGenerator(25, 50_000).generate(50_000);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean consistent = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                long lastVersion = -1;
+                while (!done.get()) {
+                    Snapshot snapshot = snapshots.current();
+                    List<Patient> top = snapshot.top(50);
+                    boolean sorted = true;
+                    for (int i = 1; i < top.size(); i++) {sorted &= top.get(i - 1).compareTo(top.get(i)) < 0;}
+                    boolean found = top.isEmpty() || snapshot.find(top.get(top.size() - 1).getSsn()) == top.get(top.size() - 1);
+                    if (!sorted || !found || top.size() != Math.min(50, snapshot.size()) || snapshot.getVersion() < lastVersion) {
+                        consistent.set(false);
+                    }
+                    lastVersion = snapshot.getVersion();
+                    reads.incrementAndGet();
+                }
+            });
+            readers[r].start();
+        }
+        for (int i = 0; i < arrivals.length; i++) {
+            scheduler.addPatient(arrivals[i]);
+            if (i % 3 == 2) {scheduler.treatCurrentPatient();}
+        }
+        done.set(true);
+        for (Thread reader : readers) {reader.join();}
+        if (consistent.get() && snapshots.current().size() == scheduler.waitingCount()) {
+            System.out.println("Test Passed: " + reads.get() + " snapshot reads during admissions, all consistent");
+        }
+        else {System.out.println("Test Failed: A reader saw an inconsistent snapshot");}
+    }
+
+
+    // Cost of publishing one change (admit + treat pairs) at different waiting list sizes, against the scheduler
+    // alone. Grows with log n, where copying the list on every change (waitingPatients) would grow with n.
+    public static void benchmarkPublication() {
+        for (int size : new int[] {1_000, 100_000, 1_000_000}) {
+            Patient[] arrivals = new ArrivalGenerator(26, size).generate(size + 100_000);
+            for (int round = 0; round < 3; round++) {
+                long plain = timeChurn(arrivals, size, false);
+                long published = timeChurn(arrivals, size, true);
+                EmergencyRoomScheduler copying = new EmergencyRoomScheduler();
+                copying.setEventSink(NoOpEventSink.INSTANCE);
+                copying.admitAll(List.of(arrivals).subList(0, size));
+                long start = System.nanoTime();
+                for (int i = 0; i < 20; i++) {copying.waitingPatients();}
+                long copyNanos = (System.nanoTime() - start) / 20;
+                System.out.printf("%,d waiting: admit+treat %,d ns without snapshots, %,d ns with (%,d ns per published change); copying the list %,d ns%n",
+                        size, plain, published, (published - plain) / 2, copyNanos);
+            }
+        }
+    }
+
+    // Average ns per admit + treat pair over 100,000 pairs on a list kept at size
+    private static long timeChurn(Patient[] arrivals, int size, boolean withSnapshots) {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        scheduler.admitAll(List.of(arrivals).subList(0, size));
+        if (withSnapshots) {scheduler.enableSnapshots();}
+        long start = System.nanoTime();
+        for (int i = size; i < arrivals.length; i++) {
+            scheduler.addPatient(arrivals[i]);
+            scheduler.treatCurrentPatient();
+        }
+        return (System.nanoTime() - start) / (arrivals.length - size);
+    }
+
+    private static List<Patient> toList(Iterator<Patient> ordered) {
+        ArrayList<Patient> list = new ArrayList<>();
+        while (ordered.hasNext()) {list.add(ordered.next());}
+        return list;
+    }
+}
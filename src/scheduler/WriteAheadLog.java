@@ -0,0 +1,694 @@
+package scheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Durable append-only log of scheduler state changes, so the waiting list survives a JVM restart.
+// Plugged in as an event sink: every admit, treat, re-triage and discharge is appended as a small binary record
+// (length + CRC32 + type + payload) to wal-<generation>.log through a FileChannel.
+// Group commit: records collect in one buffer and are written + forced to disk together, once enough records
+// are pending, once the oldest is too old (a timer thread commits it then, so a lull in events never leaves it
+// unwritten), or on flush()/commit(). A crash can lose at most that uncommitted group.
+// Appends and commits are synchronized, between the scheduler's thread and that timer.
+// Periodic snapshots write the whole waiting list to snapshot.bin and start a fresh log generation, so startup
+// only has to load the latest snapshot and replay the (short) log written after it.
+public class WriteAheadLog implements SchedulerEventSink, AutoCloseable {
+
+    // record types
+    static final byte ADMIT_V1 = 1;  // admit written before arrival timestamps (PatientCodec format 1); replay only
+    static final byte TREAT = 2;
+    static final byte REPRIORITIZE = 3;
+    static final byte DISCHARGE = 4;
+    static final byte ADMIT = 5;     // admit, patient in the current PatientCodec format
+
+    private static final int RECORD_HEADER = 8;             // int payload length + int CRC32 of payload
+    private static final int SNAPSHOT_MAGIC = 0x45525353;   // "ERSS"
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    public static final int DEFAULT_GROUP_COMMIT_RECORDS = 64;
+    public static final long DEFAULT_MAX_COMMIT_DELAY_MILLIS = 10;
+    public static final int DEFAULT_SNAPSHOT_EVERY = 100_000;
+
+    private final Path directory;
+    private final int groupCommitRecords;    // commit once this many records are pending
+    private final long maxCommitDelayNanos;  // ...or once the oldest pending record is this old
+    private final int snapshotEvery;         // records between snapshots (0 = only when snapshot() is called)
+    private final ByteBuffer pending = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final Thread commitTimer;         // commits a group once its oldest record is maxCommitDelay old
+
+    private FileChannel log;
+    private long generation;           // current log file is wal-<generation>.log
+    private int pendingRecords;
+    private long oldestPendingNanos;
+    private long recordsSinceSnapshot;
+    private Supplier<List<Patient>> snapshotSource; // current waiting list, for snapshots
+    private long recordsWritten;
+    private long commits;
+    private long snapshots;
+    private long recoveredRecords;
+    private volatile boolean closed;
+
+
+    private WriteAheadLog(Path directory, int groupCommitRecords, long maxCommitDelayMillis, int snapshotEvery) {
+        if (groupCommitRecords < 1) {
+            throw new IllegalArgumentException("Group commit size must be at least 1");
+        }
+        this.directory = directory;
+        this.groupCommitRecords = groupCommitRecords;
+        this.maxCommitDelayNanos = maxCommitDelayMillis * 1_000_000;
+        this.snapshotEvery = snapshotEvery;
+        this.commitTimer = Thread.ofPlatform().daemon().name("wal-commit-timer").unstarted(this::commitLateGroups);
+    }
+
+
+    // Opens (or creates) the log in directory with default settings and replays it into an empty scheduler
+    public static WriteAheadLog open(Path directory, EmergencyRoomScheduler scheduler) throws IOException {
+        return open(directory, scheduler, DEFAULT_GROUP_COMMIT_RECORDS, DEFAULT_MAX_COMMIT_DELAY_MILLIS, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    // Opens (or creates) the log in directory: loads the latest snapshot and replays later log records into the
+    // (empty) scheduler, then gets ready to append. The scheduler's own event sink is muted during replay.
+    public static WriteAheadLog open(Path directory, EmergencyRoomScheduler scheduler, int groupCommitRecords,
+                                     long maxCommitDelayMillis, int snapshotEvery) throws IOException {
+        Files.createDirectories(directory);
+        WriteAheadLog wal = new WriteAheadLog(directory, groupCommitRecords, maxCommitDelayMillis, snapshotEvery);
+        wal.recover(scheduler);
+        wal.log = FileChannel.open(wal.logPath(wal.generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        wal.log.position(wal.log.size());
+        wal.commitTimer.start();
+        return wal;
+    }
+
+
+    // Where snapshots get the waiting list from. Without one, snapshots are skipped.
+    public void setSnapshotSource(Supplier<List<Patient>> snapshotSource) {
+        this.snapshotSource = snapshotSource;
+    }
+
+
+    public long getRecordsWritten() {return recordsWritten;}
+    public long getCommits() {return commits;}
+    public long getSnapshots() {return snapshots;}
+    public long getRecoveredRecords() {return recoveredRecords;}
+    public long getGeneration() {return generation;}
+
+
+    // ---------------------------------------------------------------- event sink: one record per state change
+
+    @Override
+    public synchronized void patientAdmitted(Patient patient) {
+        appendAdmit(patient);
+        afterAppend(1);
+    }
+
+    @Override
+    public synchronized void batchAdmitted(List<Patient> admitted, int skipped, int waiting) {
+        for (Patient patient : admitted) {
+            appendAdmit(patient);
+        }
+        if (!admitted.isEmpty()) {
+            commit(); // a manifest is admitted as a unit, so make it durable as one
+            afterAppend(admitted.size());
+        }
+    }
+
+    @Override
+    public synchronized void patientTreated(Patient patient) {
+        appendSsnRecord(TREAT, patient.getSsn(), 0);
+        afterAppend(1);
+    }
+
+    @Override
+    public synchronized void patientReprioritized(Patient patient) {
+        appendSsnRecord(REPRIORITIZE, patient.getSsn(), patient.getPriorityLevel());
+        afterAppend(1);
+    }
+
+    @Override
+    public synchronized void patientDischarged(Patient patient) {
+        appendSsnRecord(DISCHARGE, patient.getSsn(), 0);
+        afterAppend(1);
+    }
+
+    // The CLI (and anything else that needs durability now) flushes the sink
+    @Override
+    public void flush() {
+        commit();
+    }
+
+
+    // Writes every pending record and forces it to disk
+    public synchronized void commit() {
+        if (pendingRecords == 0) {
+            return;
+        }
+        try {
+            writePending();
+            log.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write-ahead log commit failed", e);
+        }
+        pendingRecords = 0;
+        commits++;
+    }
+
+
+    // Writes the whole waiting list to a new snapshot and starts a new log generation, then deletes older logs.
+    // Crash-safe: the snapshot is written to a temp file and renamed into place before old logs are removed.
+    public synchronized void snapshot() {
+        if (snapshotSource == null) {
+            return;
+        }
+        commit();
+        long nextGeneration = generation + 1;
+        List<Patient> waiting = snapshotSource.get();
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            PatientCodec.writeHeader(buffer, SNAPSHOT_MAGIC, nextGeneration);
+            buffer.putInt(waiting.size());
+            for (Patient patient : waiting) {
+                if (buffer.remaining() < RECORD_HEADER + PatientCodec.maxEncodedSize(patient)) {
+                    drain(buffer, out);
+                }
+                int start = buffer.position();
+                buffer.position(start + RECORD_HEADER);
+                PatientCodec.write(buffer, patient);
+                sealRecord(buffer, start);
+            }
+            drain(buffer, out);
+            out.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot failed", e);
+        }
+        try {
+            Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.close();
+            generation = nextGeneration;
+            log = FileChannel.open(logPath(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            log.position(log.size());
+            for (long oldGeneration : logGenerations().keySet()) {
+                if (oldGeneration < generation) {
+                    Files.deleteIfExists(logPath(oldGeneration));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Log rotation after snapshot failed", e);
+        }
+        recordsSinceSnapshot = 0;
+        snapshots++;
+    }
+
+
+    @Override
+    public synchronized void close() throws IOException {
+        commit();
+        closed = true;
+        LockSupport.unpark(commitTimer);
+        log.close();
+    }
+
+
+    // ---------------------------------------------------------------- appending
+
+    private void appendAdmit(Patient patient) {
+        reserve(RECORD_HEADER + 1 + PatientCodec.maxEncodedSize(patient));
+        int start = pending.position();
+        pending.position(start + RECORD_HEADER);
+        pending.put(ADMIT);
+        PatientCodec.write(pending, patient);
+        sealRecord(pending, start);
+    }
+
+
+    private void appendSsnRecord(byte type, int ssn, int value) {
+        reserve(RECORD_HEADER + 9);
+        int start = pending.position();
+        pending.position(start + RECORD_HEADER);
+        pending.put(type).putInt(ssn);
+        if (type == REPRIORITIZE) {
+            pending.putInt(value);
+        }
+        sealRecord(pending, start);
+    }
+
+
+    // Makes sure the buffer has room for one more record, writing out (not forcing) what's there if not
+    private void reserve(int bytes) {
+        if (pending.remaining() < bytes) {
+            try {
+                writePending();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Write-ahead log write failed", e);
+            }
+        }
+        if (pendingRecords == 0) {
+            oldestPendingNanos = System.nanoTime();
+            LockSupport.unpark(commitTimer); // a new group: start its clock
+        }
+        pendingRecords++;
+        recordsWritten++;
+    }
+
+
+    // Group commit and snapshot triggers, checked after each logged event (records: how many it wrote)
+    private void afterAppend(int records) {
+        if (pendingRecords >= groupCommitRecords || System.nanoTime() - oldestPendingNanos >= maxCommitDelayNanos) {
+            commit();
+        }
+        recordsSinceSnapshot += records;
+        if (snapshotEvery > 0 && recordsSinceSnapshot >= snapshotEvery) {
+            snapshot();
+        }
+    }
+
+
+    // Commit timer thread: sleeps until the pending group is due (or indefinitely while nothing is pending) and commits it
+    private void commitLateGroups() {
+        while (!closed) {
+            long waitNanos;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                waitNanos = pendingRecords == 0 ? -1 : oldestPendingNanos + maxCommitDelayNanos - System.nanoTime();
+                if (pendingRecords > 0 && waitNanos <= 0) {
+                    try {
+                        commit();
+                    } catch (UncheckedIOException e) {
+                        waitNanos = maxCommitDelayNanos; // the scheduler's next commit will report it; try again later
+                    }
+                    if (pendingRecords == 0) {
+                        continue;
+                    }
+                }
+            }
+            if (waitNanos < 0) {
+                LockSupport.park(this);
+            }
+            else {
+                LockSupport.parkNanos(this, Math.max(waitNanos, 1));
+            }
+        }
+    }
+
+
+    private void writePending() throws IOException {
+        drain(pending, log);
+    }
+
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+
+    // Fills in the length + CRC header of the record that starts at start and ends at the buffer's position
+    private void sealRecord(ByteBuffer buffer, int start) {
+        int end = buffer.position();
+        int length = end - start - RECORD_HEADER;
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + RECORD_HEADER).limit(end);
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, (int) crc.getValue());
+    }
+
+
+    // ---------------------------------------------------------------- recovery
+
+    // Snapshot first, then every log generation from the snapshot's onward. Records are folded into the net
+    // waiting list (admit adds, treat / discharge remove, re-triage replaces) in a primitive SSN map, and only the
+    // survivors are handed to the scheduler at the end in one admitAll (one heapify), instead of replaying
+    // every heap operation one at a time.
+    private void recover(EmergencyRoomScheduler scheduler) throws IOException {
+        RecoveredState state = new RecoveredState();
+        generation = loadSnapshot(state);
+        TreeMap<Long, Path> logs = logGenerations();
+        for (long logGeneration : logs.keySet()) {
+            if (logGeneration >= generation) {
+                replayLog(logs.get(logGeneration), state);
+                generation = logGeneration;
+            }
+        }
+        SchedulerEventSink previousSink = scheduler.getEventSink();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        try {
+            for (Patient treated : state.treated) {
+                scheduler.rememberTreated(treated);
+            }
+            scheduler.admitAll(state.survivors());
+        } finally {
+            scheduler.setEventSink(previousSink);
+        }
+    }
+
+
+    // Net effect of the snapshot + log records seen so far
+    private static final class RecoveredState {
+        final IntPatientMap waiting = new IntPatientMap(1024);   // SSN -> current version of each waiting patient
+        final ArrayList<Patient> admissionOrder = new ArrayList<>(); // every admission, in log order
+        final ArrayList<Patient> treated = new ArrayList<>();        // treated patients, in log order
+
+        void admit(Patient patient) {
+            if (waiting.get(patient.getSsn()) == null) {
+                waiting.put(patient.getSsn(), patient);
+                admissionOrder.add(patient);
+            }
+        }
+
+        // Patients still waiting, in admission order, each once
+        List<Patient> survivors() {
+            ArrayList<Patient> survivors = new ArrayList<>(waiting.size());
+            for (Patient admitted : admissionOrder) {
+                Patient current = waiting.remove(admitted.getSsn());
+                if (current != null) {
+                    survivors.add(current);
+                }
+            }
+            return survivors;
+        }
+    }
+
+
+    // Reads snapshot.bin into the recovered state. Returns the log generation that follows it (0 if there is no snapshot).
+    private long loadSnapshot(RecoveredState state) throws IOException {
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+        long nextGeneration = PatientCodec.readHeader(buffer.duplicate(), SNAPSHOT_MAGIC, "scheduler snapshot: " + snapshotPath, 1);
+        int version = PatientCodec.peekVersion(buffer); // snapshots from before arrival timestamps are still readable
+        buffer.position(PatientCodec.HEADER_BYTES);
+        int count = buffer.getInt();
+        state.waiting.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (!checksumMatches(buffer, length, checksum)) {
+                throw new IOException("Corrupt snapshot record " + i + " in " + snapshotPath);
+            }
+            state.admit(PatientCodec.read(buffer, version));
+        }
+        return nextGeneration;
+    }
+
+
+    // Replays one log file. Stops at the first torn or corrupt record (a crash mid-write) and cuts the file there.
+    private void replayLog(Path path, RecoveredState state) throws IOException {
+        long validBytes = 0;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            boolean corrupt = false;
+            while (!corrupt) {
+                int read = in.read(buffer);
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_HEADER) {
+                    int start = buffer.position();
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length < 1 || length > BUFFER_BYTES - RECORD_HEADER) {
+                        corrupt = true;
+                        break;
+                    }
+                    if (buffer.remaining() < length) {
+                        buffer.position(start); // partial record, read more
+                        break;
+                    }
+                    if (!checksumMatches(buffer, length, checksum)) {
+                        corrupt = true;
+                        break;
+                    }
+                    applyRecord(buffer, state);
+                    validBytes += RECORD_HEADER + length;
+                    recoveredRecords++;
+                }
+                if (read < 0) {
+                    break; // end of file: anything left over is a torn final record
+                }
+                buffer.compact();
+            }
+            if (validBytes < in.size()) {
+                in.truncate(validBytes); // drop the torn tail so new records follow the last good one
+            }
+        }
+    }
+
+
+    private void applyRecord(ByteBuffer buffer, RecoveredState state) {
+        byte type = buffer.get();
+        if (type == ADMIT || type == ADMIT_V1) {
+            state.admit(PatientCodec.read(buffer, type == ADMIT ? PatientCodec.FORMAT_VERSION : 1));
+            return;
+        }
+        int ssn = buffer.getInt();
+        switch (type) {
+            case TREAT:
+                Patient treated = state.waiting.remove(ssn);
+                if (treated != null) {state.treated.add(treated);}
+                break;
+            case REPRIORITIZE:
+                int newLevel = buffer.getInt();
+                Patient waiting = state.waiting.get(ssn);
+                if (waiting != null) {state.waiting.put(ssn, waiting.withPriorityLevel(newLevel));}
+                break;
+            case DISCHARGE:
+                state.waiting.remove(ssn);
+                break;
+            default:
+                throw new IllegalStateException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+
+    // Checks the CRC of the next length bytes without moving the buffer's position
+    private boolean checksumMatches(ByteBuffer buffer, int length, int checksum) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(payload.position() + length);
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue() == checksum;
+    }
+
+
+    private Path logPath(long logGeneration) {
+        return directory.resolve(String.format("wal-%020d.log", logGeneration));
+    }
+
+
+    // All log files in the directory by generation
+    private TreeMap<Long, Path> logGenerations() throws IOException {
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "wal-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                logs.put(Long.parseLong(name.substring(4, name.length() - 4)), file);
+            }
+        }
+        return logs;
+    }
+
+
+
+
+    // ***************************************************************************************************************************************
+    //TESTING METHODS BELOW:
+    // ***************************************************************************************************************************************
+
+    public static void main(String[] args) throws IOException {
+        testRecoverAfterRestart();
+        testSnapshotThenReplay();
+        testTornTail();
+        testQuietGroupCommitted();
+        testBatchCountsTowardSnapshot();
+        //benchmarkRecovery();
+    }
+
+
+    public static void testRecoverAfterRestart() throws IOException {
+        Path directory = Files.createTempDirectory("er-wal");
+        EmergencyRoomScheduler before = quietScheduler();
+        WriteAheadLog wal = before.enableJournal(directory);
+        before.addPatient(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        before.addPatient(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High"));
+        before.addPatient(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"));
+        before.addPatient(new Patient("Blue", 555555555, "5/5/2000", "1 Lake Road", "444-111-2222", 3, 811, "Sprained Ankle"));
+        before.treatCurrentPatient();      // Red
+        before.reprioritize(777777777, 1); // Green upgraded
+        before.discharge(555555555);       // Blue leaves
+        wal.close();
+
+        //Restart: new scheduler rebuilt from the log
+        EmergencyRoomScheduler after = quietScheduler();
+        WriteAheadLog reopened = after.enableJournal(directory);
+        Patient first = after.treatCurrentPatient();
+        Patient second = after.treatCurrentPatient();
+        if (first != null && first.getName().equals("Green") && first.getPriorityLevel() == 1
+                && second != null && second.getName().equals("Yellow") && after.treatCurrentPatient() == null) {
+            System.out.println("Test Passed: Waiting list rebuilt after restart (treat, re-triage, discharge replayed)");
+        }
+        else {System.out.println("Test Failed: Recovered waiting list is wrong");}
+        reopened.close();
+    }
+
+
+    // One admission and then nothing: the commit timer writes and forces it within the commit delay, with no flush and no next event
+    public static void testQuietGroupCommitted() throws IOException {
+        Path directory = Files.createTempDirectory("er-wal");
+        EmergencyRoomScheduler scheduler = quietScheduler();
+        WriteAheadLog wal = WriteAheadLog.open(directory, scheduler, 1_000, 5, 0);
+        scheduler.setEventSink(wal);
+        scheduler.addPatient(new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms"));
+        Path logFile = wal.logPath(wal.getGeneration());
+        long written = 0;
+        for (int i = 0; i < 1_000 && written == 0; i++) {
+            try {Thread.sleep(1);} catch (InterruptedException e) {break;}
+            written = Files.size(logFile);
+        }
+
+        EmergencyRoomScheduler recovered = quietScheduler(); // reads the log while the first one is still open, as after a crash
+        WriteAheadLog.open(directory, recovered, 1_000, 5, 0).close();
+        if (written > 0 && recovered.findPatient(777777777) != null) {
+            System.out.println("Test Passed: A lone admission was committed by the timer, without a flush or another event");
+        }
+        else {System.out.println("Test Failed: log holds " + written + " bytes after a lull");}
+        wal.close();
+    }
+
+
+    public static void testSnapshotThenReplay() throws IOException {
+        Path directory = Files.createTempDirectory("er-wal");
+        EmergencyRoomScheduler before = quietScheduler();
+        WriteAheadLog wal = WriteAheadLog.open(directory, before, 8, 10, 50);
+        wal.setSnapshotSource(before::waitingPatients);
+        before.setEventSink(wal);
+        for (int i = 0; i < 120; i++) {
+            before.addPatient(new Patient("Pt" + i, 100000000 + i, "1/1/2000", "Addr", "555-555-5555", 1 + i % 3, ArrivalGenerator.toMilitaryTime(60 + i), "Test"));
+            if (i % 4 == 3) {before.treatCurrentPatient();}
+        }
+        int expected = before.waitingCount();
+        wal.close();
+
+        int logFiles = wal.logGenerations().size();
+        EmergencyRoomScheduler after = quietScheduler();
+        WriteAheadLog reopened = WriteAheadLog.open(directory, after);
+        if (wal.getSnapshots() >= 2 && logFiles == 1 && after.waitingCount() == expected && reopened.getRecoveredRecords() < 50) {
+            System.out.println("Test Passed: Snapshot + short log tail rebuilt " + expected + " waiting patients");
+        }
+        else {System.out.println("Test Failed: snapshots=" + wal.getSnapshots() + " logs=" + logFiles + " recovered=" + after.waitingCount() + "/" + expected);}
+        reopened.close();
+    }
+
+
+    // A manifest of 120 admissions is 120 records toward the snapshot trigger, checked once after the batch commit
+    public static void testBatchCountsTowardSnapshot() throws IOException {
+        Path directory = Files.createTempDirectory("er-wal");
+        EmergencyRoomScheduler before = quietScheduler();
+        WriteAheadLog wal = WriteAheadLog.open(directory, before, 8, 10, 50);
+        wal.setSnapshotSource(before::waitingPatients);
+        before.setEventSink(wal);
+        List<Patient> manifest = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            manifest.add(new Patient("Pt" + i, 100000000 + i, "1/1/2000", "Addr", "555-555-5555", 1 + i % 3, ArrivalGenerator.toMilitaryTime(60 + i), "Test"));
+        }
+        before.admitAll(manifest);
+        long snapshots = wal.getSnapshots();
+        wal.close();
+
+        EmergencyRoomScheduler after = quietScheduler();
+        WriteAheadLog reopened = WriteAheadLog.open(directory, after);
+        if (snapshots == 1 && after.waitingCount() == 120 && reopened.getRecoveredRecords() == 0) {
+            System.out.println("Test Passed: A 120-patient manifest triggered one snapshot, which alone rebuilt the list");
+        }
+        else {System.out.println("Test Failed: snapshots=" + snapshots + " recovered=" + after.waitingCount() + " replayed records=" + reopened.getRecoveredRecords());}
+        reopened.close();
+    }
+
+
+    public static void testTornTail() throws IOException {
+        Path directory = Files.createTempDirectory("er-wal");
+        EmergencyRoomScheduler before = quietScheduler();
+        WriteAheadLog wal = before.enableJournal(directory);
+        before.addPatient(new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath"));
+        wal.close();
+        // simulate a crash halfway through writing the next record
+        Files.write(wal.logPath(wal.getGeneration()), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        EmergencyRoomScheduler after = quietScheduler();
+        WriteAheadLog reopened = after.enableJournal(directory);
+        after.addPatient(new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High"));
+        reopened.close();
+
+        EmergencyRoomScheduler again = quietScheduler();
+        WriteAheadLog third = again.enableJournal(directory);
+        if (again.waitingCount() == 2 && again.findPatient(888888888) != null && again.findPatient(999999999) != null) {
+            System.out.println("Test Passed: Torn record ignored and cut off; later records still recovered");
+        }
+        else {System.out.println("Test Failed: Recovered " + again.waitingCount() + " patients after a torn write");}
+        third.close();
+    }
+
+
+    // Writes a 1M-event log (admissions with every third followed by a treatment) without snapshots, then times startup recovery.
+    public static void benchmarkRecovery() throws IOException {
+        Path directory = Files.createTempDirectory("er-wal-bench");
+        EmergencyRoomScheduler writer = quietScheduler();
+        WriteAheadLog wal = WriteAheadLog.open(directory, writer, 1024, 50, 0);
+        writer.setEventSink(wal);
+        Random random = new Random(8);
+        int events = 0;
+        int ssn = 100000000;
+        long start = System.nanoTime();
+        while (events < 1_000_000) {
+            writer.addPatient(new Patient("Patient " + ssn, ssn++, "1/1/2000", "123 Main Street", "555-555-5555", 1 + random.nextInt(3), ArrivalGenerator.toMilitaryTime(random.nextInt(1440)), "Abdominal pain"));
+            events++;
+            if (events % 3 == 0) {
+                writer.treatCurrentPatient();
+                events++;
+            }
+        }
+        wal.close();
+        long writeMillis = (System.nanoTime() - start) / 1_000_000;
+        long bytes = Files.size(wal.logPath(wal.getGeneration()));
+
+        for (int round = 0; round < 3; round++) {
+            EmergencyRoomScheduler recovered = quietScheduler();
+            start = System.nanoTime();
+            WriteAheadLog reopened = WriteAheadLog.open(directory, recovered, 1024, 50, 0);
+            long recoverMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("Recovered " + reopened.getRecoveredRecords() + " log records (" + bytes / (1 << 20) + " MB) into "
+                    + recovered.waitingCount() + " waiting patients in " + recoverMillis + " ms  (log written in " + writeMillis + " ms, "
+                    + wal.getCommits() + " group commits)");
+            reopened.close();
+        }
+    }
+
+
+    private static EmergencyRoomScheduler quietScheduler() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        return scheduler;
+    }
+}
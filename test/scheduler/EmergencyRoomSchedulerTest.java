@@ -0,0 +1,226 @@
+package scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+// The hand-made scenarios from EmergencyRoomScheduler's testing methods (testAddPatient, testTreatCurrentPatient,
+// ...) as assertions, run against every scheduling mode. AGING_LANES runs on a clock fixed at 08:10, just after
+// these patients arrived, so nobody has waited long enough to age and it too must treat in triage order.
+class EmergencyRoomSchedulerTest {
+
+    private static final Patient GREEN = new Patient("Green", 777777777, "4/4/2000", "2000 Water Way Lane", "888-555-2020", 3, 805, "Flu Like Symptoms");
+    private static final Patient YELLOW = new Patient("Yellow", 999999999, "2/2/2000", "7000 Fox Cove", "444-444-4444", 2, 807, "Crushed Right Arm: Pain Level High");
+    private static final Patient RED = new Patient("Red", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+
+
+    private static final long FIXTURE_CLOCK = ArrivalClock.legacyTimestamp(810);
+
+
+    private static EmergencyRoomScheduler quietScheduler(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = mode == SchedulingMode.AGING_LANES
+                ? new EmergencyRoomScheduler(new AgingLaneQueue(() -> FIXTURE_CLOCK, AgingLaneQueue.DEFAULT_MINUTES_PER_LEVEL))
+                : new EmergencyRoomScheduler(mode);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        return scheduler;
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void addPatientMakesThemFindableAndIgnoresNull(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = quietScheduler(mode);
+        Patient dog = new Patient("Dog", 123456789, "1/2/2000", "777 Main Street", "444-999-6789", 3, 1420, " Broke both arms and both legs");
+        assertTrue(scheduler.addPatient(dog));
+        assertEquals(dog, scheduler.findPatient(123456789));
+
+        assertFalse(scheduler.addPatient(null));
+        assertEquals(1, scheduler.waitingCount());
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void treatTakesTheMostUrgentPatient(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = quietScheduler(mode);
+        scheduler.addPatient(GREEN);
+        scheduler.addPatient(YELLOW);
+        scheduler.addPatient(RED);
+
+        assertEquals(RED, scheduler.treatCurrentPatient());
+        assertNull(scheduler.findPatient(RED.getSsn()));
+        assertEquals(2, scheduler.waitingCount());
+        assertEquals(YELLOW, scheduler.treatCurrentPatient());
+        assertEquals(GREEN, scheduler.treatCurrentPatient());
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void treatingAnEmptyOrSingletonListIsSafe(SchedulingMode mode) {
+        EmergencyRoomScheduler empty = quietScheduler(mode);
+        assertNull(empty.treatCurrentPatient());
+        assertEquals(0, empty.waitingCount());
+
+        EmergencyRoomScheduler oneMan = quietScheduler(mode);
+        oneMan.addPatient(RED);
+        assertEquals(RED, oneMan.treatCurrentPatient());
+        assertEquals(0, oneMan.waitingCount());
+        assertNull(oneMan.peekCurrentPatient());
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void waitingListIsShownInTreatmentOrder(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = quietScheduler(mode);
+        scheduler.addPatient(GREEN);
+        scheduler.addPatient(YELLOW);
+        scheduler.addPatient(RED);
+        assertEquals(List.of(RED, YELLOW, GREEN), scheduler.topWaiting(10));
+
+        for (int i = 0; i < 3; i++) {scheduler.treatCurrentPatient();}
+        assertTrue(scheduler.topWaiting(10).isEmpty());
+        assertFalse(scheduler.waitingInOrder().hasNext());
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void viewPatientDetailsFindsByWaitingSsnOnly(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(mode);
+        List<Patient> found = new ArrayList<>();
+        List<Integer> notFound = new ArrayList<>();
+        scheduler.setEventSink(new SchedulerEventSink() {
+            @Override public void patientFound(Patient patient, boolean alreadyTreated) {found.add(patient);}
+            @Override public void patientNotFound(int ssn) {notFound.add(ssn);}
+        });
+        Patient rick = new Patient("Rick", 111111111, "3/29/2000", "9000 Fox Cove Drive", "666-787-5200", 3, 849, "Cough");
+        Patient bob = new Patient("Bob", 222222222, "4/2/2000", "9080 Bear Den Drive", "984-234-3920", 1, 1009, "Chest Pains + Shortness of Breath");
+        scheduler.addPatient(rick);
+        scheduler.addPatient(bob);
+
+        scheduler.viewPatientDetails("Rick", 111111111);
+        scheduler.viewPatientDetails("Frank", 999999999);
+        scheduler.viewPatientDetails("Matt", 222222222); // right SSN, wrong name: the SSN decides
+
+        assertEquals(List.of(rick, bob), found);
+        assertEquals(List.of(999999999), notFound);
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void reprioritizeMovesThePatientAndRejectsBadInput(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = quietScheduler(mode);
+        scheduler.addPatient(GREEN);
+        scheduler.addPatient(YELLOW);
+
+        Patient upgraded = scheduler.reprioritize(777777777, 1);
+        assertEquals(1, upgraded.getPriorityLevel());
+        assertEquals(upgraded, scheduler.peekCurrentPatient());
+        assertEquals(1, scheduler.findPatient(777777777).getPriorityLevel());
+
+        assertNull(scheduler.reprioritize(777777777, 4));
+        assertEquals(1, scheduler.peekCurrentPatient().getPriorityLevel());
+        assertNull(scheduler.reprioritize(123123123, 2));
+        assertEquals(2, scheduler.waitingCount());
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void dischargeRemovesOnlyWaitingPatients(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = quietScheduler(mode);
+        scheduler.addPatient(GREEN);
+        scheduler.addPatient(RED);
+
+        assertEquals(RED, scheduler.discharge(888888888));
+        assertEquals(1, scheduler.waitingCount());
+        assertEquals(GREEN, scheduler.peekCurrentPatient());
+        assertNull(scheduler.findPatient(888888888));
+
+        assertNull(scheduler.discharge(888888888));
+        assertEquals(1, scheduler.waitingCount());
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void treatedPatientsLeaveTheListButStayFindable(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = quietScheduler(mode);
+        for (int i = 0; i < 50; i++) {
+            scheduler.addPatient(new Patient("Pt" + i, 100000000 + i, "1/1/2000", "1 Main Street", "555-555-5555", 1 + i % 3, 800 + i, "Cough"));
+        }
+        for (int i = 0; i < 50; i++) {scheduler.treatCurrentPatient();}
+        assertEquals(0, scheduler.waitingCount());
+        assertNull(scheduler.findPatient(100000000));
+        assertEquals("Pt0", scheduler.findTreatedPatient(100000000).getName());
+    }
+
+
+    @Test
+    void recentlyTreatedCacheIsBounded() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(10, 0);
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        for (int i = 0; i < 25; i++) {
+            scheduler.addPatient(new Patient("Pt" + i, 200000000 + i, "1/1/2000", "1 Main Street", "555-555-5555", 2, 900 + i, "Cough"));
+            scheduler.treatCurrentPatient();
+        }
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i >= 15, scheduler.findTreatedPatient(200000000 + i) != null, "Pt" + i); // only the last 10 are kept
+        }
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void admitAllSkipsNullsAndDuplicates(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = quietScheduler(mode);
+        scheduler.addPatient(GREEN);
+        List<Patient> manifest = Arrays.asList(YELLOW, RED, null, GREEN,
+                new Patient("Red Again", 888888888, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Repeated in manifest"));
+
+        assertEquals(2, scheduler.admitAll(manifest));
+        assertEquals(3, scheduler.waitingCount());
+        assertEquals("Red", scheduler.peekCurrentPatient().getName());
+
+        assertEquals(0, scheduler.admitAll(new ArrayList<>()));
+        assertEquals(3, scheduler.waitingCount());
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void everyOutcomeIsReportedToTheEventSink(SchedulingMode mode) {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler(mode);
+        int[] counts = new int[4]; // admitted, rejected, treated, not found
+        scheduler.setEventSink(new SchedulerEventSink() {
+            @Override public void patientAdmitted(Patient patient) {counts[0]++;}
+            @Override public void admissionRejected(Patient patient) {counts[1]++;}
+            @Override public void patientTreated(Patient patient) {counts[2]++;}
+            @Override public void patientNotFound(int ssn) {counts[3]++;}
+        });
+        scheduler.addPatient(RED);
+        scheduler.addPatient(RED);
+        scheduler.addPatient(null);
+        Patient treated = scheduler.treatCurrentPatient();
+        scheduler.viewPatientDetails("Frank", 999999999);
+
+        assertEquals(RED, treated);
+        assertEquals("[1, 2, 1, 1]", Arrays.toString(counts));
+
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        scheduler.addPatient(RED);
+        assertEquals(RED, scheduler.treatCurrentPatient());
+        assertNull(scheduler.treatCurrentPatient());
+    }
+}
@@ -0,0 +1,84 @@
+package scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// Patient's testing methods (testEquals, testHashCode, testCompareTo, testToString, testBuilder) as assertions
+class PatientTest {
+
+    private static Patient red(int ssn) {
+        return new Patient("Red", ssn, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains + Shortness of Breath");
+    }
+
+
+    @Test
+    void equalityIsBySsnAndName() {
+        Patient red = red(888888888);
+        assertEquals(red, red(888888888));
+        assertEquals(red, red);
+        assertNotEquals(red, red(555555555));
+        assertNotEquals(red, null);
+        assertNotEquals(red, "This is a String, not a patient");
+    }
+
+
+    @Test
+    void hashCodeIsStableAndFollowsEquality() {
+        Patient red = red(888888888);
+        assertEquals(red.hashCode(), red.hashCode());
+        assertEquals(red.hashCode(), red(888888888).hashCode());
+        assertNotEquals(red(744525687).hashCode(), red(744525688).hashCode());
+    }
+
+
+    @Test
+    void moreUrgentThenEarlierComesFirst() {
+        Patient low = new Patient("testpt20", 982187888, "3/3/2001", "8700 Bear Den Drive", "444-780-5300", 3, 809, "Chest Pains");
+        Patient high = new Patient("testpt21", 485888770, "3/3/2000", "9000 Bear Den Drive", "444-787-5300", 1, 809, "Chest Pains");
+        assertTrue(high.compareTo(low) < 0);
+
+        Patient earlier = new Patient("Earlier Arrival", 982447888, "8/10/2001", "8730 Bear Den Drive", "444-780-6600", 3, 1000, "Chest Pains");
+        Patient later = new Patient("Later Arrival", 983387855, "3/8/2011", "8700 Bear Den Drive", "444-780-5300", 3, 1015, "Chest Pains");
+        assertTrue(earlier.compareTo(later) < 0);
+
+        Patient first = new Patient("Clone1", 272347578, "8/10/2001", "8730 Bear Den Drive", "444-780-6600", 3, 1000, "Chest Pains");
+        Patient second = new Patient("Clone2", 982447889, "8/10/2001", "8730 Fox Den Drive", "444-780-4300", 3, 1000, "Chest Pains");
+        assertEquals(0, second.compareTo(second));
+        assertTrue(first.compareTo(second) < 0); // same level and minute: admitted first, treated first
+    }
+
+
+    @Test
+    void toStringListsEveryField() {
+        Patient dog = new Patient("Golden Retriever", 123987456, "11/1/2000", "748 Cherry Lane", "555-333-2039", 1, 1045, "Sad Dog");
+        assertEquals("Patient Details: \nName: Golden Retriever\nSSN: 123987456\nDOB: 11/1/2000\nAddress: 748 Cherry Lane\n"
+                + "Phone Number: 555-333-2039\nPriority Level: 1\nArrival Time: 1045\nTreatment Description: Sad Dog\n", dog.toString());
+    }
+
+
+    @Test
+    void builderMatchesTheConstructor() {
+        Patient built = Patient.builder().name("Red").ssn(888888888).dateOfBirth("3/3/2000").address("9000 Bear Den Drive")
+                .phoneNumber("444-787-5300").priorityLevel(1).arrivalTime(809).treatmentDescription("Chest Pains + Shortness of Breath").build();
+        Patient constructed = red(888888888);
+        assertEquals(constructed, built);
+        assertEquals(constructed.hashCode(), built.hashCode());
+        assertEquals(constructed.getArrivalTimestamp(), built.getArrivalTimestamp());
+    }
+
+
+    @Test
+    void invalidKeysCannotBeBuilt() {
+        assertThrows(IllegalArgumentException.class, () -> Patient.builder().ssn(55555555).priorityLevel(3).arrivalTime(1130).build());
+        assertThrows(IllegalArgumentException.class, () -> Patient.builder().ssn(555555555).priorityLevel(0).arrivalTime(1130).build());
+        assertThrows(IllegalArgumentException.class, () -> Patient.builder().ssn(555555555).priorityLevel(3).arrivalTime(1160).build());
+        assertThrows(IllegalArgumentException.class, () -> Patient.builder().ssn(555555555).priorityLevel(3).build());
+        assertThrows(IllegalArgumentException.class,
+                () -> Patient.builder().ssn(555555555).priorityLevel(3).arrivalTime(1130).arrivalTimestamp(1L << 56).build());
+        assertThrows(IllegalArgumentException.class, () -> red(888888888).withPriorityLevel(4));
+    }
+}
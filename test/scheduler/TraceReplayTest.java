@@ -0,0 +1,110 @@
+package scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+// Every engine treats a long generated trace exactly as the reference model does, and the harness itself
+// catches an engine that doesn't. `java scheduler.TraceReplay` runs the same check at millions of operations.
+class TraceReplayTest {
+
+    private static SchedulerTrace trace;
+    private static TraceReplay replay;
+
+    @BeforeAll
+    static void generateTrace() {
+        trace = SchedulerTrace.generate(7, 300_000, 2_000);
+        replay = new TraceReplay(trace);
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(SchedulingMode.class)
+    void schedulingModeMatchesReference(SchedulingMode mode) {
+        TraceReplay.Run run = replay.replay(mode.toString(), TraceReplay.scheduler(mode));
+        assertTrue(run.matchesReference(), run::toString);
+        assertTrue(run.getEventsPerSecond() > 0);
+    }
+
+    @Test
+    void concurrentSchedulerMatchesReference() {
+        TraceReplay.Run run = replay.replay("concurrent", TraceReplay.engineFor(new ConcurrentEmergencyRoomScheduler()));
+        assertTrue(run.matchesReference(), run::toString);
+    }
+
+
+    // An engine that gets one treatment in a thousand wrong is caught at that treatment
+    @Test
+    void harnessCatchesAWrongTreatment() {
+        EmergencyRoomScheduler scheduler = new EmergencyRoomScheduler();
+        scheduler.setEventSink(NoOpEventSink.INSTANCE);
+        TraceReplay.Engine correct = TraceReplay.engineFor(scheduler);
+        int[] treats = new int[1];
+        TraceReplay.Engine faulty = new TraceReplay.Engine() {
+            @Override public boolean admit(Patient patient) {return correct.admit(patient);}
+            @Override public Patient reprioritize(int ssn, int newLevel) {return correct.reprioritize(ssn, newLevel);}
+            @Override public Patient discharge(int ssn) {return correct.discharge(ssn);}
+            @Override
+            public Patient treat() {
+                if (++treats[0] == 1_000 && scheduler.waitingCount() >= 2) {
+                    Patient skipped = scheduler.treatCurrentPatient();
+                    Patient next = scheduler.treatCurrentPatient(); // treats the second in line instead
+                    scheduler.addPatient(skipped);
+                    return next;
+                }
+                return correct.treat();
+            }
+        };
+        TraceReplay.Run run = replay.replay("faulty", faulty);
+        assertFalse(run.matchesReference());
+        assertEquals(SchedulerTrace.TREAT, trace.kind(run.getFirstMismatch()));
+    }
+
+
+    @Test
+    void savedTraceReplaysTheSame(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("trace.bin");
+        SchedulerTrace small = SchedulerTrace.generate(8, 20_000, 500);
+        small.write(file);
+        SchedulerTrace loaded = SchedulerTrace.read(file);
+        assertEquals(small.size(), loaded.size());
+        for (int event = 0; event < small.size(); event++) {
+            assertEquals(small.kind(event), loaded.kind(event));
+            assertEquals(small.ssn(event), loaded.ssn(event));
+            assertEquals(small.level(event), loaded.level(event));
+            assertEquals(small.patient(event), loaded.patient(event));
+        }
+        assertTrue(new TraceReplay(loaded).replay("loaded", TraceReplay.scheduler(SchedulingMode.PRIORITY_QUEUE)).matchesReference());
+    }
+
+
+    // A session recorded from a live scheduler replays to the same treatment order in another mode
+    @Test
+    void recordedSessionReplaysInOtherModes() {
+        EmergencyRoomScheduler live = new EmergencyRoomScheduler(SchedulingMode.PRIORITY_QUEUE);
+        live.setEventSink(NoOpEventSink.INSTANCE);
+        Patient[] arrivals = new ArrivalGenerator(9, 5_000).generate(5_000);
+        for (int i = 0; i < 100; i++) {live.addPatient(arrivals[i]);}
+        SchedulerTrace.Recorder recorder = live.enableTraceRecorder();
+        Random random = new Random(9);
+        for (int i = 100; i < arrivals.length; i++) {
+            live.addPatient(arrivals[i]);
+            int roll = random.nextInt(10);
+            if (roll < 4) {live.treatCurrentPatient();}
+            else if (roll == 4) {live.reprioritize(arrivals[random.nextInt(i)].getSsn(), 1 + random.nextInt(3));}
+            else if (roll == 5) {live.discharge(arrivals[random.nextInt(i)].getSsn());}
+        }
+        TraceReplay recorded = new TraceReplay(recorder.toTrace());
+        assertTrue(recorded.replay("lanes", TraceReplay.scheduler(SchedulingMode.PRIORITY_LANES)).matchesReference());
+        assertTrue(recorded.replay("compact", TraceReplay.scheduler(SchedulingMode.COMPACT_HEAP)).matchesReference());
+    }
+}